@@ -0,0 +1,85 @@
+/**
+ * Copyright 2018 Confluent Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package io.confluent.support.metrics.benchmarks;
+
+import org.apache.kafka.common.utils.Time;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Properties;
+
+import io.confluent.support.metrics.LogDirFootprint;
+import io.confluent.support.metrics.SupportKafkaMetricsLogDirs;
+import io.confluent.support.metrics.common.Uuid;
+import kafka.metrics.KafkaMetricsReporter;
+import kafka.server.KafkaConfig;
+import kafka.server.KafkaConfig$;
+import kafka.server.KafkaServer;
+import scala.Option;
+import scala.collection.JavaConverters;
+
+/**
+ * Inputs shared by the benchmarks.
+ */
+final class BenchmarkFixtures {
+
+  static final String CLUSTER_ID = "benchmark-cluster";
+
+  private BenchmarkFixtures() {
+  }
+
+  /**
+   * @return A broker that is never started, so that benchmarks measure the agent rather than the
+   *     broker.  It reports a fixed cluster id, like a broker that has registered with ZooKeeper.
+   */
+  static KafkaServer server() {
+    Properties props = new Properties();
+    props.setProperty(KafkaConfig$.MODULE$.ZkConnectProp(), "localhost:2181");
+    props.setProperty(KafkaConfig$.MODULE$.BrokerIdProp(), "0");
+    List<KafkaMetricsReporter> reporters = new ArrayList<>();
+    return new KafkaServer(KafkaConfig.fromProps(props), Time.SYSTEM, Option.<String>empty(),
+                           JavaConverters.asScalaBufferConverter(reporters).asScala()) {
+      @Override
+      public String clusterId() {
+        return CLUSTER_ID;
+      }
+    };
+  }
+
+  /**
+   * @return A record whose serialized size grows linearly with the number of log directories,
+   *     by about 60 bytes per directory.
+   */
+  static SupportKafkaMetricsLogDirs logDirsRecord(int logDirs) {
+    List<LogDirFootprint> footprints = new ArrayList<>(logDirs);
+    for (int i = 0; i < logDirs; i++) {
+      LogDirFootprint footprint = new LogDirFootprint();
+      footprint.setPath("/var/lib/kafka/data-" + i);
+      footprint.setSizeBytes(1024L * 1024 * 1024 * (i + 1));
+      footprint.setSegmentCount(100 + i);
+      footprint.setPartitionCount(10 + i);
+      footprints.add(footprint);
+    }
+    SupportKafkaMetricsLogDirs metricsRecord = new SupportKafkaMetricsLogDirs();
+    metricsRecord.setTimestamp(1500000000L);
+    metricsRecord.setCollectorState(0);
+    metricsRecord.setBrokerProcessUUID(new Uuid().toString());
+    metricsRecord.setLogDirs(footprints);
+    metricsRecord.setPartitionsRefreshed(logDirs);
+    metricsRecord.setPartitionsPending(0);
+    return metricsRecord;
+  }
+
+}
@@ -0,0 +1,381 @@
+/**
+ * Copyright 2018 Confluent Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package io.confluent.support.metrics.benchmarks;
+
+import org.apache.kafka.clients.consumer.ConsumerConfig;
+import org.apache.kafka.clients.consumer.ConsumerRecords;
+import org.apache.kafka.clients.consumer.KafkaConsumer;
+import org.apache.kafka.clients.producer.KafkaProducer;
+import org.apache.kafka.clients.producer.ProducerConfig;
+import org.apache.kafka.clients.producer.ProducerRecord;
+import org.apache.kafka.common.errors.WakeupException;
+import org.apache.kafka.common.serialization.ByteArrayDeserializer;
+import org.apache.kafka.common.serialization.ByteArraySerializer;
+
+import java.io.IOException;
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.net.ServerSocket;
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Properties;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+import io.confluent.support.metrics.KafkaSupportConfig;
+import io.confluent.support.metrics.SupportedServerStartable;
+import io.confluent.support.metrics.agent.AgentMetrics;
+import kafka.server.KafkaConfig$;
+import kafka.utils.TestUtils;
+import kafka.zk.EmbeddedZookeeper;
+
+/**
+ * Measures how much the metrics agent slows down the broker it runs in.
+ *
+ * <p>Each round starts a fresh single-broker cluster through {@link SupportedServerStartable},
+ * with the agent either enabled ({@code on}) or disabled ({@code off}), drives a fixed-rate
+ * produce load plus a consumer that fetches everything produced, and measures the produce latency
+ * and the garbage collections during the measurement period.  With the agent enabled, it reports
+ * at a deliberately aggressive interval (every second by default) to the metrics topic of the same
+ * broker, so that any interference is magnified.  The Confluent endpoints are disabled, as the
+ * benchmark must not depend on internet access.
+ *
+ * <p>Produce latency is measured from the moment a record was due to be sent according to the
+ * fixed rate, not from the moment it was actually sent, so that stalls of the producer are not
+ * hidden.  Both modes run in the same JVM, which shares the JIT and the heap; alternate the modes
+ * (e.g. {@code --modes off,on,off,on}) and compare the later rounds.  The last lines are one
+ * {@code RESULT} line of key=value pairs per round, for diffing runs.
+ *
+ * <p>Usage: {@code BrokerImpactBenchmark [--modes off,on] [--rate 5000] [--record-bytes 1024]
+ * [--warmup-sec 20] [--duration-sec 60] [--report-interval-ms 1000] [--seed 42]}
+ */
+public class BrokerImpactBenchmark {
+
+  private static final String TOPIC = "broker-impact-benchmark";
+  private static final String METRICS_TOPIC = "__confluent.support.metrics";
+
+  private final Options options;
+  private final byte[] value;
+
+  BrokerImpactBenchmark(Options options) {
+    this.options = options;
+    this.value = new byte[options.recordBytes];
+    new Random(options.seed).nextBytes(value);
+  }
+
+  public static void main(String[] args) throws Exception {
+    Options options = Options.parse(args);
+    BrokerImpactBenchmark benchmark = new BrokerImpactBenchmark(options);
+    StringBuilder results = new StringBuilder();
+    for (int i = 0; i < options.modes.size(); i++) {
+      Map<String, String> result = benchmark.runRound(i + 1, "on".equals(options.modes.get(i)));
+      print(result);
+      StringBuilder line = new StringBuilder("RESULT");
+      for (Map.Entry<String, String> entry : result.entrySet()) {
+        line.append(' ').append(entry.getKey()).append('=').append(entry.getValue());
+      }
+      results.append(line).append(System.lineSeparator());
+    }
+    System.out.println();
+    System.out.print(results);
+    System.exit(0);
+  }
+
+  Map<String, String> runRound(int round, boolean agentEnabled) throws Exception {
+    EmbeddedZookeeper zookeeper = new EmbeddedZookeeper();
+    SupportedServerStartable broker = null;
+    try {
+      int port = freePort();
+      broker = new SupportedServerStartable(brokerConfig(zookeeper.port(), port, agentEnabled));
+      broker.startup();
+      String bootstrapServers = "localhost:" + port;
+
+      LatencyRecorder latencies = new LatencyRecorder();
+      AtomicLong errors = new AtomicLong();
+      AtomicLong consumed = new AtomicLong();
+      try (KafkaProducer<byte[], byte[]> producer = createProducer(bootstrapServers);
+           KafkaConsumer<byte[], byte[]> consumer = createConsumer(bootstrapServers)) {
+        Thread fetcher = startFetcher(consumer, consumed);
+        try {
+          produce(producer, TimeUnit.SECONDS.toNanos(options.warmupSec), latencies, errors);
+          latencies.reset();
+          errors.set(0);
+          long consumedBefore = consumed.get();
+          long cyclesBefore = agentCycles();
+          GcTotals gcBefore = GcTotals.now();
+
+          long startNanos = System.nanoTime();
+          long sent = produce(producer, TimeUnit.SECONDS.toNanos(options.durationSec), latencies,
+                              errors);
+          producer.flush();
+          double seconds = (System.nanoTime() - startNanos) / 1e9;
+
+          GcTotals gc = GcTotals.now().minus(gcBefore);
+          Map<String, String> result = new LinkedHashMap<>();
+          result.put("round", Integer.toString(round));
+          result.put("agent", agentEnabled ? "on" : "off");
+          result.put("rate", Integer.toString(options.rate));
+          result.put("record_bytes", Integer.toString(options.recordBytes));
+          result.put("sent_per_sec", format(sent / seconds));
+          result.put("consumed_per_sec", format((consumed.get() - consumedBefore) / seconds));
+          result.put("produce_errors", Long.toString(errors.get()));
+          result.put("produce_p50_ms", format(latencies.percentileMs(50)));
+          result.put("produce_p99_ms", format(latencies.percentileMs(99)));
+          result.put("produce_p999_ms", format(latencies.percentileMs(99.9)));
+          result.put("produce_max_ms", format(latencies.percentileMs(100)));
+          result.put("gc_count", Long.toString(gc.count));
+          result.put("gc_time_ms", Long.toString(gc.timeMs));
+          result.put("agent_cycles", Long.toString(agentCycles() - cyclesBefore));
+          return result;
+        } finally {
+          consumer.wakeup();
+          fetcher.join(TimeUnit.SECONDS.toMillis(30));
+        }
+      }
+    } finally {
+      if (broker != null) {
+        broker.shutdown();
+        broker.awaitShutdown();
+      }
+      zookeeper.shutdown();
+    }
+  }
+
+  /**
+   * Sends records at the configured rate until the given time has passed.
+   *
+   * @return The number of records sent.
+   */
+  private long produce(
+      KafkaProducer<byte[], byte[]> producer,
+      long durationNanos,
+      final LatencyRecorder latencies,
+      final AtomicLong errors
+  ) throws InterruptedException {
+    long periodNanos = TimeUnit.SECONDS.toNanos(1) / options.rate;
+    long startNanos = System.nanoTime();
+    long sent = 0;
+    while (true) {
+      final long dueNanos = startNanos + sent * periodNanos;
+      if (dueNanos - startNanos >= durationNanos) {
+        return sent;
+      }
+      long waitNanos = dueNanos - System.nanoTime();
+      if (waitNanos > 0) {
+        TimeUnit.NANOSECONDS.sleep(waitNanos);
+      }
+      producer.send(new ProducerRecord<byte[], byte[]>(TOPIC, value), (metadata, exception) -> {
+        if (exception != null) {
+          errors.incrementAndGet();
+        } else {
+          latencies.record(System.nanoTime() - dueNanos);
+        }
+      });
+      sent++;
+    }
+  }
+
+  private static Thread startFetcher(
+      final KafkaConsumer<byte[], byte[]> consumer,
+      final AtomicLong consumed
+  ) {
+    consumer.subscribe(Collections.singleton(TOPIC));
+    Thread fetcher = new Thread(() -> {
+      try {
+        while (true) {
+          ConsumerRecords<byte[], byte[]> records = consumer.poll(Duration.ofMillis(100));
+          consumed.addAndGet(records.count());
+        }
+      } catch (WakeupException e) {
+        // Stopped by the benchmark.
+      }
+    }, "BrokerImpactBenchmarkFetcher");
+    fetcher.setDaemon(true);
+    fetcher.start();
+    return fetcher;
+  }
+
+  private Properties brokerConfig(int zookeeperPort, int port, boolean agentEnabled) {
+    Properties props = new Properties();
+    props.setProperty(KafkaConfig$.MODULE$.BrokerIdProp(), "0");
+    props.setProperty(KafkaConfig$.MODULE$.ZkConnectProp(), "localhost:" + zookeeperPort);
+    props.setProperty(KafkaConfig$.MODULE$.ListenersProp(), "PLAINTEXT://localhost:" + port);
+    props.setProperty(KafkaConfig$.MODULE$.LogDirProp(), TestUtils.tempDir().getAbsolutePath());
+    props.setProperty(KafkaConfig$.MODULE$.OffsetsTopicReplicationFactorProp(), "1");
+    props.setProperty(KafkaConfig$.MODULE$.GroupInitialRebalanceDelayMsProp(), "0");
+    props.setProperty(KafkaSupportConfig.CONFLUENT_SUPPORT_METRICS_ENABLE_CONFIG,
+                      Boolean.toString(agentEnabled));
+    props.setProperty(KafkaSupportConfig.CONFLUENT_SUPPORT_CUSTOMER_ID_CONFIG, "anonymous");
+    props.setProperty(KafkaSupportConfig.CONFLUENT_SUPPORT_METRICS_TOPIC_CONFIG, METRICS_TOPIC);
+    props.setProperty(KafkaSupportConfig.CONFLUENT_SUPPORT_METRICS_ENDPOINT_INSECURE_ENABLE_CONFIG,
+                      "false");
+    props.setProperty(KafkaSupportConfig.CONFLUENT_SUPPORT_METRICS_ENDPOINT_SECURE_ENABLE_CONFIG,
+                      "false");
+    // The report interval is configured in hours; the adaptive schedule, with its floor and
+    // ceiling pinned to the same value, reports at a fixed interval of milliseconds instead.
+    String intervalMs = Long.toString(options.reportIntervalMs);
+    props.setProperty(KafkaSupportConfig.CONFLUENT_SUPPORT_METRICS_ADAPTIVE_SCHEDULE_ENABLE_CONFIG,
+                      "true");
+    props.setProperty(
+        KafkaSupportConfig.CONFLUENT_SUPPORT_METRICS_ADAPTIVE_SCHEDULE_FLOOR_MS_CONFIG,
+        intervalMs
+    );
+    props.setProperty(
+        KafkaSupportConfig.CONFLUENT_SUPPORT_METRICS_ADAPTIVE_SCHEDULE_CEILING_MS_CONFIG,
+        intervalMs
+    );
+    return props;
+  }
+
+  private static KafkaProducer<byte[], byte[]> createProducer(String bootstrapServers) {
+    Properties props = new Properties();
+    props.put(ProducerConfig.BOOTSTRAP_SERVERS_CONFIG, bootstrapServers);
+    props.put(ProducerConfig.ACKS_CONFIG, "all");
+    props.put(ProducerConfig.LINGER_MS_CONFIG, 0);
+    props.put(ProducerConfig.KEY_SERIALIZER_CLASS_CONFIG, ByteArraySerializer.class.getName());
+    props.put(ProducerConfig.VALUE_SERIALIZER_CLASS_CONFIG, ByteArraySerializer.class.getName());
+    return new KafkaProducer<>(props);
+  }
+
+  private static KafkaConsumer<byte[], byte[]> createConsumer(String bootstrapServers) {
+    Properties props = new Properties();
+    props.put(ConsumerConfig.BOOTSTRAP_SERVERS_CONFIG, bootstrapServers);
+    props.put(ConsumerConfig.GROUP_ID_CONFIG, "broker-impact-benchmark");
+    props.put(ConsumerConfig.AUTO_OFFSET_RESET_CONFIG, "earliest");
+    props.put(ConsumerConfig.KEY_DESERIALIZER_CLASS_CONFIG, ByteArrayDeserializer.class.getName());
+    props.put(ConsumerConfig.VALUE_DESERIALIZER_CLASS_CONFIG,
+              ByteArrayDeserializer.class.getName());
+    return new KafkaConsumer<>(props);
+  }
+
+  /**
+   * @return The number of cycles the agent of the running broker completed, or 0 if the agent is
+   *     disabled.
+   */
+  private static long agentCycles() throws Exception {
+    MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+    ObjectName name = new ObjectName(AgentMetrics.JMX_NAME);
+    if (!server.isRegistered(name)) {
+      return 0;
+    }
+    return (Long) server.getAttribute(name, "CycleCount");
+  }
+
+  private static int freePort() throws IOException {
+    try (ServerSocket socket = new ServerSocket(0)) {
+      return socket.getLocalPort();
+    }
+  }
+
+  private static void print(Map<String, String> result) {
+    System.out.println();
+    System.out.printf(Locale.ROOT, "Round %s, agent %s%n", result.get("round"),
+                      result.get("agent"));
+    for (Map.Entry<String, String> entry : result.entrySet()) {
+      System.out.printf(Locale.ROOT, "  %-20s %s%n", entry.getKey(), entry.getValue());
+    }
+  }
+
+  private static String format(double value) {
+    return String.format(Locale.ROOT, "%.3f", value);
+  }
+
+  private static class GcTotals {
+
+    long count;
+    long timeMs;
+
+    static GcTotals now() {
+      GcTotals totals = new GcTotals();
+      for (GarbageCollectorMXBean gc : ManagementFactory.getGarbageCollectorMXBeans()) {
+        totals.count += Math.max(0, gc.getCollectionCount());
+        totals.timeMs += Math.max(0, gc.getCollectionTime());
+      }
+      return totals;
+    }
+
+    GcTotals minus(GcTotals other) {
+      GcTotals delta = new GcTotals();
+      delta.count = count - other.count;
+      delta.timeMs = timeMs - other.timeMs;
+      return delta;
+    }
+  }
+
+  static class Options {
+
+    List<String> modes = Arrays.asList("off", "on");
+    int rate = 5000;
+    int recordBytes = 1024;
+    long warmupSec = 20;
+    long durationSec = 60;
+    long reportIntervalMs = 1000;
+    long seed = 42;
+
+    static Options parse(String[] args) {
+      Options options = new Options();
+      for (int i = 0; i < args.length; i += 2) {
+        if (i + 1 >= args.length) {
+          throw new IllegalArgumentException("Missing value of " + args[i]);
+        }
+        String value = args[i + 1];
+        switch (args[i]) {
+          case "--modes":
+            options.modes = Arrays.asList(value.split(","));
+            break;
+          case "--rate":
+            options.rate = Integer.parseInt(value);
+            break;
+          case "--record-bytes":
+            options.recordBytes = Integer.parseInt(value);
+            break;
+          case "--warmup-sec":
+            options.warmupSec = Long.parseLong(value);
+            break;
+          case "--duration-sec":
+            options.durationSec = Long.parseLong(value);
+            break;
+          case "--report-interval-ms":
+            options.reportIntervalMs = Long.parseLong(value);
+            break;
+          case "--seed":
+            options.seed = Long.parseLong(value);
+            break;
+          default:
+            throw new IllegalArgumentException("Unknown option " + args[i]);
+        }
+      }
+      for (String mode : options.modes) {
+        if (!"on".equals(mode) && !"off".equals(mode)) {
+          throw new IllegalArgumentException("--modes must be a list of 'on' and 'off'");
+        }
+      }
+      if (options.rate <= 0 || options.recordBytes < 0 || options.reportIntervalMs <= 0) {
+        throw new IllegalArgumentException("--rate and --report-interval-ms must be positive");
+      }
+      return options;
+    }
+  }
+
+}
@@ -0,0 +1,121 @@
+/**
+ * Copyright 2018 Confluent Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package io.confluent.support.metrics.benchmarks;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.TimeUnit;
+
+import io.confluent.support.metrics.collectors.BasicCollector;
+import io.confluent.support.metrics.common.Uuid;
+import io.confluent.support.metrics.common.time.TimeUtils;
+import io.confluent.support.metrics.serde.AvroSerializer;
+import io.confluent.support.metrics.tools.BundleCodec;
+import io.confluent.support.metrics.tools.BundleOptions;
+import io.confluent.support.metrics.tools.BundleWriter;
+import kafka.server.KafkaServer;
+
+/**
+ * Time to write a support metrics bundle of the same metrics records with each codec.  The size of
+ * the bundle, which does not vary between iterations, is printed once per codec when the benchmark
+ * starts.
+ *
+ * <p>The records are what a fleet of brokers reports: basic records of different brokers, and log
+ * directory records of up to 20 directories.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(2)
+public class BundleCodecBenchmark {
+
+  private static final int BROKERS = 500;
+  private static final int MAX_LOG_DIRS = 20;
+
+  @Param({"zip", "zip-parallel", "zip-stored", "snappy", "zstd"})
+  public String codec;
+
+  private final List<byte[]> payloads = new ArrayList<>();
+  private BundleOptions options;
+  private File dir;
+  private File outFile;
+
+  @Setup
+  public void setUp() throws IOException {
+    KafkaServer server = BenchmarkFixtures.server();
+    AvroSerializer serializer = new AvroSerializer();
+    for (int i = 0; i < BROKERS; i++) {
+      BasicCollector collector = new BasicCollector(server, new TimeUtils(), new Uuid());
+      payloads.add(serializer.serialize(collector.collectMetrics()));
+      payloads.add(serializer.serialize(BenchmarkFixtures.logDirsRecord(1 + i % MAX_LOG_DIRS)));
+    }
+
+    options = new BundleOptions();
+    if ("zip-parallel".equals(codec)) {
+      options.compressionThreads(Runtime.getRuntime().availableProcessors());
+    } else if ("zip-stored".equals(codec)) {
+      options.storeEntries(true);
+    } else {
+      options.codec(BundleCodec.forName(codec));
+    }
+    dir = Files.createTempDirectory("bundle-codec-benchmark").toFile();
+    outFile = new File(dir, "bundle" + options.codec().extension());
+
+    long rawBytes = 0;
+    for (byte[] payload : payloads) {
+      rawBytes += payload.length;
+    }
+    writeBundle();
+    System.out.printf(Locale.ROOT, "%n%s: %d records, %d bytes, bundle of %d bytes (%.1f%%)%n",
+                      codec, payloads.size(), rawBytes, outFile.length(),
+                      100.0 * outFile.length() / rawBytes);
+  }
+
+  @TearDown
+  public void tearDown() {
+    outFile.delete();
+    dir.delete();
+  }
+
+  @Benchmark
+  public int writeBundle() throws IOException {
+    try (BundleWriter bundle = new BundleWriter(outFile, "bundle", options)) {
+      for (byte[] payload : payloads) {
+        bundle.add(payload);
+      }
+      return bundle.numEntries();
+    }
+  }
+
+}
@@ -0,0 +1,59 @@
+/**
+ * Copyright 2018 Confluent Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package io.confluent.support.metrics.benchmarks;
+
+import org.apache.avro.generic.GenericContainer;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+import io.confluent.support.metrics.collectors.BasicCollector;
+import io.confluent.support.metrics.common.Uuid;
+import io.confluent.support.metrics.common.time.TimeUtils;
+
+/**
+ * Cost of collecting the basic metrics record, which every broker with Proactive Support enabled
+ * pays once per report interval.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(2)
+public class CollectorBenchmark {
+
+  private BasicCollector basicCollector;
+
+  @Setup
+  public void setUp() {
+    basicCollector = new BasicCollector(BenchmarkFixtures.server(), new TimeUtils(), new Uuid());
+  }
+
+  @Benchmark
+  public GenericContainer basicCollectMetrics() {
+    return basicCollector.collectMetrics();
+  }
+
+}
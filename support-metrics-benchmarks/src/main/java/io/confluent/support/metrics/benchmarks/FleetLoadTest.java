@@ -0,0 +1,362 @@
+/**
+ * Copyright 2018 Confluent Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package io.confluent.support.metrics.benchmarks;
+
+import org.apache.kafka.clients.consumer.KafkaConsumer;
+import org.apache.kafka.common.TopicPartition;
+
+import java.io.Closeable;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryMXBean;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+import io.confluent.support.metrics.MetricsPipeline;
+import io.confluent.support.metrics.agent.AgentMetrics;
+import io.confluent.support.metrics.agent.ResourceGovernor;
+import io.confluent.support.metrics.collectors.BasicCollector;
+import io.confluent.support.metrics.common.Uuid;
+import io.confluent.support.metrics.common.kafka.EmbeddedKafkaCluster;
+import io.confluent.support.metrics.common.kafka.KafkaUtilities;
+import io.confluent.support.metrics.common.time.TimeUtils;
+import io.confluent.support.metrics.serde.AvroSerializer;
+import io.confluent.support.metrics.sinks.ConfluentSink;
+import io.confluent.support.metrics.sinks.KafkaTopicSink;
+import io.confluent.support.metrics.sinks.MetricsSink;
+import io.confluent.support.metrics.tools.KafkaMetricsToFile;
+import io.confluent.support.metrics.tools.KafkaServerZkClientProvider;
+import kafka.server.KafkaServer;
+
+/**
+ * Runs a fleet of simulated brokers in one JVM, each with its own basic collector and report
+ * pipeline, against a local stand-in for the ingestion service and the metrics topic of an
+ * embedded Kafka cluster.
+ *
+ * <p>The report interval is compressed (one second by default instead of a day) so that a fleet of
+ * a few thousand brokers produces the submission rate of a much larger real fleet.  Every
+ * simulated broker first submits at a random offset within the spread, then once per interval.
+ * Offsets come from a seeded random generator, so runs with the same options submit the same
+ * schedule and can be compared across releases.
+ *
+ * <p>Reports, for the measurement period after the warm-up: submissions per second, submission
+ * latency percentiles, how late submissions started compared to their schedule, CPU time and
+ * allocations of the submitting threads per submission, process CPU per simulated broker, and the
+ * heap retained per simulated broker.  The last line is a single {@code RESULT} line of key=value
+ * pairs for diffing runs.
+ *
+ * <p>Usage: {@code FleetLoadTest [--brokers 1000] [--interval-ms 1000] [--spread-ms 1000]
+ * [--warmup-sec 10] [--duration-sec 60] [--threads 32] [--sinks http,kafka] [--seed 42]
+ * [--ingest-threads 16] [--ingest-delay-ms 0]}
+ */
+public class FleetLoadTest {
+
+  private static final String TOPIC = "__confluent.support.metrics";
+
+  private final Options options;
+  private final LatencyRecorder latencies = new LatencyRecorder();
+  private final LatencyRecorder lags = new LatencyRecorder();
+  private final List<SimulatedBroker> brokers = new ArrayList<>();
+  private volatile boolean measuring = false;
+
+  FleetLoadTest(Options options) {
+    this.options = options;
+  }
+
+  public static void main(String[] args) throws Exception {
+    Options options = Options.parse(args);
+    new FleetLoadTest(options).run();
+    System.exit(0);
+  }
+
+  void run() throws Exception {
+    MemoryMXBean memory = ManagementFactory.getMemoryMXBean();
+    com.sun.management.OperatingSystemMXBean os =
+        (com.sun.management.OperatingSystemMXBean) ManagementFactory.getOperatingSystemMXBean();
+    IngestionEndpoint endpoint = null;
+    EmbeddedKafkaCluster cluster = null;
+    ScheduledExecutorService scheduler = null;
+    try {
+      KafkaServer server = BenchmarkFixtures.server();
+      if (options.sinks.contains("http")) {
+        endpoint = new IngestionEndpoint(options.ingestThreads, options.ingestDelayMs);
+      }
+      if (options.sinks.contains("kafka")) {
+        cluster = new EmbeddedKafkaCluster();
+        cluster.startCluster(1);
+        server = cluster.getBroker(0);
+      }
+
+      long baselineHeap = usedHeapAfterGc(memory);
+      for (int i = 0; i < options.brokers; i++) {
+        brokers.add(new SimulatedBroker(server, endpoint));
+      }
+
+      ScheduledThreadPoolExecutor executor = new ScheduledThreadPoolExecutor(options.threads);
+      executor.setExecuteExistingDelayedTasksAfterShutdownPolicy(false);
+      scheduler = executor;
+      Random random = new Random(options.seed);
+      long startNanos = System.nanoTime();
+      for (SimulatedBroker broker : brokers) {
+        long offsetMs = options.spreadMs > 0 ? (long) (random.nextDouble() * options.spreadMs) : 0;
+        broker.nextDueNanos = startNanos + TimeUnit.MILLISECONDS.toNanos(offsetMs);
+        scheduler.scheduleAtFixedRate(broker, offsetMs, options.intervalMs, TimeUnit.MILLISECONDS);
+      }
+
+      TimeUnit.SECONDS.sleep(options.warmupSec);
+      long retainedHeap = usedHeapAfterGc(memory) - baselineHeap;
+      latencies.reset();
+      lags.reset();
+      Totals before = totals(endpoint, cluster);
+      long cpuBefore = os.getProcessCpuTime();
+      long measureStart = System.nanoTime();
+      measuring = true;
+      TimeUnit.SECONDS.sleep(options.durationSec);
+      measuring = false;
+      long measureNanos = System.nanoTime() - measureStart;
+      long cpuNanos = os.getProcessCpuTime() - cpuBefore;
+      Totals after = totals(endpoint, cluster);
+
+      report(after.minus(before), measureNanos, cpuNanos, retainedHeap);
+    } finally {
+      if (scheduler != null) {
+        scheduler.shutdownNow();
+        scheduler.awaitTermination(30, TimeUnit.SECONDS);
+      }
+      for (SimulatedBroker broker : brokers) {
+        broker.close();
+      }
+      if (endpoint != null) {
+        endpoint.close();
+      }
+      if (cluster != null) {
+        cluster.stopCluster();
+      }
+    }
+  }
+
+  private void report(Totals totals, long measureNanos, long processCpuNanos, long retainedHeap) {
+    double seconds = measureNanos / 1e9;
+    int n = options.brokers;
+    long submissions = totals.submissions;
+    Map<String, String> result = new LinkedHashMap<>();
+    result.put("brokers", Integer.toString(n));
+    result.put("interval_ms", Long.toString(options.intervalMs));
+    result.put("sinks", String.join("+", options.sinks));
+    result.put("seed", Long.toString(options.seed));
+    result.put("submissions_per_sec", format(submissions / seconds));
+    result.put("http_uploads_per_sec", format(totals.httpUploads / seconds));
+    result.put("kafka_records_per_sec", format(totals.kafkaRecords / seconds));
+    result.put("latency_p50_ms", format(latencies.percentileMs(50)));
+    result.put("latency_p99_ms", format(latencies.percentileMs(99)));
+    result.put("latency_p999_ms", format(latencies.percentileMs(99.9)));
+    result.put("latency_max_ms", format(latencies.percentileMs(100)));
+    result.put("lag_p99_ms", format(lags.percentileMs(99)));
+    result.put("submit_cpu_us_per_submission",
+               format(submissions > 0 ? totals.cpuMicros / (double) submissions : 0));
+    result.put("submit_alloc_bytes_per_submission",
+               format(submissions > 0 ? totals.allocatedBytes / (double) submissions : 0));
+    result.put("process_cpu_ms_per_broker_per_sec", format(processCpuNanos / 1e6 / n / seconds));
+    result.put("retained_heap_bytes_per_broker", Long.toString(retainedHeap / n));
+
+    System.out.println();
+    System.out.printf(Locale.ROOT, "Fleet load test: %d brokers, interval %d ms, spread %d ms, "
+                                   + "%d threads, sinks %s, seed %d, measured %.1f s%n",
+                      n, options.intervalMs, options.spreadMs, options.threads, options.sinks,
+                      options.seed, seconds);
+    for (Map.Entry<String, String> entry : result.entrySet()) {
+      System.out.printf(Locale.ROOT, "  %-36s %s%n", entry.getKey(), entry.getValue());
+    }
+    StringBuilder line = new StringBuilder("RESULT");
+    for (Map.Entry<String, String> entry : result.entrySet()) {
+      line.append(' ').append(entry.getKey()).append('=').append(entry.getValue());
+    }
+    System.out.println(line);
+  }
+
+  private Totals totals(IngestionEndpoint endpoint, EmbeddedKafkaCluster cluster) {
+    Totals totals = new Totals();
+    for (SimulatedBroker broker : brokers) {
+      totals.submissions += broker.agentMetrics.getCycleCount();
+      totals.cpuMicros += broker.agentMetrics.getTotalCpuTimeMicros();
+      totals.allocatedBytes += broker.agentMetrics.getTotalAllocatedBytes();
+    }
+    totals.httpUploads = endpoint != null ? endpoint.uploads() : 0;
+    totals.kafkaRecords = cluster != null ? endOffset(cluster) : 0;
+    return totals;
+  }
+
+  private static long endOffset(EmbeddedKafkaCluster cluster) {
+    KafkaServer broker = cluster.getBroker(0);
+    String bootstrapServer =
+        new KafkaUtilities().getBootstrapServers(broker.zkClient(), 1).get(0);
+    try (KafkaConsumer<byte[], byte[]> consumer =
+             new KafkaMetricsToFile(bootstrapServer).createConsumer()) {
+      TopicPartition partition = new TopicPartition(TOPIC, 0);
+      Long offset = consumer.endOffsets(Collections.singleton(partition)).get(partition);
+      return offset != null ? offset : 0;
+    } catch (RuntimeException e) {
+      // The topic does not exist before the first submission.
+      return 0;
+    }
+  }
+
+  private static long usedHeapAfterGc(MemoryMXBean memory) {
+    for (int i = 0; i < 3; i++) {
+      System.gc();
+    }
+    return memory.getHeapMemoryUsage().getUsed();
+  }
+
+  private static String format(double value) {
+    return String.format(Locale.ROOT, "%.3f", value);
+  }
+
+  /**
+   * One simulated broker: a basic collector and a report pipeline with its own sinks.
+   */
+  private class SimulatedBroker implements Runnable, Closeable {
+
+    private final AgentMetrics agentMetrics = new AgentMetrics();
+    private final MetricsPipeline pipeline;
+    private long nextDueNanos;
+
+    SimulatedBroker(KafkaServer server, IngestionEndpoint endpoint) {
+      List<MetricsSink> sinks = new ArrayList<>();
+      if (endpoint != null) {
+        sinks.add(new ConfluentSink("anonymous", endpoint.url(), "", ""));
+      }
+      if (options.sinks.contains("kafka")) {
+        sinks.add(new KafkaTopicSink(new KafkaServerZkClientProvider(server),
+                                     new KafkaUtilities(), TOPIC));
+      }
+      pipeline = new MetricsPipeline(new BasicCollector(server, new TimeUtils(), new Uuid()),
+                                     new AvroSerializer(), sinks, agentMetrics,
+                                     ResourceGovernor.unlimited());
+    }
+
+    @Override
+    public void run() {
+      long startNanos = System.nanoTime();
+      long lagNanos = Math.max(0, startNanos - nextDueNanos);
+      nextDueNanos += TimeUnit.MILLISECONDS.toNanos(options.intervalMs);
+      pipeline.submitMetrics();
+      if (measuring) {
+        latencies.record(System.nanoTime() - startNanos);
+        lags.record(lagNanos);
+      }
+    }
+
+    @Override
+    public void close() {
+      pipeline.close();
+    }
+  }
+
+  private static class Totals {
+
+    long submissions;
+    long cpuMicros;
+    long allocatedBytes;
+    long httpUploads;
+    long kafkaRecords;
+
+    Totals minus(Totals other) {
+      Totals delta = new Totals();
+      delta.submissions = submissions - other.submissions;
+      delta.cpuMicros = cpuMicros - other.cpuMicros;
+      delta.allocatedBytes = allocatedBytes - other.allocatedBytes;
+      delta.httpUploads = httpUploads - other.httpUploads;
+      delta.kafkaRecords = kafkaRecords - other.kafkaRecords;
+      return delta;
+    }
+  }
+
+  static class Options {
+
+    int brokers = 1000;
+    long intervalMs = 1000;
+    long spreadMs = -1;
+    long warmupSec = 10;
+    long durationSec = 60;
+    int threads = 32;
+    List<String> sinks = Arrays.asList("http", "kafka");
+    long seed = 42;
+    int ingestThreads = 16;
+    long ingestDelayMs = 0;
+
+    static Options parse(String[] args) {
+      Options options = new Options();
+      for (int i = 0; i < args.length; i += 2) {
+        if (i + 1 >= args.length) {
+          throw new IllegalArgumentException("Missing value of " + args[i]);
+        }
+        String value = args[i + 1];
+        switch (args[i]) {
+          case "--brokers":
+            options.brokers = Integer.parseInt(value);
+            break;
+          case "--interval-ms":
+            options.intervalMs = Long.parseLong(value);
+            break;
+          case "--spread-ms":
+            options.spreadMs = Long.parseLong(value);
+            break;
+          case "--warmup-sec":
+            options.warmupSec = Long.parseLong(value);
+            break;
+          case "--duration-sec":
+            options.durationSec = Long.parseLong(value);
+            break;
+          case "--threads":
+            options.threads = Integer.parseInt(value);
+            break;
+          case "--sinks":
+            options.sinks = Arrays.asList(value.split(","));
+            break;
+          case "--seed":
+            options.seed = Long.parseLong(value);
+            break;
+          case "--ingest-threads":
+            options.ingestThreads = Integer.parseInt(value);
+            break;
+          case "--ingest-delay-ms":
+            options.ingestDelayMs = Long.parseLong(value);
+            break;
+          default:
+            throw new IllegalArgumentException("Unknown option " + args[i]);
+        }
+      }
+      if (options.spreadMs < 0) {
+        // By default, submissions are spread evenly over the interval.
+        options.spreadMs = options.intervalMs;
+      }
+      if (options.brokers <= 0 || options.intervalMs <= 0 || options.threads <= 0) {
+        throw new IllegalArgumentException("--brokers, --interval-ms and --threads must be "
+                                           + "positive");
+      }
+      return options;
+    }
+  }
+
+}
@@ -0,0 +1,88 @@
+/**
+ * Copyright 2018 Confluent Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package io.confluent.support.metrics.benchmarks;
+
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.InetSocketAddress;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A local stand-in for Confluent's metrics ingestion service: accepts every upload, optionally
+ * after a fixed delay, and counts uploads and bytes.
+ */
+class IngestionEndpoint implements Closeable {
+
+  private final HttpServer server;
+  private final ExecutorService executor;
+  private final AtomicLong uploads = new AtomicLong();
+  private final AtomicLong bytes = new AtomicLong();
+
+  /**
+   * @param threads Number of threads that handle uploads.
+   * @param delayMs Time every upload takes on the server side.
+   */
+  IngestionEndpoint(int threads, final long delayMs) throws IOException {
+    server = HttpServer.create(new InetSocketAddress("localhost", 0), 1024);
+    executor = Executors.newFixedThreadPool(threads);
+    server.setExecutor(executor);
+    server.createContext("/", exchange -> {
+      long received = 0;
+      try (InputStream body = exchange.getRequestBody()) {
+        byte[] buffer = new byte[4096];
+        int read;
+        while ((read = body.read(buffer)) >= 0) {
+          received += read;
+        }
+      }
+      if (delayMs > 0) {
+        try {
+          Thread.sleep(delayMs);
+        } catch (InterruptedException e) {
+          Thread.currentThread().interrupt();
+        }
+      }
+      uploads.incrementAndGet();
+      bytes.addAndGet(received);
+      exchange.sendResponseHeaders(200, -1);
+      exchange.close();
+    });
+    server.start();
+  }
+
+  String url() {
+    return "http://localhost:" + server.getAddress().getPort() + "/";
+  }
+
+  long uploads() {
+    return uploads.get();
+  }
+
+  long bytes() {
+    return bytes.get();
+  }
+
+  @Override
+  public void close() {
+    server.stop(0);
+    executor.shutdownNow();
+  }
+
+}
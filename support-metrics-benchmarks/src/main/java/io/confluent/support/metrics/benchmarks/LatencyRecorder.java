@@ -0,0 +1,61 @@
+/**
+ * Copyright 2018 Confluent Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package io.confluent.support.metrics.benchmarks;
+
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Records latencies and reports their percentiles.  Keeps every sample, which is fine for the
+ * sample counts of a load test run.
+ *
+ * <p>This class is thread-safe.
+ */
+class LatencyRecorder {
+
+  private long[] samples = new long[1024];
+  private int count = 0;
+
+  synchronized void record(long nanos) {
+    if (count == samples.length) {
+      samples = Arrays.copyOf(samples, 2 * count);
+    }
+    samples[count++] = nanos;
+  }
+
+  synchronized int count() {
+    return count;
+  }
+
+  synchronized void reset() {
+    count = 0;
+  }
+
+  /**
+   * @param percentile Between 0 and 100.
+   * @return The percentile in milliseconds, or 0 if nothing was recorded.
+   */
+  synchronized double percentileMs(double percentile) {
+    if (count == 0) {
+      return 0;
+    }
+    long[] sorted = Arrays.copyOf(samples, count);
+    Arrays.sort(sorted);
+    int index = (int) Math.ceil(percentile / 100 * count) - 1;
+    long nanos = sorted[Math.max(0, Math.min(count - 1, index))];
+    return nanos / (double) TimeUnit.MILLISECONDS.toNanos(1);
+  }
+
+}
@@ -0,0 +1,166 @@
+/**
+ * Copyright 2018 Confluent Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package io.confluent.support.metrics.benchmarks;
+
+import com.sun.net.httpserver.HttpServer;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.InetSocketAddress;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Properties;
+import java.util.concurrent.TimeUnit;
+
+import io.confluent.support.metrics.MetricsPipeline;
+import io.confluent.support.metrics.agent.AgentMetrics;
+import io.confluent.support.metrics.agent.ResourceGovernor;
+import io.confluent.support.metrics.collectors.AgentCollectorProvider;
+import io.confluent.support.metrics.collectors.CollectorContext;
+import io.confluent.support.metrics.collectors.CollectorFactory;
+import io.confluent.support.metrics.collectors.CompositeCollector;
+import io.confluent.support.metrics.common.Collector;
+import io.confluent.support.metrics.common.CollectorType;
+import io.confluent.support.metrics.common.Uuid;
+import io.confluent.support.metrics.common.time.TimeUtils;
+import io.confluent.support.metrics.serde.AvroSerializer;
+import io.confluent.support.metrics.sinks.ConfluentSink;
+import io.confluent.support.metrics.sinks.EncodedMetrics;
+import io.confluent.support.metrics.sinks.MetricsSink;
+
+/**
+ * Cost of one full report cycle of the metrics reporter: collection, serialization and submission,
+ * against sinks on this host.
+ *
+ * <p>The {@code memory} sink only keeps the payload size, so it measures the agent alone.  The
+ * {@code http} sink is the Confluent sink, posting to an HTTP server in this JVM that accepts
+ * every upload, so it adds the cost of the HTTP client.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(2)
+public class ReporterCycleBenchmark {
+
+  @Param({"memory", "http"})
+  public String sink;
+
+  /**
+   * Whether the basic collector runs alone, or together with the agent collector and therefore
+   * in a composite collector.
+   */
+  @Param({"basic", "basic+agent"})
+  public String collectors;
+
+  private HttpServer httpServer;
+  private Collector collector;
+  private MetricsPipeline pipeline;
+  private MemorySink memorySink;
+
+  @Setup
+  public void setUp() throws IOException {
+    AgentMetrics agentMetrics = new AgentMetrics();
+    CollectorContext context = new CollectorContext(
+        new TimeUtils(), BenchmarkFixtures.server(), new Properties(), Runtime.getRuntime(),
+        new Uuid(), agentMetrics, ResourceGovernor.unlimited());
+    List<String> additionalCollectors = collectors.equals("basic")
+        ? Collections.<String>emptyList()
+        : Arrays.asList(AgentCollectorProvider.NAME);
+    collector = new CollectorFactory(CollectorType.BASIC, context, additionalCollectors,
+                                     CompositeCollector.DEFAULT_MAX_THREADS,
+                                     CompositeCollector.DEFAULT_TIMEOUT_MS).getCollector();
+
+    List<MetricsSink> sinks = new ArrayList<>();
+    if (sink.equals("http")) {
+      sinks.add(new ConfluentSink("anonymous", startHttpServer(), "", ""));
+    } else {
+      memorySink = new MemorySink();
+      sinks.add(memorySink);
+    }
+    pipeline = new MetricsPipeline(collector, new AvroSerializer(), sinks, agentMetrics,
+                                   ResourceGovernor.unlimited());
+  }
+
+  private String startHttpServer() throws IOException {
+    httpServer = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+    httpServer.createContext("/", exchange -> {
+      try (InputStream body = exchange.getRequestBody()) {
+        byte[] buffer = new byte[4096];
+        while (body.read(buffer) >= 0) {
+          // drain the upload
+        }
+      }
+      exchange.sendResponseHeaders(200, -1);
+      exchange.close();
+    });
+    httpServer.start();
+    return "http://localhost:" + httpServer.getAddress().getPort() + "/";
+  }
+
+  @TearDown
+  public void tearDown() throws IOException {
+    pipeline.close();
+    if (collector instanceof Closeable) {
+      ((Closeable) collector).close();
+    }
+    if (httpServer != null) {
+      httpServer.stop(0);
+    }
+  }
+
+  @Benchmark
+  public long reportCycle() {
+    pipeline.submitMetrics();
+    return memorySink != null ? memorySink.submittedBytes : 0;
+  }
+
+  private static class MemorySink implements MetricsSink {
+
+    private long submittedBytes;
+
+    @Override
+    public String name() {
+      return "memory";
+    }
+
+    @Override
+    public void submit(EncodedMetrics encodedMetrics) {
+      submittedBytes += encodedMetrics.value().length;
+    }
+
+    @Override
+    public void close() {
+    }
+  }
+
+}
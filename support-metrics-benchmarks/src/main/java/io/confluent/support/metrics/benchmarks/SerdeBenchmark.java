@@ -0,0 +1,99 @@
+/**
+ * Copyright 2018 Confluent Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package io.confluent.support.metrics.benchmarks;
+
+import org.apache.avro.Schema;
+import org.apache.avro.generic.GenericContainer;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import io.confluent.support.metrics.SupportKafkaMetricsLogDirs;
+import io.confluent.support.metrics.serde.AvroDeserializer;
+import io.confluent.support.metrics.serde.AvroSerializer;
+import io.confluent.support.metrics.serde.StringDictionary;
+
+/**
+ * Cost of {@link AvroSerializer#serialize} and of the three variants of
+ * {@link AvroDeserializer#deserialize}, for payloads from about 100 bytes to about 600 KB, with
+ * and without interning strings through a {@link StringDictionary}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(2)
+public class SerdeBenchmark {
+
+  /**
+   * Number of log directories in the record, which determines the payload size.
+   */
+  @Param({"1", "100", "10000"})
+  public int logDirs;
+
+  private final AvroSerializer serializer = new AvroSerializer();
+  private final AvroDeserializer deserializer = new AvroDeserializer();
+  // Not thread-safe, like the other benchmarks' state it assumes JMH's default of one thread.
+  private final AvroDeserializer interningDeserializer =
+      new AvroDeserializer(new StringDictionary(1 << 16));
+  private SupportKafkaMetricsLogDirs metricsRecord;
+  private Schema schema;
+  private byte[] payload;
+
+  @Setup
+  public void setUp() throws IOException {
+    metricsRecord = BenchmarkFixtures.logDirsRecord(logDirs);
+    schema = metricsRecord.getSchema();
+    payload = serializer.serialize(metricsRecord);
+  }
+
+  @Benchmark
+  public byte[] serialize() throws IOException {
+    return serializer.serialize(metricsRecord);
+  }
+
+  @Benchmark
+  public GenericContainer[] deserializeWithSchema() throws IOException {
+    return deserializer.deserialize(schema, payload);
+  }
+
+  @Benchmark
+  public GenericContainer[] deserializeWithEmbeddedSchema() throws IOException {
+    return deserializer.deserialize(payload);
+  }
+
+  @Benchmark
+  public GenericContainer[] deserializeWithEmbeddedSchemaInterning() throws IOException {
+    return interningDeserializer.deserialize(payload);
+  }
+
+  @Benchmark
+  public SupportKafkaMetricsLogDirs[] deserializeSpecific() throws IOException {
+    return deserializer.deserialize(SupportKafkaMetricsLogDirs.class, payload);
+  }
+
+}
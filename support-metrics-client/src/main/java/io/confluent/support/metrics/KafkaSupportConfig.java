@@ -17,8 +17,15 @@ package io.confluent.support.metrics;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.net.InetSocketAddress;
+import java.net.MalformedURLException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
 import java.util.Properties;
 
+import javax.management.remote.JMXServiceURL;
+
 /**
  * Configuration for the Confluent Support options.
  *
@@ -48,6 +55,123 @@ public class KafkaSupportConfig extends BaseSupportConfig {
   public static final String CONFLUENT_SUPPORT_METRICS_ENDPOINT_SECURE_TEST_DEFAULT =
       "https://support-metrics.confluent.io/test";
 
+  /**
+   * <code>confluent.support.metrics.collectors</code>: Comma-separated names of collectors to run
+   * in addition to the basic or full collector, e.g. <code>log.dirs</code>.  Collectors are
+   * discovered on the class path via
+   * {@link io.confluent.support.metrics.collectors.CollectorProvider}.
+   */
+  public static final String CONFLUENT_SUPPORT_METRICS_COLLECTORS_CONFIG =
+      "confluent.support.metrics.collectors";
+  public static final String CONFLUENT_SUPPORT_METRICS_COLLECTORS_DEFAULT = "";
+
+  /**
+   * <code>confluent.support.metrics.collector.threads</code>: Upper bound of collectors that run at
+   * the same time when additional collectors are configured.
+   */
+  public static final String CONFLUENT_SUPPORT_METRICS_COLLECTOR_THREADS_CONFIG =
+      "confluent.support.metrics.collector.threads";
+  public static final int CONFLUENT_SUPPORT_METRICS_COLLECTOR_THREADS_DEFAULT = 2;
+
+  /**
+   * <code>confluent.support.metrics.collector.timeout.ms</code>: Time budget of each collector per
+   * collection when additional collectors are configured.
+   */
+  public static final String CONFLUENT_SUPPORT_METRICS_COLLECTOR_TIMEOUT_MS_CONFIG =
+      "confluent.support.metrics.collector.timeout.ms";
+  public static final long CONFLUENT_SUPPORT_METRICS_COLLECTOR_TIMEOUT_MS_DEFAULT = 10 * 1000L;
+
+  /**
+   * <code>confluent.support.metrics.delta.keyframe.interval</code>: With a value of N greater than
+   * 1, only every N-th metrics record is submitted in full, and the records in between only hold
+   * the fields that changed since the previous record.
+   */
+  public static final String CONFLUENT_SUPPORT_METRICS_DELTA_KEYFRAME_INTERVAL_CONFIG =
+      "confluent.support.metrics.delta.keyframe.interval";
+  public static final int CONFLUENT_SUPPORT_METRICS_DELTA_KEYFRAME_INTERVAL_DEFAULT = 1;
+
+  /**
+   * <code>confluent.support.metrics.scrape.listener</code>: <code>host:port</code> of an HTTP
+   * endpoint that serves the most recently collected metrics record to local monitoring systems,
+   * e.g. <code>localhost:9404</code>.  Disabled if empty.
+   */
+  public static final String CONFLUENT_SUPPORT_METRICS_SCRAPE_LISTENER_CONFIG =
+      "confluent.support.metrics.scrape.listener";
+  public static final String CONFLUENT_SUPPORT_METRICS_SCRAPE_LISTENER_DEFAULT = "";
+
+  /**
+   * <code>confluent.support.metrics.adaptive.schedule.enable</code>: Whether to defer collections
+   * while the broker is saturated, see {@link io.confluent.support.metrics.agent.AdaptiveSchedule}.
+   */
+  public static final String CONFLUENT_SUPPORT_METRICS_ADAPTIVE_SCHEDULE_ENABLE_CONFIG =
+      "confluent.support.metrics.adaptive.schedule.enable";
+  public static final String CONFLUENT_SUPPORT_METRICS_ADAPTIVE_SCHEDULE_ENABLE_DEFAULT = "false";
+
+  /**
+   * <code>confluent.support.metrics.adaptive.schedule.floor.ms</code>: Minimum time between two
+   * collections when the adaptive schedule is enabled.  Defaults to one minute, or to the report
+   * interval if that is shorter.
+   */
+  public static final String CONFLUENT_SUPPORT_METRICS_ADAPTIVE_SCHEDULE_FLOOR_MS_CONFIG =
+      "confluent.support.metrics.adaptive.schedule.floor.ms";
+  public static final long CONFLUENT_SUPPORT_METRICS_ADAPTIVE_SCHEDULE_FLOOR_MS_DEFAULT =
+      60 * 1000L;
+
+  /**
+   * <code>confluent.support.metrics.adaptive.schedule.ceiling.ms</code>: Maximum time between two
+   * collections when the adaptive schedule is enabled.  Defaults to twice the report interval.
+   */
+  public static final String CONFLUENT_SUPPORT_METRICS_ADAPTIVE_SCHEDULE_CEILING_MS_CONFIG =
+      "confluent.support.metrics.adaptive.schedule.ceiling.ms";
+
+  /**
+   * <code>confluent.support.metrics.cpu.max.percent</code>: Maximum share of one core, in percent,
+   * that the metrics agent uses on average while it collects and submits metrics.
+   */
+  public static final String CONFLUENT_SUPPORT_METRICS_CPU_MAX_PERCENT_CONFIG =
+      "confluent.support.metrics.cpu.max.percent";
+  public static final int CONFLUENT_SUPPORT_METRICS_CPU_MAX_PERCENT_DEFAULT = 100;
+
+  /**
+   * <code>confluent.support.metrics.cpu.cycle.budget.ms</code>: CPU time after which collectors
+   * defer the rest of their work to the next cycle.  Unlimited if not set.
+   */
+  public static final String CONFLUENT_SUPPORT_METRICS_CPU_CYCLE_BUDGET_MS_CONFIG =
+      "confluent.support.metrics.cpu.cycle.budget.ms";
+
+  /**
+   * <code>confluent.support.metrics.egress.max.bytes.per.sec</code>: Bandwidth cap of the uploads
+   * of the metrics agent.  Unlimited if not set.
+   */
+  public static final String CONFLUENT_SUPPORT_METRICS_EGRESS_MAX_BYTES_PER_SEC_CONFIG =
+      "confluent.support.metrics.egress.max.bytes.per.sec";
+
+  /**
+   * <code>confluent.support.metrics.memory.max.bytes</code>: Upper bound of the heap the metrics
+   * agent retains, see {@link io.confluent.support.metrics.agent.MemoryBudget}.  Unlimited if not
+   * set.
+   */
+  public static final String CONFLUENT_SUPPORT_METRICS_MEMORY_MAX_BYTES_CONFIG =
+      "confluent.support.metrics.memory.max.bytes";
+
+  /**
+   * <code>confluent.support.metrics.latest.topic</code>: Compacted topic that retains only the
+   * latest metrics record of each type and broker process, e.g.
+   * <code>__confluent.support.metrics.latest</code>.  Disabled if empty.
+   */
+  public static final String CONFLUENT_SUPPORT_METRICS_LATEST_TOPIC_CONFIG =
+      "confluent.support.metrics.latest.topic";
+  public static final String CONFLUENT_SUPPORT_METRICS_LATEST_TOPIC_DEFAULT = "";
+
+  /**
+   * <code>confluent.support.metrics.sidecar.jmx.url</code>: JMX service URL of the broker that a
+   * {@link SupportedKafkaSidecar} reports on, e.g.
+   * <code>service:jmx:rmi:///jndi/rmi://localhost:9999/jmxrmi</code>.  Only read by the sidecar.
+   */
+  public static final String CONFLUENT_SUPPORT_METRICS_SIDECAR_JMX_URL_CONFIG =
+      "confluent.support.metrics.sidecar.jmx.url";
+  public static final String CONFLUENT_SUPPORT_METRICS_SIDECAR_JMX_URL_DEFAULT = "";
+
   public KafkaSupportConfig(Properties originals) {
     super(setupProperties(originals));
   }
@@ -79,6 +203,203 @@ public class KafkaSupportConfig extends BaseSupportConfig {
     }
   }
 
+  /**
+   * @return The names of the collectors to run in addition to the basic or full collector.
+   */
+  public List<String> getCollectorNames() {
+    String value = getProperties().getProperty(
+        CONFLUENT_SUPPORT_METRICS_COLLECTORS_CONFIG,
+        CONFLUENT_SUPPORT_METRICS_COLLECTORS_DEFAULT
+    );
+    List<String> names = new ArrayList<>();
+    for (String name : value.split(",")) {
+      if (!name.trim().isEmpty()) {
+        names.add(name.trim());
+      }
+    }
+    return Collections.unmodifiableList(names);
+  }
+
+  public int getCollectorThreads() {
+    return (int) getPositiveLong(
+        CONFLUENT_SUPPORT_METRICS_COLLECTOR_THREADS_CONFIG,
+        CONFLUENT_SUPPORT_METRICS_COLLECTOR_THREADS_DEFAULT,
+        Integer.MAX_VALUE
+    );
+  }
+
+  public long getCollectorTimeoutMs() {
+    return getPositiveLong(
+        CONFLUENT_SUPPORT_METRICS_COLLECTOR_TIMEOUT_MS_CONFIG,
+        CONFLUENT_SUPPORT_METRICS_COLLECTOR_TIMEOUT_MS_DEFAULT,
+        Long.MAX_VALUE
+    );
+  }
+
+  public int getDeltaKeyframeInterval() {
+    return (int) getPositiveLong(
+        CONFLUENT_SUPPORT_METRICS_DELTA_KEYFRAME_INTERVAL_CONFIG,
+        CONFLUENT_SUPPORT_METRICS_DELTA_KEYFRAME_INTERVAL_DEFAULT,
+        Integer.MAX_VALUE
+    );
+  }
+
+  /**
+   * @return The compacted companion topic, or an empty string if it is disabled.
+   */
+  public String getLatestTopic() {
+    return getProperties().getProperty(
+        CONFLUENT_SUPPORT_METRICS_LATEST_TOPIC_CONFIG,
+        CONFLUENT_SUPPORT_METRICS_LATEST_TOPIC_DEFAULT
+    ).trim();
+  }
+
+  public int getMaxCorePercent() {
+    return (int) getPositiveLong(
+        CONFLUENT_SUPPORT_METRICS_CPU_MAX_PERCENT_CONFIG,
+        CONFLUENT_SUPPORT_METRICS_CPU_MAX_PERCENT_DEFAULT,
+        100
+    );
+  }
+
+  /**
+   * @return The CPU time budget per cycle, or Long.MAX_VALUE if unlimited.
+   */
+  public long getCycleCpuBudgetMs() {
+    return getPositiveLong(
+        CONFLUENT_SUPPORT_METRICS_CPU_CYCLE_BUDGET_MS_CONFIG,
+        Long.MAX_VALUE,
+        Long.MAX_VALUE
+    );
+  }
+
+  /**
+   * @return The egress bandwidth cap, or Long.MAX_VALUE if unlimited.
+   */
+  public long getEgressMaxBytesPerSec() {
+    return getPositiveLong(
+        CONFLUENT_SUPPORT_METRICS_EGRESS_MAX_BYTES_PER_SEC_CONFIG,
+        Long.MAX_VALUE,
+        Long.MAX_VALUE
+    );
+  }
+
+  /**
+   * @return The memory budget of the agent, or Long.MAX_VALUE if unlimited.
+   */
+  public long getMemoryMaxBytes() {
+    return getPositiveLong(
+        CONFLUENT_SUPPORT_METRICS_MEMORY_MAX_BYTES_CONFIG,
+        Long.MAX_VALUE,
+        Long.MAX_VALUE
+    );
+  }
+
+  public boolean isAdaptiveScheduleEnabled() {
+    return Boolean.parseBoolean(getProperties().getProperty(
+        CONFLUENT_SUPPORT_METRICS_ADAPTIVE_SCHEDULE_ENABLE_CONFIG,
+        CONFLUENT_SUPPORT_METRICS_ADAPTIVE_SCHEDULE_ENABLE_DEFAULT
+    ).trim());
+  }
+
+  /**
+   * @return The floor, which by default does not clamp a report interval shorter than one minute.
+   */
+  public long getAdaptiveScheduleFloorMs() {
+    return getPositiveLong(
+        CONFLUENT_SUPPORT_METRICS_ADAPTIVE_SCHEDULE_FLOOR_MS_CONFIG,
+        Math.max(1, Math.min(CONFLUENT_SUPPORT_METRICS_ADAPTIVE_SCHEDULE_FLOOR_MS_DEFAULT,
+                             getReportIntervalMs())),
+        Long.MAX_VALUE
+    );
+  }
+
+  /**
+   * @return The ceiling, which is never below the floor.
+   */
+  public long getAdaptiveScheduleCeilingMs() {
+    long reportIntervalMs = getReportIntervalMs();
+    long defaultCeilingMs = reportIntervalMs > Long.MAX_VALUE / 2
+                            ? Long.MAX_VALUE : 2 * reportIntervalMs;
+    long ceilingMs = getPositiveLong(
+        CONFLUENT_SUPPORT_METRICS_ADAPTIVE_SCHEDULE_CEILING_MS_CONFIG,
+        defaultCeilingMs,
+        Long.MAX_VALUE
+    );
+    return Math.max(ceilingMs, getAdaptiveScheduleFloorMs());
+  }
+
+  /**
+   * @return The address of the scrape endpoint, or null if the endpoint is disabled or the setting
+   *     is invalid.
+   */
+  public InetSocketAddress getScrapeListener() {
+    String value = getProperties().getProperty(
+        CONFLUENT_SUPPORT_METRICS_SCRAPE_LISTENER_CONFIG,
+        CONFLUENT_SUPPORT_METRICS_SCRAPE_LISTENER_DEFAULT
+    ).trim();
+    if (value.isEmpty()) {
+      return null;
+    }
+    int colon = value.lastIndexOf(':');
+    if (colon > 0) {
+      try {
+        int port = Integer.parseInt(value.substring(colon + 1));
+        if (port >= 0 && port <= 65535) {
+          return new InetSocketAddress(value.substring(0, colon), port);
+        }
+      } catch (NumberFormatException e) {
+        // fall through
+      }
+    }
+    log.warn("Invalid value '{}' for {}, it must be host:port. Disabling the scrape endpoint",
+             value, CONFLUENT_SUPPORT_METRICS_SCRAPE_LISTENER_CONFIG);
+    return null;
+  }
+
+  /**
+   * @return The JMX service URL of the broker the sidecar reports on, or null if the setting is
+   *     missing or invalid.
+   */
+  public JMXServiceURL getSidecarJmxUrl() {
+    String value = getProperties().getProperty(
+        CONFLUENT_SUPPORT_METRICS_SIDECAR_JMX_URL_CONFIG,
+        CONFLUENT_SUPPORT_METRICS_SIDECAR_JMX_URL_DEFAULT
+    ).trim();
+    if (value.isEmpty()) {
+      return null;
+    }
+    try {
+      return new JMXServiceURL(value);
+    } catch (MalformedURLException e) {
+      log.warn("Invalid value '{}' for {}: {}", value,
+               CONFLUENT_SUPPORT_METRICS_SIDECAR_JMX_URL_CONFIG, e.getMessage());
+      return null;
+    }
+  }
+
+  /**
+   * @return The value of the given setting, or the default if it is missing, not a number, not
+   *     positive or greater than the maximum.
+   */
+  private long getPositiveLong(String name, long defaultValue, long maxValue) {
+    String value = getProperties().getProperty(name);
+    if (value == null || value.trim().isEmpty()) {
+      return defaultValue;
+    }
+    try {
+      long parsed = Long.parseLong(value.trim());
+      if (parsed > 0 && parsed <= maxValue) {
+        return parsed;
+      }
+    } catch (NumberFormatException e) {
+      // fall through
+    }
+    log.warn("Invalid value '{}' for {}, it must be a positive number. Using default {}",
+             value, name, defaultValue);
+    return defaultValue;
+  }
+
   private static Properties setupProperties(Properties originals) {
     try {
       Class.forName(PROPRIETARY_PACKAGE_NAME);
@@ -0,0 +1,204 @@
+/**
+ * Copyright 2018 Confluent Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package io.confluent.support.metrics;
+
+import org.apache.avro.generic.GenericContainer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.function.Consumer;
+
+import io.confluent.support.metrics.agent.AgentMetrics;
+import io.confluent.support.metrics.agent.CycleStats;
+import io.confluent.support.metrics.agent.MemoryBudget;
+import io.confluent.support.metrics.agent.ResourceGovernor;
+import io.confluent.support.metrics.agent.ThreadUsage;
+import io.confluent.support.metrics.collectors.CompositeCollector;
+import io.confluent.support.metrics.common.Collector;
+import io.confluent.support.metrics.serde.AvroSerializer;
+import io.confluent.support.metrics.serde.DeltaDeserializer;
+import io.confluent.support.metrics.sinks.EncodedMetrics;
+import io.confluent.support.metrics.sinks.MetricsSink;
+
+/**
+ * One report cycle of a metrics reporter: collects a metrics record, serializes it and submits it
+ * to every sink.
+ *
+ * <p>A failure in one step is logged and ends the cycle; a failure of one sink does not affect the
+ * other sinks.
+ *
+ * <p>The wall time, CPU time and allocations of every step, and the payload size, are recorded in
+ * {@link AgentMetrics}, including those of cycles that ended early.  Every step is paced by a
+ * {@link ResourceGovernor}, which may delay the cycle but never cuts serialization or submission
+ * short.
+ *
+ * <p>The serialized record is reserved from a {@link MemoryBudget} for the duration of the cycle.
+ * A record that does not fit is dropped rather than submitted.
+ *
+ * <p>This class is not thread-safe.
+ */
+public class MetricsPipeline {
+
+  private static final Logger log = LoggerFactory.getLogger(MetricsPipeline.class);
+
+  private final Collector collector;
+  private final AvroSerializer encoder;
+  private final List<MetricsSink> sinks;
+  private final AgentMetrics agentMetrics;
+  private final ResourceGovernor governor;
+  private final MemoryBudget.Reservation payload;
+  private final List<Consumer<GenericContainer>> listeners = new CopyOnWriteArrayList<>();
+
+  public MetricsPipeline(Collector collector, AvroSerializer encoder, List<MetricsSink> sinks) {
+    this(collector, encoder, sinks, new AgentMetrics(), ResourceGovernor.unlimited());
+  }
+
+  public MetricsPipeline(
+      Collector collector,
+      AvroSerializer encoder,
+      List<MetricsSink> sinks,
+      AgentMetrics agentMetrics,
+      ResourceGovernor governor
+  ) {
+    this(collector, encoder, sinks, agentMetrics, governor, MemoryBudget.unlimited());
+  }
+
+  /**
+   * @param memoryBudget The budget the serialized record of a cycle is reserved from.
+   */
+  public MetricsPipeline(
+      Collector collector,
+      AvroSerializer encoder,
+      List<MetricsSink> sinks,
+      AgentMetrics agentMetrics,
+      ResourceGovernor governor,
+      MemoryBudget memoryBudget
+  ) {
+    this.payload = memoryBudget.reservation();
+    this.collector = collector;
+    this.encoder = encoder;
+    this.sinks = new ArrayList<>(sinks);
+    this.agentMetrics = agentMetrics;
+    this.governor = governor;
+  }
+
+  /**
+   * Runs a single report cycle.
+   */
+  public void submitMetrics() {
+    governor.startCycle();
+    ThreadUsage start = ThreadUsage.current();
+    ThreadUsage collect = ThreadUsage.ZERO;
+    ThreadUsage serialize = ThreadUsage.ZERO;
+    Map<String, ThreadUsage> submits = new LinkedHashMap<>();
+    long payloadBytes = 0;
+    try {
+      GenericContainer metricsRecord = collector.collectMetrics();
+      governor.checkpoint();
+      ThreadUsage collected = ThreadUsage.current();
+      collect = collected.since(start);
+      if (collector instanceof CompositeCollector) {
+        collect = collect.plus(((CompositeCollector) collector).lastPoolUsage());
+      }
+      if (metricsRecord == null) {
+        log.error("Could not collect metrics record");
+        return;
+      }
+      for (Consumer<GenericContainer> listener : listeners) {
+        listener.accept(metricsRecord);
+      }
+
+      byte[] encodedMetricsRecord;
+      try {
+        encodedMetricsRecord = encoder.serialize(metricsRecord);
+      } catch (IOException e) {
+        log.error("Could not serialize metrics record: {}", e.toString());
+        return;
+      } finally {
+        serialize = ThreadUsage.current().since(collected);
+      }
+      payloadBytes = encodedMetricsRecord.length;
+      if (!payload.resize(payloadBytes)) {
+        log.warn("Dropping metrics record of {} bytes: memory budget of the agent exhausted",
+                 payloadBytes);
+        encoder.discard(metricsRecord);
+        return;
+      }
+      governor.checkpoint();
+      EncodedMetrics encodedMetrics = new EncodedMetrics(
+          metricsRecord, encodedMetricsRecord, !DeltaDeserializer.isDelta(encodedMetricsRecord));
+
+      boolean delivered = true;
+      for (MetricsSink sink : sinks) {
+        if (!governor.acquireEgress(payloadBytes)) {
+          log.warn("Interrupted while waiting for egress bandwidth, not submitting metrics");
+          delivered = false;
+          break;
+        }
+        ThreadUsage beforeSubmit = ThreadUsage.current();
+        try {
+          sink.submit(encodedMetrics);
+        } catch (RuntimeException e) {
+          log.error("Could not submit metrics to {}: {}", sink.name(), e.getMessage());
+          delivered = false;
+        }
+        submits.put(sink.name(), ThreadUsage.current().since(beforeSubmit));
+      }
+      if (!delivered) {
+        // A sink missed this record, so the next one must not be a delta against it.
+        encoder.discard(metricsRecord);
+      }
+    } finally {
+      payload.close();
+      agentMetrics.record(new CycleStats(collect, serialize, submits, payloadBytes));
+    }
+  }
+
+  /**
+   * Registers a listener that is called with every collected record, before it is serialized.
+   * Listeners run on the reporter thread and must not modify the record.
+   */
+  public void addListener(Consumer<GenericContainer> listener) {
+    listeners.add(listener);
+  }
+
+  public AgentMetrics agentMetrics() {
+    return agentMetrics;
+  }
+
+  public List<MetricsSink> sinks() {
+    return sinks;
+  }
+
+  /**
+   * Closes all sinks.
+   */
+  public void close() {
+    for (MetricsSink sink : sinks) {
+      try {
+        sink.close();
+      } catch (RuntimeException e) {
+        log.error("Could not close {} sink: {}", sink.name(), e.getMessage());
+      }
+    }
+  }
+
+}
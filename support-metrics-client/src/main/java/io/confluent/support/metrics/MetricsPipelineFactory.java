@@ -0,0 +1,115 @@
+/**
+ * Copyright 2018 Confluent Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+
+package io.confluent.support.metrics;
+
+import org.apache.kafka.common.utils.Time;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import io.confluent.support.metrics.agent.AgentMetrics;
+import io.confluent.support.metrics.agent.MemoryBudget;
+import io.confluent.support.metrics.agent.ResourceGovernor;
+import io.confluent.support.metrics.common.Collector;
+import io.confluent.support.metrics.common.kafka.KafkaUtilities;
+import io.confluent.support.metrics.common.kafka.ZkClientProvider;
+import io.confluent.support.metrics.metadata.MetadataSnapshotProvider;
+import io.confluent.support.metrics.serde.AvroSerializer;
+import io.confluent.support.metrics.serde.DeltaSerializer;
+import io.confluent.support.metrics.sinks.ConfluentSink;
+import io.confluent.support.metrics.sinks.KafkaTopicSink;
+import io.confluent.support.metrics.sinks.MetricsSink;
+
+/**
+ * Creates the {@link MetricsPipeline} of a metrics reporter from its configuration.
+ *
+ * <p>The resource limits of the agent, i.e. its {@link ResourceGovernor} and {@link MemoryBudget},
+ * are created once per factory and shared by the pipeline, its sinks and anything else the
+ * reporter builds from them, e.g. its collectors or its scrape endpoint.
+ */
+public class MetricsPipelineFactory {
+
+  private final KafkaSupportConfig kafkaSupportConfig;
+  private final AgentMetrics agentMetrics = new AgentMetrics();
+  private final ResourceGovernor governor;
+  private final MemoryBudget memoryBudget;
+
+  public MetricsPipelineFactory(KafkaSupportConfig kafkaSupportConfig) {
+    this.kafkaSupportConfig = kafkaSupportConfig;
+    this.governor = new ResourceGovernor(
+        Time.SYSTEM,
+        kafkaSupportConfig.getMaxCorePercent() / 100.0,
+        TimeUnit.MILLISECONDS.toNanos(kafkaSupportConfig.getCycleCpuBudgetMs()),
+        kafkaSupportConfig.getEgressMaxBytesPerSec()
+    );
+    this.memoryBudget = new MemoryBudget(kafkaSupportConfig.getMemoryMaxBytes());
+  }
+
+  /**
+   * @param sendToKafka Whether records are submitted to the support metrics topic.
+   * @param sendToConfluent Whether records are submitted to Confluent.
+   * @param metadataSnapshots Provides the cluster metadata the Kafka sink checks its topics and
+   *     finds its brokers with, or null to read them from ZooKeeper.
+   */
+  public MetricsPipeline create(
+      Collector collector,
+      boolean sendToKafka,
+      boolean sendToConfluent,
+      ZkClientProvider zkClientProvider,
+      KafkaUtilities kafkaUtilities,
+      MetadataSnapshotProvider metadataSnapshots
+  ) {
+    List<MetricsSink> sinks = new ArrayList<>();
+    if (sendToKafka) {
+      sinks.add(new KafkaTopicSink(zkClientProvider, kafkaUtilities,
+                                   kafkaSupportConfig.getKafkaTopic(),
+                                   kafkaSupportConfig.getLatestTopic(), memoryBudget,
+                                   metadataSnapshots));
+    }
+    if (sendToConfluent) {
+      sinks.add(new ConfluentSink(kafkaSupportConfig.getCustomerId(),
+                                  kafkaSupportConfig.getEndpointHTTP(),
+                                  kafkaSupportConfig.getEndpointHTTPS(),
+                                  kafkaSupportConfig.getProxy()));
+    }
+    return new MetricsPipeline(collector, encoder(), sinks, agentMetrics, governor, memoryBudget);
+  }
+
+  /**
+   * @return A delta encoder if keyframes are configured to be further apart than one record.
+   */
+  AvroSerializer encoder() {
+    int keyframeInterval = kafkaSupportConfig.getDeltaKeyframeInterval();
+    if (keyframeInterval > 1) {
+      return new DeltaSerializer(keyframeInterval);
+    }
+    return new AvroSerializer();
+  }
+
+  public AgentMetrics agentMetrics() {
+    return agentMetrics;
+  }
+
+  public ResourceGovernor governor() {
+    return governor;
+  }
+
+  public MemoryBudget memoryBudget() {
+    return memoryBudget;
+  }
+
+}
@@ -14,14 +14,31 @@
 
 package io.confluent.support.metrics;
 
+import org.apache.kafka.common.utils.Time;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.net.InetSocketAddress;
 import java.util.Objects;
+import java.util.concurrent.TimeUnit;
 
+import io.confluent.support.metrics.agent.AdaptiveSchedule;
+import io.confluent.support.metrics.agent.AgentMetrics;
+import io.confluent.support.metrics.agent.MemoryBudget;
+import io.confluent.support.metrics.agent.BrokerLoad;
+import io.confluent.support.metrics.agent.ResourceGovernor;
+import io.confluent.support.metrics.collectors.CollectorContext;
 import io.confluent.support.metrics.collectors.CollectorFactory;
 import io.confluent.support.metrics.common.Collector;
 import io.confluent.support.metrics.common.CollectorType;
+import io.confluent.support.metrics.common.Uuid;
 import io.confluent.support.metrics.common.kafka.KafkaUtilities;
 import io.confluent.support.metrics.common.kafka.ZkClientProvider;
 import io.confluent.support.metrics.common.time.TimeUtils;
+import io.confluent.support.metrics.metadata.MetadataSnapshotProvider;
+import io.confluent.support.metrics.scrape.ScrapeServer;
 import io.confluent.support.metrics.tools.KafkaServerZkClientProvider;
 import kafka.server.KafkaServer;
 
@@ -35,10 +52,22 @@ import kafka.server.KafkaServer;
  */
 public class MetricsReporter extends BaseMetricsReporter {
 
+  private static final Logger log = LoggerFactory.getLogger(MetricsReporter.class);
+
+  private static final long SERVER_STARTUP_POLL_MS = 1000L;
+
   private final KafkaServer server;
   private final Runtime serverRuntime;
   private final KafkaSupportConfig kafkaSupportConfig;
   private final KafkaServerZkClientProvider zkClientProvider;
+  private final MetricsPipelineFactory pipelineFactory;
+  private final AgentMetrics agentMetrics;
+  private final ResourceGovernor governor;
+  private final MemoryBudget memoryBudget;
+  private Collector metricsCollector;
+  private MetricsPipeline pipeline;
+  private ScrapeServer scrapeServer;
+  private volatile boolean closing = false;
 
   public MetricsReporter(String threadName,
                          boolean isDaemon,
@@ -70,10 +99,94 @@ public class MetricsReporter extends BaseMetricsReporter {
     this.serverRuntime = serverRuntime;
     this.kafkaSupportConfig = kafkaSupportConfig;
     this.zkClientProvider = new KafkaServerZkClientProvider(server);
+    this.pipelineFactory = new MetricsPipelineFactory(kafkaSupportConfig);
+    this.agentMetrics = pipelineFactory.agentMetrics();
+    this.governor = pipelineFactory.governor();
+    this.memoryBudget = pipelineFactory.memoryBudget();
     Objects.requireNonNull(server, "Kafka Server can't be null");
     Objects.requireNonNull(serverRuntime, "serverRuntime can't be null");
   }
 
+  @Override
+  public void init() {
+    super.init();
+    pipeline = pipelineFactory.create(metricsCollector, sendToKafkaEnabled(),
+                                      sendToConfluentEnabled(), zkClientProvider, kafkaUtilities,
+                                      new MetadataSnapshotProvider(server, Time.SYSTEM));
+    startScrapeServer();
+  }
+
+  private void startScrapeServer() {
+    InetSocketAddress address = kafkaSupportConfig.getScrapeListener();
+    if (address == null) {
+      return;
+    }
+    try {
+      scrapeServer = new ScrapeServer(address, ScrapeServer.DEFAULT_THREADS, memoryBudget);
+      pipeline.addListener(scrapeServer::publish);
+      scrapeServer.start();
+    } catch (IOException e) {
+      log.error("Failed to start the support metrics scrape endpoint on {}: {}", address,
+                e.getMessage());
+    }
+  }
+
+  /**
+   * Runs the report loop.  Uses the fixed report interval of the base class unless the adaptive
+   * schedule is enabled.
+   */
+  @Override
+  public void run() {
+    if (!kafkaSupportConfig.isAdaptiveScheduleEnabled() || !reportingEnabled()) {
+      super.run();
+      return;
+    }
+    AdaptiveSchedule schedule = new AdaptiveSchedule(
+        kafkaSupportConfig.getReportIntervalMs(),
+        kafkaSupportConfig.getAdaptiveScheduleFloorMs(),
+        kafkaSupportConfig.getAdaptiveScheduleCeilingMs()
+    );
+    BrokerLoad brokerLoad = new BrokerLoad();
+    log.info("Reporting metrics every {} ms, deferred while the broker is saturated",
+             schedule.intervalMs());
+    try {
+      while (!isReadyForMetricsCollection()) {
+        if (closing || isShuttingDown()) {
+          return;
+        }
+        Thread.sleep(SERVER_STARTUP_POLL_MS);
+      }
+      while (!closing) {
+        long delayMs = schedule.delayMs(nowMs(), brokerLoad.idleRatio());
+        if (delayMs > 0) {
+          Thread.sleep(delayMs);
+          continue;
+        }
+        submitMetrics();
+        schedule.collected(nowMs());
+      }
+    } catch (InterruptedException e) {
+      // Report the shutdown, like the fixed-interval loop does.
+      if (isReadyForMetricsCollection()) {
+        submitMetrics();
+      }
+      Thread.currentThread().interrupt();
+    } catch (RuntimeException e) {
+      log.error("Terminating metrics collection: {}", e.getMessage());
+    } finally {
+      log.info("Metrics collection stopped");
+    }
+  }
+
+  private static long nowMs() {
+    return TimeUnit.NANOSECONDS.toMillis(System.nanoTime());
+  }
+
+  @Override
+  protected void submitMetrics() {
+    pipeline.submitMetrics();
+  }
+
   @Override
   protected ZkClientProvider zkClientProvider() {
     return zkClientProvider;
@@ -88,14 +201,41 @@ public class MetricsReporter extends BaseMetricsReporter {
     } else {
       collectorType = CollectorType.FULL;
     }
-    CollectorFactory factory = new CollectorFactory(collectorType, time, server,
+    CollectorContext context = new CollectorContext(time, server,
                                                     kafkaSupportConfig.getProperties(),
-                                                    serverRuntime
+                                                    serverRuntime, new Uuid(), agentMetrics,
+                                                    governor, memoryBudget
+    );
+    CollectorFactory factory = new CollectorFactory(collectorType, context,
+                                                    kafkaSupportConfig.getCollectorNames(),
+                                                    kafkaSupportConfig.getCollectorThreads(),
+                                                    kafkaSupportConfig.getCollectorTimeoutMs()
     );
-    Collector metricsCollector = factory.getCollector();
+    metricsCollector = factory.getCollector();
     return metricsCollector;
   }
 
+  /**
+   * @return The scrape endpoint, or null if it is disabled.
+   */
+  public ScrapeServer scrapeServer() {
+    return scrapeServer;
+  }
+
+  /**
+   * @return The budget of the heap this reporter retains.
+   */
+  public MemoryBudget memoryBudget() {
+    return memoryBudget;
+  }
+
+  /**
+   * @return The overhead of this reporter's report cycles.
+   */
+  public AgentMetrics agentMetrics() {
+    return agentMetrics;
+  }
+
   @Override
   protected boolean isReadyForMetricsCollection() {
     return kafkaUtilities.isReadyForMetricsCollection(server);
@@ -106,4 +246,23 @@ public class MetricsReporter extends BaseMetricsReporter {
     return kafkaUtilities.isShuttingDown(server);
   }
 
+  @Override
+  public void close() {
+    closing = true;
+    super.close();
+    if (scrapeServer != null) {
+      scrapeServer.close();
+    }
+    if (pipeline != null) {
+      pipeline.close();
+    }
+    if (metricsCollector instanceof Closeable) {
+      try {
+        ((Closeable) metricsCollector).close();
+      } catch (IOException e) {
+        log.error("Failed to close metrics collector: {}", e.getMessage());
+      }
+    }
+  }
+
 }
@@ -0,0 +1,98 @@
+/**
+ * Copyright 2018 Confluent Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package io.confluent.support.metrics;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.Properties;
+
+import javax.management.remote.JMXServiceURL;
+
+import io.confluent.support.metrics.common.kafka.KafkaUtilities;
+import io.confluent.support.metrics.sidecar.BrokerJmx;
+import io.confluent.support.metrics.sidecar.SidecarReporter;
+import io.confluent.support.metrics.sidecar.SidecarZkClientProvider;
+import kafka.Kafka;
+import kafka.server.KafkaConfig;
+
+/**
+ * Reports the support metrics of a broker from a separate process, for deployments that start the
+ * broker with Apache Kafka's {@code Kafka.scala} rather than {@link SupportedKafka}.
+ *
+ * <p>Takes the same arguments as {@link SupportedKafka}, i.e. the broker's configuration file
+ * plus optional {@code --override} settings, and reads the broker via the JMX service URL set by
+ * {@code confluent.support.metrics.sidecar.jmx.url}.  The sidecar waits for the broker to start
+ * and keeps running across broker restarts until it is terminated.
+ */
+public class SupportedKafkaSidecar {
+
+  private static final Logger log = LoggerFactory.getLogger(SupportedKafkaSidecar.class);
+  private static final String METRICS_REPORTER_THREAD_NAME =
+      "ConfluentProactiveSupportMetricsSidecar";
+
+  public static void main(String[] args) throws Exception {
+    try {
+      Properties brokerConfiguration = Kafka.getPropsFromArgs(args);
+      KafkaSupportConfig kafkaSupportConfig = new KafkaSupportConfig(brokerConfiguration);
+      if (!kafkaSupportConfig.isProactiveSupportEnabled()) {
+        log.warn(SupportedServerStartable.legalDisclaimerProactiveSupportDisabled());
+        System.exit(ExitCodes.SUCCESS);
+      }
+      JMXServiceURL jmxUrl = kafkaSupportConfig.getSidecarJmxUrl();
+      if (jmxUrl == null) {
+        log.error("{} must be set to the JMX service URL of the broker",
+                  KafkaSupportConfig.CONFLUENT_SUPPORT_METRICS_SIDECAR_JMX_URL_CONFIG);
+        System.exit(ExitCodes.ERROR);
+      }
+
+      final BrokerJmx broker = new BrokerJmx(jmxUrl);
+      final SidecarZkClientProvider zkClientProvider =
+          new SidecarZkClientProvider(KafkaConfig.fromProps(brokerConfiguration));
+      final SidecarReporter reporter = new SidecarReporter(METRICS_REPORTER_THREAD_NAME, false,
+                                                           kafkaSupportConfig, broker,
+                                                           zkClientProvider, new KafkaUtilities());
+      reporter.init();
+      long reportIntervalHours = kafkaSupportConfig.getReportIntervalMs() / (60 * 60 * 1000);
+      // We log at WARN level to increase the visibility of this information.
+      log.warn(SupportedServerStartable.legalDisclaimerProactiveSupportEnabled(
+          reportIntervalHours));
+
+      // attach shutdown handler to catch terminating signals as well as normal termination
+      Runtime.getRuntime().addShutdownHook(new Thread() {
+        @Override
+        public void run() {
+          log.info("Shutting down SupportedKafkaSidecar");
+          reporter.close();
+          try {
+            reporter.join();
+          } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+          }
+          broker.close();
+          zkClientProvider.close();
+        }
+      });
+
+      reporter.start();
+      reporter.join();
+    } catch (Exception e) {
+      log.error("Fatal error during SupportedKafkaSidecar startup. Prepare to shutdown", e);
+      System.exit(ExitCodes.ERROR);
+    }
+    System.exit(ExitCodes.SUCCESS);
+  }
+
+}
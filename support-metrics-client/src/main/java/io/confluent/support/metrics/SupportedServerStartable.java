@@ -82,9 +82,10 @@ public class SupportedServerStartable {
       }
     });
     metricsReporter.init();
+    metricsReporter.agentMetrics().register();
   }
 
-  private String legalDisclaimerProactiveSupportEnabled(long reportIntervalHours) {
+  static String legalDisclaimerProactiveSupportEnabled(long reportIntervalHours) {
     return
         "Please note that the support metrics collection feature (\"Metrics\") of Proactive "
         + "Support is enabled.  With Metrics enabled, this broker is configured to collect and "
@@ -105,7 +106,7 @@ public class SupportedServerStartable {
         + "Platform documentation for further information.";
   }
 
-  private String legalDisclaimerProactiveSupportDisabled() {
+  static String legalDisclaimerProactiveSupportDisabled() {
     return "The support metrics collection feature (\"Metrics\") of Proactive Support is disabled.";
   }
 
@@ -134,6 +135,7 @@ public class SupportedServerStartable {
         metricsReporter.close();
         log.info("Waiting for metrics thread to exit");
         metricsReporter.join();
+        metricsReporter.agentMetrics().unregister();
         metricsReporter = null;
       }
     } catch (Exception e) {
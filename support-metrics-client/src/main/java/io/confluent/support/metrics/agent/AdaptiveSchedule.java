@@ -0,0 +1,110 @@
+/**
+ * Copyright 2018 Confluent Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package io.confluent.support.metrics.agent;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Decides when the metrics reporter collects next, based on how busy the broker is.
+ *
+ * <p>While the broker is idle enough, the reporter collects every {@code intervalMs}.  While the
+ * broker is saturated, i.e. its idle ratio is below {@link #SATURATED_IDLE_RATIO}, a due
+ * collection is deferred, and the load is re-checked with exponential back-off starting at
+ * {@code floorMs}.  As soon as the load drops, the deferred collection runs right away, and the
+ * regular interval resumes from there.  No two collections are closer than {@code floorMs}, and
+ * none is deferred for longer than {@code ceilingMs} since the previous one, however busy the
+ * broker stays.
+ *
+ * <p>This class is not thread-safe.
+ */
+public class AdaptiveSchedule {
+
+  private static final Logger log = LoggerFactory.getLogger(AdaptiveSchedule.class);
+
+  /**
+   * The broker is considered saturated below this idle ratio of its request handler or network
+   * processor threads.
+   */
+  public static final double SATURATED_IDLE_RATIO = 0.2;
+
+  private static final long NEVER = Long.MIN_VALUE;
+
+  private final long intervalMs;
+  private final long floorMs;
+  private final long ceilingMs;
+  private long lastCollectionMs = NEVER;
+  private long backoffMs = 0;
+
+  /**
+   * @param intervalMs The regular report interval, clamped to [floorMs, ceilingMs] with a warning.
+   * @param floorMs Minimum time between two collections.
+   * @param ceilingMs Maximum time between two collections.
+   */
+  public AdaptiveSchedule(long intervalMs, long floorMs, long ceilingMs) {
+    if (floorMs <= 0 || ceilingMs < floorMs) {
+      throw new IllegalArgumentException("0 < floorMs <= ceilingMs must hold");
+    }
+    this.floorMs = floorMs;
+    this.ceilingMs = ceilingMs;
+    this.intervalMs = Math.max(floorMs, Math.min(intervalMs, ceilingMs));
+    if (this.intervalMs != intervalMs) {
+      log.warn("Report interval of {} ms is outside of the adaptive schedule's bounds [{}, {}] ms, "
+               + "reporting every {} ms instead", intervalMs, floorMs, ceilingMs,
+               this.intervalMs);
+    }
+  }
+
+  /**
+   * @param nowMs The current time of a monotonic clock.
+   * @param idleRatio The current idle ratio of the broker between 0 and 1, or NaN if unknown.
+   * @return 0 if the reporter should collect now, otherwise how long it should wait before asking
+   *     again.
+   */
+  public long delayMs(long nowMs, double idleRatio) {
+    if (lastCollectionMs == NEVER) {
+      lastCollectionMs = nowMs;
+    }
+    long sinceLastMs = nowMs - lastCollectionMs;
+    if (sinceLastMs >= ceilingMs) {
+      return 0;
+    }
+    if (sinceLastMs < intervalMs) {
+      return intervalMs - sinceLastMs;
+    }
+    if (isSaturated(idleRatio)) {
+      backoffMs = backoffMs == 0 ? floorMs : Math.min(backoffMs * 2, ceilingMs);
+      return Math.min(backoffMs, ceilingMs - sinceLastMs);
+    }
+    return 0;
+  }
+
+  /**
+   * Records that the reporter collected at the given time.
+   */
+  public void collected(long nowMs) {
+    lastCollectionMs = nowMs;
+    backoffMs = 0;
+  }
+
+  public long intervalMs() {
+    return intervalMs;
+  }
+
+  private static boolean isSaturated(double idleRatio) {
+    return !Double.isNaN(idleRatio) && idleRatio < SATURATED_IDLE_RATIO;
+  }
+
+}
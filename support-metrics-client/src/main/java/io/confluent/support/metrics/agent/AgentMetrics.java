@@ -0,0 +1,215 @@
+/**
+ * Copyright 2018 Confluent Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package io.confluent.support.metrics.agent;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.lang.management.ManagementFactory;
+import java.util.Collections;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import javax.management.openmbean.CompositeDataSupport;
+import javax.management.openmbean.CompositeType;
+import javax.management.openmbean.OpenDataException;
+import javax.management.openmbean.OpenType;
+import javax.management.openmbean.SimpleType;
+import javax.management.openmbean.TabularData;
+import javax.management.openmbean.TabularDataSupport;
+import javax.management.openmbean.TabularType;
+
+/**
+ * Records the overhead of every report cycle of the metrics agent, and publishes it via JMX.
+ *
+ * <p>Cycles are recorded by the reporter thread, attributes may be read from any thread.
+ */
+public class AgentMetrics implements AgentMetricsMBean {
+
+  private static final Logger log = LoggerFactory.getLogger(AgentMetrics.class);
+
+  public static final String JMX_NAME = "io.confluent.support.metrics:type=SupportMetricsAgent";
+
+  private static final CycleStats NO_CYCLE = new CycleStats(
+      ThreadUsage.ZERO, ThreadUsage.ZERO, Collections.<String, ThreadUsage>emptyMap(), 0);
+
+  // Open types, so that generic JMX clients can read the submit time of every sink.
+  private static final String SINK = "sink";
+  private static final String WALL_TIME_MICROS = "wallTimeMicros";
+  private static final CompositeType SINK_SUBMIT_TYPE;
+  private static final TabularType SINK_SUBMITS_TYPE;
+
+  static {
+    try {
+      SINK_SUBMIT_TYPE = new CompositeType(
+          "SinkSubmit", "Submission of a metrics record to a sink",
+          new String[] {SINK, WALL_TIME_MICROS},
+          new String[] {"Name of the sink", "Wall time of the submission in microseconds"},
+          new OpenType<?>[] {SimpleType.STRING, SimpleType.LONG});
+      SINK_SUBMITS_TYPE = new TabularType(
+          "SinkSubmits", "Submissions of a metrics record to each sink", SINK_SUBMIT_TYPE,
+          new String[] {SINK});
+    } catch (OpenDataException e) {
+      throw new ExceptionInInitializerError(e);
+    }
+  }
+
+  private volatile CycleStats last = NO_CYCLE;
+  private long cycleCount = 0;
+  private long totalWallNanos = 0;
+  private long totalCpuNanos = 0;
+  private long totalAllocatedBytes = 0;
+  private long totalPayloadBytes = 0;
+
+  /**
+   * Records a completed report cycle.
+   */
+  public synchronized void record(CycleStats cycle) {
+    ThreadUsage total = cycle.total();
+    cycleCount++;
+    totalWallNanos += total.wallNanos();
+    totalCpuNanos += total.cpuNanos();
+    totalAllocatedBytes += total.allocatedBytes();
+    totalPayloadBytes += cycle.payloadBytes();
+    last = cycle;
+  }
+
+  /**
+   * @return The most recently recorded cycle, or an all-zero cycle if none was recorded yet.
+   */
+  public CycleStats lastCycle() {
+    return last;
+  }
+
+  /**
+   * Registers this instance with the platform MBean server under {@link #JMX_NAME}, replacing any
+   * previously registered instance.
+   */
+  public void register() {
+    try {
+      MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+      ObjectName name = new ObjectName(JMX_NAME);
+      if (server.isRegistered(name)) {
+        server.unregisterMBean(name);
+      }
+      server.registerMBean(this, name);
+    } catch (JMException e) {
+      log.warn("Failed to register metrics agent MBean: {}", e.getMessage());
+    }
+  }
+
+  /**
+   * Unregisters this instance from the platform MBean server, if it is registered.
+   */
+  public void unregister() {
+    try {
+      MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+      ObjectName name = new ObjectName(JMX_NAME);
+      if (server.isRegistered(name)) {
+        server.unregisterMBean(name);
+      }
+    } catch (JMException e) {
+      log.warn("Failed to unregister metrics agent MBean: {}", e.getMessage());
+    }
+  }
+
+  @Override
+  public synchronized long getCycleCount() {
+    return cycleCount;
+  }
+
+  @Override
+  public long getLastCollectWallTimeMicros() {
+    return micros(last.collect().wallNanos());
+  }
+
+  @Override
+  public long getLastCollectCpuTimeMicros() {
+    return micros(last.collect().cpuNanos());
+  }
+
+  @Override
+  public long getLastSerializeWallTimeMicros() {
+    return micros(last.serialize().wallNanos());
+  }
+
+  @Override
+  public long getLastSerializeCpuTimeMicros() {
+    return micros(last.serialize().cpuNanos());
+  }
+
+  @Override
+  public long getLastSubmitWallTimeMicros() {
+    return micros(last.submit().wallNanos());
+  }
+
+  @Override
+  public long getLastSubmitCpuTimeMicros() {
+    return micros(last.submit().cpuNanos());
+  }
+
+  @Override
+  public TabularData getLastSinkSubmitWallTimeMicros() {
+    TabularData sinks = new TabularDataSupport(SINK_SUBMITS_TYPE);
+    for (Map.Entry<String, ThreadUsage> entry : last.submits().entrySet()) {
+      try {
+        sinks.put(new CompositeDataSupport(
+            SINK_SUBMIT_TYPE, new String[] {SINK, WALL_TIME_MICROS},
+            new Object[] {entry.getKey(), micros(entry.getValue().wallNanos())}));
+      } catch (OpenDataException e) {
+        throw new IllegalStateException(e);
+      }
+    }
+    return sinks;
+  }
+
+  @Override
+  public long getLastAllocatedBytes() {
+    return last.total().allocatedBytes();
+  }
+
+  @Override
+  public long getLastPayloadBytes() {
+    return last.payloadBytes();
+  }
+
+  @Override
+  public synchronized long getTotalWallTimeMicros() {
+    return micros(totalWallNanos);
+  }
+
+  @Override
+  public synchronized long getTotalCpuTimeMicros() {
+    return micros(totalCpuNanos);
+  }
+
+  @Override
+  public synchronized long getTotalAllocatedBytes() {
+    return totalAllocatedBytes;
+  }
+
+  @Override
+  public synchronized long getTotalPayloadBytes() {
+    return totalPayloadBytes;
+  }
+
+  private static long micros(long nanos) {
+    return TimeUnit.NANOSECONDS.toMicros(nanos);
+  }
+
+}
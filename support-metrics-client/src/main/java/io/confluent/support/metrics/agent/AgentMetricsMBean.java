@@ -0,0 +1,57 @@
+/**
+ * Copyright 2018 Confluent Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package io.confluent.support.metrics.agent;
+
+import javax.management.openmbean.TabularData;
+
+/**
+ * JMX view of the overhead of the metrics agent.  "Last" attributes describe the most recent
+ * report cycle, "Total" attributes all cycles since the agent was started.
+ */
+public interface AgentMetricsMBean {
+
+  long getCycleCount();
+
+  long getLastCollectWallTimeMicros();
+
+  long getLastCollectCpuTimeMicros();
+
+  long getLastSerializeWallTimeMicros();
+
+  long getLastSerializeCpuTimeMicros();
+
+  long getLastSubmitWallTimeMicros();
+
+  long getLastSubmitCpuTimeMicros();
+
+  /**
+   * @return The wall time of submitting to each sink in the last cycle, as rows of
+   *     {@code sink} (the sink's name) and {@code wallTimeMicros}, indexed by {@code sink}.
+   */
+  TabularData getLastSinkSubmitWallTimeMicros();
+
+  long getLastAllocatedBytes();
+
+  long getLastPayloadBytes();
+
+  long getTotalWallTimeMicros();
+
+  long getTotalCpuTimeMicros();
+
+  long getTotalAllocatedBytes();
+
+  long getTotalPayloadBytes();
+
+}
@@ -0,0 +1,81 @@
+/**
+ * Copyright 2018 Confluent Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package io.confluent.support.metrics.agent;
+
+import java.lang.management.ManagementFactory;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+/**
+ * Reads how busy the broker in this JVM is from the metrics it publishes via JMX: the average idle
+ * ratio of its request handler threads and of its network processor threads.
+ */
+public class BrokerLoad {
+
+  private static final String REQUEST_HANDLER_IDLE =
+      "kafka.server:type=KafkaRequestHandlerPool,name=RequestHandlerAvgIdlePercent";
+  private static final String NETWORK_PROCESSOR_IDLE =
+      "kafka.network:type=SocketServer,name=NetworkProcessorAvgIdlePercent";
+
+  private final MBeanServer mbeanServer;
+  private final ObjectName requestHandlerIdle;
+  private final ObjectName networkProcessorIdle;
+
+  public BrokerLoad() {
+    this(ManagementFactory.getPlatformMBeanServer());
+  }
+
+  BrokerLoad(MBeanServer mbeanServer) {
+    this.mbeanServer = mbeanServer;
+    try {
+      this.requestHandlerIdle = new ObjectName(REQUEST_HANDLER_IDLE);
+      this.networkProcessorIdle = new ObjectName(NETWORK_PROCESSOR_IDLE);
+    } catch (JMException e) {
+      throw new IllegalStateException(e);
+    }
+  }
+
+  /**
+   * @return The lower of the request handler and network processor idle ratios between 0 and 1,
+   *     or NaN if neither is available (e.g. while the broker is starting up).
+   */
+  public double idleRatio() {
+    // The request handler idle ratio is a meter, its one-minute rate is the ratio.
+    double handlers = read(requestHandlerIdle, "OneMinuteRate");
+    double processors = read(networkProcessorIdle, "Value");
+    if (Double.isNaN(handlers)) {
+      return processors;
+    }
+    if (Double.isNaN(processors)) {
+      return handlers;
+    }
+    return Math.min(handlers, processors);
+  }
+
+  private double read(ObjectName name, String attribute) {
+    try {
+      Object value = mbeanServer.getAttribute(name, attribute);
+      if (value instanceof Number) {
+        return Math.max(0, Math.min(1, ((Number) value).doubleValue()));
+      }
+    } catch (JMException e) {
+      // Not registered (yet).
+    }
+    return Double.NaN;
+  }
+
+}
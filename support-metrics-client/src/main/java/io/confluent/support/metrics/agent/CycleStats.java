@@ -0,0 +1,87 @@
+/**
+ * Copyright 2018 Confluent Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package io.confluent.support.metrics.agent;
+
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * What a single report cycle of the metrics agent cost, per phase.
+ *
+ * <p>The collect phase includes the CPU time and allocations of collectors that run on the pool of
+ * a {@link io.confluent.support.metrics.collectors.CompositeCollector}.  Its wall time is the one
+ * of the reporter thread, which waits for them.
+ */
+public final class CycleStats {
+
+  private final ThreadUsage collect;
+  private final ThreadUsage serialize;
+  private final Map<String, ThreadUsage> submits;
+  private final long payloadBytes;
+
+  public CycleStats(
+      ThreadUsage collect,
+      ThreadUsage serialize,
+      Map<String, ThreadUsage> submits,
+      long payloadBytes
+  ) {
+    this.collect = collect;
+    this.serialize = serialize;
+    this.submits = Collections.unmodifiableMap(new LinkedHashMap<>(submits));
+    this.payloadBytes = payloadBytes;
+  }
+
+  public ThreadUsage collect() {
+    return collect;
+  }
+
+  public ThreadUsage serialize() {
+    return serialize;
+  }
+
+  /**
+   * @return The usage of submitting to each sink, by sink name.
+   */
+  public Map<String, ThreadUsage> submits() {
+    return submits;
+  }
+
+  /**
+   * @return The usage of submitting to all sinks.
+   */
+  public ThreadUsage submit() {
+    ThreadUsage total = ThreadUsage.ZERO;
+    for (ThreadUsage usage : submits.values()) {
+      total = total.plus(usage);
+    }
+    return total;
+  }
+
+  /**
+   * @return The usage of the whole cycle.
+   */
+  public ThreadUsage total() {
+    return collect.plus(serialize).plus(submit());
+  }
+
+  /**
+   * @return The size of the serialized metrics record, or 0 if the cycle failed before.
+   */
+  public long payloadBytes() {
+    return payloadBytes;
+  }
+
+}
@@ -0,0 +1,166 @@
+/**
+ * Copyright 2018 Confluent Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package io.confluent.support.metrics.agent;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Caps the broker heap that the metrics agent retains.
+ *
+ * <p>Every component of the agent that holds on to memory beyond a single method call, such as
+ * serialized payloads, the producer's buffer of pending batches, cached metadata or rendered
+ * snapshots, holds a {@link Reservation} and resizes it before it grows.  A reservation that would
+ * take the total over the budget is refused, and the component degrades instead: it drops an
+ * optional section, caches less, or retains nothing until the next cycle.  The budget therefore
+ * bounds what the agent keeps between and during cycles, not the short-lived garbage it creates
+ * while it works.
+ *
+ * <p>Sizes are estimates of the retained heap, not exact measurements.
+ *
+ * <p>This class is thread-safe.
+ */
+public class MemoryBudget {
+
+  public static final long UNLIMITED = Long.MAX_VALUE;
+
+  private final long maxBytes;
+  private final AtomicLong reservedBytes = new AtomicLong();
+  private final AtomicLong peakBytes = new AtomicLong();
+  private final AtomicLong refusals = new AtomicLong();
+
+  /**
+   * @param maxBytes The budget, or {@link #UNLIMITED}.
+   */
+  public MemoryBudget(long maxBytes) {
+    if (maxBytes <= 0) {
+      throw new IllegalArgumentException("maxBytes must be positive");
+    }
+    this.maxBytes = maxBytes;
+  }
+
+  /**
+   * @return A new budget that never refuses a reservation, but still accounts for them.
+   */
+  public static MemoryBudget unlimited() {
+    return new MemoryBudget(UNLIMITED);
+  }
+
+  /**
+   * @return A new, empty reservation against this budget.
+   */
+  public Reservation reservation() {
+    return new Reservation();
+  }
+
+  private boolean tryReserve(long bytes) {
+    while (true) {
+      long reserved = reservedBytes.get();
+      if (bytes > maxBytes - reserved) {
+        refusals.incrementAndGet();
+        return false;
+      }
+      if (reservedBytes.compareAndSet(reserved, reserved + bytes)) {
+        updatePeak(reserved + bytes);
+        return true;
+      }
+    }
+  }
+
+  private void updatePeak(long reserved) {
+    long peak = peakBytes.get();
+    while (reserved > peak && !peakBytes.compareAndSet(peak, reserved)) {
+      peak = peakBytes.get();
+    }
+  }
+
+  public long maxBytes() {
+    return maxBytes;
+  }
+
+  public long reservedBytes() {
+    return reservedBytes.get();
+  }
+
+  public long availableBytes() {
+    return maxBytes - reservedBytes.get();
+  }
+
+  /**
+   * @return The highest total of all reservations so far.
+   */
+  public long peakBytes() {
+    return peakBytes.get();
+  }
+
+  /**
+   * @return The number of reservations that were refused so far.
+   */
+  public long refusals() {
+    return refusals.get();
+  }
+
+  /**
+   * The share of the budget held by one component.
+   */
+  public class Reservation implements AutoCloseable {
+
+    private long bytes;
+
+    private Reservation() {
+    }
+
+    /**
+     * Grows or shrinks this reservation.  Shrinking always succeeds.
+     *
+     * @return False, leaving the reservation unchanged, if growing it would exceed the budget.
+     */
+    public synchronized boolean resize(long newBytes) {
+      if (newBytes < 0) {
+        throw new IllegalArgumentException("newBytes must not be negative");
+      }
+      long delta = newBytes - bytes;
+      if (delta > 0 && !tryReserve(delta)) {
+        return false;
+      }
+      if (delta < 0) {
+        reservedBytes.addAndGet(delta);
+      }
+      bytes = newBytes;
+      return true;
+    }
+
+    /**
+     * Adds to this reservation.
+     *
+     * @return False, leaving the reservation unchanged, if that would exceed the budget.
+     */
+    public synchronized boolean add(long moreBytes) {
+      return resize(bytes + moreBytes);
+    }
+
+    public synchronized long bytes() {
+      return bytes;
+    }
+
+    /**
+     * Releases all of this reservation.
+     */
+    @Override
+    public void close() {
+      resize(0);
+    }
+  }
+
+}
@@ -0,0 +1,222 @@
+/**
+ * Copyright 2018 Confluent Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package io.confluent.support.metrics.agent;
+
+import org.apache.kafka.common.utils.Time;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Keeps the metrics agent from competing with the broker for CPU and network.
+ *
+ * <p>The governor enforces three limits:
+ * <ul>
+ *   <li>A maximum fraction of one core.  Every thread of the agent charges the CPU time it used
+ *   since its previous {@link #checkpoint()}, and pool threads also charge the CPU time of each
+ *   task between {@link #startTask()} and {@link #endTask()}.  Whenever the CPU time charged in
+ *   the current cycle exceeds the given fraction of the wall time the cycle took so far, the
+ *   checkpoint sleeps until it no longer does.  A cycle therefore never uses more than that
+ *   fraction of a core on average, however much work it does.</li>
+ *   <li>A CPU time budget per cycle.  Once it is used up, {@link #checkpoint()} returns false, and
+ *   collectors skip work they can defer to a later cycle.</li>
+ *   <li>An egress bandwidth cap.  {@link #acquireEgress(long)} delays each upload so that the
+ *   uploads of the agent do not exceed the cap on average.</li>
+ * </ul>
+ *
+ * <p>Collectors cooperate by calling {@link #checkpoint()} between units of work, e.g. every few
+ * partitions.  Checkpoints are cheap, and free for an unlimited governor.
+ *
+ * <p>This class is thread-safe.
+ */
+public class ResourceGovernor {
+
+  private static final ResourceGovernor UNLIMITED =
+      new ResourceGovernor(Time.SYSTEM, 1.0, Long.MAX_VALUE, Long.MAX_VALUE);
+
+  private final Time time;
+  private final double maxCoreFraction;
+  private final long cycleCpuBudgetNanos;
+  private final long egressBytesPerSec;
+  private final boolean unlimited;
+
+  private final AtomicLong cycle = new AtomicLong();
+  private final AtomicLong cycleStartNanos = new AtomicLong();
+  private final AtomicLong cycleCpuNanos = new AtomicLong();
+  private final AtomicLong throttledNanos = new AtomicLong();
+  private final ThreadLocal<long[]> threadCpu = new ThreadLocal<long[]>() {
+    @Override
+    protected long[] initialValue() {
+      // { cycle the thread was last charged in, or -1 if it is not charged; CPU time at the
+      //   previous checkpoint }
+      return new long[] {-1, 0};
+    }
+  };
+  private long nextEgressNanos = Long.MIN_VALUE;
+
+  /**
+   * @param maxCoreFraction Maximum fraction of one core, greater than 0.  1 or more disables the
+   *     limit.
+   * @param cycleCpuBudgetNanos CPU time budget per cycle, or Long.MAX_VALUE for none.
+   * @param egressBytesPerSec Egress bandwidth cap, or Long.MAX_VALUE for none.
+   */
+  public ResourceGovernor(
+      Time time,
+      double maxCoreFraction,
+      long cycleCpuBudgetNanos,
+      long egressBytesPerSec
+  ) {
+    if (!(maxCoreFraction > 0) || cycleCpuBudgetNanos <= 0 || egressBytesPerSec <= 0) {
+      throw new IllegalArgumentException("All limits must be positive");
+    }
+    this.time = time;
+    this.maxCoreFraction = maxCoreFraction;
+    this.cycleCpuBudgetNanos = cycleCpuBudgetNanos;
+    this.egressBytesPerSec = egressBytesPerSec;
+    this.unlimited = maxCoreFraction >= 1.0 && cycleCpuBudgetNanos == Long.MAX_VALUE;
+  }
+
+  /**
+   * @return A governor that never throttles.
+   */
+  public static ResourceGovernor unlimited() {
+    return UNLIMITED;
+  }
+
+  /**
+   * Starts a new report cycle on the calling thread, resetting the CPU time charged so far.
+   */
+  public void startCycle() {
+    if (unlimited) {
+      return;
+    }
+    cycleCpuNanos.set(0);
+    cycleStartNanos.set(time.nanoseconds());
+    long current = cycle.incrementAndGet();
+    long[] state = threadCpu.get();
+    state[0] = current;
+    state[1] = ThreadUsage.currentCpuNanos();
+  }
+
+  /**
+   * Charges the CPU time the calling thread used since its previous checkpoint, and sleeps if the
+   * agent is over its share of a core.
+   *
+   * @return false if the CPU time budget of the cycle is used up or the thread was interrupted
+   *     while it slept, true if the caller may go on with deferrable work.
+   */
+  public boolean checkpoint() {
+    if (unlimited) {
+      return true;
+    }
+    long[] state = threadCpu.get();
+    long nowCpuNanos = ThreadUsage.currentCpuNanos();
+    long current = cycle.get();
+    long chargedNanos;
+    if (state[0] < 0) {
+      // First checkpoint of a thread outside of startCycle() or startTask(), which is charged from
+      // now on.
+      chargedNanos = cycleCpuNanos.get();
+    } else {
+      // A task that outlived its cycle charges the rest of its CPU time to the current one.
+      chargedNanos = cycleCpuNanos.addAndGet(nowCpuNanos - state[1]);
+    }
+    state[0] = current;
+    state[1] = nowCpuNanos;
+
+    if (maxCoreFraction < 1.0) {
+      long elapsedNanos = time.nanoseconds() - cycleStartNanos.get();
+      long requiredNanos = (long) (chargedNanos / maxCoreFraction);
+      if (requiredNanos > elapsedNanos) {
+        if (!sleep(requiredNanos - elapsedNanos)) {
+          return false;
+        }
+      }
+    }
+    return chargedNanos < cycleCpuBudgetNanos;
+  }
+
+  /**
+   * Starts charging the CPU time of the calling thread to the current cycle.  Pool threads call
+   * this when they pick up work of a cycle, e.g. a collector of a composite collector, so that all
+   * of the work's CPU time is charged, not just what it used after its first checkpoint.
+   */
+  public void startTask() {
+    if (unlimited) {
+      return;
+    }
+    long[] state = threadCpu.get();
+    state[0] = cycle.get();
+    state[1] = ThreadUsage.currentCpuNanos();
+  }
+
+  /**
+   * Charges the CPU time the calling thread used since {@link #startTask()} or its previous
+   * checkpoint, and stops charging it.  This never sleeps; the next checkpoint of the cycle, e.g.
+   * the reporter's after collecting, throttles for it.
+   */
+  public void endTask() {
+    if (unlimited) {
+      return;
+    }
+    long[] state = threadCpu.get();
+    if (state[0] >= 0) {
+      cycleCpuNanos.addAndGet(ThreadUsage.currentCpuNanos() - state[1]);
+      state[0] = -1;
+    }
+  }
+
+  /**
+   * Blocks until sending the given number of bytes keeps the agent within its egress cap.
+   *
+   * @return false if the thread was interrupted while it waited.
+   */
+  public boolean acquireEgress(long bytes) {
+    if (egressBytesPerSec == Long.MAX_VALUE) {
+      return true;
+    }
+    long waitNanos;
+    synchronized (this) {
+      long nowNanos = time.nanoseconds();
+      long startNanos = nextEgressNanos == Long.MIN_VALUE ? nowNanos
+                                                          : Math.max(nowNanos, nextEgressNanos);
+      nextEgressNanos = startNanos + bytes * TimeUnit.SECONDS.toNanos(1) / egressBytesPerSec;
+      waitNanos = startNanos - nowNanos;
+    }
+    return waitNanos <= 0 || sleep(waitNanos);
+  }
+
+  /**
+   * @return The CPU time charged to the current cycle so far.
+   */
+  public long cycleCpuNanos() {
+    return cycleCpuNanos.get();
+  }
+
+  /**
+   * @return Total time the agent's threads slept to stay within their limits.
+   */
+  public long throttledNanos() {
+    return throttledNanos.get();
+  }
+
+  private boolean sleep(long nanos) {
+    throttledNanos.addAndGet(nanos);
+    time.sleep(Math.max(1, TimeUnit.NANOSECONDS.toMillis(nanos)));
+    // Time.sleep() restores the interrupt flag instead of throwing.
+    return !Thread.currentThread().isInterrupted();
+  }
+
+}
@@ -0,0 +1,121 @@
+/**
+ * Copyright 2018 Confluent Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package io.confluent.support.metrics.agent;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+
+/**
+ * A snapshot of the wall clock, and of the CPU time and allocated bytes of the current thread.
+ *
+ * <p>CPU time and allocated bytes are reported as 0 if the JVM does not support measuring them.
+ */
+public final class ThreadUsage {
+
+  private static final ThreadMXBean THREAD_MX_BEAN = ManagementFactory.getThreadMXBean();
+  private static final boolean CPU_TIME_SUPPORTED =
+      THREAD_MX_BEAN.isCurrentThreadCpuTimeSupported() && THREAD_MX_BEAN.isThreadCpuTimeEnabled();
+  private static final boolean ALLOCATED_BYTES_SUPPORTED = allocatedBytesSupported();
+
+  public static final ThreadUsage ZERO = new ThreadUsage(0, 0, 0);
+
+  private final long wallNanos;
+  private final long cpuNanos;
+  private final long allocatedBytes;
+
+  private ThreadUsage(long wallNanos, long cpuNanos, long allocatedBytes) {
+    this.wallNanos = wallNanos;
+    this.cpuNanos = cpuNanos;
+    this.allocatedBytes = allocatedBytes;
+  }
+
+  /**
+   * @return A snapshot of the current thread's usage.
+   */
+  public static ThreadUsage current() {
+    long cpuNanos = currentCpuNanos();
+    long allocatedBytes = ALLOCATED_BYTES_SUPPORTED
+        ? ((com.sun.management.ThreadMXBean) THREAD_MX_BEAN)
+            .getThreadAllocatedBytes(Thread.currentThread().getId())
+        : 0;
+    return new ThreadUsage(System.nanoTime(), cpuNanos, allocatedBytes);
+  }
+
+  /**
+   * @return The CPU time of the current thread, or 0 if the JVM cannot measure it.
+   */
+  public static long currentCpuNanos() {
+    return CPU_TIME_SUPPORTED ? THREAD_MX_BEAN.getCurrentThreadCpuTime() : 0;
+  }
+
+  /**
+   * @return Whether {@link #currentCpuNanos()} measures anything.
+   */
+  public static boolean isCpuTimeSupported() {
+    return CPU_TIME_SUPPORTED;
+  }
+
+  /**
+   * @return The usage between the given earlier snapshot and this one.
+   */
+  public ThreadUsage since(ThreadUsage earlier) {
+    return new ThreadUsage(
+        wallNanos - earlier.wallNanos,
+        cpuNanos - earlier.cpuNanos,
+        allocatedBytes - earlier.allocatedBytes
+    );
+  }
+
+  public ThreadUsage plus(ThreadUsage other) {
+    return new ThreadUsage(
+        wallNanos + other.wallNanos,
+        cpuNanos + other.cpuNanos,
+        allocatedBytes + other.allocatedBytes
+    );
+  }
+
+  /**
+   * @return The CPU time and allocated bytes of this usage, with a wall time of 0, e.g. to add the
+   *     usage of other threads that ran while the current thread waited for them.
+   */
+  public ThreadUsage withoutWallTime() {
+    return new ThreadUsage(0, cpuNanos, allocatedBytes);
+  }
+
+  public long wallNanos() {
+    return wallNanos;
+  }
+
+  public long cpuNanos() {
+    return cpuNanos;
+  }
+
+  public long allocatedBytes() {
+    return allocatedBytes;
+  }
+
+  private static boolean allocatedBytesSupported() {
+    try {
+      if (THREAD_MX_BEAN instanceof com.sun.management.ThreadMXBean) {
+        com.sun.management.ThreadMXBean bean = (com.sun.management.ThreadMXBean) THREAD_MX_BEAN;
+        return bean.isThreadAllocatedMemorySupported() && bean.isThreadAllocatedMemoryEnabled();
+      }
+    } catch (LinkageError e) {
+      // Not a HotSpot-based JVM.
+    }
+    return false;
+  }
+
+}
@@ -0,0 +1,89 @@
+/**
+ * Copyright 2018 Confluent Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package io.confluent.support.metrics.collectors;
+
+import org.apache.avro.generic.GenericContainer;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import io.confluent.support.metrics.SinkOverhead;
+import io.confluent.support.metrics.SupportKafkaMetricsAgent;
+import io.confluent.support.metrics.agent.AgentMetrics;
+import io.confluent.support.metrics.agent.CycleStats;
+import io.confluent.support.metrics.agent.ThreadUsage;
+import io.confluent.support.metrics.common.Collector;
+import io.confluent.support.metrics.common.Uuid;
+import io.confluent.support.metrics.common.time.TimeUtils;
+
+/**
+ * Reports the overhead of the metrics agent itself, i.e. what collecting, serializing and
+ * submitting the metrics record cost the broker.
+ *
+ * <p>A cycle cannot measure itself while it is running, so every record describes the previous
+ * cycle.  The record of the first cycle is all zeros.
+ */
+public class AgentCollector extends Collector {
+
+  private final AgentMetrics agentMetrics;
+  private final TimeUtils time;
+  private final Uuid uuid;
+
+  public AgentCollector(AgentMetrics agentMetrics, TimeUtils time, Uuid uuid) {
+    super();
+    this.agentMetrics = agentMetrics;
+    this.time = time;
+    this.uuid = uuid;
+  }
+
+  /**
+   * @return A new metrics record.
+   */
+  @Override
+  public GenericContainer collectMetrics() {
+    CycleStats cycle = agentMetrics.lastCycle();
+    SupportKafkaMetricsAgent metricsRecord = new SupportKafkaMetricsAgent();
+    metricsRecord.setTimestamp(time.nowInUnixTime());
+    metricsRecord.setCollectorState(this.getRuntimeState().stateId());
+    metricsRecord.setBrokerProcessUUID(uuid.toString());
+    metricsRecord.setCycles(agentMetrics.getCycleCount());
+    metricsRecord.setCollectWallMicros(micros(cycle.collect().wallNanos()));
+    metricsRecord.setCollectCpuMicros(micros(cycle.collect().cpuNanos()));
+    metricsRecord.setSerializeWallMicros(micros(cycle.serialize().wallNanos()));
+    metricsRecord.setSerializeCpuMicros(micros(cycle.serialize().cpuNanos()));
+    List<SinkOverhead> sinks = new ArrayList<>(cycle.submits().size());
+    for (Map.Entry<String, ThreadUsage> entry : cycle.submits().entrySet()) {
+      SinkOverhead sink = new SinkOverhead();
+      sink.setName(entry.getKey());
+      sink.setWallMicros(micros(entry.getValue().wallNanos()));
+      sink.setCpuMicros(micros(entry.getValue().cpuNanos()));
+      sinks.add(sink);
+    }
+    metricsRecord.setSinks(sinks);
+    metricsRecord.setAllocatedBytes(cycle.total().allocatedBytes());
+    metricsRecord.setPayloadBytes(cycle.payloadBytes());
+    metricsRecord.setTotalCpuMicros(agentMetrics.getTotalCpuTimeMicros());
+    metricsRecord.setTotalAllocatedBytes(agentMetrics.getTotalAllocatedBytes());
+    metricsRecord.setTotalPayloadBytes(agentMetrics.getTotalPayloadBytes());
+    return metricsRecord;
+  }
+
+  private static long micros(long nanos) {
+    return TimeUnit.NANOSECONDS.toMicros(nanos);
+  }
+
+}
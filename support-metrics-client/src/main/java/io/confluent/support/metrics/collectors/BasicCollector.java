@@ -27,8 +27,10 @@ import kafka.server.KafkaServer;
 public class BasicCollector extends Collector {
 
   private final TimeUtils time;
-  private final Uuid uuid;
-  private final KafkaServer server;
+  private final FieldCache.Field<String> kafkaVersion;
+  private final FieldCache.Field<String> confluentPlatformVersion;
+  private final FieldCache.Field<String> brokerProcessUuid;
+  private final FieldCache.Field<String> clusterId;
 
   public BasicCollector(
       KafkaServer server,
@@ -41,11 +43,29 @@ public class BasicCollector extends Collector {
       KafkaServer server,
       TimeUtils time,
       Uuid uuid
+  ) {
+    this(server, time, uuid, new FieldCache(time));
+  }
+
+  /**
+   * @param fieldCache Caches the fields that do not change for the lifetime of the broker.
+   */
+  public BasicCollector(
+      KafkaServer server,
+      TimeUtils time,
+      Uuid uuid,
+      FieldCache fieldCache
   ) {
     super();
-    this.server = server;
     this.time = time;
-    this.uuid = uuid;
+    this.kafkaVersion =
+        fieldCache.field("kafkaVersion", FieldCache.FOREVER, AppInfoParser::getVersion);
+    this.confluentPlatformVersion =
+        fieldCache.field("confluentPlatformVersion", FieldCache.FOREVER, Version::getVersion);
+    this.brokerProcessUuid =
+        fieldCache.field("brokerProcessUUID", FieldCache.FOREVER, uuid::toString);
+    // The cluster id is null until the broker has registered with ZooKeeper.
+    this.clusterId = fieldCache.field("clusterId", FieldCache.FOREVER, () -> server.clusterId());
   }
 
   /**
@@ -55,11 +75,11 @@ public class BasicCollector extends Collector {
   public GenericContainer collectMetrics() {
     SupportKafkaMetricsBasic metricsRecord = new SupportKafkaMetricsBasic();
     metricsRecord.setTimestamp(time.nowInUnixTime());
-    metricsRecord.setKafkaVersion(AppInfoParser.getVersion());
-    metricsRecord.setConfluentPlatformVersion(Version.getVersion());
+    metricsRecord.setKafkaVersion(kafkaVersion.get());
+    metricsRecord.setConfluentPlatformVersion(confluentPlatformVersion.get());
     metricsRecord.setCollectorState(this.getRuntimeState().stateId());
-    metricsRecord.setBrokerProcessUUID(uuid.toString());
-    metricsRecord.setClusterId(server.clusterId());
+    metricsRecord.setBrokerProcessUUID(brokerProcessUuid.get());
+    metricsRecord.setClusterId(clusterId.get());
     return metricsRecord;
   }
 
@@ -0,0 +1,67 @@
+/**
+ * Copyright 2018 Confluent Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package io.confluent.support.metrics.collectors;
+
+import org.apache.avro.generic.GenericContainer;
+
+import java.util.concurrent.TimeUnit;
+
+import io.confluent.support.metrics.MetadataSource;
+import io.confluent.support.metrics.SupportKafkaMetricsCluster;
+import io.confluent.support.metrics.common.Collector;
+import io.confluent.support.metrics.common.Uuid;
+import io.confluent.support.metrics.common.time.TimeUtils;
+import io.confluent.support.metrics.metadata.MetadataSnapshot;
+import io.confluent.support.metrics.metadata.MetadataSnapshotProvider;
+
+/**
+ * Reports cluster-wide topic, partition and broker counts, read from the broker's local metadata
+ * cache via {@link MetadataSnapshotProvider}.
+ */
+public class ClusterMetadataCollector extends Collector {
+
+  private final MetadataSnapshotProvider metadata;
+  private final TimeUtils time;
+  private final Uuid uuid;
+
+  public ClusterMetadataCollector(MetadataSnapshotProvider metadata, TimeUtils time, Uuid uuid) {
+    super();
+    this.metadata = metadata;
+    this.time = time;
+    this.uuid = uuid;
+  }
+
+  /**
+   * @return A new metrics record, or null if no cluster metadata is available yet.
+   */
+  @Override
+  public GenericContainer collectMetrics() {
+    MetadataSnapshot snapshot = metadata.snapshot();
+    if (snapshot == null) {
+      return null;
+    }
+    SupportKafkaMetricsCluster metricsRecord = new SupportKafkaMetricsCluster();
+    metricsRecord.setTimestamp(time.nowInUnixTime());
+    metricsRecord.setCollectorState(this.getRuntimeState().stateId());
+    metricsRecord.setBrokerProcessUUID(uuid.toString());
+    metricsRecord.setTopicCount(snapshot.topicCount());
+    metricsRecord.setPartitionCount(snapshot.partitionCount());
+    metricsRecord.setBrokerCount(snapshot.brokerCount());
+    metricsRecord.setSource(MetadataSource.valueOf(snapshot.source().name()));
+    metricsRecord.setSnapshotTimestamp(TimeUnit.MILLISECONDS.toSeconds(snapshot.createdMs()));
+    return metricsRecord;
+  }
+
+}
@@ -0,0 +1,45 @@
+/**
+ * Copyright 2018 Confluent Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package io.confluent.support.metrics.collectors;
+
+import org.apache.kafka.common.utils.Time;
+
+import io.confluent.support.metrics.common.Collector;
+import io.confluent.support.metrics.metadata.MetadataSnapshotProvider;
+
+public class ClusterMetadataCollectorProvider implements CollectorProvider {
+
+  public static final String NAME = "cluster";
+
+  public static final String REFRESH_INTERVAL_MS_CONFIG =
+      "confluent.support.metrics.cluster.refresh.interval.ms";
+
+  @Override
+  public String name() {
+    return NAME;
+  }
+
+  @Override
+  public Collector create(CollectorContext context) {
+    MetadataSnapshotProvider metadata = new MetadataSnapshotProvider(
+        context.server(),
+        Time.SYSTEM,
+        context.getLong(REFRESH_INTERVAL_MS_CONFIG,
+                        MetadataSnapshotProvider.DEFAULT_REFRESH_INTERVAL_MS)
+    );
+    return new ClusterMetadataCollector(metadata, context.time(), context.uuid());
+  }
+
+}
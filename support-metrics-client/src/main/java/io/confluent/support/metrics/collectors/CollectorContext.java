@@ -0,0 +1,173 @@
+/**
+ * Copyright 2018 Confluent Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package io.confluent.support.metrics.collectors;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.Properties;
+
+import io.confluent.support.metrics.agent.AgentMetrics;
+import io.confluent.support.metrics.agent.MemoryBudget;
+import io.confluent.support.metrics.agent.ResourceGovernor;
+import io.confluent.support.metrics.common.Uuid;
+import io.confluent.support.metrics.common.time.TimeUtils;
+import kafka.server.KafkaServer;
+
+/**
+ * Everything a {@link CollectorProvider} may need to create a collector for a broker.
+ *
+ * <p>All collectors created from the same context share its {@link Uuid}, so that their records
+ * carry the same {@code brokerProcessUUID}.
+ */
+public class CollectorContext {
+
+  private static final Logger log = LoggerFactory.getLogger(CollectorContext.class);
+
+  private final TimeUtils time;
+  private final KafkaServer server;
+  private final Properties serverConfiguration;
+  private final Runtime serverRuntime;
+  private final Uuid uuid;
+  private final AgentMetrics agentMetrics;
+  private final ResourceGovernor governor;
+  private final MemoryBudget memoryBudget;
+
+  public CollectorContext(
+      TimeUtils time,
+      KafkaServer server,
+      Properties serverConfiguration,
+      Runtime serverRuntime
+  ) {
+    this(time, server, serverConfiguration, serverRuntime, new Uuid());
+  }
+
+  public CollectorContext(
+      TimeUtils time,
+      KafkaServer server,
+      Properties serverConfiguration,
+      Runtime serverRuntime,
+      Uuid uuid
+  ) {
+    this(time, server, serverConfiguration, serverRuntime, uuid, new AgentMetrics(),
+         ResourceGovernor.unlimited());
+  }
+
+  public CollectorContext(
+      TimeUtils time,
+      KafkaServer server,
+      Properties serverConfiguration,
+      Runtime serverRuntime,
+      Uuid uuid,
+      AgentMetrics agentMetrics,
+      ResourceGovernor governor
+  ) {
+    this(time, server, serverConfiguration, serverRuntime, uuid, agentMetrics, governor,
+         MemoryBudget.unlimited());
+  }
+
+  public CollectorContext(
+      TimeUtils time,
+      KafkaServer server,
+      Properties serverConfiguration,
+      Runtime serverRuntime,
+      Uuid uuid,
+      AgentMetrics agentMetrics,
+      ResourceGovernor governor,
+      MemoryBudget memoryBudget
+  ) {
+    this.time = time;
+    this.server = server;
+    this.serverConfiguration = serverConfiguration != null ? serverConfiguration : new Properties();
+    this.serverRuntime = serverRuntime;
+    this.uuid = uuid;
+    this.agentMetrics = agentMetrics;
+    this.governor = governor;
+    this.memoryBudget = memoryBudget;
+  }
+
+  public TimeUtils time() {
+    return time;
+  }
+
+  public KafkaServer server() {
+    return server;
+  }
+
+  /**
+   * @return The properties the broker was created from, including the Proactive Support ones.
+   */
+  public Properties serverConfiguration() {
+    return serverConfiguration;
+  }
+
+  public Runtime serverRuntime() {
+    return serverRuntime;
+  }
+
+  public Uuid uuid() {
+    return uuid;
+  }
+
+  /**
+   * @return The overhead of the metrics agent that the collectors are created for.
+   */
+  public AgentMetrics agentMetrics() {
+    return agentMetrics;
+  }
+
+  /**
+   * @return The governor that collectors consult between units of deferrable work.
+   */
+  public ResourceGovernor governor() {
+    return governor;
+  }
+
+  /**
+   * @return The budget that collectors reserve the memory they retain between collections from.
+   */
+  public MemoryBudget memoryBudget() {
+    return memoryBudget;
+  }
+
+  /**
+   * @return The value of the given setting, or the default if it is missing or not a number.
+   */
+  public long getLong(String name, long defaultValue) {
+    String value = serverConfiguration.getProperty(name);
+    if (value == null || value.trim().isEmpty()) {
+      return defaultValue;
+    }
+    try {
+      return Long.parseLong(value.trim());
+    } catch (NumberFormatException e) {
+      log.warn("Invalid value '{}' for {}, using default {}", value, name, defaultValue);
+      return defaultValue;
+    }
+  }
+
+  /**
+   * @return The value of the given setting, or the default if it is missing or not a number.
+   */
+  public int getInt(String name, int defaultValue) {
+    long value = getLong(name, defaultValue);
+    if (value < Integer.MIN_VALUE || value > Integer.MAX_VALUE) {
+      log.warn("Invalid value '{}' for {}, using default {}", value, name, defaultValue);
+      return defaultValue;
+    }
+    return (int) value;
+  }
+
+}
@@ -14,7 +14,14 @@
 
 package io.confluent.support.metrics.collectors;
 
-import java.lang.reflect.Constructor;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
 import java.util.Properties;
 
 import io.confluent.support.metrics.common.Collector;
@@ -22,92 +29,89 @@ import io.confluent.support.metrics.common.CollectorType;
 import io.confluent.support.metrics.common.time.TimeUtils;
 import kafka.server.KafkaServer;
 
+/**
+ * Creates the collector of a metrics reporter from the {@link CollectorRegistry}.
+ *
+ * <p>The collector type (BASIC or FULL) selects the primary collector.  If additional collectors
+ * are requested, the primary collector and the additional ones are run together by a
+ * {@link CompositeCollector}.  Unknown or failing additional collectors are logged and left out.
+ */
 public class CollectorFactory {
 
+  private static final Logger log = LoggerFactory.getLogger(CollectorFactory.class);
+
   private final CollectorType type;
   private final Collector collector;
 
-  private static CollectorConstructorSupplier
-      basicCollectorSupplier =
-      new CollectorFactory.CollectorConstructorSupplier(new CollectorFactory.ConstructorSupplier() {
-        @Override
-        public Constructor get() throws ClassNotFoundException, NoSuchMethodException {
-          return Class.forName("io.confluent.support.metrics.collectors.BasicCollector")
-              .getConstructor(KafkaServer.class, TimeUtils.class);
-        }
-      });
-
-  private static CollectorConstructorSupplier
-      fullCollectorSupplier =
-      new CollectorFactory.CollectorConstructorSupplier(new CollectorFactory.ConstructorSupplier() {
-        @Override
-        public Constructor get() throws ClassNotFoundException, NoSuchMethodException {
-          return Class.forName("io.confluent.support.metrics.collectors.FullCollector")
-              .getConstructor(KafkaServer.class, Properties.class, Runtime.class, TimeUtils.class);
-        }
-      });
-
-  private interface ConstructorSupplier {
-
-    Constructor get() throws ClassNotFoundException, NoSuchMethodException;
-  }
-
-  // this code's structure is based on Compressor's structure @see{org.apache.kafka.common.record
-  // .Compressor}
-  private static class CollectorConstructorSupplier {
-
-    final CollectorFactory.ConstructorSupplier delegate;
-    transient volatile boolean initialized;
-    transient Constructor value;
-
-    public CollectorConstructorSupplier(CollectorFactory.ConstructorSupplier delegate) {
-      this.delegate = delegate;
-    }
-
-    public Constructor get() throws NoSuchMethodException, ClassNotFoundException {
-      if (!initialized) {
-        synchronized (this) {
-          if (!initialized) {
-            Constructor constructor = delegate.get();
-            value = constructor;
-            initialized = true;
-            return constructor;
-          }
-        }
-      }
-      return value;
-    }
-  }
-
   public CollectorFactory(
       CollectorType type,
       TimeUtils time,
       KafkaServer server,
       Properties serverConfiguration,
       Runtime serverRuntime
+  ) {
+    this(
+        type,
+        new CollectorContext(time, server, serverConfiguration, serverRuntime),
+        Collections.<String>emptyList(),
+        CompositeCollector.DEFAULT_MAX_THREADS,
+        CompositeCollector.DEFAULT_TIMEOUT_MS
+    );
+  }
+
+  /**
+   * @param additionalCollectors Names of registered collectors to run next to the primary one.
+   * @param maxThreads Upper bound of collectors that run at the same time.
+   * @param timeoutMs Time budget of each collector, per collection.
+   */
+  public CollectorFactory(
+      CollectorType type,
+      CollectorContext context,
+      List<String> additionalCollectors,
+      int maxThreads,
+      long timeoutMs
   ) {
     this.type = type;
+    CollectorRegistry registry = CollectorRegistry.getInstance();
+    String primaryName = primaryCollectorName(type);
+    Collector primary;
     try {
-      switch (type) {
-        case BASIC:
-          collector = (Collector) basicCollectorSupplier.get().newInstance(server, time);
-          break;
-        case FULL:
-          collector = (Collector) fullCollectorSupplier.get().newInstance(
-              server,
-              serverConfiguration,
-              serverRuntime,
-              time
-          );
-          break;
-        default:
-          throw new IllegalArgumentException("Unknown collector type");
-      }
+      primary = registry.create(primaryName, context);
     } catch (Exception e) {
       throw new RuntimeException("Collector factory failed to create instance.", e);
     }
+
+    Map<String, Collector> collectors = new LinkedHashMap<>();
+    collectors.put(primaryName, primary);
+    for (String name : additionalCollectors) {
+      if (collectors.containsKey(name)) {
+        continue;
+      }
+      try {
+        collectors.put(name, registry.create(name, context));
+      } catch (Exception e) {
+        log.error("Failed to create collector '{}', it will be disabled: {}", name, e.getMessage());
+      }
+    }
+
+    if (collectors.size() == 1) {
+      collector = primary;
+    } else {
+      collector = new CompositeCollector(
+          context.time(), context.uuid(), collectors, maxThreads, timeoutMs,
+          context.memoryBudget(), context.governor());
+    }
   }
 
+  private static String primaryCollectorName(CollectorType type) {
+    switch (type) {
+      case BASIC:
+      case FULL:
+        return type.name().toLowerCase(Locale.ROOT);
+      default:
+        throw new IllegalArgumentException("Unknown collector type");
+    }
+  }
 
   public Collector getCollector() {
     return collector;
@@ -0,0 +1,41 @@
+/**
+ * Copyright 2018 Confluent Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package io.confluent.support.metrics.collectors;
+
+import io.confluent.support.metrics.common.Collector;
+
+/**
+ * Service provider interface for collectors.
+ *
+ * <p>Providers are discovered through {@link java.util.ServiceLoader}: a jar that ships collectors
+ * lists its provider classes in
+ * {@code META-INF/services/io.confluent.support.metrics.collectors.CollectorProvider}.  Providers
+ * must have a public no-arg constructor, and are instantiated once per JVM by the
+ * {@link CollectorRegistry}.  Collectors are enabled by name via
+ * {@code confluent.support.metrics.collectors}.
+ */
+public interface CollectorProvider {
+
+  /**
+   * @return The unique name of the collectors created by this provider, e.g. {@code basic}.
+   */
+  String name();
+
+  /**
+   * Creates a new collector.  Called once per metrics reporter, not once per collection.
+   */
+  Collector create(CollectorContext context);
+
+}
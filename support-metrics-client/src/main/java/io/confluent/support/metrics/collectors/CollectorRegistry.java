@@ -0,0 +1,115 @@
+/**
+ * Copyright 2018 Confluent Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package io.confluent.support.metrics.collectors;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.ServiceConfigurationError;
+import java.util.ServiceLoader;
+import java.util.Set;
+
+import io.confluent.support.metrics.common.Collector;
+
+/**
+ * Registry of all {@link CollectorProvider}s on the class path.
+ *
+ * <p>Providers are discovered through {@link ServiceLoader} the first time the registry is used,
+ * and kept for the lifetime of the JVM.  Creating a collector afterwards is a plain method call on
+ * its provider.  A provider that fails to load is logged and ignored, so that a broken plugin jar
+ * cannot prevent the broker from starting.  If two providers use the same name, the first one on
+ * the class path wins.
+ */
+public class CollectorRegistry {
+
+  private static final Logger log = LoggerFactory.getLogger(CollectorRegistry.class);
+
+  private final Map<String, CollectorProvider> providers;
+
+  // Initialization-on-demand holder: the class path is scanned on first use only.
+  private static class Holder {
+
+    static final CollectorRegistry INSTANCE = new CollectorRegistry(
+        ServiceLoader.load(CollectorProvider.class, CollectorRegistry.class.getClassLoader())
+    );
+  }
+
+  public static CollectorRegistry getInstance() {
+    return Holder.INSTANCE;
+  }
+
+  // Visible for testing
+  CollectorRegistry(Iterable<CollectorProvider> discovered) {
+    Map<String, CollectorProvider> byName = new LinkedHashMap<>();
+    Iterator<CollectorProvider> iterator = discovered.iterator();
+    while (true) {
+      try {
+        if (!iterator.hasNext()) {
+          break;
+        }
+      } catch (ServiceConfigurationError e) {
+        // The provider configurations themselves cannot be read, and would fail again on every
+        // further attempt.
+        log.error("Failed to discover collector providers: {}", e.getMessage());
+        break;
+      }
+      CollectorProvider provider;
+      try {
+        provider = iterator.next();
+      } catch (ServiceConfigurationError e) {
+        log.error("Failed to load collector provider: {}", e.getMessage());
+        continue;
+      }
+      CollectorProvider existing = byName.get(provider.name());
+      if (existing != null) {
+        log.warn("Ignoring collector provider {} because {} already provides collector '{}'",
+                 provider.getClass().getName(), existing.getClass().getName(), provider.name());
+      } else {
+        byName.put(provider.name(), provider);
+      }
+    }
+    this.providers = Collections.unmodifiableMap(byName);
+  }
+
+  /**
+   * @return The names of all available collectors.
+   */
+  public Set<String> names() {
+    return providers.keySet();
+  }
+
+  public boolean contains(String name) {
+    return providers.containsKey(name);
+  }
+
+  /**
+   * Creates a new instance of the named collector.
+   *
+   * @throws IllegalArgumentException if no provider for the given name is available
+   */
+  public Collector create(String name, CollectorContext context) {
+    CollectorProvider provider = providers.get(name);
+    if (provider == null) {
+      throw new IllegalArgumentException("Unknown collector '" + name + "', available collectors: "
+                                         + providers.keySet());
+    }
+    return provider.create(context);
+  }
+
+}
@@ -0,0 +1,383 @@
+/**
+ * Copyright 2018 Confluent Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package io.confluent.support.metrics.collectors;
+
+import org.apache.avro.generic.GenericContainer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.Closeable;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import io.confluent.support.metrics.CollectorSection;
+import io.confluent.support.metrics.SectionStatus;
+import io.confluent.support.metrics.SupportKafkaMetricsComposite;
+import io.confluent.support.metrics.agent.MemoryBudget;
+import io.confluent.support.metrics.agent.ResourceGovernor;
+import io.confluent.support.metrics.agent.ThreadUsage;
+import io.confluent.support.metrics.common.Collector;
+import io.confluent.support.metrics.common.Uuid;
+import io.confluent.support.metrics.common.time.TimeUtils;
+import io.confluent.support.metrics.serde.AvroSerializer;
+
+/**
+ * Runs several collectors concurrently and merges their records into a single
+ * {@link SupportKafkaMetricsComposite} record.
+ *
+ * <p>Every collector runs on a small, bounded pool of daemon threads and has its own time budget,
+ * which starts when the collector starts running, not when it is queued for a pool thread.  A
+ * collector that does not return within its budget is reported as {@code TIMED_OUT} and
+ * interrupted; a collector that fails is reported as {@code FAILED}; a collector that never got a
+ * pool thread, because the collectors ahead of it used up all of their budgets, is reported as
+ * {@code SKIPPED}.  Neither delays nor affects the sections of the other collectors.  A collector
+ * whose previous run has not returned yet (e.g. because it ignored the interrupt) is not started
+ * again but reported as {@code SKIPPED}, so a hung collector occupies at most one pool thread.
+ *
+ * <p>Each section's record is serialized on the collector's own thread, as part of its budget.
+ * The serialized sections of a record are reserved from a {@link MemoryBudget} until the next
+ * collection.  Sections are admitted in order, so the primary collector's section comes first; a
+ * section that would not leave room for serializing the record is dropped and reported as
+ * {@code SKIPPED}.
+ *
+ * <p>The CPU time of every collector is charged to the cycle of a {@link ResourceGovernor}.
+ */
+public class CompositeCollector extends Collector implements Closeable {
+
+  private static final Logger log = LoggerFactory.getLogger(CompositeCollector.class);
+
+  public static final long DEFAULT_TIMEOUT_MS = 10 * 1000L;
+  public static final int DEFAULT_MAX_THREADS = 2;
+
+  private final TimeUtils time;
+  private final Uuid uuid;
+  private final Map<String, Collector> collectors;
+  private final Map<String, AtomicBoolean> busy = new LinkedHashMap<>();
+  private final long timeoutMs;
+  private final ThreadPoolExecutor executor;
+  private final MemoryBudget.Reservation sectionPayloads;
+  private final ResourceGovernor governor;
+  private volatile ThreadUsage lastPoolUsage = ThreadUsage.ZERO;
+
+  /**
+   * @param collectors The collectors to run, by name.  Sections are reported in iteration order.
+   * @param maxThreads Upper bound of collectors that run at the same time.
+   * @param timeoutMs Time budget of each collector, per collection.
+   */
+  public CompositeCollector(
+      TimeUtils time,
+      Uuid uuid,
+      Map<String, Collector> collectors,
+      int maxThreads,
+      long timeoutMs
+  ) {
+    this(time, uuid, collectors, maxThreads, timeoutMs, MemoryBudget.unlimited());
+  }
+
+  /**
+   * @param memoryBudget The budget the serialized sections of a record are reserved from.
+   */
+  public CompositeCollector(
+      TimeUtils time,
+      Uuid uuid,
+      Map<String, Collector> collectors,
+      int maxThreads,
+      long timeoutMs,
+      MemoryBudget memoryBudget
+  ) {
+    this(time, uuid, collectors, maxThreads, timeoutMs, memoryBudget,
+         ResourceGovernor.unlimited());
+  }
+
+  /**
+   * @param governor The governor the collectors' CPU time is charged to.
+   */
+  public CompositeCollector(
+      TimeUtils time,
+      Uuid uuid,
+      Map<String, Collector> collectors,
+      int maxThreads,
+      long timeoutMs,
+      MemoryBudget memoryBudget,
+      ResourceGovernor governor
+  ) {
+    super();
+    if (collectors == null || collectors.isEmpty()) {
+      throw new IllegalArgumentException("At least one collector must be specified");
+    }
+    if (maxThreads <= 0) {
+      throw new IllegalArgumentException("maxThreads must be positive");
+    }
+    this.time = time;
+    this.uuid = uuid;
+    this.collectors = new LinkedHashMap<>(collectors);
+    for (String name : this.collectors.keySet()) {
+      busy.put(name, new AtomicBoolean(false));
+    }
+    this.timeoutMs = timeoutMs;
+    int threads = Math.min(maxThreads, this.collectors.size());
+    this.executor = new ThreadPoolExecutor(threads, threads, 60, TimeUnit.SECONDS,
+                                           new LinkedBlockingQueue<Runnable>(),
+                                           new DaemonThreadFactory());
+    this.executor.allowCoreThreadTimeOut(true);
+    this.sectionPayloads = memoryBudget.reservation();
+    this.governor = governor;
+  }
+
+  /**
+   * @return A new metrics record that holds one section per collector.
+   */
+  @Override
+  public GenericContainer collectMetrics() {
+    Map<String, Task> pending = new LinkedHashMap<>();
+    List<CollectorSection> sections = new ArrayList<>(collectors.size());
+    // The sections of the previous record are no longer needed.
+    sectionPayloads.close();
+    long startNanos = System.nanoTime();
+
+    for (Map.Entry<String, Collector> entry : collectors.entrySet()) {
+      AtomicBoolean running = busy.get(entry.getKey());
+      if (!running.compareAndSet(false, true)) {
+        log.warn("Collector '{}' is still busy with a previous run, skipping it", entry.getKey());
+        pending.put(entry.getKey(), null);
+        continue;
+      }
+      Task task = new Task(entry.getValue(), running, governor);
+      try {
+        task.future = executor.submit(task);
+        pending.put(entry.getKey(), task);
+      } catch (RejectedExecutionException e) {
+        running.set(false);
+        pending.put(entry.getKey(), null);
+      }
+    }
+
+    // Queued collectors start once the ones ahead of them return or run out of time.
+    long waves = (pending.size() + executor.getMaximumPoolSize() - 1)
+                 / executor.getMaximumPoolSize();
+    long queueDeadlineNanos = startNanos + waves * TimeUnit.MILLISECONDS.toNanos(timeoutMs);
+    ThreadUsage poolUsage = ThreadUsage.ZERO;
+    for (Map.Entry<String, Task> entry : pending.entrySet()) {
+      Task task = entry.getValue();
+      sections.add(awaitSection(entry.getKey(), task, queueDeadlineNanos));
+      if (task != null && task.usage != null) {
+        poolUsage = poolUsage.plus(task.usage.withoutWallTime());
+      }
+    }
+    lastPoolUsage = poolUsage;
+
+    SupportKafkaMetricsComposite metricsRecord = new SupportKafkaMetricsComposite();
+    metricsRecord.setTimestamp(time.nowInUnixTime());
+    metricsRecord.setCollectorState(this.getRuntimeState().stateId());
+    metricsRecord.setBrokerProcessUUID(uuid.toString());
+    metricsRecord.setSections(sections);
+    return metricsRecord;
+  }
+
+  private CollectorSection awaitSection(String name, Task task, long queueDeadlineNanos) {
+    CollectorSection section = new CollectorSection();
+    section.setName(name);
+    section.setPayload(null);
+    if (task == null) {
+      section.setStatus(SectionStatus.SKIPPED);
+      section.setElapsedMs(0L);
+      return section;
+    }
+    long timeoutNanos = TimeUnit.MILLISECONDS.toNanos(timeoutMs);
+    try {
+      byte[] payload = null;
+      boolean done = false;
+      while (!done) {
+        long nowNanos = System.nanoTime();
+        long waitNanos = task.started.get()
+                         ? task.startedNanos + timeoutNanos - nowNanos
+                         : Math.min(queueDeadlineNanos - nowNanos, timeoutNanos);
+        try {
+          payload = task.future.get(Math.max(0, waitNanos), TimeUnit.NANOSECONDS);
+          done = true;
+        } catch (TimeoutException e) {
+          // A task that started while we waited gets the rest of its own budget.
+          if (task.started.get() ? System.nanoTime() - task.startedNanos >= timeoutNanos
+                                 : System.nanoTime() >= queueDeadlineNanos) {
+            throw e;
+          }
+        }
+      }
+      if (payload != null && !admit(payload.length)) {
+        log.warn("Dropping section of collector '{}' ({} bytes): memory budget of the agent "
+                 + "exhausted", name, payload.length);
+        section.setStatus(SectionStatus.SKIPPED);
+      } else if (payload != null) {
+        section.setStatus(SectionStatus.OK);
+        section.setPayload(ByteBuffer.wrap(payload));
+      } else {
+        section.setStatus(SectionStatus.FAILED);
+      }
+    } catch (TimeoutException e) {
+      if (task.cancel()) {
+        log.warn("Collector '{}' did not start within {} ms", name,
+                 TimeUnit.NANOSECONDS.toMillis(queueDeadlineNanos - task.submittedNanos));
+        section.setStatus(SectionStatus.SKIPPED);
+      } else {
+        log.warn("Collector '{}' did not return within {} ms", name, timeoutMs);
+        section.setStatus(SectionStatus.TIMED_OUT);
+      }
+    } catch (ExecutionException e) {
+      log.error("Collector '{}' failed: {}", name, e.getCause().toString());
+      section.setStatus(SectionStatus.FAILED);
+    } catch (InterruptedException e) {
+      task.cancel();
+      section.setStatus(SectionStatus.TIMED_OUT);
+      Thread.currentThread().interrupt();
+    }
+    section.setElapsedMs(task.elapsedMs(timeoutNanos));
+    return section;
+  }
+
+  /**
+   * @return The CPU time and allocations of the collectors that returned during the most recent
+   *     collection, summed over the pool threads they ran on.  The wall time is 0, as the calling
+   *     thread waited for them.
+   */
+  public ThreadUsage lastPoolUsage() {
+    return lastPoolUsage;
+  }
+
+  /**
+   * Reserves a section, but only if its copy in the serialized record, which the reporter
+   * reserves later, would fit as well.
+   */
+  private boolean admit(long sectionBytes) {
+    if (!sectionPayloads.add(2 * sectionBytes)) {
+      return false;
+    }
+    sectionPayloads.resize(sectionPayloads.bytes() - sectionBytes);
+    return true;
+  }
+
+  @Override
+  public void setRuntimeState(RuntimeState runtimeState) {
+    super.setRuntimeState(runtimeState);
+    for (Collector collector : collectors.values()) {
+      collector.setRuntimeState(runtimeState);
+    }
+  }
+
+  /**
+   * Stops the pool threads.  Collectors that are still running are interrupted.
+   */
+  @Override
+  public void close() {
+    executor.shutdownNow();
+    sectionPayloads.close();
+  }
+
+  private static class Task implements Callable<byte[]> {
+
+    private final Collector collector;
+    private final AtomicBoolean running;
+    private final ResourceGovernor governor;
+    // Claimed either by call() to run the collector, or by cancel() to skip it.
+    private final AtomicBoolean started = new AtomicBoolean(false);
+    private volatile boolean skipped = false;
+    private final AvroSerializer encoder = new AvroSerializer();
+    private final long submittedNanos = System.nanoTime();
+    private volatile long startedNanos;
+    private volatile long finishedNanos;
+    private volatile ThreadUsage usage;
+    private Future<byte[]> future;
+
+    Task(Collector collector, AtomicBoolean running, ResourceGovernor governor) {
+      this.collector = collector;
+      this.running = running;
+      this.governor = governor;
+    }
+
+    @Override
+    public byte[] call() throws Exception {
+      startedNanos = System.nanoTime();
+      if (!started.compareAndSet(false, true)) {
+        // Cancelled before it started; cancel() has released the collector already.
+        return null;
+      }
+      governor.startTask();
+      ThreadUsage start = ThreadUsage.current();
+      try {
+        return encoder.serialize(collector.collectMetrics());
+      } finally {
+        usage = ThreadUsage.current().since(start);
+        governor.endTask();
+        finishedNanos = System.nanoTime();
+        running.set(false);
+      }
+    }
+
+    /**
+     * Interrupts the task if it is running.  A task that has not started yet will never run, so
+     * the collector is released right away instead of by {@link #call()}.
+     *
+     * @return Whether the task never started.
+     */
+    boolean cancel() {
+      future.cancel(true);
+      if (started.compareAndSet(false, true)) {
+        skipped = true;
+        running.set(false);
+        return true;
+      }
+      return false;
+    }
+
+    /**
+     * @return Time the task has been running for, capped at its budget, or 0 if it never started.
+     */
+    long elapsedMs(long timeoutNanos) {
+      if (!started.get() || skipped) {
+        return 0;
+      }
+      long endNanos = finishedNanos != 0 ? finishedNanos : System.nanoTime();
+      long elapsedNanos = Math.min(endNanos - startedNanos, timeoutNanos);
+      return TimeUnit.NANOSECONDS.toMillis(elapsedNanos);
+    }
+  }
+
+  private static class DaemonThreadFactory implements ThreadFactory {
+
+    private final AtomicInteger threadCount = new AtomicInteger();
+
+    @Override
+    public Thread newThread(Runnable runnable) {
+      Thread thread = new Thread(runnable, "ConfluentProactiveSupportCollector-"
+                                           + threadCount.incrementAndGet());
+      thread.setDaemon(true);
+      return thread;
+    }
+  }
+
+}
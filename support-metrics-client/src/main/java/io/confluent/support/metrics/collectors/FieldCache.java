@@ -0,0 +1,132 @@
+/**
+ * Copyright 2018 Confluent Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package io.confluent.support.metrics.collectors;
+
+import org.apache.kafka.common.utils.Time;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.function.LongSupplier;
+import java.util.function.Supplier;
+
+import io.confluent.support.metrics.common.time.TimeUtils;
+
+/**
+ * Caches the values of record fields that are expensive to compute but rarely change, such as
+ * versions, identifiers or cluster-wide counts.
+ *
+ * <p>A collector wraps the supplier of each such field in a {@link Field} with its own policy:
+ * either a time-to-live after which the value is recomputed, or {@link #FOREVER} for values that
+ * cannot change for the lifetime of the process.  A collection then only recomputes the fields
+ * that are stale.  Null values are never cached, so a field whose value is not known yet (e.g. the
+ * cluster id during broker startup) is retried by the next collection.  Fields can also be
+ * invalidated explicitly, e.g. when the collector learns that the underlying value has changed.
+ *
+ * <p>This class is not thread-safe.
+ */
+public class FieldCache {
+
+  /**
+   * Time-to-live of values that never change once they are known.
+   */
+  public static final long FOREVER = Long.MAX_VALUE;
+
+  private final LongSupplier clockMs;
+  private final Map<String, Field<?>> fields = new LinkedHashMap<>();
+
+  public FieldCache(Time time) {
+    this.clockMs = time::milliseconds;
+  }
+
+  /**
+   * Follows the clock of a collector, whose resolution is one second.
+   */
+  public FieldCache(TimeUtils time) {
+    this.clockMs = () -> TimeUnit.SECONDS.toMillis(time.nowInUnixTime());
+  }
+
+  /**
+   * Registers a cached field.
+   *
+   * @param name The name of the field, unique within this cache.
+   * @param ttlMs Time after which a cached value is recomputed, or {@link #FOREVER}.
+   * @param supplier Computes the current value of the field.
+   */
+  public <T> Field<T> field(String name, long ttlMs, Supplier<T> supplier) {
+    if (ttlMs < 0) {
+      throw new IllegalArgumentException("ttlMs must not be negative");
+    }
+    if (fields.containsKey(name)) {
+      throw new IllegalArgumentException("Field '" + name + "' is already registered");
+    }
+    Field<T> field = new Field<>(ttlMs, supplier);
+    fields.put(name, field);
+    return field;
+  }
+
+  /**
+   * Marks the named field as stale, so that it is recomputed on its next use.
+   */
+  public void invalidate(String name) {
+    Field<?> field = fields.get(name);
+    if (field != null) {
+      field.invalidate();
+    }
+  }
+
+  public void invalidateAll() {
+    for (Field<?> field : fields.values()) {
+      field.invalidate();
+    }
+  }
+
+  public class Field<T> {
+
+    private final long ttlMs;
+    private final Supplier<T> supplier;
+    private T value;
+    private long loadedAtMs;
+
+    private Field(long ttlMs, Supplier<T> supplier) {
+      this.ttlMs = ttlMs;
+      this.supplier = supplier;
+    }
+
+    /**
+     * @return The cached value, or a freshly computed one if the cached value is stale.
+     */
+    public T get() {
+      long nowMs = clockMs.getAsLong();
+      if (isStale(nowMs)) {
+        value = supplier.get();
+        loadedAtMs = nowMs;
+      }
+      return value;
+    }
+
+    public void invalidate() {
+      value = null;
+    }
+
+    private boolean isStale(long nowMs) {
+      if (value == null) {
+        return true;
+      }
+      return ttlMs != FOREVER && nowMs - loadedAtMs >= ttlMs;
+    }
+  }
+
+}
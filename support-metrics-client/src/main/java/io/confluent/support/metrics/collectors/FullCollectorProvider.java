@@ -0,0 +1,83 @@
+/**
+ * Copyright 2018 Confluent Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package io.confluent.support.metrics.collectors;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.util.Properties;
+
+import io.confluent.support.metrics.common.Collector;
+import io.confluent.support.metrics.common.time.TimeUtils;
+import kafka.server.KafkaServer;
+
+/**
+ * Creates the full collector of the proprietary Confluent Support Metrics package, if it is
+ * installed.
+ *
+ * <p>The collector's constructor is looked up once, on first use, and invoked through a cached
+ * {@link MethodHandle} afterwards.
+ */
+public class FullCollectorProvider implements CollectorProvider {
+
+  public static final String NAME = "full";
+
+  static final String FULL_COLLECTOR_CLASS_NAME =
+      "io.confluent.support.metrics.collectors.FullCollector";
+
+  private static final MethodType CONSTRUCTOR_TYPE = MethodType.methodType(
+      Collector.class, KafkaServer.class, Properties.class, Runtime.class, TimeUtils.class);
+
+  // Initialization-on-demand holder: the lookup runs when the first full collector is created.
+  private static class ConstructorHolder {
+
+    static final MethodHandle CONSTRUCTOR = findConstructor();
+  }
+
+  @Override
+  public String name() {
+    return NAME;
+  }
+
+  @Override
+  public Collector create(CollectorContext context) {
+    MethodHandle constructor = ConstructorHolder.CONSTRUCTOR;
+    if (constructor == null) {
+      throw new IllegalStateException(FULL_COLLECTOR_CLASS_NAME + " is not available");
+    }
+    try {
+      return (Collector) constructor.invokeExact(
+          context.server(),
+          context.serverConfiguration(),
+          context.serverRuntime(),
+          context.time()
+      );
+    } catch (Throwable t) {
+      throw new RuntimeException("Failed to create instance of " + FULL_COLLECTOR_CLASS_NAME, t);
+    }
+  }
+
+  private static MethodHandle findConstructor() {
+    try {
+      Class<?> collectorClass = Class.forName(FULL_COLLECTOR_CLASS_NAME);
+      return MethodHandles.publicLookup()
+          .findConstructor(collectorClass, CONSTRUCTOR_TYPE.changeReturnType(void.class))
+          .asType(CONSTRUCTOR_TYPE);
+    } catch (ReflectiveOperationException e) {
+      return null;
+    }
+  }
+
+}
@@ -0,0 +1,297 @@
+/**
+ * Copyright 2018 Confluent Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package io.confluent.support.metrics.collectors;
+
+import org.apache.avro.generic.GenericContainer;
+import org.apache.kafka.common.TopicPartition;
+
+import java.io.File;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.TimeUnit;
+
+import io.confluent.support.metrics.LogDirFootprint;
+import io.confluent.support.metrics.SupportKafkaMetricsLogDirs;
+import io.confluent.support.metrics.agent.MemoryBudget;
+import io.confluent.support.metrics.agent.ResourceGovernor;
+import io.confluent.support.metrics.common.Collector;
+import io.confluent.support.metrics.common.Uuid;
+import io.confluent.support.metrics.common.time.TimeUtils;
+import kafka.log.Log;
+import kafka.log.LogManager;
+import kafka.server.KafkaServer;
+import scala.collection.JavaConverters;
+
+/**
+ * Reports bytes, segment counts and partition counts per log directory of the broker.
+ *
+ * <p>The collector never walks the log directories on disk.  It reads the log manager's in-memory
+ * view of the hosted partitions instead and caches the size of every partition.  Each call to
+ * {@link #collectMetrics()} only refreshes a bounded number of cached partitions (round-robin,
+ * newly created partitions first), so that the cost of a single collection stays flat on brokers
+ * with tens of thousands of partitions.  The totals of a record are therefore at most one full
+ * sweep behind the broker.
+ *
+ * <p>The cache is reserved from a {@link MemoryBudget}.  If the cache of all hosted partitions does
+ * not fit, the collector drops it and reports partition counts only, with all partitions pending,
+ * until it fits again.
+ *
+ * <p>This class is not thread-safe.
+ */
+public class LogDirCollector extends Collector {
+
+  public static final int DEFAULT_MAX_PARTITIONS_PER_CYCLE = 1000;
+  public static final long DEFAULT_CYCLE_BUDGET_MS = 50;
+
+  private static final int PARTITIONS_PER_CHECKPOINT = 64;
+  // Estimated heap retained per cached partition: map entry, key, footprint and queue slot.
+  static final long BYTES_PER_CACHED_PARTITION = 160;
+
+  private final KafkaServer server;
+  private final TimeUtils time;
+  private final Uuid uuid;
+  private final int maxPartitionsPerCycle;
+  private final long cycleBudgetNanos;
+  private final ResourceGovernor governor;
+  private final MemoryBudget.Reservation cache;
+
+  private final Map<TopicPartition, PartitionFootprint> footprints = new HashMap<>();
+  private final ArrayDeque<TopicPartition> refreshQueue = new ArrayDeque<>();
+
+  public LogDirCollector(KafkaServer server, TimeUtils time) {
+    this(server, time, new Uuid(), DEFAULT_MAX_PARTITIONS_PER_CYCLE, DEFAULT_CYCLE_BUDGET_MS);
+  }
+
+  /**
+   * @param maxPartitionsPerCycle Upper bound of partitions whose size is re-read per collection.
+   * @param cycleBudgetMs Upper bound of time spent re-reading partition sizes per collection.
+   */
+  public LogDirCollector(
+      KafkaServer server,
+      TimeUtils time,
+      Uuid uuid,
+      int maxPartitionsPerCycle,
+      long cycleBudgetMs
+  ) {
+    this(server, time, uuid, maxPartitionsPerCycle, cycleBudgetMs, ResourceGovernor.unlimited());
+  }
+
+  /**
+   * @param governor Consulted every few partitions; once it reports that the agent's CPU budget
+   *     is used up, the remaining partitions are left for the next collection.
+   */
+  public LogDirCollector(
+      KafkaServer server,
+      TimeUtils time,
+      Uuid uuid,
+      int maxPartitionsPerCycle,
+      long cycleBudgetMs,
+      ResourceGovernor governor
+  ) {
+    this(server, time, uuid, maxPartitionsPerCycle, cycleBudgetMs, governor,
+         MemoryBudget.unlimited());
+  }
+
+  /**
+   * @param memoryBudget The budget the cache of partition sizes is reserved from.
+   */
+  public LogDirCollector(
+      KafkaServer server,
+      TimeUtils time,
+      Uuid uuid,
+      int maxPartitionsPerCycle,
+      long cycleBudgetMs,
+      ResourceGovernor governor,
+      MemoryBudget memoryBudget
+  ) {
+    super();
+    if (maxPartitionsPerCycle <= 0) {
+      throw new IllegalArgumentException("maxPartitionsPerCycle must be positive");
+    }
+    this.server = server;
+    this.time = time;
+    this.uuid = uuid;
+    this.maxPartitionsPerCycle = maxPartitionsPerCycle;
+    this.cycleBudgetNanos = TimeUnit.MILLISECONDS.toNanos(cycleBudgetMs);
+    this.governor = governor;
+    this.cache = memoryBudget.reservation();
+  }
+
+  /**
+   * @return A new metrics record, or null in case of any errors.
+   */
+  @Override
+  public GenericContainer collectMetrics() {
+    SupportKafkaMetricsLogDirs metricsRecord = new SupportKafkaMetricsLogDirs();
+    metricsRecord.setTimestamp(time.nowInUnixTime());
+    metricsRecord.setCollectorState(this.getRuntimeState().stateId());
+    metricsRecord.setBrokerProcessUUID(uuid.toString());
+
+    LogManager logManager = server.logManager();
+    if (logManager == null) {
+      // The broker has not finished starting up yet.
+      metricsRecord.setLogDirs(new ArrayList<LogDirFootprint>());
+      metricsRecord.setPartitionsRefreshed(0);
+      metricsRecord.setPartitionsPending(0);
+      return metricsRecord;
+    }
+
+    Map<TopicPartition, Log> logs = new HashMap<>();
+    for (Log log : JavaConverters.asJavaIterableConverter(logManager.allLogs()).asJava()) {
+      logs.put(log.topicPartition(), log);
+    }
+    if (!cache.resize(logs.size() * BYTES_PER_CACHED_PARTITION)) {
+      // Not enough memory to cache every partition: report partition counts only.
+      footprints.clear();
+      refreshQueue.clear();
+      cache.close();
+      List<PartitionFootprint> unsized = new ArrayList<>(logs.size());
+      for (Log log : logs.values()) {
+        unsized.add(new PartitionFootprint(logDirOf(log)));
+      }
+      metricsRecord.setPartitionsRefreshed(0);
+      metricsRecord.setLogDirs(aggregate(logManager, unsized));
+      metricsRecord.setPartitionsPending(logs.size());
+      return metricsRecord;
+    }
+
+    syncPartitions(logs);
+    metricsRecord.setPartitionsRefreshed(refresh(logs));
+    metricsRecord.setLogDirs(aggregate(logManager, footprints.values()));
+    metricsRecord.setPartitionsPending(pendingPartitions());
+    return metricsRecord;
+  }
+
+  /**
+   * Reconciles the cache with the partitions currently hosted by the broker.  This only touches
+   * the log manager's in-memory map of logs, not the file system.
+   */
+  private void syncPartitions(Map<TopicPartition, Log> logs) {
+    Iterator<Map.Entry<TopicPartition, PartitionFootprint>> cached =
+        footprints.entrySet().iterator();
+    while (cached.hasNext()) {
+      Map.Entry<TopicPartition, PartitionFootprint> entry = cached.next();
+      Log log = logs.get(entry.getKey());
+      if (log == null) {
+        cached.remove();
+      } else {
+        // A partition may have been moved to another log directory since it was last read.
+        entry.getValue().logDir = logDirOf(log);
+      }
+    }
+    refreshQueue.retainAll(logs.keySet());
+
+    for (Map.Entry<TopicPartition, Log> entry : logs.entrySet()) {
+      if (!footprints.containsKey(entry.getKey())) {
+        footprints.put(entry.getKey(), new PartitionFootprint(logDirOf(entry.getValue())));
+        // Partitions we have never read go to the front of the queue.
+        refreshQueue.addFirst(entry.getKey());
+      }
+    }
+  }
+
+  /**
+   * Re-reads the sizes of the partitions at the head of the refresh queue until either the
+   * partition or the time budget of this cycle, or the CPU budget of the agent, is exhausted.
+   *
+   * @return The number of partitions that were refreshed.
+   */
+  private int refresh(Map<TopicPartition, Log> logs) {
+    int limit = Math.min(maxPartitionsPerCycle, refreshQueue.size());
+    long deadline = System.nanoTime() + cycleBudgetNanos;
+    int refreshed = 0;
+    while (refreshed < limit) {
+      TopicPartition tp = refreshQueue.pollFirst();
+      Log log = logs.get(tp);
+      PartitionFootprint footprint = footprints.get(tp);
+      footprint.sizeBytes = log.size();
+      footprint.segmentCount = log.numberOfSegments();
+      footprint.loaded = true;
+      refreshQueue.addLast(tp);
+      refreshed++;
+      if (System.nanoTime() - deadline > 0) {
+        break;
+      }
+      if (refreshed % PARTITIONS_PER_CHECKPOINT == 0 && !governor.checkpoint()) {
+        break;
+      }
+    }
+    return refreshed;
+  }
+
+  private List<LogDirFootprint> aggregate(
+      LogManager logManager,
+      Collection<PartitionFootprint> partitions
+  ) {
+    Map<String, LogDirFootprint> byDir = new TreeMap<>();
+    for (File dir : JavaConverters.seqAsJavaListConverter(logManager.liveLogDirs()).asJava()) {
+      byDir.put(dir.getAbsolutePath(), emptyFootprint(dir.getAbsolutePath()));
+    }
+    for (PartitionFootprint footprint : partitions) {
+      LogDirFootprint dir = byDir.get(footprint.logDir);
+      if (dir == null) {
+        // The log directory went offline after the partition was listed.
+        dir = emptyFootprint(footprint.logDir);
+        byDir.put(footprint.logDir, dir);
+      }
+      dir.setPartitionCount(dir.getPartitionCount() + 1);
+      dir.setSizeBytes(dir.getSizeBytes() + footprint.sizeBytes);
+      dir.setSegmentCount(dir.getSegmentCount() + footprint.segmentCount);
+    }
+    return new ArrayList<>(byDir.values());
+  }
+
+  private int pendingPartitions() {
+    int pending = 0;
+    for (PartitionFootprint footprint : footprints.values()) {
+      if (!footprint.loaded) {
+        pending++;
+      }
+    }
+    return pending;
+  }
+
+  private static String logDirOf(Log log) {
+    return log.dir().getParentFile().getAbsolutePath();
+  }
+
+  private static LogDirFootprint emptyFootprint(String path) {
+    LogDirFootprint footprint = new LogDirFootprint();
+    footprint.setPath(path);
+    footprint.setSizeBytes(0L);
+    footprint.setSegmentCount(0);
+    footprint.setPartitionCount(0);
+    return footprint;
+  }
+
+  private static class PartitionFootprint {
+
+    String logDir;
+    long sizeBytes;
+    int segmentCount;
+    boolean loaded;
+
+    PartitionFootprint(String logDir) {
+      this.logDir = logDir;
+    }
+  }
+
+}
@@ -0,0 +1,47 @@
+/**
+ * Copyright 2018 Confluent Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package io.confluent.support.metrics.collectors;
+
+import io.confluent.support.metrics.common.Collector;
+
+public class LogDirCollectorProvider implements CollectorProvider {
+
+  public static final String NAME = "log.dirs";
+
+  public static final String MAX_PARTITIONS_PER_COLLECTION_CONFIG =
+      "confluent.support.metrics.log.dirs.max.partitions.per.collection";
+  public static final String COLLECTION_BUDGET_MS_CONFIG =
+      "confluent.support.metrics.log.dirs.collection.budget.ms";
+
+  @Override
+  public String name() {
+    return NAME;
+  }
+
+  @Override
+  public Collector create(CollectorContext context) {
+    return new LogDirCollector(
+        context.server(),
+        context.time(),
+        context.uuid(),
+        context.getInt(MAX_PARTITIONS_PER_COLLECTION_CONFIG,
+                       LogDirCollector.DEFAULT_MAX_PARTITIONS_PER_CYCLE),
+        context.getLong(COLLECTION_BUDGET_MS_CONFIG, LogDirCollector.DEFAULT_CYCLE_BUDGET_MS),
+        context.governor(),
+        context.memoryBudget()
+    );
+  }
+
+}
@@ -0,0 +1,91 @@
+/**
+ * Copyright 2018 Confluent Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package io.confluent.support.metrics.metadata;
+
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Cluster-wide counts and the addresses of live brokers as known to a broker at a point in time.
+ */
+public final class MetadataSnapshot {
+
+  /**
+   * Where a snapshot was read from.
+   */
+  public enum Source {
+    /** The broker's local metadata cache, kept up to date by the controller. */
+    METADATA_CACHE,
+    /** ZooKeeper, used while the metadata cache is not populated yet. */
+    ZOOKEEPER
+  }
+
+  private final Source source;
+  private final int topicCount;
+  private final int partitionCount;
+  private final int brokerCount;
+  private final List<String> bootstrapServers;
+  private final long createdMs;
+
+  public MetadataSnapshot(
+      Source source,
+      int topicCount,
+      int partitionCount,
+      int brokerCount,
+      List<String> bootstrapServers,
+      long createdMs
+  ) {
+    this.source = source;
+    this.topicCount = topicCount;
+    this.partitionCount = partitionCount;
+    this.brokerCount = brokerCount;
+    this.bootstrapServers = Collections.unmodifiableList(bootstrapServers);
+    this.createdMs = createdMs;
+  }
+
+  public Source source() {
+    return source;
+  }
+
+  public int topicCount() {
+    return topicCount;
+  }
+
+  public int partitionCount() {
+    return partitionCount;
+  }
+
+  /**
+   * @return The number of live brokers.
+   */
+  public int brokerCount() {
+    return brokerCount;
+  }
+
+  /**
+   * @return The {@code host:port} of the PLAINTEXT listener of every live broker that has one.
+   */
+  public List<String> bootstrapServers() {
+    return bootstrapServers;
+  }
+
+  /**
+   * @return When this snapshot was read, in milliseconds.
+   */
+  public long createdMs() {
+    return createdMs;
+  }
+
+}
@@ -0,0 +1,172 @@
+/**
+ * Copyright 2018 Confluent Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package io.confluent.support.metrics.metadata;
+
+import org.apache.kafka.common.Cluster;
+import org.apache.kafka.common.Node;
+import org.apache.kafka.common.network.ListenerName;
+import org.apache.kafka.common.security.auth.SecurityProtocol;
+import org.apache.kafka.common.utils.Time;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import io.confluent.support.metrics.metadata.MetadataSnapshot.Source;
+import kafka.cluster.Broker;
+import kafka.server.KafkaServer;
+import kafka.server.MetadataCache;
+import kafka.zk.KafkaZkClient;
+import scala.Option;
+import scala.collection.JavaConverters;
+import scala.collection.Seq;
+
+/**
+ * Serves topic, partition and broker counts of the cluster without reading ZooKeeper.
+ *
+ * <p>Counts are read from the broker's local metadata cache, which the controller keeps up to
+ * date.  Counting partitions means walking the whole cache, so a snapshot is only rebuilt when a
+ * cheap signature of the cache changes (the number of live brokers and of topics, and the
+ * controller), or when it is older than the refresh interval, which catches partitions added to
+ * existing topics.  Only while the metadata cache is not populated yet, e.g. during broker
+ * startup, the counts are read from ZooKeeper instead, at most once per refresh interval.
+ *
+ * <p>Snapshots also hold the addresses of the live brokers, so that clients of the cluster, like
+ * the Kafka sink's producer, can be bootstrapped without reading ZooKeeper either.
+ *
+ * <p>This class is thread-safe.
+ */
+public class MetadataSnapshotProvider {
+
+  private static final Logger log = LoggerFactory.getLogger(MetadataSnapshotProvider.class);
+
+  // The listener producers of the agent connect to, like KafkaUtilities.getBootstrapServers().
+  private static final ListenerName BOOTSTRAP_LISTENER =
+      ListenerName.forSecurityProtocol(SecurityProtocol.PLAINTEXT);
+
+  public static final long DEFAULT_REFRESH_INTERVAL_MS = 10 * 60 * 1000L;
+
+  private final KafkaServer server;
+  private final Time time;
+  private final long refreshIntervalMs;
+
+  private MetadataSnapshot current;
+  private int signatureTopics = -1;
+  private int signatureBrokers = -1;
+  private Option<Object> signatureController = Option.empty();
+
+  public MetadataSnapshotProvider(KafkaServer server, Time time) {
+    this(server, time, DEFAULT_REFRESH_INTERVAL_MS);
+  }
+
+  public MetadataSnapshotProvider(KafkaServer server, Time time, long refreshIntervalMs) {
+    this.server = server;
+    this.time = time;
+    this.refreshIntervalMs = refreshIntervalMs;
+  }
+
+  /**
+   * @return The current snapshot, or null if neither the metadata cache nor ZooKeeper is
+   *     available.
+   */
+  public synchronized MetadataSnapshot snapshot() {
+    long nowMs = time.milliseconds();
+    MetadataCache cache = server.metadataCache();
+    if (cache != null) {
+      int brokers = cache.getAliveBrokers().size();
+      if (brokers > 0) {
+        return fromMetadataCache(cache, brokers, nowMs);
+      }
+    }
+    return fromZooKeeper(nowMs);
+  }
+
+  /**
+   * @return true if the metadata cache is populated and does not know the topic, false if it
+   *     knows the topic or cannot tell yet.
+   */
+  public boolean isTopicMissing(String topic) {
+    MetadataCache cache = server.metadataCache();
+    return cache != null && !cache.getAliveBrokers().isEmpty() && !cache.contains(topic);
+  }
+
+  private MetadataSnapshot fromMetadataCache(MetadataCache cache, int brokers, long nowMs) {
+    int topics = cache.getAllTopics().size();
+    Option<Object> controller = cache.getControllerId();
+    boolean unchanged = current != null
+                        && current.source() == Source.METADATA_CACHE
+                        && topics == signatureTopics
+                        && brokers == signatureBrokers
+                        && controller.equals(signatureController)
+                        && !isStale(nowMs);
+    if (unchanged) {
+      return current;
+    }
+    Cluster cluster = cache.getClusterMetadata(server.clusterId(),
+                                               server.config().interBrokerListenerName());
+    int partitions = 0;
+    for (String topic : cluster.topics()) {
+      Integer count = cluster.partitionCountForTopic(topic);
+      partitions += count != null ? count : 0;
+    }
+    signatureTopics = topics;
+    signatureBrokers = brokers;
+    signatureController = controller;
+    current = new MetadataSnapshot(Source.METADATA_CACHE, cluster.topics().size(), partitions,
+                                   brokers, bootstrapServers(cache.getAliveBrokers()), nowMs);
+    return current;
+  }
+
+  private MetadataSnapshot fromZooKeeper(long nowMs) {
+    if (current != null && current.source() == Source.ZOOKEEPER && !isStale(nowMs)) {
+      return current;
+    }
+    KafkaZkClient zkClient = server.zkClient();
+    if (zkClient == null) {
+      return current;
+    }
+    try {
+      Seq<Broker> brokers = zkClient.getAllBrokersInCluster();
+      current = new MetadataSnapshot(
+          Source.ZOOKEEPER,
+          zkClient.getAllTopicsInCluster().size(),
+          zkClient.getAllPartitions().size(),
+          brokers.size(),
+          bootstrapServers(brokers),
+          nowMs
+      );
+    } catch (RuntimeException e) {
+      log.warn("Could not read cluster metadata from ZooKeeper: {}", e.getMessage());
+    }
+    return current;
+  }
+
+  private static List<String> bootstrapServers(Seq<Broker> brokers) {
+    List<String> servers = new ArrayList<>();
+    for (Broker broker : JavaConverters.seqAsJavaListConverter(brokers).asJava()) {
+      Option<Node> node = broker.getNode(BOOTSTRAP_LISTENER);
+      if (node != null && node.isDefined()) {
+        servers.add(node.get().host() + ":" + node.get().port());
+      }
+    }
+    return servers;
+  }
+
+  private boolean isStale(long nowMs) {
+    return nowMs - current.createdMs() >= refreshIntervalMs;
+  }
+
+}
@@ -0,0 +1,230 @@
+/**
+ * Copyright 2018 Confluent Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package io.confluent.support.metrics.scrape;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+import org.apache.avro.generic.GenericContainer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+import io.confluent.support.metrics.agent.MemoryBudget;
+
+/**
+ * An embedded HTTP endpoint that lets local monitoring systems pull the most recently collected
+ * metrics record, instead of collecting the same metrics a second time.
+ *
+ * <p>{@code GET /metrics} serves the record in Prometheus text format, {@code GET
+ * /metrics?format=json} in Avro's JSON encoding.  The metrics reporter {@link #publish publishes}
+ * every record it collects by swapping a single reference; a scrape only ever reads that reference
+ * and never triggers a collection.  Each published record is rendered at most once per format, on
+ * the first scrape that asks for it.  Until the first record is published, scrapes get a 503.
+ *
+ * <p>Rendered representations are only kept while they fit into the agent's {@link MemoryBudget};
+ * otherwise every scrape renders the record again.
+ *
+ * <p>Requests are handled by a small, fixed pool of daemon threads.
+ */
+public class ScrapeServer implements Closeable {
+
+  private static final Logger log = LoggerFactory.getLogger(ScrapeServer.class);
+
+  public static final String PATH = "/metrics";
+  public static final int DEFAULT_THREADS = 2;
+
+  private final AtomicReference<Snapshot> snapshot = new AtomicReference<>();
+  private final HttpServer server;
+  private final ExecutorService executor;
+  private final MemoryBudget memoryBudget;
+
+  public ScrapeServer(InetSocketAddress address, int threads) throws IOException {
+    this(address, threads, MemoryBudget.unlimited());
+  }
+
+  /**
+   * Binds the endpoint to the given address.  Call {@link #start()} to serve requests.
+   *
+   * @param address The address to listen on.  Port 0 picks a free port.
+   * @param threads Number of threads that handle requests.
+   * @param memoryBudget The budget rendered representations are reserved from.
+   * @throws IOException If the address cannot be bound.
+   */
+  public ScrapeServer(InetSocketAddress address, int threads, MemoryBudget memoryBudget)
+      throws IOException {
+    this.memoryBudget = memoryBudget;
+    this.server = HttpServer.create(address, 0);
+    this.executor = Executors.newFixedThreadPool(threads, new DaemonThreadFactory());
+    this.server.setExecutor(executor);
+    this.server.createContext(PATH, new MetricsHandler());
+  }
+
+  public void start() {
+    server.start();
+    log.info("Serving support metrics on http://{}:{}{}", address().getHostString(),
+             address().getPort(), PATH);
+  }
+
+  /**
+   * @return The address the endpoint is bound to.
+   */
+  public InetSocketAddress address() {
+    return server.getAddress();
+  }
+
+  /**
+   * Replaces the record that is served to subsequent scrapes.
+   */
+  public void publish(GenericContainer metricsRecord) {
+    if (metricsRecord != null) {
+      Snapshot previous = snapshot.getAndSet(new Snapshot(metricsRecord, memoryBudget));
+      if (previous != null) {
+        previous.release();
+      }
+    }
+  }
+
+  /**
+   * Stops serving requests and waits up to one second for in-flight requests to complete.
+   */
+  @Override
+  public void close() {
+    server.stop(1);
+    executor.shutdownNow();
+    Snapshot last = snapshot.getAndSet(null);
+    if (last != null) {
+      last.release();
+    }
+  }
+
+  private class MetricsHandler implements HttpHandler {
+
+    @Override
+    public void handle(HttpExchange exchange) throws IOException {
+      try {
+        if (!"GET".equals(exchange.getRequestMethod())) {
+          respond(exchange, 405, "text/plain; charset=utf-8", "Method not allowed\n");
+          return;
+        }
+        Snapshot current = snapshot.get();
+        if (current == null) {
+          respond(exchange, 503, "text/plain; charset=utf-8", "No metrics collected yet\n");
+          return;
+        }
+        SnapshotFormat format = formatOf(exchange.getRequestURI().getQuery());
+        byte[] body;
+        try {
+          body = current.render(format);
+        } catch (IOException | RuntimeException e) {
+          log.warn("Failed to render support metrics as {}: {}", format, e.toString());
+          respond(exchange, 500, "text/plain; charset=utf-8", "Internal error\n");
+          return;
+        }
+        respond(exchange, 200, format.contentType(), body);
+      } finally {
+        exchange.close();
+      }
+    }
+
+    private SnapshotFormat formatOf(String query) {
+      if (query != null) {
+        for (String parameter : query.split("&")) {
+          if (parameter.equalsIgnoreCase("format=json")) {
+            return SnapshotFormat.JSON;
+          }
+        }
+      }
+      return SnapshotFormat.PROMETHEUS;
+    }
+
+    private void respond(HttpExchange exchange, int status, String contentType, String body)
+        throws IOException {
+      respond(exchange, status, contentType, body.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private void respond(HttpExchange exchange, int status, String contentType, byte[] body)
+        throws IOException {
+      exchange.getResponseHeaders().set("Content-Type", contentType);
+      exchange.sendResponseHeaders(status, body.length);
+      try (OutputStream out = exchange.getResponseBody()) {
+        out.write(body);
+      }
+    }
+  }
+
+  /**
+   * A published record and its lazily rendered representations.
+   */
+  private static class Snapshot {
+
+    private final GenericContainer metricsRecord;
+    private final Map<SnapshotFormat, byte[]> rendered = new EnumMap<>(SnapshotFormat.class);
+    private final MemoryBudget.Reservation reservation;
+    private boolean released = false;
+
+    Snapshot(GenericContainer metricsRecord, MemoryBudget memoryBudget) {
+      this.metricsRecord = metricsRecord;
+      this.reservation = memoryBudget.reservation();
+    }
+
+    synchronized byte[] render(SnapshotFormat format) throws IOException {
+      byte[] body = rendered.get(format);
+      if (body == null) {
+        body = format.render(metricsRecord);
+        if (!released && reservation.add(body.length)) {
+          rendered.put(format, body);
+        }
+      }
+      return body;
+    }
+
+    /**
+     * Drops the rendered representations once the snapshot has been replaced.
+     */
+    synchronized void release() {
+      released = true;
+      rendered.clear();
+      reservation.close();
+    }
+  }
+
+  private static class DaemonThreadFactory implements ThreadFactory {
+
+    private final AtomicInteger threadCount = new AtomicInteger();
+
+    @Override
+    public Thread newThread(Runnable runnable) {
+      Thread thread = new Thread(runnable, "ConfluentProactiveSupportScrape-"
+                                           + threadCount.incrementAndGet());
+      thread.setDaemon(true);
+      return thread;
+    }
+  }
+
+}
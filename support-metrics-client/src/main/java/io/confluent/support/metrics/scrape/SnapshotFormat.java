@@ -0,0 +1,247 @@
+/**
+ * Copyright 2018 Confluent Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package io.confluent.support.metrics.scrape;
+
+import org.apache.avro.Schema;
+import org.apache.avro.generic.GenericContainer;
+import org.apache.avro.generic.GenericDatumWriter;
+import org.apache.avro.generic.IndexedRecord;
+import org.apache.avro.io.EncoderFactory;
+import org.apache.avro.io.JsonEncoder;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import io.confluent.support.metrics.CollectorSection;
+import io.confluent.support.metrics.SupportKafkaMetricsComposite;
+import io.confluent.support.metrics.serde.AvroDeserializer;
+
+/**
+ * Renders a metrics record in the formats served by {@link ScrapeServer}.
+ */
+public enum SnapshotFormat {
+
+  /**
+   * Prometheus text exposition format (version 0.0.4).  Every numeric or boolean field becomes a
+   * gauge named {@code confluent_support_metrics_<field>}, nested records are flattened, and all
+   * string and enum fields become the labels of a single {@code confluent_support_metrics_info}
+   * gauge.  Arrays, maps and bytes are not exported; use {@link #JSON} for those.
+   *
+   * <p>The sections of a {@link SupportKafkaMetricsComposite} record are decoded and exported the
+   * same way, as {@code confluent_support_metrics_section_<field>} gauges and a
+   * {@code confluent_support_metrics_section_info} gauge, labelled with the section's name.
+   */
+  PROMETHEUS("text/plain; version=0.0.4; charset=utf-8") {
+    @Override
+    public byte[] render(GenericContainer metricsRecord) {
+      Gauges gauges = new Gauges();
+      Map<String, String> noLabels = Collections.emptyMap();
+      Map<String, String> info = new LinkedHashMap<>();
+      appendGauges(gauges, PREFIX, noLabels, info, (IndexedRecord) metricsRecord);
+      gauges.add(PREFIX + "info", info, "1");
+      if (metricsRecord instanceof SupportKafkaMetricsComposite) {
+        for (CollectorSection section : ((SupportKafkaMetricsComposite) metricsRecord)
+            .getSections()) {
+          appendSection(gauges, section);
+        }
+      }
+      return gauges.toString().getBytes(StandardCharsets.UTF_8);
+    }
+  },
+
+  /**
+   * The Avro JSON encoding of the record.
+   */
+  JSON("application/json; charset=utf-8") {
+    @Override
+    public byte[] render(GenericContainer metricsRecord) throws IOException {
+      ByteArrayOutputStream out = new ByteArrayOutputStream();
+      JsonEncoder encoder = EncoderFactory.get().jsonEncoder(metricsRecord.getSchema(), out);
+      new GenericDatumWriter<Object>(metricsRecord.getSchema()).write(metricsRecord, encoder);
+      encoder.flush();
+      return out.toByteArray();
+    }
+  };
+
+  private static final String PREFIX = "confluent_support_metrics_";
+
+  private final String contentType;
+
+  SnapshotFormat(String contentType) {
+    this.contentType = contentType;
+  }
+
+  public String contentType() {
+    return contentType;
+  }
+
+  public abstract byte[] render(GenericContainer metricsRecord) throws IOException;
+
+  private static void appendSection(Gauges gauges, CollectorSection section) {
+    String prefix = PREFIX + "section_";
+    Map<String, String> labels =
+        Collections.singletonMap("section", section.getName().toString());
+    Map<String, String> info = new LinkedHashMap<>(labels);
+    info.put("status", section.getStatus().toString());
+    gauges.add(prefix + "elapsed_ms", labels, String.valueOf(section.getElapsedMs()));
+    ByteBuffer payload = section.getPayload();
+    if (payload != null) {
+      byte[] container = new byte[payload.remaining()];
+      payload.duplicate().get(container);
+      try {
+        for (GenericContainer sectionRecord : new AvroDeserializer().deserialize(container)) {
+          appendGauges(gauges, prefix, labels, info, (IndexedRecord) sectionRecord);
+        }
+      } catch (IOException e) {
+        // Still export the status of a section that cannot be decoded.
+        info.put("status", "UNREADABLE");
+      }
+    }
+    gauges.add(prefix + "info", info, "1");
+  }
+
+  /**
+   * Adds a gauge for every numeric or boolean field, and every string or enum field to the info
+   * labels.
+   *
+   * @param labels Labels of every gauge, e.g. the name of a section.
+   */
+  private static void appendGauges(
+      Gauges gauges,
+      String prefix,
+      Map<String, String> labels,
+      Map<String, String> info,
+      IndexedRecord metricsRecord
+  ) {
+    for (Schema.Field field : metricsRecord.getSchema().getFields()) {
+      Object value = metricsRecord.get(field.pos());
+      Schema schema = nonNullType(field.schema());
+      if (value == null || schema == null) {
+        continue;
+      }
+      String name = prefix + snakeCase(field.name());
+      switch (schema.getType()) {
+        case INT:
+        case LONG:
+        case FLOAT:
+        case DOUBLE:
+          gauges.add(name, labels, value.toString());
+          break;
+        case BOOLEAN:
+          gauges.add(name, labels, (Boolean) value ? "1" : "0");
+          break;
+        case STRING:
+        case ENUM:
+          info.put(name.substring(PREFIX.length()), value.toString());
+          break;
+        case RECORD:
+          appendGauges(gauges, name + "_", labels, info, (IndexedRecord) value);
+          break;
+        default:
+          // Arrays, maps, bytes and fixed values have no meaningful text representation.
+          break;
+      }
+    }
+  }
+
+  /**
+   * Gauges grouped by name, as the exposition format requires all samples of a metric to follow
+   * its single {@code # TYPE} line.
+   */
+  private static final class Gauges {
+
+    private final Map<String, StringBuilder> samples = new LinkedHashMap<>();
+
+    void add(String name, Map<String, String> labels, String value) {
+      StringBuilder out = samples.get(name);
+      if (out == null) {
+        out = new StringBuilder();
+        samples.put(name, out);
+      }
+      out.append(name);
+      if (!labels.isEmpty()) {
+        out.append('{');
+        String separator = "";
+        for (Map.Entry<String, String> label : labels.entrySet()) {
+          out.append(separator).append(label.getKey()).append("=\"")
+              .append(escapeLabelValue(label.getValue())).append('"');
+          separator = ",";
+        }
+        out.append('}');
+      }
+      out.append(' ').append(value).append('\n');
+    }
+
+    @Override
+    public String toString() {
+      StringBuilder out = new StringBuilder();
+      for (Map.Entry<String, StringBuilder> gauge : samples.entrySet()) {
+        out.append("# TYPE ").append(gauge.getKey()).append(" gauge\n");
+        out.append(gauge.getValue());
+      }
+      return out.toString();
+    }
+  }
+
+  /**
+   * @return The schema itself, the non-null branch of a nullable union, or null for other unions.
+   */
+  private static Schema nonNullType(Schema schema) {
+    if (schema.getType() != Schema.Type.UNION) {
+      return schema;
+    }
+    Schema nonNull = null;
+    for (Schema branch : schema.getTypes()) {
+      if (branch.getType() != Schema.Type.NULL) {
+        if (nonNull != null) {
+          return null;
+        }
+        nonNull = branch;
+      }
+    }
+    return nonNull;
+  }
+
+  static String snakeCase(String camelCase) {
+    StringBuilder out = new StringBuilder(camelCase.length() + 8);
+    for (int i = 0; i < camelCase.length(); i++) {
+      char c = camelCase.charAt(i);
+      if (Character.isUpperCase(c)) {
+        boolean previousIsLower = i > 0 && !Character.isUpperCase(camelCase.charAt(i - 1));
+        boolean nextIsLower = i + 1 < camelCase.length()
+                              && Character.isLowerCase(camelCase.charAt(i + 1));
+        if (i > 0 && (previousIsLower || nextIsLower)) {
+          out.append('_');
+        }
+        out.append(Character.toLowerCase(c));
+      } else if (Character.isLetterOrDigit(c)) {
+        out.append(c);
+      } else {
+        out.append('_');
+      }
+    }
+    return out.toString();
+  }
+
+  private static String escapeLabelValue(String value) {
+    return value.replace("\\", "\\\\").replace("\"", "\\\"").replace("\n", "\\n");
+  }
+
+}
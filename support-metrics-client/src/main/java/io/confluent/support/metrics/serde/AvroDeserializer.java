@@ -19,6 +19,7 @@ import org.apache.avro.file.DataFileStream;
 import org.apache.avro.generic.GenericContainer;
 import org.apache.avro.generic.GenericDatumReader;
 import org.apache.avro.io.DatumReader;
+import org.apache.avro.io.Decoder;
 import org.apache.avro.specific.SpecificDatumReader;
 
 import java.io.ByteArrayInputStream;
@@ -26,8 +27,29 @@ import java.io.IOException;
 import java.util.ArrayList;
 import java.util.List;
 
+/**
+ * Deserializes records serialized by {@link AvroSerializer}.
+ *
+ * <p>Optionally, string values are interned through a {@link StringDictionary}, which cuts the heap
+ * used by many records of the same brokers, e.g. when a large bundle is loaded.  Interned values
+ * are {@code String}s rather than Avro's {@code Utf8}s, so compare them by {@code toString()}.  A
+ * deserializer that interns is not thread-safe.
+ */
 public class AvroDeserializer {
 
+  private final StringDictionary strings;
+
+  public AvroDeserializer() {
+    this(null);
+  }
+
+  /**
+   * @param strings The dictionary to intern string values through, or null not to intern them.
+   */
+  public AvroDeserializer(StringDictionary strings) {
+    this.strings = strings;
+  }
+
   /**
    * Deserializes the bytes as an array of Generic containers.
    *
@@ -42,7 +64,9 @@ public class AvroDeserializer {
     GenericContainer ret = null;
     List<GenericContainer> retList = new ArrayList<>();
     if (container != null) {
-      DatumReader<GenericContainer> datumReader = new GenericDatumReader<>(schema);
+      DatumReader<GenericContainer> datumReader = strings == null
+          ? new GenericDatumReader<GenericContainer>(schema)
+          : new InterningDatumReader<GenericContainer>(schema, strings);
       ByteArrayInputStream in = new ByteArrayInputStream(container);
       DataFileStream<GenericContainer> reader =
           new DataFileStream<GenericContainer>(in, datumReader);
@@ -70,7 +94,9 @@ public class AvroDeserializer {
     GenericContainer ret = null;
     List<GenericContainer> retList = new ArrayList<>();
     if (container != null) {
-      DatumReader<GenericContainer> datumReader = new GenericDatumReader<>();
+      DatumReader<GenericContainer> datumReader = strings == null
+          ? new GenericDatumReader<GenericContainer>()
+          : new InterningDatumReader<GenericContainer>(null, strings);
       ByteArrayInputStream in = new ByteArrayInputStream(container);
       DataFileStream<GenericContainer> reader =
           new DataFileStream<GenericContainer>(in, datumReader);
@@ -91,7 +117,9 @@ public class AvroDeserializer {
     T ret = null;
     List<T> retList = new ArrayList<T>();
     if (container != null) {
-      DatumReader<T> datumReader = new SpecificDatumReader<T>(clazz);
+      DatumReader<T> datumReader = strings == null
+          ? new SpecificDatumReader<T>(clazz)
+          : new InterningSpecificDatumReader<T>(clazz, strings);
       ByteArrayInputStream in = new ByteArrayInputStream(container);
       DataFileStream<T> reader = new DataFileStream<T>(in, datumReader);
       while (reader.hasNext()) {
@@ -104,4 +132,38 @@ public class AvroDeserializer {
     }
   }
 
+  /**
+   * Reads strings through a dictionary.  The value to reuse is ignored, as interned values are
+   * shared between records.
+   */
+  private static class InterningDatumReader<D> extends GenericDatumReader<D> {
+
+    private final StringDictionary strings;
+
+    InterningDatumReader(Schema schema, StringDictionary strings) {
+      super(schema);
+      this.strings = strings;
+    }
+
+    @Override
+    protected Object readString(Object old, Schema expected, Decoder in) throws IOException {
+      return strings.read(in);
+    }
+  }
+
+  private static class InterningSpecificDatumReader<D> extends SpecificDatumReader<D> {
+
+    private final StringDictionary strings;
+
+    InterningSpecificDatumReader(Class<D> clazz, StringDictionary strings) {
+      super(clazz);
+      this.strings = strings;
+    }
+
+    @Override
+    protected Object readString(Object old, Schema expected, Decoder in) throws IOException {
+      return strings.read(in);
+    }
+  }
+
 }
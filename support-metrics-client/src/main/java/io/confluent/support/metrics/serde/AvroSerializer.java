@@ -51,4 +51,11 @@ public class AvroSerializer {
     }
   }
 
+  /**
+   * Tells the serializer that the most recent serialization of the record was not delivered, e.g.
+   * because it was dropped.  This serializer keeps no state, so this method does nothing.
+   */
+  public void discard(GenericContainer record) {
+  }
+
 }
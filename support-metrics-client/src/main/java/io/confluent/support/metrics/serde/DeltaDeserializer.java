@@ -0,0 +1,185 @@
+/**
+ * Copyright 2018 Confluent Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package io.confluent.support.metrics.serde;
+
+import org.apache.avro.Schema;
+import org.apache.avro.SchemaNormalization;
+import org.apache.avro.generic.GenericContainer;
+import org.apache.avro.generic.GenericData;
+import org.apache.avro.generic.GenericDatumReader;
+import org.apache.avro.generic.GenericRecord;
+import org.apache.avro.io.BinaryDecoder;
+import org.apache.avro.io.DecoderFactory;
+import org.apache.avro.specific.SpecificDatumReader;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.HashMap;
+import java.util.Map;
+
+import io.confluent.support.metrics.FieldChange;
+import io.confluent.support.metrics.SupportKafkaMetricsDelta;
+
+/**
+ * Rebuilds full records from the output of a {@link DeltaSerializer}.
+ *
+ * <p>Submissions must be passed in the order they were serialized.  Full records (keyframes) are
+ * returned as is and remembered per {@code brokerProcessUUID}; a delta is applied to the
+ * remembered record of its broker.  A delta that cannot be applied, because the record before it
+ * was never seen (e.g. the reader started in the middle of the topic) or is missing, is counted in
+ * {@link #unresolvedDeltas()} and skipped, as are the following deltas of the same broker until its
+ * next keyframe.
+ *
+ * <p>This class is not thread-safe.
+ */
+public class DeltaDeserializer {
+
+  private static final Logger log = LoggerFactory.getLogger(DeltaDeserializer.class);
+
+  private final AvroDeserializer deserializer = new AvroDeserializer();
+  private final SpecificDatumReader<SupportKafkaMetricsDelta> deltaReader =
+      new SpecificDatumReader<>(SupportKafkaMetricsDelta.class);
+  private final Map<String, BrokerState> brokers = new HashMap<>();
+  private long unresolvedDeltas = 0;
+
+  /**
+   * @return True if the given submission is a delta rather than a standard Avro file.
+   */
+  public static boolean isDelta(byte[] container) {
+    if (container == null || container.length < DeltaSerializer.DELTA_MAGIC.length) {
+      return false;
+    }
+    for (int i = 0; i < DeltaSerializer.DELTA_MAGIC.length; i++) {
+      if (container[i] != DeltaSerializer.DELTA_MAGIC[i]) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  /**
+   * Deserializes a submission into full records.
+   *
+   * @return The full records of the submission, an empty array if it is a delta that cannot be
+   *     applied, or null if the submission is null.
+   */
+  public GenericContainer[] deserialize(byte[] container) throws IOException {
+    if (container == null) {
+      return null;
+    }
+    if (!isDelta(container)) {
+      GenericContainer[] records = deserializer.deserialize(container);
+      for (GenericContainer record : records) {
+        remember(record);
+      }
+      return records;
+    }
+
+    SupportKafkaMetricsDelta delta = readDelta(container);
+    BrokerState state = brokers.get(delta.getBrokerProcessUUID());
+    if (state == null
+        || state.fingerprint != delta.getSchemaFingerprint()
+        || state.sequence + 1 != delta.getSequence()) {
+      log.debug("Skipping delta #{} of broker {} because the record before it is missing",
+                delta.getSequence(), delta.getBrokerProcessUUID());
+      brokers.remove(delta.getBrokerProcessUUID());
+      unresolvedDeltas++;
+      return new GenericContainer[0];
+    }
+
+    Schema schema = state.record.getSchema();
+    GenericRecord record = GenericData.get().deepCopy(schema, state.record);
+    for (FieldChange change : delta.getChanges()) {
+      Schema.Field field = schema.getFields().get(change.getPosition());
+      record.put(field.pos(), decodeValue(field.schema(), change.getValue()));
+    }
+    state.record = record;
+    state.sequence = delta.getSequence();
+    return new GenericContainer[] {record};
+  }
+
+  /**
+   * Reads a delta as is, without applying it to the record before it.
+   *
+   * @param container A submission for which {@link #isDelta(byte[])} is true.
+   */
+  public SupportKafkaMetricsDelta readDelta(byte[] container) throws IOException {
+    BinaryDecoder decoder = DecoderFactory.get().binaryDecoder(
+        container,
+        DeltaSerializer.DELTA_MAGIC.length,
+        container.length - DeltaSerializer.DELTA_MAGIC.length,
+        null
+    );
+    return deltaReader.read(null, decoder);
+  }
+
+  /**
+   * Decodes the changes of a delta on their own, for readers that do not need the full records.
+   *
+   * @param schema The schema of the full record, by its fingerprint in the delta.
+   * @return A record of the given schema that holds the changed fields, and null in all others.
+   */
+  public static GenericRecord changedFields(Schema schema, SupportKafkaMetricsDelta delta)
+      throws IOException {
+    GenericRecord record = new GenericData.Record(schema);
+    for (FieldChange change : delta.getChanges()) {
+      Schema.Field field = schema.getFields().get(change.getPosition());
+      record.put(field.pos(), decodeValue(field.schema(), change.getValue()));
+    }
+    return record;
+  }
+
+  /**
+   * @return The number of deltas that were skipped because the record before them was missing.
+   */
+  public long unresolvedDeltas() {
+    return unresolvedDeltas;
+  }
+
+  private void remember(GenericContainer container) {
+    if (!(container instanceof GenericRecord)) {
+      return;
+    }
+    GenericRecord record = (GenericRecord) container;
+    Schema.Field uuidField = record.getSchema().getField(DeltaSerializer.BROKER_PROCESS_UUID_FIELD);
+    if (uuidField != null && record.get(uuidField.pos()) != null) {
+      long fingerprint = SchemaNormalization.parsingFingerprint64(record.getSchema());
+      brokers.put(record.get(uuidField.pos()).toString(), new BrokerState(record, fingerprint));
+    }
+  }
+
+  private static Object decodeValue(Schema schema, ByteBuffer value) throws IOException {
+    byte[] bytes = new byte[value.remaining()];
+    value.duplicate().get(bytes);
+    BinaryDecoder decoder = DecoderFactory.get().binaryDecoder(bytes, null);
+    return new GenericDatumReader<Object>(schema).read(null, decoder);
+  }
+
+  private static class BrokerState {
+
+    GenericRecord record;
+    final long fingerprint;
+    int sequence;
+
+    BrokerState(GenericRecord record, long fingerprint) {
+      this.record = record;
+      this.fingerprint = fingerprint;
+      this.sequence = 0;
+    }
+  }
+
+}
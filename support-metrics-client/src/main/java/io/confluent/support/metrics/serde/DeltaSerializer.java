@@ -0,0 +1,196 @@
+/**
+ * Copyright 2018 Confluent Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package io.confluent.support.metrics.serde;
+
+import org.apache.avro.Schema;
+import org.apache.avro.SchemaNormalization;
+import org.apache.avro.generic.GenericContainer;
+import org.apache.avro.generic.GenericDatumWriter;
+import org.apache.avro.generic.GenericRecord;
+import org.apache.avro.io.BinaryEncoder;
+import org.apache.avro.io.EncoderFactory;
+import org.apache.avro.specific.SpecificDatumWriter;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+
+import io.confluent.support.metrics.FieldChange;
+import io.confluent.support.metrics.SupportKafkaMetricsDelta;
+
+/**
+ * Serializes consecutive records of the same broker as a full record (keyframe) followed by deltas.
+ *
+ * <p>Every {@code keyframeInterval}-th record of a broker, identified by its
+ * {@code brokerProcessUUID} field, is serialized in full exactly like {@link AvroSerializer} does.
+ * The records in between are serialized as a {@link SupportKafkaMetricsDelta} that only holds the
+ * fields that changed since the previous record of the same broker.  A delta is prefixed with
+ * {@link #DELTA_MAGIC} instead of a standard Avro file header and does not include any schema,
+ * which makes it a fraction of the size of a full record.  Use {@link DeltaDeserializer} to rebuild
+ * full records from a sequence of keyframes and deltas.
+ *
+ * <p>A keyframe is also written whenever the schema of a broker's records changes.  Records without
+ * a {@code brokerProcessUUID} field are always serialized in full.  After {@link #discard}, the
+ * broker's next record is a keyframe, so a dropped delta never breaks the chain readers follow.
+ *
+ * <p>This class is not thread-safe.
+ */
+public class DeltaSerializer extends AvroSerializer {
+
+  /**
+   * Prefix of serialized deltas.  Full records start with Avro's "Obj" magic instead.
+   */
+  public static final byte[] DELTA_MAGIC = {'S', 'M', 'D', 1};
+
+  static final String BROKER_PROCESS_UUID_FIELD = "brokerProcessUUID";
+
+  private final int keyframeInterval;
+  private final Map<String, BrokerState> brokers = new HashMap<>();
+  private final Map<Schema, Long> fingerprints = new IdentityHashMap<>();
+  private final SpecificDatumWriter<SupportKafkaMetricsDelta> deltaWriter =
+      new SpecificDatumWriter<>(SupportKafkaMetricsDelta.class);
+
+  /**
+   * @param keyframeInterval Number of records per keyframe, e.g. 10 to serialize every tenth
+   *     record in full.  With 1, every record is serialized in full.
+   */
+  public DeltaSerializer(int keyframeInterval) {
+    if (keyframeInterval <= 0) {
+      throw new IllegalArgumentException("keyframeInterval must be positive");
+    }
+    this.keyframeInterval = keyframeInterval;
+  }
+
+  /**
+   * @return A standard Avro file holding the full record, or a delta prefixed with
+   *     {@link #DELTA_MAGIC}.
+   */
+  @Override
+  public byte[] serialize(GenericContainer record) throws IOException {
+    if (!(record instanceof GenericRecord)) {
+      return super.serialize(record);
+    }
+    GenericRecord current = (GenericRecord) record;
+    Schema schema = current.getSchema();
+    String uuid = brokerProcessUuid(current);
+    if (uuid == null) {
+      return super.serialize(record);
+    }
+
+    long fingerprint = fingerprint(schema);
+    BrokerState state = brokers.get(uuid);
+    if (state == null
+        || state.fingerprint != fingerprint
+        || state.sequence + 1 >= keyframeInterval) {
+      byte[] keyframe = super.serialize(record);
+      brokers.put(uuid, new BrokerState(current, fingerprint));
+      return keyframe;
+    }
+
+    SupportKafkaMetricsDelta delta = new SupportKafkaMetricsDelta();
+    delta.setBrokerProcessUUID(uuid);
+    delta.setSchemaFingerprint(fingerprint);
+    delta.setSequence(state.sequence + 1);
+    delta.setChanges(changes(state.record, current));
+    byte[] encoded = encodeDelta(delta);
+
+    state.record = current;
+    state.sequence++;
+    return encoded;
+  }
+
+  /**
+   * Forgets the broker's previous record, so that its next record is serialized as a keyframe.
+   * Without this, the next delta would refer to a record that readers never received.
+   */
+  @Override
+  public void discard(GenericContainer record) {
+    if (record instanceof GenericRecord) {
+      String uuid = brokerProcessUuid((GenericRecord) record);
+      if (uuid != null) {
+        brokers.remove(uuid);
+      }
+    }
+  }
+
+  private static String brokerProcessUuid(GenericRecord record) {
+    Schema.Field uuidField = record.getSchema().getField(BROKER_PROCESS_UUID_FIELD);
+    if (uuidField == null || record.get(uuidField.pos()) == null) {
+      return null;
+    }
+    return record.get(uuidField.pos()).toString();
+  }
+
+  private static List<FieldChange> changes(GenericRecord previous, GenericRecord current)
+      throws IOException {
+    List<FieldChange> changes = new ArrayList<>();
+    for (Schema.Field field : current.getSchema().getFields()) {
+      Object value = current.get(field.pos());
+      if (!Objects.equals(previous.get(field.pos()), value)) {
+        FieldChange change = new FieldChange();
+        change.setPosition(field.pos());
+        change.setValue(ByteBuffer.wrap(encodeValue(field.schema(), value)));
+        changes.add(change);
+      }
+    }
+    return changes;
+  }
+
+  static byte[] encodeValue(Schema schema, Object value) throws IOException {
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    BinaryEncoder encoder = EncoderFactory.get().binaryEncoder(out, null);
+    new GenericDatumWriter<Object>(schema).write(value, encoder);
+    encoder.flush();
+    return out.toByteArray();
+  }
+
+  private byte[] encodeDelta(SupportKafkaMetricsDelta delta) throws IOException {
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    out.write(DELTA_MAGIC);
+    BinaryEncoder encoder = EncoderFactory.get().binaryEncoder(out, null);
+    deltaWriter.write(delta, encoder);
+    encoder.flush();
+    return out.toByteArray();
+  }
+
+  private long fingerprint(Schema schema) {
+    Long fingerprint = fingerprints.get(schema);
+    if (fingerprint == null) {
+      fingerprint = SchemaNormalization.parsingFingerprint64(schema);
+      fingerprints.put(schema, fingerprint);
+    }
+    return fingerprint;
+  }
+
+  private static class BrokerState {
+
+    GenericRecord record;
+    final long fingerprint;
+    int sequence;
+
+    BrokerState(GenericRecord record, long fingerprint) {
+      this.record = record;
+      this.fingerprint = fingerprint;
+      this.sequence = 0;
+    }
+  }
+
+}
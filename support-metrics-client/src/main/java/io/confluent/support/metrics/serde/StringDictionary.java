@@ -0,0 +1,85 @@
+/**
+ * Copyright 2018 Confluent Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package io.confluent.support.metrics.serde;
+
+import org.apache.avro.io.Decoder;
+import org.apache.avro.util.Utf8;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Interns the string values of deserialized records, so that records share a single
+ * {@code String} per distinct value, such as a version, cluster id or broker process UUID, instead
+ * of each holding its own copy.
+ *
+ * <p>Values are read into a reused buffer and looked up by their raw UTF-8 bytes, so a value that
+ * is in the dictionary is neither decoded nor copied.  The dictionary is bounded: once it holds
+ * {@code maxEntries} values, other values are returned as new strings.  Values longer than
+ * {@link #MAX_VALUE_BYTES}, which rarely repeat, are never interned.
+ *
+ * <p>This class is not thread-safe.
+ */
+public class StringDictionary {
+
+  /**
+   * Length of the longest value that is interned, in UTF-8 bytes.
+   */
+  public static final int MAX_VALUE_BYTES = 256;
+
+  private final int maxEntries;
+  private final Map<Utf8, String> strings = new HashMap<>();
+  private Utf8 buffer = new Utf8();
+
+  /**
+   * @param maxEntries Maximum number of distinct values held.
+   */
+  public StringDictionary(int maxEntries) {
+    if (maxEntries <= 0) {
+      throw new IllegalArgumentException("maxEntries must be positive");
+    }
+    this.maxEntries = maxEntries;
+  }
+
+  /**
+   * Reads a string value.
+   *
+   * @return The interned value, if it is in the dictionary or there is room to add it.
+   */
+  public String read(Decoder in) throws IOException {
+    buffer = in.readString(buffer);
+    if (buffer.getByteLength() > MAX_VALUE_BYTES) {
+      return buffer.toString();
+    }
+    String value = strings.get(buffer);
+    if (value == null) {
+      value = buffer.toString();
+      if (strings.size() < maxEntries) {
+        strings.put(new Utf8(Arrays.copyOf(buffer.getBytes(), buffer.getByteLength())), value);
+      }
+    }
+    return value;
+  }
+
+  /**
+   * @return The number of values held.
+   */
+  public int size() {
+    return strings.size();
+  }
+
+}
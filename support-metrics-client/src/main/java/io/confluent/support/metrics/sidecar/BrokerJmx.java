@@ -0,0 +1,198 @@
+/**
+ * Copyright 2018 Confluent Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package io.confluent.support.metrics.sidecar;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.Set;
+
+import javax.management.JMException;
+import javax.management.MBeanServerConnection;
+import javax.management.ObjectName;
+import javax.management.remote.JMXConnector;
+import javax.management.remote.JMXConnectorFactory;
+import javax.management.remote.JMXServiceURL;
+
+/**
+ * Reads the state and identity of a Kafka broker from the MBeans it publishes via JMX.
+ *
+ * <p>The connection to a remote broker is opened on first use and re-opened after it failed, so a
+ * broker restart only costs the reads that happen while the broker is down.  Values that are not
+ * available, because the broker is unreachable or still starting up, are read as null.
+ *
+ * <p>This class is thread-safe.
+ */
+public class BrokerJmx implements Closeable {
+
+  private static final Logger log = LoggerFactory.getLogger(BrokerJmx.class);
+
+  /**
+   * Value of the broker state MBean while the broker is serving requests.
+   */
+  public static final int RUNNING_AS_BROKER = 3;
+  /**
+   * Values of the broker state MBean while the broker is shutting down.
+   */
+  public static final int PENDING_CONTROLLED_SHUTDOWN = 6;
+  public static final int BROKER_SHUTTING_DOWN = 7;
+
+  private static final ObjectName BROKER_STATE = objectName(
+      "kafka.server:type=KafkaServer,name=BrokerState");
+  private static final ObjectName CLUSTER_ID = objectName(
+      "kafka.server:type=KafkaServer,name=ClusterId");
+  private static final ObjectName APP_INFO = objectName("kafka.server:type=app-info,*");
+  private static final ObjectName RUNTIME = objectName("java.lang:type=Runtime");
+
+  private final JMXServiceURL url;
+  private MBeanServerConnection connection;
+  private JMXConnector connector;
+
+  /**
+   * @param url The JMX service URL of the broker, e.g.
+   *     {@code service:jmx:rmi:///jndi/rmi://localhost:9999/jmxrmi}.
+   */
+  public BrokerJmx(JMXServiceURL url) {
+    this.url = url;
+  }
+
+  /**
+   * @param connection An MBean server the broker's MBeans are registered with, e.g. the platform
+   *     MBean server of a broker that runs in this JVM.
+   */
+  public BrokerJmx(MBeanServerConnection connection) {
+    this.url = null;
+    this.connection = connection;
+  }
+
+  /**
+   * @return The broker state, e.g. {@link #RUNNING_AS_BROKER}, or null if it is not available.
+   */
+  public Integer brokerState() {
+    Object value = read(BROKER_STATE, "Value");
+    return value instanceof Number ? ((Number) value).intValue() : null;
+  }
+
+  /**
+   * @return The cluster id, or null until the broker has registered with ZooKeeper.
+   */
+  public String clusterId() {
+    Object value = read(CLUSTER_ID, "Value");
+    return value != null ? value.toString() : null;
+  }
+
+  /**
+   * @return The Kafka version of the broker, or null if it is not available.
+   */
+  public String kafkaVersion() {
+    ObjectName appInfo = appInfo();
+    Object value = appInfo != null ? read(appInfo, "Version") : null;
+    return value != null ? value.toString() : null;
+  }
+
+  /**
+   * @return The id of the broker, or null if it is not available.
+   */
+  public String brokerId() {
+    ObjectName appInfo = appInfo();
+    return appInfo != null ? appInfo.getKeyProperty("id") : null;
+  }
+
+  /**
+   * @return The name of the broker's JVM (usually {@code pid@host}) and the time it was started
+   *     at, which together identify the broker process, or null if they are not available.
+   */
+  public String processName() {
+    Object name = read(RUNTIME, "Name");
+    Object startTime = read(RUNTIME, "StartTime");
+    if (name == null || startTime == null) {
+      return null;
+    }
+    return name + "/" + startTime;
+  }
+
+  private ObjectName appInfo() {
+    try {
+      Set<ObjectName> names = connection().queryNames(APP_INFO, null);
+      return names.isEmpty() ? null : names.iterator().next();
+    } catch (IOException e) {
+      disconnect(e);
+      return null;
+    }
+  }
+
+  private Object read(ObjectName name, String attribute) {
+    try {
+      return connection().getAttribute(name, attribute);
+    } catch (JMException e) {
+      // Not registered (yet).
+      return null;
+    } catch (IOException e) {
+      disconnect(e);
+      return null;
+    }
+  }
+
+  private synchronized MBeanServerConnection connection() throws IOException {
+    if (connection == null) {
+      connector = JMXConnectorFactory.connect(url);
+      connection = connector.getMBeanServerConnection();
+      log.info("Connected to broker JMX at {}", url);
+    }
+    return connection;
+  }
+
+  private synchronized void disconnect(IOException cause) {
+    if (url == null) {
+      return;
+    }
+    if (connector != null) {
+      log.warn("Lost connection to broker JMX at {}: {}", url, cause.getMessage());
+    } else {
+      log.debug("Could not connect to broker JMX at {}: {}", url, cause.getMessage());
+    }
+    closeConnector();
+  }
+
+  @Override
+  public synchronized void close() {
+    if (url != null) {
+      closeConnector();
+    }
+  }
+
+  private void closeConnector() {
+    if (connector != null) {
+      try {
+        connector.close();
+      } catch (IOException e) {
+        // The connection is gone either way.
+      }
+    }
+    connector = null;
+    connection = null;
+  }
+
+  private static ObjectName objectName(String name) {
+    try {
+      return new ObjectName(name);
+    } catch (JMException e) {
+      throw new IllegalStateException(e);
+    }
+  }
+
+}
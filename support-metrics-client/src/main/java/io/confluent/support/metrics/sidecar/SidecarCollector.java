@@ -0,0 +1,84 @@
+/**
+ * Copyright 2018 Confluent Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package io.confluent.support.metrics.sidecar;
+
+import org.apache.avro.generic.GenericContainer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.nio.charset.StandardCharsets;
+import java.util.UUID;
+
+import io.confluent.support.metrics.SupportKafkaMetricsBasic;
+import io.confluent.support.metrics.common.Collector;
+import io.confluent.support.metrics.common.Version;
+import io.confluent.support.metrics.common.time.TimeUtils;
+
+/**
+ * Collects the same record as {@link io.confluent.support.metrics.collectors.BasicCollector}, but
+ * from a broker in another JVM, via {@link BrokerJmx}.
+ *
+ * <p>The broker does not publish its brokerProcessUUID, so this collector derives one from the
+ * broker id and the name and start time of the broker's JVM.  It is the same for every sidecar
+ * that reports on the same broker process and changes when the broker restarts.  The Confluent
+ * Platform version is the one of the sidecar, which is installed from the same package as the
+ * broker.
+ */
+public class SidecarCollector extends Collector {
+
+  private static final Logger log = LoggerFactory.getLogger(SidecarCollector.class);
+
+  private final TimeUtils time;
+  private final BrokerJmx broker;
+
+  public SidecarCollector(TimeUtils time, BrokerJmx broker) {
+    super();
+    this.time = time;
+    this.broker = broker;
+  }
+
+  /**
+   * @return A new metrics record, or null if the broker is not reachable or not fully started.
+   */
+  @Override
+  public GenericContainer collectMetrics() {
+    String kafkaVersion = broker.kafkaVersion();
+    String clusterId = broker.clusterId();
+    String brokerProcessUuid = brokerProcessUuid();
+    if (kafkaVersion == null || clusterId == null || brokerProcessUuid == null) {
+      log.warn("Broker metadata is not available via JMX");
+      return null;
+    }
+    SupportKafkaMetricsBasic metricsRecord = new SupportKafkaMetricsBasic();
+    metricsRecord.setTimestamp(time.nowInUnixTime());
+    metricsRecord.setKafkaVersion(kafkaVersion);
+    metricsRecord.setConfluentPlatformVersion(Version.getVersion());
+    metricsRecord.setCollectorState(this.getRuntimeState().stateId());
+    metricsRecord.setBrokerProcessUUID(brokerProcessUuid);
+    metricsRecord.setClusterId(clusterId);
+    return metricsRecord;
+  }
+
+  private String brokerProcessUuid() {
+    String brokerId = broker.brokerId();
+    String processName = broker.processName();
+    if (brokerId == null || processName == null) {
+      return null;
+    }
+    byte[] name = (brokerId + "/" + processName).getBytes(StandardCharsets.UTF_8);
+    return UUID.nameUUIDFromBytes(name).toString();
+  }
+
+}
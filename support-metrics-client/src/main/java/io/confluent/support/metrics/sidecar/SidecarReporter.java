@@ -0,0 +1,176 @@
+/**
+ * Copyright 2018 Confluent Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package io.confluent.support.metrics.sidecar;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import io.confluent.support.metrics.BaseMetricsReporter;
+import io.confluent.support.metrics.KafkaSupportConfig;
+import io.confluent.support.metrics.MetricsPipeline;
+import io.confluent.support.metrics.MetricsPipelineFactory;
+import io.confluent.support.metrics.agent.AgentMetrics;
+import io.confluent.support.metrics.agent.MemoryBudget;
+import io.confluent.support.metrics.common.Collector;
+import io.confluent.support.metrics.common.kafka.KafkaUtilities;
+import io.confluent.support.metrics.common.kafka.ZkClientProvider;
+import io.confluent.support.metrics.common.time.TimeUtils;
+
+/**
+ * Periodically reports metrics of a Kafka broker that runs in another JVM.
+ *
+ * <p>Unlike {@link io.confluent.support.metrics.MetricsReporter}, which runs inside the broker,
+ * this reporter reads the broker via {@link BrokerJmx} and submits from its own process, so
+ * collection, serialization and submission neither use the broker's heap nor delay its startup.
+ * It reports the basic metrics record only: the additional collectors need the broker's
+ * in-process state.
+ *
+ * <p>This class is not thread-safe.
+ */
+public class SidecarReporter extends BaseMetricsReporter {
+
+  private static final Logger log = LoggerFactory.getLogger(SidecarReporter.class);
+
+  private static final long BROKER_POLL_MS = 1000L;
+
+  private final KafkaSupportConfig kafkaSupportConfig;
+  private final BrokerJmx broker;
+  private final ZkClientProvider zkClientProvider;
+  private final MetricsPipelineFactory pipelineFactory;
+  private Collector metricsCollector;
+  private MetricsPipeline pipeline;
+  private volatile boolean closing = false;
+
+  /**
+   * @param broker The broker to report on.
+   * @param zkClientProvider Provides a client of the broker's ZooKeeper ensemble, which is used to
+   *     find and create the support metrics topic.
+   */
+  public SidecarReporter(String threadName,
+                         boolean isDaemon,
+                         KafkaSupportConfig kafkaSupportConfig,
+                         BrokerJmx broker,
+                         ZkClientProvider zkClientProvider,
+                         KafkaUtilities kafkaUtilities) {
+    super(threadName, isDaemon, kafkaSupportConfig, kafkaUtilities, null, true);
+    this.kafkaSupportConfig = kafkaSupportConfig;
+    this.broker = broker;
+    this.zkClientProvider = zkClientProvider;
+    this.pipelineFactory = new MetricsPipelineFactory(kafkaSupportConfig);
+  }
+
+  @Override
+  public void init() {
+    super.init();
+    // The broker's metadata cache is out of reach, so the Kafka sink reads ZooKeeper.
+    pipeline = pipelineFactory.create(metricsCollector, sendToKafkaEnabled(),
+                                      sendToConfluentEnabled(), zkClientProvider, kafkaUtilities,
+                                      null);
+  }
+
+  /**
+   * Runs the report loop.  Unlike the loop of the in-broker reporter, it does not end when the
+   * broker shuts down: a collection that falls due while the broker is down or restarting runs as
+   * soon as the broker is running again.
+   */
+  @Override
+  public void run() {
+    if (!reportingEnabled()) {
+      return;
+    }
+    long reportIntervalMs = kafkaSupportConfig.getReportIntervalMs();
+    log.info("Reporting metrics of the broker every {} ms", reportIntervalMs);
+    try {
+      awaitRunningBroker();
+      while (!closing) {
+        Thread.sleep(reportIntervalMs);
+        awaitRunningBroker();
+        submitMetrics();
+      }
+    } catch (InterruptedException e) {
+      // Report the shutdown, like the in-broker reporter does.
+      if (isReadyForMetricsCollection()) {
+        submitMetrics();
+      }
+      Thread.currentThread().interrupt();
+    } catch (RuntimeException e) {
+      log.error("Terminating metrics collection: {}", e.getMessage());
+    } finally {
+      log.info("Metrics collection stopped");
+    }
+  }
+
+  private void awaitRunningBroker() throws InterruptedException {
+    while (!isReadyForMetricsCollection()) {
+      if (closing) {
+        throw new InterruptedException();
+      }
+      Thread.sleep(BROKER_POLL_MS);
+    }
+  }
+
+  @Override
+  protected void submitMetrics() {
+    pipeline.submitMetrics();
+  }
+
+  @Override
+  protected ZkClientProvider zkClientProvider() {
+    return zkClientProvider;
+  }
+
+  @Override
+  protected Collector metricsCollector() {
+    metricsCollector = new SidecarCollector(new TimeUtils(), broker);
+    return metricsCollector;
+  }
+
+  /**
+   * @return The overhead of this reporter's report cycles.
+   */
+  public AgentMetrics agentMetrics() {
+    return pipelineFactory.agentMetrics();
+  }
+
+  /**
+   * @return The budget of the heap this reporter retains.
+   */
+  public MemoryBudget memoryBudget() {
+    return pipelineFactory.memoryBudget();
+  }
+
+  @Override
+  protected boolean isReadyForMetricsCollection() {
+    Integer state = broker.brokerState();
+    return state != null && state == BrokerJmx.RUNNING_AS_BROKER;
+  }
+
+  @Override
+  protected boolean isShuttingDown() {
+    Integer state = broker.brokerState();
+    return state != null && (state == BrokerJmx.PENDING_CONTROLLED_SHUTDOWN
+                             || state == BrokerJmx.BROKER_SHUTTING_DOWN);
+  }
+
+  @Override
+  public void close() {
+    closing = true;
+    super.close();
+    if (pipeline != null) {
+      pipeline.close();
+    }
+  }
+
+}
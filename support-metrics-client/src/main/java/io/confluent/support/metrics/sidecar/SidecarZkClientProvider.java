@@ -0,0 +1,77 @@
+/**
+ * Copyright 2018 Confluent Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package io.confluent.support.metrics.sidecar;
+
+import org.apache.kafka.common.security.JaasUtils;
+import org.apache.kafka.common.utils.Time;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.Closeable;
+
+import io.confluent.support.metrics.common.kafka.ZkClientProvider;
+import kafka.server.KafkaConfig;
+import kafka.zk.KafkaZkClient;
+
+/**
+ * Owns a ZooKeeper client for a process that, unlike a broker, has none: it connects to the
+ * ZooKeeper ensemble of the broker's configuration on first use, and retries on later uses if the
+ * ensemble was not reachable.
+ */
+public class SidecarZkClientProvider implements ZkClientProvider, Closeable {
+
+  private static final Logger log = LoggerFactory.getLogger(SidecarZkClientProvider.class);
+
+  private final KafkaConfig brokerConfig;
+  private KafkaZkClient zkClient;
+
+  public SidecarZkClientProvider(KafkaConfig brokerConfig) {
+    this.brokerConfig = brokerConfig;
+  }
+
+  /**
+   * @return The ZooKeeper client, or null if ZooKeeper is not reachable.
+   */
+  @Override
+  public synchronized KafkaZkClient zkClient() {
+    if (zkClient == null) {
+      try {
+        zkClient = KafkaZkClient.apply(
+            brokerConfig.zkConnect(),
+            JaasUtils.isZkSecurityEnabled(),
+            brokerConfig.zkSessionTimeoutMs(),
+            brokerConfig.zkConnectionTimeoutMs(),
+            brokerConfig.zkMaxInFlightRequests(),
+            Time.SYSTEM,
+            "kafka.server",
+            "SessionExpireListener"
+        );
+      } catch (RuntimeException e) {
+        log.error("Could not connect to ZooKeeper at {}: {}", brokerConfig.zkConnect(),
+                  e.getMessage());
+      }
+    }
+    return zkClient;
+  }
+
+  @Override
+  public synchronized void close() {
+    if (zkClient != null) {
+      zkClient.close();
+      zkClient = null;
+    }
+  }
+
+}
@@ -0,0 +1,74 @@
+/**
+ * Copyright 2018 Confluent Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package io.confluent.support.metrics.sinks;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+
+import io.confluent.support.metrics.submitters.ConfluentSubmitter;
+
+/**
+ * Submits metrics to Confluent over the Internet via HTTPS and/or HTTP.
+ *
+ * <p>The endpoints only accept self-contained records, so the sink always submits the
+ * {@link EncodedMetrics#snapshot() snapshot} of a record, never a delta.
+ */
+public class ConfluentSink implements MetricsSink {
+
+  private static final Logger log = LoggerFactory.getLogger(ConfluentSink.class);
+
+  private final ConfluentSubmitter submitter;
+
+  /**
+   * @param endpointHttp The HTTP endpoint, or an empty string to disable it.
+   * @param endpointHttps The HTTPS endpoint, or an empty string to disable it.
+   * @param proxy The proxy to use, or an empty string to connect directly.
+   */
+  public ConfluentSink(String customerId,
+                       String endpointHttp,
+                       String endpointHttps,
+                       String proxy) {
+    this(new ConfluentSubmitter(customerId, endpointHttp, endpointHttps, proxy, null));
+  }
+
+  // Visible for testing
+  ConfluentSink(ConfluentSubmitter submitter) {
+    this.submitter = submitter;
+  }
+
+  @Override
+  public String name() {
+    return "confluent";
+  }
+
+  @Override
+  public void submit(EncodedMetrics encodedMetrics) {
+    byte[] snapshot;
+    try {
+      snapshot = encodedMetrics.snapshot();
+    } catch (IOException e) {
+      log.error("Could not serialize metrics snapshot: {}", e.getMessage());
+      return;
+    }
+    submitter.submit(snapshot);
+  }
+
+  @Override
+  public void close() {
+  }
+
+}
@@ -0,0 +1,95 @@
+/**
+ * Copyright 2018 Confluent Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package io.confluent.support.metrics.sinks;
+
+import org.apache.avro.Schema;
+import org.apache.avro.generic.GenericContainer;
+import org.apache.avro.generic.IndexedRecord;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+
+import io.confluent.support.metrics.serde.AvroSerializer;
+
+/**
+ * A serialized metrics record as it is handed to the {@link MetricsSink sinks}.
+ *
+ * <p>Every record has a key made of its record type and the {@code brokerProcessUUID} of the
+ * broker that collected it, e.g. {@code SupportKafkaMetricsBasic/1b4e28ba-...}, so that the
+ * latest record of each type and broker process can be retained by log compaction.
+ *
+ * <p>The value is the record as serialized by the reporter's encoder, which may be a delta
+ * against a previous record.  Sinks that need a self-contained record, such as a compacted topic,
+ * use {@link #snapshot()} instead, which is serialized on first use only.
+ */
+public class EncodedMetrics {
+
+  static final String BROKER_PROCESS_UUID_FIELD = "brokerProcessUUID";
+
+  private final GenericContainer metricsRecord;
+  private final byte[] key;
+  private final byte[] value;
+  private final boolean isSnapshot;
+  private byte[] snapshot;
+
+  /**
+   * @param metricsRecord The collected record.
+   * @param value The serialized record.
+   * @param isSnapshot Whether {@code value} is a full, self-contained serialization of the record.
+   */
+  public EncodedMetrics(GenericContainer metricsRecord, byte[] value, boolean isSnapshot) {
+    this.metricsRecord = metricsRecord;
+    this.key = keyOf(metricsRecord).getBytes(StandardCharsets.UTF_8);
+    this.value = value;
+    this.isSnapshot = isSnapshot;
+  }
+
+  public byte[] key() {
+    return key;
+  }
+
+  public byte[] value() {
+    return value;
+  }
+
+  /**
+   * @return The full serialization of the record, which equals {@link #value()} unless the value
+   *     is a delta.
+   */
+  public synchronized byte[] snapshot() throws IOException {
+    if (isSnapshot) {
+      return value;
+    }
+    if (snapshot == null) {
+      snapshot = new AvroSerializer().serialize(metricsRecord);
+    }
+    return snapshot;
+  }
+
+  /**
+   * @return {@code <record type>/<brokerProcessUUID>}, or just the record type if the record has
+   *     no {@code brokerProcessUUID}.
+   */
+  public static String keyOf(GenericContainer metricsRecord) {
+    Schema schema = metricsRecord.getSchema();
+    Schema.Field uuidField = schema.getField(BROKER_PROCESS_UUID_FIELD);
+    if (uuidField == null || !(metricsRecord instanceof IndexedRecord)) {
+      return schema.getName();
+    }
+    Object uuid = ((IndexedRecord) metricsRecord).get(uuidField.pos());
+    return uuid == null ? schema.getName() : schema.getName() + "/" + uuid;
+  }
+
+}
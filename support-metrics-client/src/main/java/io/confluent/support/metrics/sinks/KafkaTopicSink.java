@@ -0,0 +1,311 @@
+/**
+ * Copyright 2018 Confluent Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package io.confluent.support.metrics.sinks;
+
+import org.apache.kafka.clients.producer.KafkaProducer;
+import org.apache.kafka.clients.producer.Producer;
+import org.apache.kafka.clients.producer.ProducerConfig;
+import org.apache.kafka.clients.producer.ProducerRecord;
+import org.apache.kafka.clients.producer.RecordMetadata;
+import org.apache.kafka.common.KafkaException;
+import org.apache.kafka.common.config.TopicConfig;
+import org.apache.kafka.common.errors.TopicExistsException;
+import org.apache.kafka.common.serialization.ByteArraySerializer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Properties;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import io.confluent.support.metrics.agent.MemoryBudget;
+import io.confluent.support.metrics.common.kafka.KafkaUtilities;
+import io.confluent.support.metrics.common.kafka.ZkClientProvider;
+import io.confluent.support.metrics.metadata.MetadataSnapshot;
+import io.confluent.support.metrics.metadata.MetadataSnapshotProvider;
+import kafka.admin.RackAwareMode;
+import kafka.zk.AdminZkClient;
+import kafka.zk.KafkaZkClient;
+
+/**
+ * Submits metrics to a Kafka topic within the same cluster as the broker.  The topic is created
+ * if it does not exist yet.
+ *
+ * <p>Topics are created and verified in ZooKeeper once, and again only if the producer failed or
+ * the broker's metadata cache no longer knows them.  The producer is bootstrapped from the live
+ * brokers of a {@link MetadataSnapshotProvider}, if one is given, so that a submission normally
+ * does not read ZooKeeper at all.
+ *
+ * <p>Records are keyed by {@link EncodedMetrics#key()}.  Optionally, the full snapshot of every
+ * record is also written to a companion topic with {@code cleanup.policy=compact,delete}, which
+ * retains only the latest record of each type and broker process, so that the current state of a
+ * cluster can be read without scanning the full retention of the main topic.
+ *
+ * <p>The sink keeps a single producer for its lifetime, created on the first submission.  The
+ * producer compresses and batches records, is idempotent, and its buffer memory is bounded, so
+ * that it cannot take a noticeable share of the broker's heap.  The buffer memory is reserved from
+ * the agent's {@link MemoryBudget}; if the full buffer does not fit, the producer is created with
+ * a smaller one, and if that does not fit either, records are dropped until it does.  A producer
+ * that failed is closed and replaced on the next submission.
+ *
+ * <p>A submission whose record did not reach the main topic fails with a {@link KafkaException},
+ * so that the caller knows the record was lost.
+ */
+public class KafkaTopicSink implements MetricsSink {
+
+  private static final Logger log = LoggerFactory.getLogger(KafkaTopicSink.class);
+
+  // Same settings as the ones BaseMetricsReporter uses to create the support metrics topic.
+  static final int SUPPORT_TOPIC_PARTITIONS = 1;
+  static final int SUPPORT_TOPIC_REPLICATION = 3;
+  static final long RETENTION_MS = 365 * 24 * 60 * 60 * 1000L;
+
+  // Snapshots of broker processes that stopped reporting are removed after this time.
+  static final long LATEST_TOPIC_RETENTION_MS = 7 * 24 * 60 * 60 * 1000L;
+  static final String LATEST_TOPIC_CLEANUP_POLICY =
+      TopicConfig.CLEANUP_POLICY_COMPACT + "," + TopicConfig.CLEANUP_POLICY_DELETE;
+
+  private static final int MAX_BOOTSTRAP_SERVERS = 3;
+  // Upper bound of the time a record may take to be acknowledged, including retries.
+  private static final long SEND_TIMEOUT_MS = 30 * 1000L;
+  private static final long CLOSE_TIMEOUT_MS = 5 * 1000L;
+
+  static final String PRODUCER_CLIENT_ID = "confluent-support-metrics";
+  static final String PRODUCER_COMPRESSION_TYPE = "lz4";
+  static final int PRODUCER_LINGER_MS = 50;
+  static final long PRODUCER_BUFFER_MEMORY_BYTES = 1024 * 1024L;
+  static final long PRODUCER_MIN_BUFFER_MEMORY_BYTES = 64 * 1024L;
+  static final long PRODUCER_MAX_BLOCK_MS = 10 * 1000L;
+  static final int PRODUCER_REQUEST_TIMEOUT_MS = 10 * 1000;
+
+  private final ZkClientProvider zkClientProvider;
+  private final KafkaUtilities kafkaUtilities;
+  private final String topic;
+  private final String latestTopic;
+  private final MemoryBudget.Reservation bufferMemory;
+  private final MetadataSnapshotProvider metadata;
+  private boolean topicReady = false;
+  private boolean latestTopicReady = false;
+  private Producer<byte[], byte[]> producer;
+
+  public KafkaTopicSink(ZkClientProvider zkClientProvider,
+                        KafkaUtilities kafkaUtilities,
+                        String topic) {
+    this(zkClientProvider, kafkaUtilities, topic, null);
+  }
+
+  /**
+   * @param latestTopic The compacted companion topic, or null or empty to not write one.
+   */
+  public KafkaTopicSink(ZkClientProvider zkClientProvider,
+                        KafkaUtilities kafkaUtilities,
+                        String topic,
+                        String latestTopic) {
+    this(zkClientProvider, kafkaUtilities, topic, latestTopic, MemoryBudget.unlimited());
+  }
+
+  /**
+   * @param memoryBudget The budget the producer's buffer memory is reserved from.
+   */
+  public KafkaTopicSink(ZkClientProvider zkClientProvider,
+                        KafkaUtilities kafkaUtilities,
+                        String topic,
+                        String latestTopic,
+                        MemoryBudget memoryBudget) {
+    this(zkClientProvider, kafkaUtilities, topic, latestTopic, memoryBudget, null);
+  }
+
+  /**
+   * @param metadata Serves the live brokers and topics of the cluster, or null to read the
+   *     bootstrap servers from ZooKeeper.
+   */
+  public KafkaTopicSink(ZkClientProvider zkClientProvider,
+                        KafkaUtilities kafkaUtilities,
+                        String topic,
+                        String latestTopic,
+                        MemoryBudget memoryBudget,
+                        MetadataSnapshotProvider metadata) {
+    this.bufferMemory = memoryBudget.reservation();
+    this.metadata = metadata;
+    this.zkClientProvider = zkClientProvider;
+    this.kafkaUtilities = kafkaUtilities;
+    this.topic = topic;
+    this.latestTopic = latestTopic == null || latestTopic.isEmpty() ? null : latestTopic;
+  }
+
+  @Override
+  public String name() {
+    return "kafka";
+  }
+
+  @Override
+  public synchronized void submit(EncodedMetrics encodedMetrics) {
+    if (metadata != null) {
+      // Topics deleted since they were verified are created again.
+      topicReady = topicReady && !metadata.isTopicMissing(topic);
+      latestTopicReady = latestTopicReady && !metadata.isTopicMissing(latestTopic);
+    }
+    List<ProducerRecord<byte[], byte[]>> records = new ArrayList<>(2);
+    // If the topic cannot be created, we try again with the next record, but this record is lost.
+    if (!topicReady) {
+      topicReady = kafkaUtilities.createAndVerifyTopic(
+          zkClientProvider.zkClient(), topic, SUPPORT_TOPIC_PARTITIONS, SUPPORT_TOPIC_REPLICATION,
+          RETENTION_MS);
+    }
+    if (topicReady) {
+      records.add(new ProducerRecord<>(topic, encodedMetrics.key(), encodedMetrics.value()));
+    }
+    if (latestTopic != null && createLatestTopic()) {
+      try {
+        records.add(new ProducerRecord<>(latestTopic, encodedMetrics.key(),
+                                         encodedMetrics.snapshot()));
+      } catch (IOException e) {
+        log.error("Could not serialize metrics snapshot: {}", e.getMessage());
+      }
+    }
+    if (!records.isEmpty()) {
+      send(records);
+    }
+    if (!topicReady) {
+      throw new KafkaException("Could not create Kafka topic " + topic);
+    }
+  }
+
+  private void send(List<ProducerRecord<byte[], byte[]>> records) {
+    if (producer == null) {
+      List<String> bootstrapServers = bootstrapServers();
+      if (bootstrapServers.isEmpty()) {
+        throw new KafkaException("Could not submit metrics to Kafka topic " + topic
+                                 + ": no live brokers");
+      }
+      if (!bufferMemory.resize(PRODUCER_BUFFER_MEMORY_BYTES)
+          && !bufferMemory.resize(PRODUCER_MIN_BUFFER_MEMORY_BYTES)) {
+        throw new KafkaException("Not submitting metrics to Kafka topic " + topic
+                                 + ": memory budget of the agent exhausted");
+      }
+      try {
+        producer = createProducer(String.join(",", bootstrapServers), bufferMemory.bytes());
+      } catch (RuntimeException e) {
+        bufferMemory.close();
+        throw e;
+      }
+    }
+    try {
+      List<Future<RecordMetadata>> responses = new ArrayList<>(records.size());
+      for (ProducerRecord<byte[], byte[]> record : records) {
+        responses.add(producer.send(record));
+      }
+      for (Future<RecordMetadata> response : responses) {
+        response.get(SEND_TIMEOUT_MS, TimeUnit.MILLISECONDS);
+      }
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new KafkaException("Interrupted while submitting metrics to Kafka topic " + topic, e);
+    } catch (ExecutionException | TimeoutException | RuntimeException e) {
+      closeProducer();
+      // The topics may be gone, so they are verified again with the next record.
+      topicReady = false;
+      latestTopicReady = false;
+      throw new KafkaException(
+          "Could not submit metrics to Kafka topic " + topic + ": " + e.getMessage(), e);
+    }
+  }
+
+  private List<String> bootstrapServers() {
+    MetadataSnapshot snapshot = metadata != null ? metadata.snapshot() : null;
+    if (snapshot != null && !snapshot.bootstrapServers().isEmpty()) {
+      List<String> servers = snapshot.bootstrapServers();
+      return servers.subList(0, Math.min(servers.size(), MAX_BOOTSTRAP_SERVERS));
+    }
+    return kafkaUtilities.getBootstrapServers(zkClientProvider.zkClient(), MAX_BOOTSTRAP_SERVERS);
+  }
+
+  // Visible for testing
+  Producer<byte[], byte[]> createProducer(String bootstrapServers, long bufferMemoryBytes) {
+    Properties props = new Properties();
+    props.put(ProducerConfig.BOOTSTRAP_SERVERS_CONFIG, bootstrapServers);
+    props.put(ProducerConfig.CLIENT_ID_CONFIG, PRODUCER_CLIENT_ID);
+    props.put(ProducerConfig.ACKS_CONFIG, "all");
+    props.put(ProducerConfig.ENABLE_IDEMPOTENCE_CONFIG, true);
+    props.put(ProducerConfig.COMPRESSION_TYPE_CONFIG, PRODUCER_COMPRESSION_TYPE);
+    props.put(ProducerConfig.LINGER_MS_CONFIG, PRODUCER_LINGER_MS);
+    props.put(ProducerConfig.BUFFER_MEMORY_CONFIG, bufferMemoryBytes);
+    props.put(ProducerConfig.MAX_BLOCK_MS_CONFIG, PRODUCER_MAX_BLOCK_MS);
+    props.put(ProducerConfig.REQUEST_TIMEOUT_MS_CONFIG, PRODUCER_REQUEST_TIMEOUT_MS);
+    props.put(ProducerConfig.DELIVERY_TIMEOUT_MS_CONFIG, (int) SEND_TIMEOUT_MS);
+    return new KafkaProducer<>(props, new ByteArraySerializer(), new ByteArraySerializer());
+  }
+
+  private void closeProducer() {
+    if (producer != null) {
+      try {
+        producer.close(Duration.ofMillis(CLOSE_TIMEOUT_MS));
+      } catch (RuntimeException e) {
+        log.warn("Could not close producer: {}", e.getMessage());
+      }
+      producer = null;
+    }
+    bufferMemory.close();
+  }
+
+  /**
+   * Creates the compacted companion topic unless it exists.
+   *
+   * @return Whether the topic exists.
+   */
+  private boolean createLatestTopic() {
+    if (latestTopicReady) {
+      return true;
+    }
+    try {
+      KafkaZkClient zkClient = zkClientProvider.zkClient();
+      if (!zkClient.topicExists(latestTopic)) {
+        int liveBrokers = zkClient.getAllBrokersInCluster().size();
+        if (liveBrokers == 0) {
+          return false;
+        }
+        Properties topicConfig = new Properties();
+        topicConfig.put(TopicConfig.CLEANUP_POLICY_CONFIG, LATEST_TOPIC_CLEANUP_POLICY);
+        topicConfig.put(TopicConfig.RETENTION_MS_CONFIG,
+                        Long.toString(LATEST_TOPIC_RETENTION_MS));
+        new AdminZkClient(zkClient).createTopic(
+            latestTopic, SUPPORT_TOPIC_PARTITIONS,
+            Math.min(SUPPORT_TOPIC_REPLICATION, liveBrokers), topicConfig,
+            RackAwareMode.Enforced$.MODULE$);
+      }
+      latestTopicReady = true;
+    } catch (TopicExistsException e) {
+      latestTopicReady = true;
+    } catch (RuntimeException e) {
+      log.error("Could not create Kafka topic {}: {}", latestTopic, e.getMessage());
+    }
+    return latestTopicReady;
+  }
+
+  /**
+   * Closes the producer, waiting a few seconds for pending records to be sent.
+   */
+  @Override
+  public synchronized void close() {
+    closeProducer();
+  }
+
+}
@@ -0,0 +1,41 @@
+/**
+ * Copyright 2018 Confluent Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package io.confluent.support.metrics.sinks;
+
+import java.io.Closeable;
+
+/**
+ * A destination of serialized metrics records, e.g. a Kafka topic or Confluent's HTTP endpoint.
+ */
+public interface MetricsSink extends Closeable {
+
+  /**
+   * @return A short name of this sink for logging, e.g. {@code kafka}.
+   */
+  String name();
+
+  /**
+   * Submits a serialized metrics record.  Implementations must not throw checked exceptions;
+   * failures to submit are logged, and the record is lost.
+   */
+  void submit(EncodedMetrics encodedMetrics);
+
+  /**
+   * Releases any resources held by this sink.
+   */
+  @Override
+  void close();
+
+}
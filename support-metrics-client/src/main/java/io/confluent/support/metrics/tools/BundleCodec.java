@@ -0,0 +1,118 @@
+/**
+ * Copyright 2018 Confluent Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package io.confluent.support.metrics.tools;
+
+import com.github.luben.zstd.ZstdInputStream;
+import com.github.luben.zstd.ZstdOutputStream;
+
+import org.xerial.snappy.SnappyFramedInputStream;
+import org.xerial.snappy.SnappyFramedOutputStream;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Locale;
+
+/**
+ * The file formats of a support metrics bundle.
+ *
+ * <p>{@link #ZIP} is a zip archive with one entry per metrics submission.  The other codecs write
+ * a single compressed stream of submissions, each prefixed by its length as a 4-byte big-endian
+ * integer, in the codec's standard framing, so that they can be decompressed with the codec's
+ * command line tools as well.
+ */
+public enum BundleCodec {
+
+  ZIP(".zip"),
+
+  /**
+   * The snappy framing format, see {@link SnappyFramedOutputStream}.  Fastest, with the lowest
+   * compression ratio.
+   */
+  SNAPPY(".sz"),
+
+  /**
+   * The Zstandard frame format at its default level.  About as fast as deflate with a higher
+   * compression ratio.
+   */
+  ZSTD(".zst");
+
+  private static final int ZSTD_LEVEL = 3;
+
+  private final String extension;
+
+  BundleCodec(String extension) {
+    this.extension = extension;
+  }
+
+  /**
+   * @return The file name extension of bundles of this codec, including the dot.
+   */
+  public String extension() {
+    return extension;
+  }
+
+  /**
+   * @return The codec of the given name, case-insensitive.
+   * @throws IllegalArgumentException If there is no such codec.
+   */
+  public static BundleCodec forName(String name) {
+    return valueOf(name.toUpperCase(Locale.ROOT));
+  }
+
+  /**
+   * @return The codec of a bundle file, by its extension.  Files with an unknown extension are
+   *     assumed to be zip files.
+   */
+  public static BundleCodec forFile(File file) {
+    String name = file.getName().toLowerCase(Locale.ROOT);
+    for (BundleCodec codec : values()) {
+      if (name.endsWith(codec.extension)) {
+        return codec;
+      }
+    }
+    return ZIP;
+  }
+
+  /**
+   * Wraps a stream into one that compresses with this codec.  Not applicable to {@link #ZIP}.
+   */
+  OutputStream compress(OutputStream out) throws IOException {
+    switch (this) {
+      case SNAPPY:
+        return new SnappyFramedOutputStream(out);
+      case ZSTD:
+        return new ZstdOutputStream(out, ZSTD_LEVEL);
+      default:
+        throw new IllegalStateException("Codec " + this + " is not a stream codec");
+    }
+  }
+
+  /**
+   * Wraps a stream into one that decompresses with this codec.  Not applicable to {@link #ZIP}.
+   */
+  InputStream decompress(InputStream in) throws IOException {
+    switch (this) {
+      case SNAPPY:
+        return new SnappyFramedInputStream(in);
+      case ZSTD:
+        return new ZstdInputStream(in);
+      default:
+        throw new IllegalStateException("Codec " + this + " is not a stream codec");
+    }
+  }
+
+}
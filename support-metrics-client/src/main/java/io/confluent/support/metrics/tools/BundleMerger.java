@@ -0,0 +1,198 @@
+/**
+ * Copyright 2018 Confluent Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package io.confluent.support.metrics.tools;
+
+import org.apache.avro.SchemaNormalization;
+import org.apache.avro.generic.GenericContainer;
+import org.apache.avro.generic.GenericRecord;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.Set;
+
+import io.confluent.support.metrics.serde.DeltaDeserializer;
+
+/**
+ * Merges support metrics bundles, e.g. of several clusters or collected at different times, into
+ * a single bundle in the order of the records' {@code timestamp}.
+ *
+ * <p>The merge is a k-way merge of the input bundles, which are expected to be in time order as
+ * bundles retrieved from the metrics topic are.  Each input is read one submission ahead with a
+ * {@link BundleReader}, and the input whose next submission has the earliest timestamp is written
+ * next, so memory does not grow with the size of the bundles.  Ties go to the input listed first,
+ * and the submissions of an input keep their order, so deltas (cf.
+ * {@link io.confluent.support.metrics.serde.DeltaSerializer}) still follow their full record.
+ *
+ * <p>The timestamp of a delta is the one of the full record it rebuilds.  Submissions without a
+ * timestamp, e.g. ones that cannot be read, take the timestamp of the submission before them in
+ * the same input.  Where inputs overlap, a submission that is byte-for-byte identical to one
+ * already written with the same timestamp is dropped, which only takes the fingerprints of the
+ * submissions of the latest timestamp.
+ */
+public class BundleMerger {
+
+  private static final String TIMESTAMP_FIELD = "timestamp";
+
+  private final BundleOptions options;
+  private int numDuplicates = 0;
+
+  /**
+   * @param options The format of the output bundle, and whether to roll it into segments.
+   */
+  public BundleMerger(BundleOptions options) {
+    this.options = options;
+  }
+
+  /**
+   * @return The number of submissions dropped as duplicates by the last merge, including those of
+   *     {@link BundleOptions#deduplicate()}.
+   */
+  public int numDuplicates() {
+    return numDuplicates;
+  }
+
+  /**
+   * Merges the inputs into a bundle.
+   *
+   * @param inputs The bundle files to merge, in the order ties are broken.
+   * @param outFile The output file, cf. {@link BundleWriter}.
+   * @return The files of the output bundle, which is empty if the inputs hold no submissions.
+   */
+  public List<File> merge(List<File> inputs, File outFile) throws IOException {
+    numDuplicates = 0;
+    List<Input> opened = new ArrayList<>(inputs.size());
+    PriorityQueue<Input> queue = new PriorityQueue<>(
+        Math.max(1, inputs.size()),
+        Comparator.comparingLong((Input input) -> input.timestamp)
+            .thenComparingInt(input -> input.index)
+    );
+    try (BundleWriter bundle = new BundleWriter(outFile, outFile.getPath(), options)) {
+      for (File file : inputs) {
+        Input input = new Input(opened.size(), new BundleReader(file));
+        opened.add(input);
+        if (input.advance()) {
+          queue.add(input);
+        }
+      }
+
+      long windowTimestamp = Long.MIN_VALUE;
+      Set<Long> window = new HashSet<>();
+      while (!queue.isEmpty()) {
+        Input input = queue.remove();
+        if (input.timestamp != windowTimestamp) {
+          windowTimestamp = input.timestamp;
+          window = new HashSet<>();
+        }
+        if (window.add(SchemaNormalization.fingerprint64(input.submission))) {
+          bundle.add(input.submission);
+        } else {
+          numDuplicates++;
+        }
+        if (input.advance()) {
+          queue.add(input);
+        }
+      }
+      numDuplicates += bundle.numDuplicates();
+      return bundle.files();
+    } finally {
+      for (Input input : opened) {
+        input.close();
+      }
+    }
+  }
+
+  private static class Input implements Closeable {
+
+    private final int index;
+    private final BundleReader reader;
+    private final DeltaDeserializer decoder = new DeltaDeserializer();
+    private byte[] submission;
+    private long timestamp = Long.MIN_VALUE;
+
+    Input(int index, BundleReader reader) {
+      this.index = index;
+      this.reader = reader;
+    }
+
+    /**
+     * Reads the next submission and its timestamp.
+     *
+     * @return false at the end of the input.
+     */
+    boolean advance() throws IOException {
+      submission = reader.next();
+      if (submission == null) {
+        return false;
+      }
+      try {
+        GenericContainer[] records = decoder.deserialize(submission);
+        for (GenericContainer record : records) {
+          if (record instanceof GenericRecord
+              && ((GenericRecord) record).get(TIMESTAMP_FIELD) instanceof Long) {
+            timestamp = (Long) ((GenericRecord) record).get(TIMESTAMP_FIELD);
+            break;
+          }
+        }
+      } catch (IOException | RuntimeException e) {
+        // Keeps the submission next to the one before it.
+      }
+      return true;
+    }
+
+    @Override
+    public void close() throws IOException {
+      reader.close();
+    }
+  }
+
+  public static void main(String[] args) throws IOException {
+    BundleOptions bundleOptions = new BundleOptions();
+    List<String> positional = bundleOptions.parseFlags(args);
+    if (positional.size() < 2) {
+      System.err.println("Usage: outputFile bundleFile [bundleFile ...] "
+                         + "[--codec zip|snappy|zstd] [--segment-bytes bytes] "
+                         + "[--segment-records count] [--parallel] [--stored] [--dedup]");
+      return;
+    }
+    File outFile = new File(positional.get(0));
+    List<File> inputs = new ArrayList<>();
+    for (String path : positional.subList(1, positional.size())) {
+      File input = new File(path);
+      if (!input.isFile()) {
+        System.err.println("File not found: " + input);
+        return;
+      }
+      inputs.add(input);
+    }
+
+    BundleMerger merger = new BundleMerger(bundleOptions);
+    List<File> files = merger.merge(inputs, outFile);
+    if (merger.numDuplicates() > 0) {
+      System.out.println("Skipped " + merger.numDuplicates() + " duplicate records");
+    }
+    if (files.isEmpty()) {
+      System.out.println("No records found.");
+    } else {
+      System.out.println("Merged " + inputs.size() + " bundles into "
+                         + BundleWriter.describe(files));
+    }
+  }
+}
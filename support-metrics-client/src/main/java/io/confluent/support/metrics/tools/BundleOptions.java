@@ -0,0 +1,157 @@
+/**
+ * Copyright 2018 Confluent Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package io.confluent.support.metrics.tools;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * How a support metrics bundle is written: its codec, how it is rolled into segments, and how zip
+ * entries are compressed.
+ */
+public class BundleOptions {
+
+  private BundleCodec codec = BundleCodec.ZIP;
+  private long maxSegmentBytes = 0;
+  private int maxSegmentRecords = 0;
+  private int compressionThreads = 1;
+  private boolean storeEntries = false;
+  private boolean deduplicate = false;
+
+  public BundleCodec codec() {
+    return codec;
+  }
+
+  public BundleOptions codec(BundleCodec codec) {
+    this.codec = codec;
+    return this;
+  }
+
+  public long maxSegmentBytes() {
+    return maxSegmentBytes;
+  }
+
+  /**
+   * @param maxSegmentBytes Size after which the bundle is rolled into a new segment, or 0 to not
+   *     roll by size.  A segment exceeds this size by at most about one submission.
+   */
+  public BundleOptions maxSegmentBytes(long maxSegmentBytes) {
+    if (maxSegmentBytes < 0) {
+      throw new IllegalArgumentException("maxSegmentBytes must not be negative");
+    }
+    this.maxSegmentBytes = maxSegmentBytes;
+    return this;
+  }
+
+  public int maxSegmentRecords() {
+    return maxSegmentRecords;
+  }
+
+  /**
+   * @param maxSegmentRecords Number of submissions after which the bundle is rolled into a new
+   *     segment, or 0 to not roll by count.
+   */
+  public BundleOptions maxSegmentRecords(int maxSegmentRecords) {
+    if (maxSegmentRecords < 0) {
+      throw new IllegalArgumentException("maxSegmentRecords must not be negative");
+    }
+    this.maxSegmentRecords = maxSegmentRecords;
+    return this;
+  }
+
+  public int compressionThreads() {
+    return compressionThreads;
+  }
+
+  /**
+   * @param compressionThreads Number of threads that compress zip entries, or 1 to compress them
+   *     on the calling thread.  Applies to {@link BundleCodec#ZIP} only.
+   */
+  public BundleOptions compressionThreads(int compressionThreads) {
+    if (compressionThreads <= 0) {
+      throw new IllegalArgumentException("compressionThreads must be positive");
+    }
+    this.compressionThreads = compressionThreads;
+    return this;
+  }
+
+  public boolean storeEntries() {
+    return storeEntries;
+  }
+
+  /**
+   * @param storeEntries Whether to store zip entries uncompressed, for metrics that are
+   *     compressed already.  Applies to {@link BundleCodec#ZIP} only.
+   */
+  public BundleOptions storeEntries(boolean storeEntries) {
+    this.storeEntries = storeEntries;
+    return this;
+  }
+
+  public boolean deduplicate() {
+    return deduplicate;
+  }
+
+  /**
+   * @param deduplicate Whether to skip submissions that are byte-identical to an earlier one, see
+   *     {@link BundleWriter}.
+   */
+  public BundleOptions deduplicate(boolean deduplicate) {
+    this.deduplicate = deduplicate;
+    return this;
+  }
+
+  public boolean isRolling() {
+    return maxSegmentBytes > 0 || maxSegmentRecords > 0;
+  }
+
+  /**
+   * Applies the bundle flags of a command line: {@code --codec <zip|snappy|zstd>},
+   * {@code --segment-bytes <bytes>}, {@code --segment-records <count>}, {@code --parallel},
+   * {@code --stored} and {@code --dedup}.
+   *
+   * @return The other arguments, in order.
+   * @throws IllegalArgumentException If a flag lacks its value or its value is invalid.
+   */
+  List<String> parseFlags(String[] args) {
+    List<String> others = new ArrayList<>();
+    for (int i = 0; i < args.length; i++) {
+      String arg = args[i];
+      if ("--parallel".equals(arg)) {
+        compressionThreads(Runtime.getRuntime().availableProcessors());
+      } else if ("--stored".equals(arg)) {
+        storeEntries(true);
+      } else if ("--dedup".equals(arg)) {
+        deduplicate(true);
+      } else if ("--codec".equals(arg) || "--segment-bytes".equals(arg)
+                 || "--segment-records".equals(arg)) {
+        if (++i == args.length) {
+          throw new IllegalArgumentException("Missing value of " + arg);
+        }
+        if ("--codec".equals(arg)) {
+          codec(BundleCodec.forName(args[i]));
+        } else if ("--segment-bytes".equals(arg)) {
+          maxSegmentBytes(Long.parseLong(args[i]));
+        } else {
+          maxSegmentRecords(Integer.parseInt(args[i]));
+        }
+      } else {
+        others.add(arg);
+      }
+    }
+    return others;
+  }
+
+}
@@ -0,0 +1,139 @@
+/**
+ * Copyright 2018 Confluent Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package io.confluent.support.metrics.tools;
+
+import org.apache.commons.compress.utils.IOUtils;
+
+import java.io.BufferedInputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Arrays;
+import java.util.Enumeration;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+
+/**
+ * Reads the submissions of a support metrics bundle file one at a time, in the order they were
+ * written, with the codec of the file's extension (cf. {@link BundleCodec#forFile(File)}).
+ *
+ * <p>The entries of a zip bundle are read in the order of the sequence numbers in their names
+ * (cf. {@link BundleWriter}), as entries that were compressed in parallel are not stored in that
+ * order.  This takes 4 bytes per entry.  Zip files whose entry names do not end with a sequence
+ * number are read in the order of their entries.
+ *
+ * <p>This class is not thread-safe.
+ */
+public class BundleReader implements Closeable {
+
+  private final ZipFile zipFile;
+  private final DataInputStream streamIn;
+  private String entryPrefix;
+  private int[] sequenceNumbers;
+  private Enumeration<? extends ZipEntry> entries;
+  private int position = 0;
+
+  public BundleReader(File file) throws IOException {
+    BundleCodec codec = BundleCodec.forFile(file);
+    if (codec == BundleCodec.ZIP) {
+      this.zipFile = new ZipFile(file);
+      this.streamIn = null;
+      orderEntries();
+    } else {
+      this.zipFile = null;
+      this.streamIn = new DataInputStream(
+          codec.decompress(new BufferedInputStream(new FileInputStream(file))));
+    }
+  }
+
+  /**
+   * @return The next submission, or null at the end of the bundle.
+   */
+  public byte[] next() throws IOException {
+    if (streamIn != null) {
+      return nextInStream();
+    }
+    ZipEntry entry;
+    if (sequenceNumbers != null) {
+      if (position == sequenceNumbers.length) {
+        return null;
+      }
+      entry = zipFile.getEntry(entryPrefix + "." + sequenceNumbers[position++]);
+    } else {
+      do {
+        entry = entries.hasMoreElements() ? entries.nextElement() : null;
+      } while (entry != null && entry.isDirectory());
+    }
+    if (entry == null) {
+      return null;
+    }
+    try (InputStream in = zipFile.getInputStream(entry)) {
+      return IOUtils.toByteArray(in);
+    }
+  }
+
+  @Override
+  public void close() throws IOException {
+    if (zipFile != null) {
+      zipFile.close();
+    } else {
+      streamIn.close();
+    }
+  }
+
+  private byte[] nextInStream() throws IOException {
+    int length;
+    try {
+      length = streamIn.readInt();
+    } catch (EOFException e) {
+      return null;
+    }
+    byte[] submission = new byte[length];
+    streamIn.readFully(submission);
+    return submission;
+  }
+
+  /**
+   * Collects the sequence numbers of all entries, unless an entry does not have one.
+   */
+  private void orderEntries() {
+    int[] numbers = new int[zipFile.size()];
+    int count = 0;
+    Enumeration<? extends ZipEntry> all = zipFile.entries();
+    while (all.hasMoreElements()) {
+      String name = all.nextElement().getName();
+      int dot = name.lastIndexOf('.');
+      String prefix = dot > 0 ? name.substring(0, dot) : null;
+      if (prefix == null || entryPrefix != null && !entryPrefix.equals(prefix)) {
+        entries = zipFile.entries();
+        return;
+      }
+      try {
+        numbers[count++] = Integer.parseInt(name.substring(dot + 1));
+      } catch (NumberFormatException e) {
+        entries = zipFile.entries();
+        return;
+      }
+      entryPrefix = prefix;
+    }
+    sequenceNumbers = Arrays.copyOf(numbers, count);
+    Arrays.sort(sequenceNumbers);
+  }
+
+}
@@ -0,0 +1,203 @@
+/**
+ * Copyright 2018 Confluent Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package io.confluent.support.metrics.tools;
+
+import org.apache.commons.compress.utils.IOUtils;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveTask;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+
+/**
+ * Summarizes support metrics bundles, see {@link BundleSummary}.
+ *
+ * <p>Submissions are decoded in parallel on a {@link ForkJoinPool}, and the summaries of the
+ * tasks are merged.  A zip bundle is split by entries, which each task reads from the shared zip
+ * file, so decompression is parallel as well.  The other codecs compress the whole bundle as a
+ * single stream, which the calling thread decompresses into batches of submissions that are
+ * summarized in parallel; a few batches per thread are pending at most.
+ */
+public class BundleSummarizer {
+
+  /**
+   * Number of submissions a task summarizes without splitting them further.
+   */
+  static final int BATCH_SUBMISSIONS = 512;
+  private static final int PENDING_BATCHES_PER_THREAD = 2;
+
+  private final int parallelism;
+
+  /**
+   * @param parallelism The number of threads that decode submissions.
+   */
+  public BundleSummarizer(int parallelism) {
+    if (parallelism <= 0) {
+      throw new IllegalArgumentException("parallelism must be positive");
+    }
+    this.parallelism = parallelism;
+  }
+
+  /**
+   * Summarizes the given bundle files together, e.g. the segments of a rolled bundle.
+   */
+  public BundleSummary summarize(List<File> files) throws IOException {
+    BundleSummary summary = new BundleSummary();
+    ForkJoinPool pool = new ForkJoinPool(parallelism);
+    try {
+      for (File file : files) {
+        summary.merge(BundleCodec.forFile(file) == BundleCodec.ZIP
+                      ? summarizeZip(pool, file) : summarizeStream(pool, file));
+      }
+    } catch (UncheckedIOException e) {
+      throw e.getCause();
+    } finally {
+      pool.shutdown();
+    }
+    return summary;
+  }
+
+  private static BundleSummary summarizeZip(ForkJoinPool pool, File file) throws IOException {
+    try (ZipFile zipFile = new ZipFile(file)) {
+      List<ZipEntry> entries = Collections.list(zipFile.entries());
+      return pool.invoke(new ZipTask(zipFile, entries, 0, entries.size()));
+    }
+  }
+
+  private static BundleSummary summarizeStream(ForkJoinPool pool, File file) throws IOException {
+    BundleSummary summary = new BundleSummary();
+    Deque<ForkJoinTask<BundleSummary>> pending = new ArrayDeque<>();
+    int maxPending = PENDING_BATCHES_PER_THREAD * pool.getParallelism();
+    try (BundleReader reader = new BundleReader(file)) {
+      List<byte[]> batch = new ArrayList<>(BATCH_SUBMISSIONS);
+      byte[] submission;
+      while ((submission = reader.next()) != null) {
+        batch.add(submission);
+        if (batch.size() == BATCH_SUBMISSIONS) {
+          pending.add(pool.submit(new BatchTask(batch)));
+          batch = new ArrayList<>(BATCH_SUBMISSIONS);
+          if (pending.size() > maxPending) {
+            summary.merge(pending.remove().join());
+          }
+        }
+      }
+      pending.add(pool.submit(new BatchTask(batch)));
+    }
+    while (!pending.isEmpty()) {
+      summary.merge(pending.remove().join());
+    }
+    return summary;
+  }
+
+  private static class ZipTask extends RecursiveTask<BundleSummary> {
+
+    private final ZipFile zipFile;
+    private final List<ZipEntry> entries;
+    private final int from;
+    private final int to;
+
+    ZipTask(ZipFile zipFile, List<ZipEntry> entries, int from, int to) {
+      this.zipFile = zipFile;
+      this.entries = entries;
+      this.from = from;
+      this.to = to;
+    }
+
+    @Override
+    protected BundleSummary compute() {
+      if (to - from > BATCH_SUBMISSIONS) {
+        int middle = (from + to) >>> 1;
+        ZipTask right = new ZipTask(zipFile, entries, middle, to);
+        right.fork();
+        BundleSummary summary = new ZipTask(zipFile, entries, from, middle).compute();
+        summary.merge(right.join());
+        return summary;
+      }
+      BundleSummary summary = new BundleSummary();
+      try {
+        for (ZipEntry entry : entries.subList(from, to)) {
+          if (!entry.isDirectory()) {
+            summary.add(readEntry(entry));
+          }
+        }
+      } catch (IOException e) {
+        throw new UncheckedIOException(e);
+      }
+      return summary;
+    }
+
+    private byte[] readEntry(ZipEntry entry) throws IOException {
+      try (InputStream in = zipFile.getInputStream(entry)) {
+        return IOUtils.toByteArray(in);
+      }
+    }
+  }
+
+  private static class BatchTask extends RecursiveTask<BundleSummary> {
+
+    private final List<byte[]> submissions;
+
+    BatchTask(List<byte[]> submissions) {
+      this.submissions = submissions;
+    }
+
+    @Override
+    protected BundleSummary compute() {
+      BundleSummary summary = new BundleSummary();
+      for (byte[] submission : submissions) {
+        summary.add(submission);
+      }
+      return summary;
+    }
+  }
+
+  public static void main(String[] args) throws IOException {
+    int parallelism = Runtime.getRuntime().availableProcessors();
+    List<File> files = new ArrayList<>();
+    for (int i = 0; i < args.length; i++) {
+      if ("--threads".equals(args[i]) && i + 1 < args.length) {
+        parallelism = Integer.parseInt(args[++i]);
+      } else {
+        files.add(new File(args[i]));
+      }
+    }
+    if (files.isEmpty() || parallelism <= 0) {
+      System.err.println("Usage: bundleFile [bundleFile ...] [--threads count]");
+      return;
+    }
+    for (File file : files) {
+      if (!file.isFile()) {
+        System.err.println("File not found: " + file);
+        return;
+      }
+    }
+
+    long startNs = System.nanoTime();
+    BundleSummary summary = new BundleSummarizer(parallelism).summarize(files);
+    summary.print(System.out);
+    System.out.println("Summarized " + BundleWriter.describe(files) + " in "
+                       + (System.nanoTime() - startNs) / 1000000 + " ms");
+  }
+}
@@ -0,0 +1,471 @@
+/**
+ * Copyright 2018 Confluent Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package io.confluent.support.metrics.tools;
+
+import org.apache.avro.Schema;
+import org.apache.avro.SchemaNormalization;
+import org.apache.avro.generic.GenericContainer;
+import org.apache.avro.generic.GenericRecord;
+
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.ByteBuffer;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+
+import io.confluent.support.metrics.SupportKafkaMetricsDelta;
+import io.confluent.support.metrics.serde.AvroDeserializer;
+import io.confluent.support.metrics.serde.DeltaDeserializer;
+import io.confluent.support.metrics.serde.StringDictionary;
+
+/**
+ * Aggregates the metrics submissions of a support metrics bundle: the broker processes that
+ * reported, their clusters and versions, and the time span and collector states of each.
+ *
+ * <p>Submissions can be added in any order, and the summaries of different parts of a bundle can
+ * be merged with {@link #merge(BundleSummary)}.  A delta (cf.
+ * {@link io.confluent.support.metrics.serde.DeltaSerializer}) is not applied to the record before
+ * it; only the fields it changes are read, with the schema of any full record that has the same
+ * fingerprint.  Deltas whose schema has not been seen yet are held until a full record with that
+ * schema is added or merged.  Section payloads of composite records are read like records of
+ * the same broker.
+ *
+ * <p>This class is not thread-safe.  The decoders of submissions are shared by all summaries of
+ * a thread, as a summarizer creates a summary for each batch and merge.
+ */
+public class BundleSummary {
+
+  private static final String UUID_FIELD = "brokerProcessUUID";
+  private static final String TIMESTAMP_FIELD = "timestamp";
+  private static final String COLLECTOR_STATE_FIELD = "collectorState";
+  private static final String CLUSTER_ID_FIELD = "clusterId";
+  private static final String KAFKA_VERSION_FIELD = "kafkaVersion";
+  private static final String CP_VERSION_FIELD = "confluentPlatformVersion";
+  private static final String SECTIONS_FIELD = "sections";
+  private static final String PAYLOAD_FIELD = "payload";
+
+  private static final int MAX_INTERNED_STRINGS = 4096;
+
+  // The string dictionary of a decoder is only worth building once per thread.
+  private static final ThreadLocal<AvroDeserializer> DESERIALIZER = ThreadLocal.withInitial(
+      () -> new AvroDeserializer(new StringDictionary(MAX_INTERNED_STRINGS)));
+  // Only reads deltas, so it keeps no state between summaries.
+  private static final ThreadLocal<DeltaDeserializer> DELTA_DESERIALIZER =
+      ThreadLocal.withInitial(DeltaDeserializer::new);
+
+  private final Map<String, BrokerSummary> brokers = new HashMap<>();
+  private final Set<Schema> schemas = new HashSet<>();
+  private final Map<Long, Schema> schemasByFingerprint = new HashMap<>();
+  private final List<SupportKafkaMetricsDelta> pendingDeltas = new ArrayList<>();
+  private long numSubmissions = 0;
+  private long numRecords = 0;
+  private long numDeltas = 0;
+  private long numUnreadable = 0;
+
+  /**
+   * Adds a submission, as it is stored in the bundle.  Submissions that cannot be read are counted
+   * in {@link #numUnreadable()}.
+   */
+  public void add(byte[] submission) {
+    numSubmissions++;
+    try {
+      if (DeltaDeserializer.isDelta(submission)) {
+        numDeltas++;
+        addDelta(DELTA_DESERIALIZER.get().readDelta(submission));
+      } else {
+        for (GenericContainer container : DESERIALIZER.get().deserialize(submission)) {
+          if (container instanceof GenericRecord) {
+            addRecord((GenericRecord) container);
+          }
+        }
+      }
+    } catch (IOException | RuntimeException e) {
+      numUnreadable++;
+    }
+  }
+
+  /**
+   * Adds the submissions, deltas and brokers of another summary to this one.
+   */
+  public void merge(BundleSummary other) {
+    numSubmissions += other.numSubmissions;
+    numRecords += other.numRecords;
+    numDeltas += other.numDeltas;
+    numUnreadable += other.numUnreadable;
+    for (BrokerSummary broker : other.brokers.values()) {
+      broker(broker.uuid).merge(broker);
+    }
+    boolean newSchemas = false;
+    for (Schema schema : other.schemas) {
+      newSchemas |= addSchema(schema);
+    }
+    if (newSchemas) {
+      resolvePendingDeltas();
+    }
+    for (SupportKafkaMetricsDelta delta : other.pendingDeltas) {
+      addDelta(delta);
+    }
+  }
+
+  /**
+   * @return The number of submissions added.
+   */
+  public long numSubmissions() {
+    return numSubmissions;
+  }
+
+  /**
+   * @return The number of full records added.
+   */
+  public long numRecords() {
+    return numRecords;
+  }
+
+  /**
+   * @return The number of deltas added, including {@link #numUnresolvedDeltas()}.
+   */
+  public long numDeltas() {
+    return numDeltas;
+  }
+
+  /**
+   * @return The number of deltas whose schema has not been seen in any full record.
+   */
+  public long numUnresolvedDeltas() {
+    return pendingDeltas.size();
+  }
+
+  /**
+   * @return The number of submissions that could not be read.
+   */
+  public long numUnreadable() {
+    return numUnreadable;
+  }
+
+  /**
+   * @return The broker processes that reported, by their {@code brokerProcessUUID}.
+   */
+  public Map<String, BrokerSummary> brokers() {
+    return Collections.unmodifiableMap(brokers);
+  }
+
+  /**
+   * @return The number of broker processes per cluster id, in the order of cluster ids.  Broker
+   *     processes that did not report a cluster id are not counted.
+   */
+  public Map<String, Integer> clusters() {
+    Map<String, Integer> clusters = new TreeMap<>();
+    for (BrokerSummary broker : brokers.values()) {
+      if (broker.clusterId != null) {
+        clusters.merge(broker.clusterId, 1, Integer::sum);
+      }
+    }
+    return clusters;
+  }
+
+  /**
+   * @return The number of broker processes per version, e.g. "2.2.0 / 5.2.0" for the Kafka and
+   *     Confluent Platform versions, in the order of versions.
+   */
+  public Map<String, Integer> versions() {
+    Map<String, Integer> versions = new TreeMap<>();
+    for (BrokerSummary broker : brokers.values()) {
+      versions.merge(broker.version(), 1, Integer::sum);
+    }
+    return versions;
+  }
+
+  /**
+   * Prints the summary in a human-readable form.
+   */
+  public void print(PrintStream out) {
+    out.println("Submissions:       " + numSubmissions + " (" + numRecords + " full records, "
+                + numDeltas + " deltas, " + numUnreadable + " unreadable)");
+    if (!pendingDeltas.isEmpty()) {
+      out.println("                   " + pendingDeltas.size()
+                  + " deltas skipped, the bundle holds no full record with their schema");
+    }
+    Map<String, Integer> clusters = clusters();
+    out.println("Clusters:          " + clusters.size());
+    for (Map.Entry<String, Integer> cluster : clusters.entrySet()) {
+      out.println("  " + cluster.getKey() + ": " + cluster.getValue() + " broker processes");
+    }
+    out.println("Broker processes:  " + brokers.size());
+    out.println("Versions (Kafka / Confluent Platform):");
+    for (Map.Entry<String, Integer> version : versions().entrySet()) {
+      out.println("  " + version.getKey() + ": " + version.getValue() + " broker processes");
+    }
+
+    List<BrokerSummary> sorted = new ArrayList<>(brokers.values());
+    sorted.sort(Comparator.comparing((BrokerSummary broker) -> String.valueOf(broker.clusterId))
+                    .thenComparingLong(broker -> broker.firstTimestamp)
+                    .thenComparing(broker -> broker.uuid));
+    int stateChanges = 0;
+    out.println("Reports per broker process (cluster, first and last report, collector states):");
+    for (BrokerSummary broker : sorted) {
+      out.println("  " + broker.uuid + ": " + broker.clusterId + ", "
+                  + formatTimestamp(broker.firstTimestamp) + " to "
+                  + formatTimestamp(broker.lastTimestamp) + ", " + broker.numRecords
+                  + " records, states " + broker.states
+                  + (broker.stateChanged() ? " (last " + broker.lastState + ")" : ""));
+      if (broker.stateChanged()) {
+        stateChanges++;
+      }
+    }
+    out.println("Broker processes whose collector state changed: " + stateChanges);
+  }
+
+  private static String formatTimestamp(long timestamp) {
+    if (timestamp == Long.MAX_VALUE || timestamp == Long.MIN_VALUE) {
+      return "unknown";
+    }
+    return Instant.ofEpochSecond(timestamp).toString();
+  }
+
+  private void addRecord(GenericRecord record) {
+    numRecords++;
+    if (addSchema(record.getSchema())) {
+      resolvePendingDeltas();
+    }
+    Object uuid = value(record, UUID_FIELD);
+    if (uuid != null) {
+      BrokerSummary broker = broker(uuid.toString());
+      broker.numRecords++;
+      observe(broker, record);
+    }
+  }
+
+  private void addDelta(SupportKafkaMetricsDelta delta) {
+    Schema schema = schemasByFingerprint.get(delta.getSchemaFingerprint());
+    if (schema == null) {
+      pendingDeltas.add(delta);
+      return;
+    }
+    GenericRecord changes;
+    try {
+      changes = DeltaDeserializer.changedFields(schema, delta);
+    } catch (IOException | RuntimeException e) {
+      numUnreadable++;
+      return;
+    }
+    BrokerSummary broker = broker(delta.getBrokerProcessUUID().toString());
+    broker.numRecords++;
+    observe(broker, changes);
+  }
+
+  /**
+   * @return true if the schema was not known before.
+   */
+  private boolean addSchema(Schema schema) {
+    if (!schemas.add(schema)) {
+      return false;
+    }
+    schemasByFingerprint.put(SchemaNormalization.parsingFingerprint64(schema), schema);
+    return true;
+  }
+
+  private void resolvePendingDeltas() {
+    Iterator<SupportKafkaMetricsDelta> it = pendingDeltas.iterator();
+    List<SupportKafkaMetricsDelta> resolved = new ArrayList<>();
+    while (it.hasNext()) {
+      SupportKafkaMetricsDelta delta = it.next();
+      if (schemasByFingerprint.containsKey(delta.getSchemaFingerprint())) {
+        it.remove();
+        resolved.add(delta);
+      }
+    }
+    for (SupportKafkaMetricsDelta delta : resolved) {
+      addDelta(delta);
+    }
+  }
+
+  /**
+   * Reads the fields of interest of a record, or of the changed fields of a delta, which are null
+   * if they did not change.
+   */
+  private void observe(BrokerSummary broker, GenericRecord record) {
+    Object timestamp = value(record, TIMESTAMP_FIELD);
+    Object state = value(record, COLLECTOR_STATE_FIELD);
+    if (timestamp instanceof Long) {
+      broker.observeTimestamp((Long) timestamp, state instanceof Integer ? (Integer) state : null);
+    }
+    broker.clusterId = firstNonNull(broker.clusterId, value(record, CLUSTER_ID_FIELD));
+    broker.kafkaVersion = firstNonNull(broker.kafkaVersion, value(record, KAFKA_VERSION_FIELD));
+    broker.confluentPlatformVersion =
+        firstNonNull(broker.confluentPlatformVersion, value(record, CP_VERSION_FIELD));
+
+    Object sections = value(record, SECTIONS_FIELD);
+    if (sections instanceof Collection) {
+      for (Object section : (Collection<?>) sections) {
+        Object payload = section instanceof GenericRecord
+                         ? value((GenericRecord) section, PAYLOAD_FIELD) : null;
+        if (payload instanceof ByteBuffer) {
+          observeSection(broker, (ByteBuffer) payload);
+        }
+      }
+    }
+  }
+
+  private void observeSection(BrokerSummary broker, ByteBuffer payload) {
+    byte[] bytes = new byte[payload.remaining()];
+    payload.duplicate().get(bytes);
+    try {
+      for (GenericContainer container : DESERIALIZER.get().deserialize(bytes)) {
+        if (container instanceof GenericRecord) {
+          observe(broker, (GenericRecord) container);
+        }
+      }
+    } catch (IOException | RuntimeException e) {
+      // A section that cannot be read does not affect the rest of the record.
+    }
+  }
+
+  private BrokerSummary broker(String uuid) {
+    return brokers.computeIfAbsent(uuid, BrokerSummary::new);
+  }
+
+  private static Object value(GenericRecord record, String fieldName) {
+    Schema.Field field = record.getSchema().getField(fieldName);
+    return field == null ? null : record.get(field.pos());
+  }
+
+  private static String firstNonNull(String current, Object value) {
+    return current != null || value == null ? current : value.toString();
+  }
+
+  /**
+   * The reports of a single broker process.
+   */
+  public static class BrokerSummary {
+
+    private final String uuid;
+    private String clusterId;
+    private String kafkaVersion;
+    private String confluentPlatformVersion;
+    private long numRecords = 0;
+    private long firstTimestamp = Long.MAX_VALUE;
+    private long lastTimestamp = Long.MIN_VALUE;
+    private long lastStateTimestamp = Long.MIN_VALUE;
+    private int lastState;
+    private final Set<Integer> states = new TreeSet<>();
+
+    BrokerSummary(String uuid) {
+      this.uuid = uuid;
+    }
+
+    public String uuid() {
+      return uuid;
+    }
+
+    /**
+     * @return The cluster id, or null if the broker process did not report one.
+     */
+    public String clusterId() {
+      return clusterId;
+    }
+
+    /**
+     * @return The Kafka and Confluent Platform versions, e.g. "2.2.0 / 5.2.0".
+     */
+    public String version() {
+      return kafkaVersion + " / " + confluentPlatformVersion;
+    }
+
+    /**
+     * @return The number of records of this broker process, full records and deltas.
+     */
+    public long numRecords() {
+      return numRecords;
+    }
+
+    /**
+     * @return The earliest timestamp of this broker process's records, in seconds since the epoch.
+     */
+    public long firstTimestamp() {
+      return firstTimestamp;
+    }
+
+    /**
+     * @return The latest timestamp of this broker process's records, in seconds since the epoch.
+     */
+    public long lastTimestamp() {
+      return lastTimestamp;
+    }
+
+    /**
+     * @return The collector states reported by this broker process.
+     */
+    public Set<Integer> states() {
+      return Collections.unmodifiableSet(states);
+    }
+
+    /**
+     * @return The collector state of the latest record that reported one.
+     */
+    public int lastState() {
+      return lastState;
+    }
+
+    public boolean stateChanged() {
+      return states.size() > 1;
+    }
+
+    /**
+     * @param state The collector state at that time, or null if the record did not report it.
+     */
+    private void observeTimestamp(long timestamp, Integer state) {
+      firstTimestamp = Math.min(firstTimestamp, timestamp);
+      lastTimestamp = Math.max(lastTimestamp, timestamp);
+      if (state != null) {
+        observeState(timestamp, state);
+      }
+    }
+
+    private void observeState(long timestamp, int state) {
+      states.add(state);
+      if (timestamp >= lastStateTimestamp) {
+        lastStateTimestamp = timestamp;
+        lastState = state;
+      }
+    }
+
+    private void merge(BrokerSummary other) {
+      numRecords += other.numRecords;
+      firstTimestamp = Math.min(firstTimestamp, other.firstTimestamp);
+      lastTimestamp = Math.max(lastTimestamp, other.lastTimestamp);
+      states.addAll(other.states);
+      if (other.lastStateTimestamp >= lastStateTimestamp) {
+        lastStateTimestamp = other.lastStateTimestamp;
+        lastState = other.lastState;
+      }
+      clusterId = firstNonNull(clusterId, other.clusterId);
+      kafkaVersion = firstNonNull(kafkaVersion, other.kafkaVersion);
+      confluentPlatformVersion =
+          firstNonNull(confluentPlatformVersion, other.confluentPlatformVersion);
+    }
+  }
+
+}
@@ -0,0 +1,320 @@
+/**
+ * Copyright 2018 Confluent Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package io.confluent.support.metrics.tools;
+
+import org.apache.avro.SchemaNormalization;
+import org.apache.commons.compress.archivers.zip.ParallelScatterZipCreator;
+import org.apache.commons.compress.archivers.zip.ZipArchiveEntry;
+import org.apache.commons.compress.archivers.zip.ZipArchiveOutputStream;
+import org.apache.commons.compress.utils.CountingOutputStream;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.Closeable;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.CRC32;
+import java.util.zip.ZipEntry;
+
+/**
+ * Writes the metrics submissions of a support metrics bundle, in the format of a
+ * {@link BundleCodec}.
+ *
+ * <p>A bundle is written to a single file unless {@link BundleOptions} limit the size or the
+ * number of submissions of a file.  Then the bundle is rolled into numbered segments, e.g.
+ * {@code bundle-00000.zip}, {@code bundle-00001.zip} and so on, and each segment is complete as
+ * soon as the next one is started.  Files are only created once there is a submission to write.
+ *
+ * <p>Zip entries are compressed on the calling thread by default.  With more than one compression
+ * thread, entries are compressed concurrently by a {@link ParallelScatterZipCreator}: each thread
+ * compresses into its own temporary file, and these are gathered into the zip file when the
+ * segment is completed.  Submissions that arrive faster than the threads compress them are
+ * compressed by the calling thread, which bounds the memory held by pending entries.  Entries of
+ * such a zip file are not in submission order, but their names still carry their sequence
+ * numbers.  Zip entries can also be stored uncompressed, for payloads that are compressed already.
+ *
+ * <p>Retries and re-reads can leave byte-identical submissions in the metrics topic.  With
+ * deduplication, a submission whose 64-bit Rabin fingerprint (cf.
+ * {@link SchemaNormalization#fingerprint64(byte[])}) was seen before is skipped before it is
+ * compressed.  At most {@link #DEDUP_MAX_ENTRIES} fingerprints are kept, which takes 8 MB.  Once
+ * that many distinct submissions were seen, all fingerprints are forgotten and collection starts
+ * over, so a duplicate is only skipped if no such reset lies between it and its original.
+ */
+public class BundleWriter implements Closeable {
+
+  private static final int PENDING_ENTRIES_PER_THREAD = 4;
+  private static final int STREAM_FLUSH_BYTES = 64 * 1024;
+
+  /**
+   * Maximum number of fingerprints the deduplication keeps before it forgets all of them.
+   */
+  public static final int DEDUP_MAX_ENTRIES = 1 << 19;
+
+  private final File outFile;
+  private final String entryPrefix;
+  private final BundleOptions options;
+  private final List<File> files = new ArrayList<>();
+  private final FingerprintSet fingerprints;
+  private Segment segment = null;
+  private int numEntries = 0;
+  private int numDuplicates = 0;
+
+  /**
+   * @param outFile The file to create or, if the bundle is rolled, the file that the names of its
+   *     segments are derived from.
+   * @param entryPrefix The names of zip entries are this prefix followed by their sequence number.
+   */
+  public BundleWriter(File outFile, String entryPrefix, BundleOptions options) {
+    this.outFile = outFile;
+    this.entryPrefix = entryPrefix;
+    this.options = options;
+    this.fingerprints = options.deduplicate() ? new FingerprintSet(DEDUP_MAX_ENTRIES) : null;
+  }
+
+  /**
+   * @return The number of entries written so far.
+   */
+  public int numEntries() {
+    return numEntries;
+  }
+
+  /**
+   * @return The number of submissions skipped as duplicates so far.
+   */
+  public int numDuplicates() {
+    return numDuplicates;
+  }
+
+  /**
+   * @return The files created so far, in order.
+   */
+  public List<File> files() {
+    return Collections.unmodifiableList(files);
+  }
+
+  /**
+   * @return false if the submission was skipped as a duplicate.
+   */
+  public boolean add(byte[] value) throws IOException {
+    if (fingerprints != null && !fingerprints.add(SchemaNormalization.fingerprint64(value))) {
+      numDuplicates++;
+      return false;
+    }
+    if (segment == null) {
+      segment = openSegment();
+    }
+    segment.add(entryPrefix + "." + numEntries, value);
+    numEntries++;
+    if (isFull(segment)) {
+      closeSegment();
+    }
+    return true;
+  }
+
+  /**
+   * Completes the current segment, if any.
+   */
+  @Override
+  public void close() throws IOException {
+    if (segment != null) {
+      closeSegment();
+    }
+  }
+
+  /**
+   * @return A description of the given bundle files for messages, e.g. "file bundle.zip".
+   */
+  static String describe(List<File> files) {
+    if (files.size() == 1) {
+      return "file " + files.get(0);
+    }
+    return files.size() + " files " + files.get(0) + " to " + files.get(files.size() - 1);
+  }
+
+  private boolean isFull(Segment segment) {
+    return options.maxSegmentRecords() > 0 && segment.numEntries >= options.maxSegmentRecords()
+           || options.maxSegmentBytes() > 0 && segment.bytes() >= options.maxSegmentBytes();
+  }
+
+  private Segment openSegment() throws IOException {
+    File file = options.isRolling() ? segmentFile(files.size()) : outFile;
+    files.add(file);
+    if (options.codec() == BundleCodec.ZIP) {
+      return new ZipSegment(file, options.compressionThreads(), options.storeEntries());
+    }
+    return new StreamSegment(file, options.codec());
+  }
+
+  private void closeSegment() throws IOException {
+    Segment completed = segment;
+    segment = null;
+    completed.close();
+  }
+
+  /**
+   * @return The file of the segment with the given index, e.g. {@code bundle-00001.zip} for
+   *     {@code bundle.zip}.
+   */
+  private File segmentFile(int index) {
+    String name = outFile.getName();
+    int dot = name.lastIndexOf('.');
+    String base = dot > 0 ? name.substring(0, dot) : name;
+    String extension = dot > 0 ? name.substring(dot) : "";
+    return new File(outFile.getParentFile(),
+                    String.format(Locale.ROOT, "%s-%05d%s", base, index, extension));
+  }
+
+  private abstract static class Segment implements Closeable {
+
+    final CountingOutputStream out;
+    int numEntries = 0;
+
+    Segment(File file) throws IOException {
+      this.out = new CountingOutputStream(new FileOutputStream(file));
+    }
+
+    abstract void add(String name, byte[] value) throws IOException;
+
+    /**
+     * @return The size of the segment so far.
+     */
+    long bytes() {
+      return out.getBytesWritten();
+    }
+  }
+
+  private static class ZipSegment extends Segment {
+
+    private final int method;
+    private final ZipArchiveOutputStream zOut;
+    private final ParallelScatterZipCreator scatter;
+    private long pendingBytes = 0;
+
+    ZipSegment(File file, int compressionThreads, boolean stored) throws IOException {
+      super(file);
+      this.method = stored ? ZipEntry.STORED : ZipEntry.DEFLATED;
+      this.zOut = new ZipArchiveOutputStream(new BufferedOutputStream(out));
+      if (compressionThreads > 1) {
+        ThreadPoolExecutor executor = new ThreadPoolExecutor(
+            compressionThreads, compressionThreads, 0, TimeUnit.MILLISECONDS,
+            new ArrayBlockingQueue<Runnable>(PENDING_ENTRIES_PER_THREAD * compressionThreads),
+            new ThreadPoolExecutor.CallerRunsPolicy()
+        );
+        this.scatter = new ParallelScatterZipCreator(executor);
+      } else {
+        this.scatter = null;
+      }
+    }
+
+    @Override
+    void add(String name, final byte[] value) throws IOException {
+      ZipArchiveEntry entry = new ZipArchiveEntry(name);
+      entry.setMethod(method);
+      if (scatter != null) {
+        scatter.addArchiveEntry(entry, () -> new ByteArrayInputStream(value));
+        pendingBytes += value.length;
+      } else {
+        if (method == ZipEntry.STORED) {
+          // Stored entries of a non-seekable stream need their size and checksum up front.
+          CRC32 crc = new CRC32();
+          crc.update(value);
+          entry.setSize(value.length);
+          entry.setCompressedSize(value.length);
+          entry.setCrc(crc.getValue());
+        }
+        zOut.putArchiveEntry(entry);
+        zOut.write(value);
+        zOut.closeArchiveEntry();
+      }
+      numEntries++;
+    }
+
+    /**
+     * Entries that are compressed in parallel are only written when the segment is completed,
+     * so these count with their uncompressed size until then.
+     */
+    @Override
+    long bytes() {
+      return super.bytes() + pendingBytes;
+    }
+
+    /**
+     * Waits for pending entries to be compressed, if any, and completes the zip file.
+     */
+    @Override
+    public void close() throws IOException {
+      try {
+        if (scatter != null) {
+          scatter.writeTo(zOut);
+        }
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        throw new IOException("Interrupted while compressing entries", e);
+      } catch (ExecutionException e) {
+        throw new IOException("Failed to compress entries", e.getCause());
+      } finally {
+        zOut.close();
+      }
+    }
+  }
+
+  /**
+   * Codecs buffer their input until they have a block to compress, so a stream segment is flushed
+   * regularly, and its unflushed input counts with its uncompressed size.
+   */
+  private static class StreamSegment extends Segment {
+
+    private final DataOutputStream dataOut;
+    private long unflushedBytes = 0;
+
+    StreamSegment(File file, BundleCodec codec) throws IOException {
+      super(file);
+      this.dataOut = new DataOutputStream(codec.compress(new BufferedOutputStream(out)));
+    }
+
+    @Override
+    void add(String name, byte[] value) throws IOException {
+      dataOut.writeInt(value.length);
+      dataOut.write(value);
+      numEntries++;
+      unflushedBytes += 4 + value.length;
+      if (unflushedBytes >= STREAM_FLUSH_BYTES) {
+        dataOut.flush();
+        unflushedBytes = 0;
+      }
+    }
+
+    @Override
+    long bytes() {
+      return super.bytes() + unflushedBytes;
+    }
+
+    @Override
+    public void close() throws IOException {
+      dataOut.close();
+    }
+  }
+
+}
@@ -0,0 +1,123 @@
+/**
+ * Copyright 2018 Confluent Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package io.confluent.support.metrics.tools;
+
+import java.util.Arrays;
+
+/**
+ * A set of 64-bit fingerprints in an open-addressing table of primitive longs, which takes 16 to
+ * 32 bytes per entry and no allocation per entry.
+ *
+ * <p>The set holds at most a fixed number of fingerprints.  Adding one more clears the set first,
+ * so its memory stays bounded, at the price of forgetting older fingerprints.
+ *
+ * <p>This class is not thread-safe.
+ */
+class FingerprintSet {
+
+  // Marks empty slots.  The fingerprint 0 itself is tracked separately.
+  private static final long EMPTY = 0L;
+
+  private final int maxEntries;
+  private final long[] slots;
+  private final int mask;
+  private boolean containsEmpty = false;
+  private int size = 0;
+
+  /**
+   * @param maxEntries Maximum number of fingerprints held at once.
+   */
+  FingerprintSet(int maxEntries) {
+    if (maxEntries <= 0 || maxEntries > 1 << 29) {
+      throw new IllegalArgumentException("maxEntries must be between 1 and 2^29");
+    }
+    this.maxEntries = maxEntries;
+    // At most half of the slots are in use, which keeps probe sequences short.
+    int capacity = Integer.highestOneBit(2 * maxEntries - 1) << 1;
+    this.slots = new long[capacity];
+    this.mask = capacity - 1;
+  }
+
+  /**
+   * @return true if the fingerprint was added, false if the set contains it already.
+   */
+  boolean add(long fingerprint) {
+    if (fingerprint == EMPTY) {
+      if (containsEmpty) {
+        return false;
+      }
+      reserve();
+      containsEmpty = true;
+      size++;
+      return true;
+    }
+    int slot = slot(fingerprint);
+    while (slots[slot] != EMPTY) {
+      if (slots[slot] == fingerprint) {
+        return false;
+      }
+      slot = (slot + 1) & mask;
+    }
+    if (reserve()) {
+      slot = slot(fingerprint);
+    }
+    slots[slot] = fingerprint;
+    size++;
+    return true;
+  }
+
+  boolean contains(long fingerprint) {
+    if (fingerprint == EMPTY) {
+      return containsEmpty;
+    }
+    int slot = slot(fingerprint);
+    while (slots[slot] != EMPTY) {
+      if (slots[slot] == fingerprint) {
+        return true;
+      }
+      slot = (slot + 1) & mask;
+    }
+    return false;
+  }
+
+  int size() {
+    return size;
+  }
+
+  void clear() {
+    Arrays.fill(slots, EMPTY);
+    containsEmpty = false;
+    size = 0;
+  }
+
+  /**
+   * Makes room for one more fingerprint.
+   *
+   * @return true if the set was cleared to do so.
+   */
+  private boolean reserve() {
+    if (size < maxEntries) {
+      return false;
+    }
+    clear();
+    return true;
+  }
+
+  private int slot(long fingerprint) {
+    // Fibonacci hashing spreads fingerprints whose low bits are similar.
+    return (int) ((fingerprint * 0x9E3779B97F4A7C15L) >>> 32) & mask;
+  }
+
+}
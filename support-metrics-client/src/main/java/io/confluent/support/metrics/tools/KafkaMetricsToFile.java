@@ -14,16 +14,14 @@
 
 package io.confluent.support.metrics.tools;
 
-import org.apache.commons.compress.archivers.zip.ZipArchiveEntry;
-import org.apache.commons.compress.archivers.zip.ZipArchiveOutputStream;
-
-import java.io.BufferedOutputStream;
 import java.io.File;
 import java.io.FileNotFoundException;
-import java.io.FileOutputStream;
 import java.io.IOException;
 import java.time.Duration;
+import java.util.ArrayList;
 import java.util.Collections;
+import java.util.List;
+import java.util.Map;
 import java.util.Properties;
 import java.util.Random;
 import java.util.concurrent.TimeUnit;
@@ -33,11 +31,14 @@ import org.apache.kafka.clients.consumer.ConsumerConfig;
 import org.apache.kafka.clients.consumer.ConsumerRecord;
 import org.apache.kafka.clients.consumer.ConsumerRecords;
 import org.apache.kafka.clients.consumer.KafkaConsumer;
+import org.apache.kafka.common.PartitionInfo;
+import org.apache.kafka.common.TopicPartition;
 import org.apache.kafka.common.serialization.ByteArrayDeserializer;
 
 public class KafkaMetricsToFile {
 
   private final String bootstrapServer;
+  private final BundleOptions bundleOptions;
 
   /**
    * Default constructor
@@ -45,7 +46,16 @@ public class KafkaMetricsToFile {
    * @param bootstrapServer Kafka broker to connect to e.g., localhost:9092
    */
   public KafkaMetricsToFile(String bootstrapServer) {
+    this(bootstrapServer, new BundleOptions());
+  }
+
+  /**
+   * @param bootstrapServer Kafka broker to connect to e.g., localhost:9092
+   * @param bundleOptions The format of the output file, and whether to roll it into segments.
+   */
+  public KafkaMetricsToFile(String bootstrapServer, BundleOptions bundleOptions) {
     this.bootstrapServer = bootstrapServer;
+    this.bundleOptions = bundleOptions;
   }
 
   /**
@@ -57,6 +67,25 @@ public class KafkaMetricsToFile {
    * @return the number of retrieved metrics submissions.
    */
   public int saveMetricsToFile(String topic, String outputPath, int runTimeMs) {
+    return save(topic, outputPath, runTimeMs, false);
+  }
+
+  /**
+   * Retrieves the metrics that are currently in the provided topic and stores them in a
+   * compressed local file.  Unlike {@link #saveMetricsToFile}, this returns as soon as the end of
+   * the topic is reached, which makes it fast for the compacted topic of latest metrics (cf.
+   * <code>confluent.support.metrics.latest.topic</code>).
+   *
+   * @param topic Kafka topic to read from.  Must not be null or empty.
+   * @param outputPath Path to the output file.  Must not be null or empty.
+   * @param timeoutMs Maximum time this script should run for in milliseconds
+   * @return the number of retrieved metrics submissions.
+   */
+  public int saveLatestMetricsToFile(String topic, String outputPath, int timeoutMs) {
+    return save(topic, outputPath, timeoutMs, true);
+  }
+
+  private int save(String topic, String outputPath, int runTimeMs, boolean untilEndOfTopic) {
     if (topic == null || topic.isEmpty()) {
       System.err.println("Topic name must be specified");
       return 0;
@@ -68,28 +97,40 @@ public class KafkaMetricsToFile {
 
     long endTimeMs = TimeUnit.NANOSECONDS.toMillis(System.nanoTime()) + runTimeMs;
     int numMessages = 0;
+    List<File> files;
     File outFile = new File(outputPath);
-    try (FileOutputStream fOut = new FileOutputStream(outFile);
-         BufferedOutputStream bOut = new BufferedOutputStream(fOut);
-         ZipArchiveOutputStream zOut = new ZipArchiveOutputStream(bOut);
+    try (BundleWriter bundle = new BundleWriter(outFile, outputPath, bundleOptions);
          KafkaConsumer<byte[], byte[]> consumer = createConsumer()) {
 
-      consumer.subscribe(Collections.singleton(topic));
+      Map<TopicPartition, Long> endOffsets = null;
+      if (untilEndOfTopic) {
+        List<TopicPartition> partitions = new ArrayList<>();
+        List<PartitionInfo> partitionInfos = consumer.partitionsFor(topic);
+        if (partitionInfos != null) {
+          for (PartitionInfo partition : partitionInfos) {
+            partitions.add(new TopicPartition(topic, partition.partition()));
+          }
+        }
+        consumer.assign(partitions);
+        consumer.seekToBeginning(partitions);
+        endOffsets = consumer.endOffsets(partitions);
+      } else {
+        consumer.subscribe(Collections.singleton(topic));
+      }
 
       long timeRemainingMs = runTimeMs;
-      while (timeRemainingMs > 0) {
+      while (timeRemainingMs > 0 && !(untilEndOfTopic && reachedEnd(consumer, endOffsets))) {
         ConsumerRecords<byte[], byte[]> records = consumer.poll(Duration.ofMillis(timeRemainingMs));
         for (ConsumerRecord<byte[], byte[]> record : records) {
-          ZipArchiveEntry entry = new ZipArchiveEntry(outputPath + "." + numMessages);
-          zOut.putArchiveEntry(entry);
-          zOut.write(record.value());
-          zOut.closeArchiveEntry();
-
-          System.out.println("Collecting metric batch #" + numMessages);
-          numMessages++;
+          if (bundle.add(record.value())) {
+            System.out.println("Collecting metric batch #" + numMessages);
+            numMessages++;
+          }
         }
         timeRemainingMs = endTimeMs - TimeUnit.NANOSECONDS.toMillis(System.nanoTime());
       }
+      files = bundle.files();
+      reportDuplicates(bundle);
       System.out.println("Collection completed.");
     } catch (FileNotFoundException e) {
       System.err.println("File not found: " + e.getMessage());
@@ -100,15 +141,33 @@ public class KafkaMetricsToFile {
     }
 
     if (numMessages == 0) {
-      outFile.delete();
       System.out.println("No records found.");
     } else {
-      System.out.println("Created file " + outputPath + " with " + numMessages + " records");
+      System.out.println("Created " + BundleWriter.describe(files) + " with " + numMessages
+                         + " records");
     }
 
     return numMessages;
   }
 
+  static void reportDuplicates(BundleWriter bundle) {
+    if (bundle.numDuplicates() > 0) {
+      System.out.println("Skipped " + bundle.numDuplicates() + " duplicate records");
+    }
+  }
+
+  private static boolean reachedEnd(
+      KafkaConsumer<byte[], byte[]> consumer,
+      Map<TopicPartition, Long> endOffsets
+  ) {
+    for (Map.Entry<TopicPartition, Long> endOffset : endOffsets.entrySet()) {
+      if (consumer.position(endOffset.getKey()) < endOffset.getValue()) {
+        return false;
+      }
+    }
+    return true;
+  }
+
   // Visible for testing
   public KafkaConsumer<byte[], byte[]> createConsumer() {
     long unixTime = new TimeUtils().nowInUnixTime();
@@ -123,18 +182,27 @@ public class KafkaMetricsToFile {
   }
 
   public static void main(String[] args) {
-    if (args.length != 4) {
-      System.err.println("Usage: bootstrapServer topic outputFile runtimeSecs");
+    BundleOptions bundleOptions = new BundleOptions();
+    List<String> positional = bundleOptions.parseFlags(args);
+    boolean latest = positional.remove("--latest");
+    if (positional.size() != 4) {
+      System.err.println("Usage: bootstrapServer topic outputFile runtimeSecs [--latest] "
+                         + "[--codec zip|snappy|zstd] [--segment-bytes bytes] "
+                         + "[--segment-records count] [--parallel] [--stored] [--dedup]");
       return;
     }
-    String bootstrapServer = args[0];
-    String topic = args[1];
-    String outputPath = args[2];
-    int runtimeSeconds = Integer.parseInt(args[3]);
+    String bootstrapServer = positional.get(0);
+    String topic = positional.get(1);
+    String outputPath = positional.get(2);
+    int runtimeSeconds = Integer.parseInt(positional.get(3));
     int runTimeMs = runtimeSeconds * 1000;
     System.out.print("Collecting metrics. This might take up to " + runtimeSeconds + " seconds.");
 
-    KafkaMetricsToFile kafkaMetricsToFile = new KafkaMetricsToFile(bootstrapServer);
-    kafkaMetricsToFile.saveMetricsToFile(topic, outputPath, runTimeMs);
+    KafkaMetricsToFile kafkaMetricsToFile = new KafkaMetricsToFile(bootstrapServer, bundleOptions);
+    if (latest) {
+      kafkaMetricsToFile.saveLatestMetricsToFile(topic, outputPath, runTimeMs);
+    } else {
+      kafkaMetricsToFile.saveMetricsToFile(topic, outputPath, runTimeMs);
+    }
   }
 }
@@ -0,0 +1,304 @@
+/**
+ * Copyright 2018 Confluent Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package io.confluent.support.metrics.tools;
+
+import org.apache.kafka.common.KafkaException;
+import org.apache.kafka.common.record.BufferSupplier;
+import org.apache.kafka.common.record.MemoryRecords;
+import org.apache.kafka.common.record.MutableRecordBatch;
+import org.apache.kafka.common.record.Record;
+import org.apache.kafka.common.utils.CloseableIterator;
+import org.apache.kafka.common.utils.Utils;
+
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * Retrieves metrics straight from the log segments of the metrics topic in a broker's log
+ * directory and stores them in a compressed local file, in the same format as
+ * {@link KafkaMetricsToFile}.
+ *
+ * <p>Unlike {@link KafkaMetricsToFile}, this needs neither a running broker nor a connection to
+ * one, which makes it usable when the broker is down.  The segment files are memory-mapped and
+ * only read, never modified, so it is safe to run against the log directory of a broker that
+ * crashed: batches that fail their checksum are skipped, and a truncated batch at the end of a
+ * segment ends that segment.  Compressed batches are decompressed one record at a time.
+ *
+ * <p>When a start time is given, each segment is read from the position that its time index and
+ * offset index point to, rather than from its beginning.
+ */
+public class LogSegmentMetricsToFile {
+
+  private static final String LOG_SUFFIX = ".log";
+  private static final String OFFSET_INDEX_SUFFIX = ".index";
+  private static final String TIME_INDEX_SUFFIX = ".timeindex";
+  private static final int OFFSET_INDEX_ENTRY_BYTES = 8;
+  private static final int TIME_INDEX_ENTRY_BYTES = 12;
+
+  private final File logDir;
+  private final BundleOptions bundleOptions;
+
+  /**
+   * @param logDir A log directory of the broker, i.e. one of the directories in its
+   *     <code>log.dirs</code> setting.
+   */
+  public LogSegmentMetricsToFile(File logDir) {
+    this(logDir, new BundleOptions());
+  }
+
+  /**
+   * @param bundleOptions The format of the output file, and whether to roll it into segments.
+   */
+  public LogSegmentMetricsToFile(File logDir, BundleOptions bundleOptions) {
+    this.logDir = logDir;
+    this.bundleOptions = bundleOptions;
+  }
+
+  /**
+   * Retrieves all metrics of the provided topic that are stored in the log directory.
+   *
+   * @param topic Kafka topic to read from.  Must not be null or empty.
+   * @param outputPath Path to the output file.  Must not be null or empty.
+   * @return the number of retrieved metrics submissions.
+   */
+  public int saveMetricsToFile(String topic, String outputPath) {
+    return saveMetricsToFile(topic, outputPath, Long.MIN_VALUE, Long.MAX_VALUE);
+  }
+
+  /**
+   * Retrieves the metrics of the provided topic with a timestamp within the given range.
+   *
+   * @param topic Kafka topic to read from.  Must not be null or empty.
+   * @param outputPath Path to the output file.  Must not be null or empty.
+   * @param fromMs Earliest timestamp to retrieve, in milliseconds since the epoch.
+   * @param toMs Latest timestamp to retrieve, in milliseconds since the epoch.
+   * @return the number of retrieved metrics submissions.
+   */
+  public int saveMetricsToFile(String topic, String outputPath, long fromMs, long toMs) {
+    if (topic == null || topic.isEmpty()) {
+      System.err.println("Topic name must be specified");
+      return 0;
+    }
+    if (outputPath == null || outputPath.isEmpty()) {
+      System.err.println("Output path must be specified");
+      return 0;
+    }
+    List<File> partitionDirs = partitionDirs(topic);
+    if (partitionDirs.isEmpty()) {
+      System.err.println("No partitions of topic " + topic + " found in " + logDir);
+      return 0;
+    }
+
+    int numMessages = 0;
+    List<File> files;
+    File outFile = new File(outputPath);
+    try (BundleWriter bundle = new BundleWriter(outFile, outputPath, bundleOptions)) {
+      for (File partitionDir : partitionDirs) {
+        for (File segment : segments(partitionDir)) {
+          saveSegment(segment, fromMs, toMs, bundle);
+        }
+      }
+      numMessages = bundle.numEntries();
+      files = bundle.files();
+      KafkaMetricsToFile.reportDuplicates(bundle);
+      System.out.println("Collection completed.");
+    } catch (FileNotFoundException e) {
+      System.err.println("File not found: " + e.getMessage());
+      return 0;
+    } catch (IOException e) {
+      System.err.println("IOException: " + e.getMessage());
+      return 0;
+    }
+
+    if (numMessages == 0) {
+      System.out.println("No records found.");
+    } else {
+      System.out.println("Created " + BundleWriter.describe(files) + " with " + numMessages
+                         + " records");
+    }
+    return numMessages;
+  }
+
+  private static void saveSegment(File segment, long fromMs, long toMs, BundleWriter bundle)
+      throws IOException {
+    MappedByteBuffer log = map(segment);
+    int startPosition = fromMs == Long.MIN_VALUE ? 0 : startPosition(segment, fromMs);
+    log.position(Math.min(startPosition, log.limit()));
+    MemoryRecords records = MemoryRecords.readableRecords(log.slice());
+    try {
+      for (MutableRecordBatch batch : records.batches()) {
+        if (batch.isControlBatch() || batch.maxTimestamp() < fromMs) {
+          continue;
+        }
+        if (!batch.isValid()) {
+          System.err.println("Skipping corrupt batch at offset " + batch.baseOffset() + " of "
+                             + segment);
+          continue;
+        }
+        try (CloseableIterator<Record> batchRecords =
+                 batch.streamingIterator(BufferSupplier.NO_CACHING)) {
+          while (batchRecords.hasNext()) {
+            Record record = batchRecords.next();
+            if (!record.hasValue() || record.timestamp() < fromMs || record.timestamp() > toMs) {
+              continue;
+            }
+            if (bundle.add(Utils.toArray(record.value()))) {
+              System.out.println("Collecting metric batch #" + (bundle.numEntries() - 1));
+            }
+          }
+        }
+      }
+    } catch (KafkaException e) {
+      // Like a truncated batch at the end of the segment of a broker that crashed.
+      System.err.println("Stopped reading " + segment + ": " + e.getMessage());
+    }
+  }
+
+  /**
+   * Looks up the position of the first batch in the segment that may hold a record with a
+   * timestamp of at least fromMs.
+   *
+   * <p>The entries of the time index map the largest timestamp so far to the offset of its
+   * record, so all records before the last entry with a timestamp below fromMs are older than
+   * fromMs.  The offset index then maps that offset to the position of its batch.  Indexes of the
+   * active segment are preallocated and padded with zeros, so the lookups stop at the first entry
+   * that does not increase.
+   *
+   * @return The position, or 0 if the segment has to be read from its beginning.
+   */
+  private static int startPosition(File segment, long fromMs) throws IOException {
+    File timeIndex = sibling(segment, TIME_INDEX_SUFFIX);
+    File offsetIndex = sibling(segment, OFFSET_INDEX_SUFFIX);
+    if (!timeIndex.isFile() || !offsetIndex.isFile()) {
+      return 0;
+    }
+
+    ByteBuffer timeEntries = map(timeIndex);
+    int relativeOffset = -1;
+    long previousTimestamp = Long.MIN_VALUE;
+    for (int i = 0; i + TIME_INDEX_ENTRY_BYTES <= timeEntries.limit();
+         i += TIME_INDEX_ENTRY_BYTES) {
+      long timestamp = timeEntries.getLong(i);
+      if (timestamp <= previousTimestamp || timestamp >= fromMs) {
+        break;
+      }
+      relativeOffset = timeEntries.getInt(i + 8);
+      previousTimestamp = timestamp;
+    }
+    if (relativeOffset < 0) {
+      return 0;
+    }
+
+    ByteBuffer offsetEntries = map(offsetIndex);
+    int position = 0;
+    int previousRelativeOffset = -1;
+    for (int i = 0; i + OFFSET_INDEX_ENTRY_BYTES <= offsetEntries.limit();
+         i += OFFSET_INDEX_ENTRY_BYTES) {
+      int entryRelativeOffset = offsetEntries.getInt(i);
+      if (entryRelativeOffset <= previousRelativeOffset || entryRelativeOffset > relativeOffset) {
+        break;
+      }
+      position = offsetEntries.getInt(i + 4);
+      previousRelativeOffset = entryRelativeOffset;
+    }
+    return position;
+  }
+
+  /**
+   * @return The directories of the topic's partitions, in partition order.
+   */
+  private List<File> partitionDirs(String topic) {
+    List<File> partitionDirs = new ArrayList<>();
+    File[] files = logDir.listFiles();
+    if (files == null) {
+      return partitionDirs;
+    }
+    String prefix = topic + "-";
+    for (File file : files) {
+      String name = file.getName();
+      // Skips the directories of other topics that share the prefix, and of deleted partitions.
+      if (file.isDirectory() && name.startsWith(prefix)
+          && name.substring(prefix.length()).matches("\\d+")) {
+        partitionDirs.add(file);
+      }
+    }
+    Collections.sort(partitionDirs, Comparator.comparingInt(
+        (File dir) -> Integer.parseInt(dir.getName().substring(prefix.length()))));
+    return partitionDirs;
+  }
+
+  /**
+   * @return The log segments of the partition, in offset order.
+   */
+  private static List<File> segments(File partitionDir) {
+    List<File> segments = new ArrayList<>();
+    File[] files = partitionDir.listFiles();
+    if (files == null) {
+      return segments;
+    }
+    for (File file : files) {
+      String name = file.getName();
+      if (file.isFile() && name.endsWith(LOG_SUFFIX)
+          && name.substring(0, name.length() - LOG_SUFFIX.length()).matches("\\d+")) {
+        segments.add(file);
+      }
+    }
+    // The names of the segments are their zero-padded base offsets.
+    Collections.sort(segments);
+    return segments;
+  }
+
+  private static File sibling(File segment, String suffix) {
+    String name = segment.getName();
+    return new File(segment.getParentFile(),
+                    name.substring(0, name.length() - LOG_SUFFIX.length()) + suffix);
+  }
+
+  private static MappedByteBuffer map(File file) throws IOException {
+    try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+      long size = Math.min(channel.size(), Integer.MAX_VALUE);
+      return channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+    }
+  }
+
+  public static void main(String[] args) {
+    BundleOptions bundleOptions = new BundleOptions();
+    List<String> positional = bundleOptions.parseFlags(args);
+    if (positional.size() < 3 || positional.size() > 5) {
+      System.err.println("Usage: logDir topic outputFile [fromMs [toMs]] "
+                         + "[--codec zip|snappy|zstd] [--segment-bytes bytes] "
+                         + "[--segment-records count] [--parallel] [--stored] [--dedup]");
+      return;
+    }
+    File logDir = new File(positional.get(0));
+    String topic = positional.get(1);
+    String outputPath = positional.get(2);
+    long fromMs = positional.size() > 3 ? Long.parseLong(positional.get(3)) : Long.MIN_VALUE;
+    long toMs = positional.size() > 4 ? Long.parseLong(positional.get(4)) : Long.MAX_VALUE;
+    System.out.println("Collecting metrics from " + logDir + ".");
+
+    new LogSegmentMetricsToFile(logDir, bundleOptions)
+        .saveMetricsToFile(topic, outputPath, fromMs, toMs);
+  }
+}
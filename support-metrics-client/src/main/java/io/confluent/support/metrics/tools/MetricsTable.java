@@ -0,0 +1,697 @@
+/**
+ * Copyright 2018 Confluent Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package io.confluent.support.metrics.tools;
+
+import org.apache.avro.Schema;
+import org.apache.avro.SchemaNormalization;
+import org.apache.avro.file.DataFileStream;
+import org.apache.avro.generic.GenericDatumReader;
+import org.apache.avro.io.BinaryDecoder;
+import org.apache.avro.io.DatumReader;
+import org.apache.avro.io.Decoder;
+import org.apache.avro.io.DecoderFactory;
+import org.apache.avro.util.Utf8;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+import io.confluent.support.metrics.serde.DeltaDeserializer;
+import io.confluent.support.metrics.serde.DeltaSerializer;
+
+/**
+ * The metrics records of support metrics bundles in columns, for analyses over millions of
+ * records: timestamps and collector states in primitive arrays, and the broker process UUID,
+ * cluster id and versions as codes into a dictionary of their distinct values per column.  A
+ * record takes 28 bytes, compared to about a kilobyte as a decoded record.
+ *
+ * <p>Submissions are decoded straight into the columns by a {@link DatumReader} that walks the
+ * writer's schema, without creating record objects; the fields that are not stored are skipped.
+ * Deltas are walked the same way, and the encoded values of changed fields that are not stored
+ * are skipped by their length.
+ * The fields of a composite record's sections fill the columns its own fields leave empty, e.g.
+ * the versions of the basic collector's section.  A delta (cf.
+ * {@link io.confluent.support.metrics.serde.DeltaSerializer}) copies the row of the previous
+ * record of its broker and overwrites the columns of the changed fields, including those a
+ * changed section fills, so submissions must be appended in the order they were written.  A
+ * submission that cannot be read leaves the table as it was before.  Deltas whose previous record
+ * is missing are counted in {@link #unresolvedDeltas()} and skipped.
+ *
+ * <p>Analyses select rows with filters that take and return a selection vector, an ascending
+ * array of row numbers, e.g. {@code table.whereEquals(CLUSTER_ID, "abc", table.selectAll())},
+ * and aggregate the selected rows by the values of a column.  Filters and aggregations compare
+ * dictionary codes rather than strings.
+ *
+ * <p>This class is not thread-safe.
+ */
+public class MetricsTable {
+
+  /**
+   * Timestamp of rows whose record did not have one.
+   */
+  public static final long NO_TIMESTAMP = Long.MIN_VALUE;
+
+  /**
+   * Collector state of rows whose record did not have one.
+   */
+  public static final int NO_STATE = -1;
+
+  private static final int NO_VALUE = -1;
+  private static final int INITIAL_CAPACITY = 1024;
+  private static final String TIMESTAMP_FIELD = "timestamp";
+  private static final String COLLECTOR_STATE_FIELD = "collectorState";
+  private static final String SECTIONS_FIELD = "sections";
+  private static final String PAYLOAD_FIELD = "payload";
+
+  /**
+   * The string columns of the table.
+   */
+  public enum StringColumn {
+    BROKER_PROCESS_UUID("brokerProcessUUID"),
+    CLUSTER_ID("clusterId"),
+    KAFKA_VERSION("kafkaVersion"),
+    CONFLUENT_PLATFORM_VERSION("confluentPlatformVersion");
+
+    private final String fieldName;
+
+    StringColumn(String fieldName) {
+      this.fieldName = fieldName;
+    }
+
+    static StringColumn forField(String fieldName) {
+      for (StringColumn column : values()) {
+        if (column.fieldName.equals(fieldName)) {
+          return column;
+        }
+      }
+      return null;
+    }
+  }
+
+  private final Dictionary[] dictionaries = new Dictionary[StringColumn.values().length];
+  private final Map<Integer, BrokerState> brokers = new HashMap<>();
+  // The broker states the current submission replaced, to restore them if it cannot be read.
+  private final Map<Integer, BrokerState> replacedBrokers = new HashMap<>();
+  private final Utf8 utf8 = new Utf8();
+  private BinaryDecoder deltaDecoder;
+  private long[] timestamps = new long[INITIAL_CAPACITY];
+  private int[] states = new int[INITIAL_CAPACITY];
+  private int[][] codes = new int[StringColumn.values().length][INITIAL_CAPACITY];
+  private int size = 0;
+  private long unreadable = 0;
+  private long unresolvedDeltas = 0;
+
+  public MetricsTable() {
+    for (int i = 0; i < dictionaries.length; i++) {
+      dictionaries[i] = new Dictionary();
+    }
+  }
+
+  /**
+   * Loads the records of bundle files, e.g. the segments of a rolled bundle in order.
+   */
+  public static MetricsTable load(List<File> files) throws IOException {
+    MetricsTable table = new MetricsTable();
+    for (File file : files) {
+      try (BundleReader reader = new BundleReader(file)) {
+        byte[] submission;
+        while ((submission = reader.next()) != null) {
+          table.append(submission);
+        }
+      }
+    }
+    return table;
+  }
+
+  /**
+   * Appends the records of a submission, as it is stored in the bundle.  Submissions that cannot
+   * be read are counted in {@link #unreadable()}.
+   */
+  public void append(byte[] submission) {
+    int sizeBefore = size;
+    replacedBrokers.clear();
+    try {
+      if (DeltaDeserializer.isDelta(submission)) {
+        appendDelta(submission);
+      } else {
+        try (DataFileStream<Void> stream = new DataFileStream<>(
+            new ByteArrayInputStream(submission), new RowReader(NO_VALUE))) {
+          while (stream.hasNext()) {
+            stream.next();
+          }
+        }
+      }
+    } catch (IOException | RuntimeException e) {
+      size = sizeBefore;
+      for (Map.Entry<Integer, BrokerState> replaced : replacedBrokers.entrySet()) {
+        if (replaced.getValue() == null) {
+          brokers.remove(replaced.getKey());
+        } else {
+          brokers.put(replaced.getKey(), replaced.getValue());
+        }
+      }
+      unreadable++;
+    }
+  }
+
+  /**
+   * @return The number of rows.
+   */
+  public int size() {
+    return size;
+  }
+
+  /**
+   * @return The number of submissions that could not be read.
+   */
+  public long unreadable() {
+    return unreadable;
+  }
+
+  /**
+   * @return The number of deltas that were skipped because the record before them was missing.
+   */
+  public long unresolvedDeltas() {
+    return unresolvedDeltas;
+  }
+
+  /**
+   * @return The timestamp of the row, in seconds since the epoch, or {@link #NO_TIMESTAMP}.
+   */
+  public long timestamp(int row) {
+    return timestamps[checkRow(row)];
+  }
+
+  /**
+   * @return The collector state of the row, or {@link #NO_STATE}.
+   */
+  public int collectorState(int row) {
+    return states[checkRow(row)];
+  }
+
+  /**
+   * @return The value of the row in the column, or null.
+   */
+  public String get(StringColumn column, int row) {
+    return dictionaries[column.ordinal()].value(codes[column.ordinal()][checkRow(row)]);
+  }
+
+  /**
+   * @return The number of distinct values of the column.
+   */
+  public int cardinality(StringColumn column) {
+    return dictionaries[column.ordinal()].size();
+  }
+
+  /**
+   * @return A selection of all rows.
+   */
+  public int[] selectAll() {
+    int[] rows = new int[size];
+    for (int i = 0; i < size; i++) {
+      rows[i] = i;
+    }
+    return rows;
+  }
+
+  /**
+   * @return The selected rows with a timestamp from {@code fromTimestamp} to {@code toTimestamp},
+   *     inclusive.
+   */
+  public int[] whereTimestampBetween(long fromTimestamp, long toTimestamp, int[] rows) {
+    int[] selected = new int[rows.length];
+    int count = 0;
+    for (int row : rows) {
+      long timestamp = timestamps[row];
+      if (timestamp >= fromTimestamp && timestamp <= toTimestamp) {
+        selected[count++] = row;
+      }
+    }
+    return Arrays.copyOf(selected, count);
+  }
+
+  /**
+   * @return The selected rows with the given collector state.
+   */
+  public int[] whereCollectorState(int state, int[] rows) {
+    int[] selected = new int[rows.length];
+    int count = 0;
+    for (int row : rows) {
+      if (states[row] == state) {
+        selected[count++] = row;
+      }
+    }
+    return Arrays.copyOf(selected, count);
+  }
+
+  /**
+   * @return The selected rows whose value in the column is the given one, or null.
+   */
+  public int[] whereEquals(StringColumn column, String value, int[] rows) {
+    int code = value == null ? NO_VALUE : dictionaries[column.ordinal()].find(value);
+    if (value != null && code == NO_VALUE) {
+      return new int[0];
+    }
+    int[] columnCodes = codes[column.ordinal()];
+    int[] selected = new int[rows.length];
+    int count = 0;
+    for (int row : rows) {
+      if (columnCodes[row] == code) {
+        selected[count++] = row;
+      }
+    }
+    return Arrays.copyOf(selected, count);
+  }
+
+  /**
+   * @return The number of selected rows per value of the column, in the order of values.  Rows
+   *     without a value are not counted.
+   */
+  public Map<String, Integer> countBy(StringColumn column, int[] rows) {
+    int[] columnCodes = codes[column.ordinal()];
+    int[] counts = new int[cardinality(column)];
+    for (int row : rows) {
+      int code = columnCodes[row];
+      if (code != NO_VALUE) {
+        counts[code]++;
+      }
+    }
+    Map<String, Integer> result = new TreeMap<>();
+    for (int code = 0; code < counts.length; code++) {
+      if (counts[code] > 0) {
+        result.put(dictionaries[column.ordinal()].value(code), counts[code]);
+      }
+    }
+    return result;
+  }
+
+  /**
+   * @return The number of distinct values of {@code distinct} among the selected rows per value of
+   *     {@code groupBy}, e.g. the number of broker processes per cluster.
+   */
+  public Map<String, Integer> countDistinctBy(
+      StringColumn groupBy,
+      StringColumn distinct,
+      int[] rows
+  ) {
+    int[] groupCodes = codes[groupBy.ordinal()];
+    int[] distinctCodes = codes[distinct.ordinal()];
+    // Pairs are only looked up when a value's group differs from the one of its previous row,
+    // which is rare as a broker process reports a single cluster and version.
+    int[] lastGroup = new int[cardinality(distinct)];
+    Arrays.fill(lastGroup, NO_VALUE);
+    Map<Long, Boolean> seen = new HashMap<>();
+    int[] counts = new int[cardinality(groupBy)];
+    for (int row : rows) {
+      int group = groupCodes[row];
+      int value = distinctCodes[row];
+      if (group == NO_VALUE || value == NO_VALUE || lastGroup[value] == group) {
+        continue;
+      }
+      lastGroup[value] = group;
+      if (seen.put(((long) group << 32) | value, Boolean.TRUE) == null) {
+        counts[group]++;
+      }
+    }
+    Map<String, Integer> result = new TreeMap<>();
+    for (int code = 0; code < counts.length; code++) {
+      if (counts[code] > 0) {
+        result.put(dictionaries[groupBy.ordinal()].value(code), counts[code]);
+      }
+    }
+    return result;
+  }
+
+  /**
+   * @return The earliest and latest timestamp of the selected rows per value of the column, in
+   *     the order of values.  Rows without a value or a timestamp are not counted.
+   */
+  public Map<String, long[]> timestampRangeBy(StringColumn column, int[] rows) {
+    int[] columnCodes = codes[column.ordinal()];
+    long[] min = new long[cardinality(column)];
+    long[] max = new long[min.length];
+    Arrays.fill(min, Long.MAX_VALUE);
+    Arrays.fill(max, Long.MIN_VALUE);
+    for (int row : rows) {
+      int code = columnCodes[row];
+      long timestamp = timestamps[row];
+      if (code != NO_VALUE && timestamp != NO_TIMESTAMP) {
+        min[code] = Math.min(min[code], timestamp);
+        max[code] = Math.max(max[code], timestamp);
+      }
+    }
+    Map<String, long[]> result = new TreeMap<>();
+    for (int code = 0; code < min.length; code++) {
+      if (min[code] <= max[code]) {
+        result.put(dictionaries[column.ordinal()].value(code), new long[] {min[code], max[code]});
+      }
+    }
+    return result;
+  }
+
+  private int checkRow(int row) {
+    if (row < 0 || row >= size) {
+      throw new IndexOutOfBoundsException("Row " + row + " of " + size);
+    }
+    return row;
+  }
+
+  private int newRow() {
+    if (size == timestamps.length) {
+      int capacity = size + (size >> 1);
+      timestamps = Arrays.copyOf(timestamps, capacity);
+      states = Arrays.copyOf(states, capacity);
+      for (int i = 0; i < codes.length; i++) {
+        codes[i] = Arrays.copyOf(codes[i], capacity);
+      }
+    }
+    int row = size++;
+    timestamps[row] = NO_TIMESTAMP;
+    states[row] = NO_STATE;
+    for (int[] column : codes) {
+      column[row] = NO_VALUE;
+    }
+    return row;
+  }
+
+  /**
+   * Walks a delta in the order of the fields of
+   * {@link io.confluent.support.metrics.SupportKafkaMetricsDelta}.  The value of each change is
+   * the field's own binary encoding, prefixed with its length like any Avro bytes.
+   */
+  private void appendDelta(byte[] submission) throws IOException {
+    int magicLength = DeltaSerializer.DELTA_MAGIC.length;
+    BinaryDecoder in = DecoderFactory.get().binaryDecoder(
+        submission, magicLength, submission.length - magicLength, deltaDecoder);
+    deltaDecoder = in;
+    int uuid = dictionaries[StringColumn.BROKER_PROCESS_UUID.ordinal()].code(in.readString(utf8));
+    long fingerprint = in.readLong();
+    int sequence = in.readInt();
+    BrokerState state = brokers.get(uuid);
+    if (state == null || state.fingerprint() != fingerprint || state.sequence + 1 != sequence) {
+      brokers.remove(uuid);
+      unresolvedDeltas++;
+      return;
+    }
+    replacing(uuid);
+    int row = newRow();
+    timestamps[row] = timestamps[state.row];
+    states[row] = states[state.row];
+    for (int[] column : codes) {
+      column[row] = column[state.row];
+    }
+    for (long count = in.readArrayStart(); count != 0; count = in.arrayNext()) {
+      for (long i = 0; i < count; i++) {
+        Schema.Field field = state.schema.getFields().get(in.readInt());
+        long length = in.readLong();
+        if (isStored(field.name())) {
+          readField(field.name(), field.schema(), in, row, true, state.schema);
+        } else {
+          in.skipFixed((int) length);
+        }
+      }
+    }
+    state.row = row;
+    state.sequence = sequence;
+  }
+
+  /**
+   * @return Whether {@link #readField} stores the field, rather than skipping it.
+   */
+  private static boolean isStored(String name) {
+    return StringColumn.forField(name) != null
+           || TIMESTAMP_FIELD.equals(name)
+           || COLLECTOR_STATE_FIELD.equals(name)
+           || SECTIONS_FIELD.equals(name);
+  }
+
+  /**
+   * Remembers a full record as the one the next delta of its broker applies to.
+   */
+  private void keyframe(Schema schema, int row) {
+    int uuid = codes[StringColumn.BROKER_PROCESS_UUID.ordinal()][row];
+    if (uuid != NO_VALUE) {
+      replacing(uuid);
+      brokers.put(uuid, new BrokerState(schema, row));
+    }
+  }
+
+  /**
+   * Keeps a copy of the broker's state as it was before the current submission, unless it is kept
+   * already.
+   */
+  private void replacing(int uuid) {
+    if (!replacedBrokers.containsKey(uuid)) {
+      BrokerState state = brokers.get(uuid);
+      replacedBrokers.put(uuid, state == null ? null : state.copy());
+    }
+  }
+
+  /**
+   * Reads a field into the row.
+   *
+   * @param overwrite Whether the field replaces the row's value of its column, or only fills it
+   *     if the row does not have one yet.
+   * @param recordSchema The schema of the record the field belongs to.
+   */
+  private void readField(
+      String name,
+      Schema schema,
+      Decoder in,
+      int row,
+      boolean overwrite,
+      Schema recordSchema
+  ) throws IOException {
+    if (schema.getType() == Schema.Type.UNION) {
+      schema = schema.getTypes().get(in.readIndex());
+    }
+    StringColumn column = StringColumn.forField(name);
+    switch (schema.getType()) {
+      case NULL:
+        in.readNull();
+        if (overwrite && column != null) {
+          codes[column.ordinal()][row] = NO_VALUE;
+        }
+        return;
+      case LONG:
+        if (TIMESTAMP_FIELD.equals(name)) {
+          long timestamp = in.readLong();
+          if (overwrite || timestamps[row] == NO_TIMESTAMP) {
+            timestamps[row] = timestamp;
+          }
+          return;
+        }
+        break;
+      case INT:
+        if (COLLECTOR_STATE_FIELD.equals(name)) {
+          int state = in.readInt();
+          if (overwrite || states[row] == NO_STATE) {
+            states[row] = state;
+          }
+          return;
+        }
+        break;
+      case STRING:
+        if (column != null) {
+          Utf8 value = in.readString(utf8);
+          int[] columnCodes = codes[column.ordinal()];
+          if (overwrite || columnCodes[row] == NO_VALUE) {
+            columnCodes[row] = dictionaries[column.ordinal()].code(value);
+          }
+          return;
+        }
+        break;
+      case ARRAY:
+        if (SECTIONS_FIELD.equals(name)
+            && schema.getElementType().getType() == Schema.Type.RECORD) {
+          readSections(schema.getElementType(), in, row, overwrite ? recordSchema : null);
+          return;
+        }
+        break;
+      default:
+        break;
+    }
+    GenericDatumReader.skip(schema, in);
+  }
+
+  /**
+   * @param overwriteUnless The schema of the composite record when the sections replace the
+   *     values of the columns its own fields do not have, or null if they only fill empty columns.
+   */
+  private void readSections(Schema sectionSchema, Decoder in, int row, Schema overwriteUnless)
+      throws IOException {
+    for (long count = in.readArrayStart(); count != 0; count = in.arrayNext()) {
+      for (long i = 0; i < count; i++) {
+        for (Schema.Field field : sectionSchema.getFields()) {
+          Schema schema = field.schema();
+          if (schema.getType() == Schema.Type.UNION) {
+            schema = schema.getTypes().get(in.readIndex());
+          }
+          if (PAYLOAD_FIELD.equals(field.name()) && schema.getType() == Schema.Type.BYTES) {
+            readSection(in.readBytes(null), row, overwriteUnless);
+          } else {
+            GenericDatumReader.skip(schema, in);
+          }
+        }
+      }
+    }
+  }
+
+  /**
+   * Reads a section's payload into the row, cf. {@link #readSections}.  A section that cannot be
+   * read does not affect the rest of the record.
+   */
+  private void readSection(ByteBuffer payload, int row, Schema overwriteUnless) {
+    try (DataFileStream<Void> stream = new DataFileStream<>(
+        new ByteArrayInputStream(payload.array(), payload.arrayOffset() + payload.position(),
+                                 payload.remaining()),
+        new RowReader(row, overwriteUnless))) {
+      while (stream.hasNext()) {
+        stream.next();
+      }
+    } catch (IOException | RuntimeException e) {
+      // Ignored, cf. above.
+    }
+  }
+
+  /**
+   * Reads each record of a submission into a new row, or the records of a section into an
+   * existing row.
+   */
+  private class RowReader implements DatumReader<Void> {
+
+    private final int sectionRow;
+    private final Schema overwriteUnless;
+    private Schema schema;
+
+    /**
+     * @param sectionRow The row to fill, or {@link #NO_VALUE} to append a row per record.
+     */
+    RowReader(int sectionRow) {
+      this(sectionRow, null);
+    }
+
+    /**
+     * @param overwriteUnless Cf. {@link #readSections}.
+     */
+    RowReader(int sectionRow, Schema overwriteUnless) {
+      this.sectionRow = sectionRow;
+      this.overwriteUnless = overwriteUnless;
+    }
+
+    @Override
+    public void setSchema(Schema schema) {
+      this.schema = schema;
+    }
+
+    @Override
+    public Void read(Void reuse, Decoder in) throws IOException {
+      if (schema.getType() != Schema.Type.RECORD) {
+        GenericDatumReader.skip(schema, in);
+        return null;
+      }
+      boolean append = sectionRow == NO_VALUE;
+      int row = append ? newRow() : sectionRow;
+      for (Schema.Field field : schema.getFields()) {
+        boolean overwrite = append
+                            || overwriteUnless != null
+                               && overwriteUnless.getField(field.name()) == null;
+        readField(field.name(), field.schema(), in, row, overwrite, schema);
+      }
+      if (append) {
+        keyframe(schema, row);
+      }
+      return null;
+    }
+  }
+
+  /**
+   * The distinct values of a string column, by their code.
+   */
+  private static class Dictionary {
+
+    private final Map<Utf8, Integer> codes = new HashMap<>();
+    private final List<String> values = new ArrayList<>();
+
+    /**
+     * @return The code of the value, which is added if it is new.  The value may be reused by the
+     *     caller afterwards.
+     */
+    int code(Utf8 value) {
+      Integer code = codes.get(value);
+      if (code == null) {
+        String string = value.toString();
+        code = values.size();
+        codes.put(new Utf8(string), code);
+        values.add(string);
+      }
+      return code;
+    }
+
+    /**
+     * @return The code of the value, or {@link #NO_VALUE} if the column does not have it.
+     */
+    int find(String value) {
+      Integer code = codes.get(new Utf8(value));
+      return code == null ? NO_VALUE : code;
+    }
+
+    String value(int code) {
+      return code == NO_VALUE ? null : values.get(code);
+    }
+
+    int size() {
+      return values.size();
+    }
+  }
+
+  private static class BrokerState {
+
+    final Schema schema;
+    Long fingerprint = null;
+    int row;
+    int sequence = 0;
+
+    BrokerState(Schema schema, int row) {
+      this.schema = schema;
+      this.row = row;
+    }
+
+    BrokerState copy() {
+      BrokerState copy = new BrokerState(schema, row);
+      copy.fingerprint = fingerprint;
+      copy.sequence = sequence;
+      return copy;
+    }
+
+    /**
+     * Computed on the first delta only, so bundles without deltas never compute it.
+     */
+    long fingerprint() {
+      if (fingerprint == null) {
+        fingerprint = SchemaNormalization.parsingFingerprint64(schema);
+      }
+      return fingerprint;
+    }
+  }
+
+}
@@ -0,0 +1,66 @@
+/**
+ * Copyright 2018 Confluent Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+
+package io.confluent.support.metrics;
+
+import org.junit.Test;
+
+import java.util.Properties;
+
+import io.confluent.support.metrics.common.Collector;
+import io.confluent.support.metrics.common.kafka.KafkaUtilities;
+import io.confluent.support.metrics.serde.AvroSerializer;
+import io.confluent.support.metrics.serde.DeltaSerializer;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.mock;
+
+public class MetricsPipelineFactoryTest {
+
+  @Test
+  public void testAppliesConfiguredLimitsAndEncoding() {
+    // Given
+    Properties properties = new Properties();
+    properties.setProperty(KafkaSupportConfig.CONFLUENT_SUPPORT_METRICS_MEMORY_MAX_BYTES_CONFIG,
+                           "1048576");
+    properties.setProperty(
+        KafkaSupportConfig.CONFLUENT_SUPPORT_METRICS_DELTA_KEYFRAME_INTERVAL_CONFIG, "10");
+
+    // When
+    MetricsPipelineFactory factory =
+        new MetricsPipelineFactory(new KafkaSupportConfig(properties));
+
+    // Then
+    assertThat(factory.memoryBudget().maxBytes()).isEqualTo(1048576L);
+    assertThat(factory.encoder()).isInstanceOf(DeltaSerializer.class);
+  }
+
+  @Test
+  public void testCreatesOnlyEnabledSinks() {
+    // Given
+    MetricsPipelineFactory factory =
+        new MetricsPipelineFactory(new KafkaSupportConfig(new Properties()));
+
+    // When
+    MetricsPipeline pipeline = factory.create(mock(Collector.class), false, false, null,
+                                              new KafkaUtilities(), null);
+
+    // Then
+    assertThat(pipeline.sinks()).isEmpty();
+    assertThat(pipeline.agentMetrics()).isSameAs(factory.agentMetrics());
+    assertThat(factory.encoder()).isExactlyInstanceOf(AvroSerializer.class);
+  }
+
+}
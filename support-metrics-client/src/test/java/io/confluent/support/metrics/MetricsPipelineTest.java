@@ -0,0 +1,199 @@
+/**
+ * Copyright 2018 Confluent Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package io.confluent.support.metrics;
+
+import org.apache.avro.generic.GenericContainer;
+import org.apache.avro.generic.GenericRecord;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import javax.management.openmbean.TabularData;
+
+import io.confluent.support.metrics.agent.AgentMetrics;
+import io.confluent.support.metrics.agent.CycleStats;
+import io.confluent.support.metrics.agent.MemoryBudget;
+import io.confluent.support.metrics.agent.ResourceGovernor;
+import io.confluent.support.metrics.agent.ThreadUsage;
+import io.confluent.support.metrics.collectors.AgentCollector;
+import io.confluent.support.metrics.collectors.BasicCollector;
+import io.confluent.support.metrics.collectors.CompositeCollector;
+import io.confluent.support.metrics.common.Collector;
+import io.confluent.support.metrics.common.Uuid;
+import io.confluent.support.metrics.common.time.TimeUtils;
+import io.confluent.support.metrics.serde.AvroSerializer;
+import io.confluent.support.metrics.serde.DeltaDeserializer;
+import io.confluent.support.metrics.serde.DeltaSerializer;
+import io.confluent.support.metrics.sinks.EncodedMetrics;
+import io.confluent.support.metrics.sinks.MetricsSink;
+import kafka.server.KafkaServer;
+
+import static io.confluent.support.metrics.MetricsRecords.basicRecord;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.Assume.assumeTrue;
+import static org.mockito.Matchers.any;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+public class MetricsPipelineTest {
+
+  @Test
+  public void testEveryCycleIsRecordedIncludingFailedSinks() {
+    // Given
+    KafkaServer mockServer = mock(KafkaServer.class);
+    when(mockServer.clusterId()).thenReturn("dummy");
+    MetricsSink failing = mock(MetricsSink.class);
+    when(failing.name()).thenReturn("failing");
+    doThrow(new IllegalStateException("unreachable"))
+        .when(failing).submit(any(EncodedMetrics.class));
+    MetricsSink working = mock(MetricsSink.class);
+    when(working.name()).thenReturn("working");
+    AgentMetrics agentMetrics = new AgentMetrics();
+    MetricsPipeline pipeline = new MetricsPipeline(
+        new BasicCollector(mockServer, new TimeUtils(), new Uuid()), new AvroSerializer(),
+        Arrays.asList(failing, working), agentMetrics, ResourceGovernor.unlimited());
+
+    // When
+    pipeline.submitMetrics();
+    pipeline.submitMetrics();
+
+    // Then
+    verify(working, times(2)).submit(any(EncodedMetrics.class));
+    CycleStats cycle = agentMetrics.lastCycle();
+    assertThat(agentMetrics.getCycleCount()).isEqualTo(2);
+    assertThat(cycle.submits().keySet()).containsExactly("failing", "working");
+    assertThat(cycle.payloadBytes()).isPositive();
+    assertThat(cycle.collect().wallNanos()).isPositive();
+    assertThat(agentMetrics.getTotalPayloadBytes()).isEqualTo(2 * cycle.payloadBytes());
+    TabularData sinkSubmits = agentMetrics.getLastSinkSubmitWallTimeMicros();
+    assertThat(sinkSubmits.size()).isEqualTo(2);
+    assertThat(sinkSubmits.get(new Object[] {"working"}).get("wallTimeMicros"))
+        .isInstanceOf(Long.class);
+  }
+
+  @Test
+  public void testCollectIncludesCpuTimeOfPoolThreads() {
+    assumeTrue(ThreadUsage.isCpuTimeSupported());
+
+    // Given
+    final long spinNanos = TimeUnit.MILLISECONDS.toNanos(50);
+    Map<String, Collector> collectors = new LinkedHashMap<>();
+    for (String name : Arrays.asList("first", "second")) {
+      collectors.put(name, new Collector() {
+        @Override
+        public GenericContainer collectMetrics() {
+          long startCpu = ThreadUsage.currentCpuNanos();
+          while (ThreadUsage.currentCpuNanos() - startCpu < spinNanos) {
+            Thread.yield();
+          }
+          return basicRecord(1000);
+        }
+      });
+    }
+    CompositeCollector composite =
+        new CompositeCollector(new TimeUtils(), new Uuid(), collectors, 2, 10 * 1000L);
+    AgentMetrics agentMetrics = new AgentMetrics();
+    MetricsPipeline pipeline = new MetricsPipeline(
+        composite, new AvroSerializer(), Arrays.<MetricsSink>asList(), agentMetrics,
+        ResourceGovernor.unlimited());
+
+    try {
+      // When
+      pipeline.submitMetrics();
+
+      // Then
+      assertThat(agentMetrics.lastCycle().collect().cpuNanos())
+          .isGreaterThanOrEqualTo(2 * spinNanos);
+    } finally {
+      composite.close();
+    }
+  }
+
+  @Test
+  public void testAgentSectionReportsPreviousCycle() {
+    // Given
+    AgentMetrics agentMetrics = new AgentMetrics();
+    Uuid uuid = new Uuid();
+    MetricsPipeline pipeline = new MetricsPipeline(
+        new AgentCollector(agentMetrics, new TimeUtils(), uuid), new AvroSerializer(),
+        Arrays.<MetricsSink>asList(), agentMetrics, ResourceGovernor.unlimited());
+
+    // When
+    pipeline.submitMetrics();
+    SupportKafkaMetricsAgent metricsRecord = (SupportKafkaMetricsAgent)
+        new AgentCollector(agentMetrics, new TimeUtils(), uuid).collectMetrics();
+
+    // Then
+    assertThat(metricsRecord.getBrokerProcessUUID()).isEqualTo(uuid.toString());
+    assertThat(metricsRecord.getCycles()).isEqualTo(1);
+    assertThat(metricsRecord.getPayloadBytes()).isEqualTo(agentMetrics.getLastPayloadBytes());
+    assertThat(metricsRecord.getTotalPayloadBytes()).isPositive();
+    assertThat(metricsRecord.getSinks()).isEmpty();
+  }
+
+  @Test
+  public void testRecordAfterDroppedDeltaCanBeDecoded() throws IOException {
+    // Given
+    char[] large = new char[16 * 1024];
+    Arrays.fill(large, 'x');
+    final Iterator<SupportKafkaMetricsBasic> records = Arrays.asList(
+        basicRecord(1000),
+        basicRecord("uuid", "cluster", new String(large), 2000, 0),
+        basicRecord(3000)).iterator();
+    Collector collector = new Collector() {
+      @Override
+      public GenericContainer collectMetrics() {
+        return records.next();
+      }
+    };
+    final List<byte[]> submitted = new ArrayList<>();
+    MetricsSink sink = mock(MetricsSink.class);
+    when(sink.name()).thenReturn("capturing");
+    doAnswer(invocation -> {
+      submitted.add(((EncodedMetrics) invocation.getArguments()[0]).value());
+      return null;
+    }).when(sink).submit(any(EncodedMetrics.class));
+    MetricsPipeline pipeline = new MetricsPipeline(
+        collector, new DeltaSerializer(10), Arrays.asList(sink), new AgentMetrics(),
+        ResourceGovernor.unlimited(), new MemoryBudget(4 * 1024));
+
+    // When
+    pipeline.submitMetrics();
+    pipeline.submitMetrics();
+    pipeline.submitMetrics();
+
+    // Then
+    assertThat(submitted).hasSize(2);
+    assertThat(DeltaDeserializer.isDelta(submitted.get(1))).isFalse();
+    DeltaDeserializer decoder = new DeltaDeserializer();
+    decoder.deserialize(submitted.get(0));
+    GenericContainer[] decoded = decoder.deserialize(submitted.get(1));
+    assertThat(decoder.unresolvedDeltas()).isZero();
+    assertThat(decoded).hasSize(1);
+    assertThat(((GenericRecord) decoded[0]).get("timestamp")).isEqualTo(3000L);
+  }
+
+}
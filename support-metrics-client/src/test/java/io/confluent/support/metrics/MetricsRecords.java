@@ -0,0 +1,53 @@
+/**
+ * Copyright 2018 Confluent Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+
+package io.confluent.support.metrics;
+
+/**
+ * Basic metrics records for tests.
+ */
+public final class MetricsRecords {
+
+  private MetricsRecords() {
+  }
+
+  /**
+   * @return A record of Confluent Platform 5.2.0.
+   */
+  public static SupportKafkaMetricsBasic basicRecord(
+      String uuid,
+      String clusterId,
+      String kafkaVersion,
+      long timestamp,
+      int collectorState
+  ) {
+    SupportKafkaMetricsBasic record = new SupportKafkaMetricsBasic();
+    record.setTimestamp(timestamp);
+    record.setKafkaVersion(kafkaVersion);
+    record.setConfluentPlatformVersion("5.2.0");
+    record.setCollectorState(collectorState);
+    record.setBrokerProcessUUID(uuid);
+    record.setClusterId(clusterId);
+    return record;
+  }
+
+  /**
+   * @return A record of broker "uuid" in cluster "cluster", with Kafka 2.2.0 and collector state 0.
+   */
+  public static SupportKafkaMetricsBasic basicRecord(long timestamp) {
+    return basicRecord("uuid", "cluster", "2.2.0", timestamp, 0);
+  }
+
+}
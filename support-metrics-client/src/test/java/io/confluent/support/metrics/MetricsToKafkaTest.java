@@ -15,16 +15,23 @@ package io.confluent.support.metrics;
 
 import io.confluent.common.utils.Utils;
 import io.confluent.support.metrics.common.kafka.KafkaUtilities;
+import kafka.server.ConfigType;
 import kafka.utils.TestUtils;
+import kafka.zk.AdminZkClient;
 import kafka.zk.KafkaZkClient;
 import org.apache.kafka.clients.consumer.ConsumerRecord;
 import org.apache.kafka.clients.consumer.KafkaConsumer;
+import org.apache.kafka.common.Metric;
+import org.apache.kafka.common.MetricName;
+import org.apache.kafka.common.config.TopicConfig;
 import org.apache.kafka.common.utils.AppInfoParser;
 import org.junit.Test;
 
 import java.io.File;
 import java.io.IOException;
+import java.nio.charset.StandardCharsets;
 import java.util.Collection;
+import java.util.Map;
 import java.util.Properties;
 
 import io.confluent.support.metrics.common.Version;
@@ -79,6 +86,100 @@ public class MetricsToKafkaTest {
     cluster.stopCluster();
   }
 
+  @Test
+  public void keysRecordsAndKeepsLatestRecordsInCompactedTopic() throws IOException {
+    // Given
+    EmbeddedKafkaCluster cluster = new EmbeddedKafkaCluster();
+    cluster.startCluster(1);
+    KafkaServer broker = cluster.getBroker(0);
+    Properties brokerConfiguration = defaultBrokerConfiguration(broker, cluster.zookeeperConnectString());
+    brokerConfiguration.setProperty(KafkaSupportConfig.CONFLUENT_SUPPORT_METRICS_ENDPOINT_INSECURE_ENABLE_CONFIG, "false");
+    brokerConfiguration.setProperty(KafkaSupportConfig.CONFLUENT_SUPPORT_METRICS_ENDPOINT_SECURE_ENABLE_CONFIG, "false");
+    brokerConfiguration.setProperty(KafkaSupportConfig.CONFLUENT_SUPPORT_METRICS_TOPIC_CONFIG, "test_metrics");
+    brokerConfiguration.setProperty(KafkaSupportConfig.CONFLUENT_SUPPORT_METRICS_LATEST_TOPIC_CONFIG, "test_metrics_latest");
+    KafkaSupportConfig kafkaSupportConfig = new KafkaSupportConfig(brokerConfiguration);
+    MetricsReporter reporter = new MetricsReporter("testThread", false, broker, kafkaSupportConfig, Runtime.getRuntime());
+    reporter.init();
+    int numMetricSubmissions = 3;
+
+    // When
+    for (int i = 0; i < numMetricSubmissions; i++) {
+      reporter.submitMetrics();
+    }
+
+    // Then
+    KafkaMetricsToFile kafkaMetricsToFile = new KafkaMetricsToFile(bootstrapServer(broker.zkClient()));
+    KafkaConsumer<byte[], byte[]> consumer = kafkaMetricsToFile.createConsumer();
+    consumer.subscribe(singleton("test_metrics"));
+    Collection<ConsumerRecord<byte[], byte[]>> records = JavaConverters.asJavaCollectionConverter(
+        TestUtils.consumeRecords(consumer, numMetricSubmissions, 10 * 1000)).asJavaCollection();
+    consumer.close();
+    AvroDeserializer decoder = new AvroDeserializer();
+    for (ConsumerRecord<byte[], byte[]> record : records) {
+      SupportKafkaMetricsBasic basicRecord = decoder.deserialize(SupportKafkaMetricsBasic.class, record.value())[0];
+      assertThat(new String(record.key(), StandardCharsets.UTF_8))
+          .isEqualTo("SupportKafkaMetricsBasic/" + basicRecord.getBrokerProcessUUID());
+    }
+
+    Properties latestTopicConfig = new AdminZkClient(broker.zkClient()).fetchEntityConfig(ConfigType.Topic(), "test_metrics_latest");
+    assertThat(latestTopicConfig.getProperty(TopicConfig.CLEANUP_POLICY_CONFIG)).contains(TopicConfig.CLEANUP_POLICY_COMPACT);
+    String outputFile = "testLatestFile.zip";
+    // Compaction is not immediate, so older records of the same key may still be there.
+    assertThat(kafkaMetricsToFile.saveLatestMetricsToFile("test_metrics_latest", outputFile, 10 * 1000))
+        .isBetween(1, numMetricSubmissions);
+
+    // Cleanup
+    Utils.delete(new File(outputFile));
+    reporter.close();
+    cluster.stopCluster();
+  }
+
+  @Test
+  public void reusesOneProducerAcrossSubmissions() throws IOException {
+    // Given
+    EmbeddedKafkaCluster cluster = new EmbeddedKafkaCluster();
+    cluster.startCluster(1);
+    KafkaServer broker = cluster.getBroker(0);
+    Properties brokerConfiguration = defaultBrokerConfiguration(broker, cluster.zookeeperConnectString());
+    brokerConfiguration.setProperty(KafkaSupportConfig.CONFLUENT_SUPPORT_METRICS_ENDPOINT_INSECURE_ENABLE_CONFIG, "false");
+    brokerConfiguration.setProperty(KafkaSupportConfig.CONFLUENT_SUPPORT_METRICS_ENDPOINT_SECURE_ENABLE_CONFIG, "false");
+    brokerConfiguration.setProperty(KafkaSupportConfig.CONFLUENT_SUPPORT_METRICS_TOPIC_CONFIG, "test_metrics");
+    KafkaSupportConfig kafkaSupportConfig = new KafkaSupportConfig(brokerConfiguration);
+    MetricsReporter reporter = new MetricsReporter("testThread", false, broker, kafkaSupportConfig, Runtime.getRuntime());
+    reporter.init();
+    // The first submission creates the topic and the producer.
+    reporter.submitMetrics();
+    double connectionsBefore = connectionsCreated(broker);
+
+    // When
+    int numMetricSubmissions = 50;
+    for (int i = 0; i < numMetricSubmissions; i++) {
+      reporter.submitMetrics();
+    }
+
+    // Then
+    assertThat(connectionsCreated(broker) - connectionsBefore).isZero();
+    verifyMetricsSubmittedToTopic(bootstrapServer(broker.zkClient()), "test_metrics", numMetricSubmissions + 1);
+
+    // Cleanup
+    reporter.close();
+    cluster.stopCluster();
+  }
+
+  /**
+   * @return The number of connections the broker accepted so far, on all listeners.
+   */
+  private static double connectionsCreated(KafkaServer broker) {
+    double connections = 0;
+    for (Map.Entry<MetricName, ? extends Metric> metric : broker.metrics().metrics().entrySet()) {
+      if (metric.getKey().group().equals("socket-server-metrics")
+          && metric.getKey().name().equals("connection-creation-total")) {
+        connections += (Double) metric.getValue().metricValue();
+      }
+    }
+    return connections;
+  }
+
   private Properties defaultBrokerConfiguration(KafkaServer broker, String zookeeperConnect) throws IOException {
     Properties brokerConfiguration = new Properties();
     brokerConfiguration.load(MetricsToKafkaTest.class.getResourceAsStream("/default-server.properties"));
@@ -0,0 +1,78 @@
+/**
+ * Copyright 2018 Confluent Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package io.confluent.support.metrics.agent;
+
+import org.junit.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class AdaptiveScheduleTest {
+
+  private static final double IDLE = 0.9;
+  private static final double SATURATED = 0.05;
+
+  private final AdaptiveSchedule schedule = new AdaptiveSchedule(1000, 100, 5000);
+
+  @Test
+  public void testCollectsEveryIntervalWhileIdle() {
+    // When/Then
+    assertThat(schedule.delayMs(0, IDLE)).isEqualTo(1000);
+    assertThat(schedule.delayMs(400, IDLE)).isEqualTo(600);
+    assertThat(schedule.delayMs(1000, IDLE)).isZero();
+    schedule.collected(1000);
+    assertThat(schedule.delayMs(1000, IDLE)).isEqualTo(1000);
+  }
+
+  @Test
+  public void testDefersWhileSaturatedAndCatchesUpWhenLoadDrops() {
+    // Given
+    schedule.delayMs(0, IDLE);
+
+    // When/Then
+    assertThat(schedule.delayMs(1000, SATURATED)).isEqualTo(100);
+    assertThat(schedule.delayMs(1100, SATURATED)).isEqualTo(200);
+    assertThat(schedule.delayMs(1300, SATURATED)).isEqualTo(400);
+    assertThat(schedule.delayMs(1700, IDLE)).isZero();
+    schedule.collected(1700);
+    assertThat(schedule.delayMs(1700, IDLE)).isEqualTo(1000);
+    assertThat(schedule.delayMs(2700, SATURATED)).isEqualTo(100);
+  }
+
+  @Test
+  public void testNeverDefersBeyondCeiling() {
+    // Given
+    schedule.delayMs(0, IDLE);
+
+    // When/Then
+    assertThat(schedule.delayMs(4900, SATURATED)).isEqualTo(100);
+    assertThat(schedule.delayMs(5000, SATURATED)).isZero();
+  }
+
+  @Test
+  public void testUnknownLoadIsNotSaturated() {
+    // Given
+    schedule.delayMs(0, Double.NaN);
+
+    // When/Then
+    assertThat(schedule.delayMs(1000, Double.NaN)).isZero();
+  }
+
+  @Test
+  public void testIntervalIsClampedToFloorAndCeiling() {
+    assertThat(new AdaptiveSchedule(10, 100, 5000).intervalMs()).isEqualTo(100);
+    assertThat(new AdaptiveSchedule(10000, 100, 5000).intervalMs()).isEqualTo(5000);
+  }
+
+}
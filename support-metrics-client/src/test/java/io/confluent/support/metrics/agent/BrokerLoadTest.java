@@ -0,0 +1,104 @@
+/**
+ * Copyright 2018 Confluent Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package io.confluent.support.metrics.agent;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.MBeanServerFactory;
+import javax.management.ObjectName;
+import javax.management.StandardMBean;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.within;
+
+public class BrokerLoadTest {
+
+  private MBeanServer mbeanServer;
+  private BrokerLoad brokerLoad;
+
+  @Before
+  public void setUp() {
+    mbeanServer = MBeanServerFactory.newMBeanServer();
+    brokerLoad = new BrokerLoad(mbeanServer);
+  }
+
+  @Test
+  public void testUnknownWhileBrokerMetricsAreNotRegistered() {
+    assertThat(brokerLoad.idleRatio()).isNaN();
+  }
+
+  @Test
+  public void testLowerOfHandlerAndProcessorIdleRatios() throws JMException {
+    // Given
+    registerRequestHandlerIdle(0.7);
+    registerNetworkProcessorIdle(0.4);
+
+    // When/Then
+    assertThat(brokerLoad.idleRatio()).isCloseTo(0.4, within(1e-9));
+  }
+
+  @Test
+  public void testEitherRatioAloneIsUsedAndClampedToOne() throws JMException {
+    // Given
+    registerRequestHandlerIdle(0.3);
+
+    // When/Then
+    assertThat(brokerLoad.idleRatio()).isCloseTo(0.3, within(1e-9));
+
+    // Given
+    mbeanServer.unregisterMBean(new ObjectName(
+        "kafka.server:type=KafkaRequestHandlerPool,name=RequestHandlerAvgIdlePercent"));
+    registerNetworkProcessorIdle(1.5);
+
+    // When/Then
+    assertThat(brokerLoad.idleRatio()).isEqualTo(1.0);
+  }
+
+  private void registerRequestHandlerIdle(final double rate) throws JMException {
+    mbeanServer.registerMBean(
+        new StandardMBean(new MeterMBean() {
+          @Override
+          public double getOneMinuteRate() {
+            return rate;
+          }
+        }, MeterMBean.class),
+        new ObjectName(
+            "kafka.server:type=KafkaRequestHandlerPool,name=RequestHandlerAvgIdlePercent"));
+  }
+
+  private void registerNetworkProcessorIdle(final double value) throws JMException {
+    mbeanServer.registerMBean(
+        new StandardMBean(new GaugeMBean() {
+          @Override
+          public Object getValue() {
+            return value;
+          }
+        }, GaugeMBean.class),
+        new ObjectName("kafka.network:type=SocketServer,name=NetworkProcessorAvgIdlePercent"));
+  }
+
+  // The attributes of the Yammer metrics the broker registers.
+  public interface MeterMBean {
+    double getOneMinuteRate();
+  }
+
+  public interface GaugeMBean {
+    Object getValue();
+  }
+
+}
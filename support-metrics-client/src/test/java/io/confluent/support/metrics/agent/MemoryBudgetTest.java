@@ -0,0 +1,168 @@
+/**
+ * Copyright 2018 Confluent Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package io.confluent.support.metrics.agent;
+
+import org.apache.avro.generic.GenericContainer;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import io.confluent.support.metrics.CollectorSection;
+import io.confluent.support.metrics.MetricsPipeline;
+import io.confluent.support.metrics.SectionStatus;
+import io.confluent.support.metrics.SupportKafkaMetricsBasic;
+import io.confluent.support.metrics.SupportKafkaMetricsComposite;
+import io.confluent.support.metrics.collectors.BasicCollector;
+import io.confluent.support.metrics.collectors.CompositeCollector;
+import io.confluent.support.metrics.common.Collector;
+import io.confluent.support.metrics.common.Uuid;
+import io.confluent.support.metrics.common.time.TimeUtils;
+import io.confluent.support.metrics.serde.AvroSerializer;
+import io.confluent.support.metrics.sinks.EncodedMetrics;
+import io.confluent.support.metrics.sinks.MetricsSink;
+import kafka.server.KafkaServer;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+public class MemoryBudgetTest {
+
+  @Test
+  public void testReservationsBeyondBudgetAreRefused() {
+    // Given
+    MemoryBudget budget = new MemoryBudget(100);
+    MemoryBudget.Reservation first = budget.reservation();
+    MemoryBudget.Reservation second = budget.reservation();
+
+    // When
+    boolean firstReserved = first.resize(60);
+    boolean secondRefused = second.resize(50);
+    boolean secondReserved = second.resize(40);
+
+    // Then
+    assertThat(firstReserved).isTrue();
+    assertThat(secondRefused).isFalse();
+    assertThat(secondReserved).isTrue();
+    assertThat(budget.reservedBytes()).isEqualTo(100);
+    assertThat(budget.refusals()).isEqualTo(1);
+
+    // When
+    first.close();
+
+    // Then
+    assertThat(budget.reservedBytes()).isEqualTo(40);
+    assertThat(budget.availableBytes()).isEqualTo(60);
+    assertThat(budget.peakBytes()).isEqualTo(100);
+  }
+
+  @Test
+  public void testRetainedHeapStaysWithinBudget() {
+    // Given
+    KafkaServer mockServer = mock(KafkaServer.class);
+    when(mockServer.clusterId()).thenReturn("dummy");
+    Uuid uuid = new Uuid();
+    Map<String, Collector> collectors = new LinkedHashMap<>();
+    collectors.put("basic", new BasicCollector(mockServer, new TimeUtils(), uuid));
+    collectors.put("large1", new LargeCollector(uuid, 20000));
+    collectors.put("large2", new LargeCollector(uuid, 20000));
+    MemoryBudget budget = new MemoryBudget(50000);
+    CompositeCollector composite =
+        new CompositeCollector(new TimeUtils(), uuid, collectors, 2, 10000, budget);
+    final List<Long> reservedWhileSubmitting = new ArrayList<>();
+    final List<Integer> payloadSizes = new ArrayList<>();
+    MetricsSink sink = new MetricsSink() {
+      @Override
+      public String name() {
+        return "recording";
+      }
+
+      @Override
+      public void submit(EncodedMetrics encodedMetrics) {
+        reservedWhileSubmitting.add(budget.reservedBytes());
+        payloadSizes.add(encodedMetrics.value().length);
+      }
+
+      @Override
+      public void close() {
+      }
+    };
+    MetricsPipeline pipeline = new MetricsPipeline(
+        composite, new AvroSerializer(), Arrays.asList(sink), new AgentMetrics(),
+        ResourceGovernor.unlimited(), budget);
+    final List<SupportKafkaMetricsComposite> records = new ArrayList<>();
+    pipeline.addListener(record -> records.add((SupportKafkaMetricsComposite) record));
+
+    // When
+    int cycles = 3;
+    for (int i = 0; i < cycles; i++) {
+      pipeline.submitMetrics();
+    }
+
+    // Then
+    assertThat(payloadSizes).hasSize(cycles);
+    assertThat(budget.peakBytes()).isLessThanOrEqualTo(budget.maxBytes());
+    for (int i = 0; i < cycles; i++) {
+      List<CollectorSection> sections = records.get(i).getSections();
+      assertThat(sections.get(0).getStatus()).isEqualTo(SectionStatus.OK);
+      assertThat(sections.get(1).getStatus()).isEqualTo(SectionStatus.OK);
+      assertThat(sections.get(2).getStatus()).isEqualTo(SectionStatus.SKIPPED);
+      long retainedBytes = payloadSizes.get(i);
+      for (CollectorSection section : sections) {
+        if (section.getPayload() != null) {
+          retainedBytes += section.getPayload().remaining();
+        }
+      }
+      assertThat(retainedBytes).isLessThanOrEqualTo(budget.maxBytes());
+      assertThat(reservedWhileSubmitting.get(i)).isBetween(retainedBytes, budget.maxBytes());
+    }
+
+    // When
+    composite.close();
+
+    // Then
+    assertThat(budget.reservedBytes()).isZero();
+  }
+
+  private static class LargeCollector extends Collector {
+
+    private final Uuid uuid;
+    private final String value;
+
+    LargeCollector(Uuid uuid, int size) {
+      this.uuid = uuid;
+      char[] chars = new char[size];
+      Arrays.fill(chars, 'x');
+      this.value = new String(chars);
+    }
+
+    @Override
+    public GenericContainer collectMetrics() {
+      SupportKafkaMetricsBasic metricsRecord = new SupportKafkaMetricsBasic();
+      metricsRecord.setTimestamp(new TimeUtils().nowInUnixTime());
+      metricsRecord.setKafkaVersion(value);
+      metricsRecord.setConfluentPlatformVersion(null);
+      metricsRecord.setCollectorState(getRuntimeState().stateId());
+      metricsRecord.setBrokerProcessUUID(uuid.toString());
+      metricsRecord.setClusterId("dummy");
+      return metricsRecord;
+    }
+  }
+
+}
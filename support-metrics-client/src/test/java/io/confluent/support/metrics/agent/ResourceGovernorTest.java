@@ -0,0 +1,110 @@
+/**
+ * Copyright 2018 Confluent Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package io.confluent.support.metrics.agent;
+
+import org.apache.kafka.common.utils.MockTime;
+import org.apache.kafka.common.utils.Time;
+import org.junit.Test;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.Assume.assumeTrue;
+
+public class ResourceGovernorTest {
+
+  @Test
+  public void testEgressIsPacedToCap() {
+    // Given
+    MockTime time = new MockTime();
+    ResourceGovernor governor = new ResourceGovernor(time, 1.0, Long.MAX_VALUE, 1000);
+    long startMs = time.milliseconds();
+
+    // When
+    governor.acquireEgress(500);
+    long afterFirstMs = time.milliseconds();
+    governor.acquireEgress(500);
+    governor.acquireEgress(500);
+
+    // Then
+    assertThat(afterFirstMs).isEqualTo(startMs);
+    assertThat(time.milliseconds() - startMs).isEqualTo(1000);
+  }
+
+  @Test
+  public void testCheckpointReportsExhaustedCycleBudget() {
+    assumeTrue(ThreadUsage.isCpuTimeSupported());
+
+    // Given
+    ResourceGovernor governor =
+        new ResourceGovernor(Time.SYSTEM, 1.0, TimeUnit.MILLISECONDS.toNanos(5), Long.MAX_VALUE);
+    governor.startCycle();
+
+    // When
+    boolean withinBudget = true;
+    long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+    while (withinBudget && System.nanoTime() < deadline) {
+      spin(TimeUnit.MILLISECONDS.toNanos(1));
+      withinBudget = governor.checkpoint();
+    }
+
+    // Then
+    assertThat(withinBudget).isFalse();
+    assertThat(governor.cycleCpuNanos()).isGreaterThanOrEqualTo(TimeUnit.MILLISECONDS.toNanos(5));
+
+    // When
+    governor.startCycle();
+
+    // Then
+    assertThat(governor.checkpoint()).isTrue();
+  }
+
+  @Test
+  public void testCpuStaysWithinCoreFraction() {
+    assumeTrue(ThreadUsage.isCpuTimeSupported());
+
+    // Given
+    double maxCoreFraction = 0.25;
+    ResourceGovernor governor =
+        new ResourceGovernor(Time.SYSTEM, maxCoreFraction, Long.MAX_VALUE, Long.MAX_VALUE);
+    governor.startCycle();
+    long startCpu = ThreadUsage.currentCpuNanos();
+    long startWall = System.nanoTime();
+
+    // When
+    while (ThreadUsage.currentCpuNanos() - startCpu < TimeUnit.MILLISECONDS.toNanos(100)) {
+      spin(TimeUnit.MILLISECONDS.toNanos(1));
+      governor.checkpoint();
+    }
+
+    // Then
+    long cpu = ThreadUsage.currentCpuNanos() - startCpu;
+    long wall = System.nanoTime() - startWall;
+    assertThat((double) cpu / wall).isLessThanOrEqualTo(maxCoreFraction * 1.1);
+    assertThat(governor.throttledNanos()).isPositive();
+  }
+
+  private static void spin(long nanos) {
+    long start = System.nanoTime();
+    long sum = 0;
+    while (System.nanoTime() - start < nanos) {
+      sum += start % 7;
+    }
+    if (sum == 42) {
+      Thread.yield();
+    }
+  }
+
+}
@@ -30,6 +30,8 @@ import io.confluent.support.metrics.common.time.TimeUtils;
 
 import static org.assertj.core.api.Assertions.assertThat;
 import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
 public class BasicCollectorTest {
@@ -64,4 +66,24 @@ public class BasicCollectorTest {
     assertThat(basicRecord.getBrokerProcessUUID()).isEqualTo(uuid.toString());
   }
 
-}
\ No newline at end of file
+  @Test
+  public void testClusterIdIsCachedOnceKnown() {
+    // Given
+    KafkaServer server = mock(KafkaServer.class);
+    when(server.clusterId()).thenReturn(null, "dummy", "other");
+    Collector metricsCollector = new BasicCollector(server, new TimeUtils(), new Uuid());
+
+    // When
+    SupportKafkaMetricsBasic beforeRegistration =
+        (SupportKafkaMetricsBasic) metricsCollector.collectMetrics();
+    SupportKafkaMetricsBasic first = (SupportKafkaMetricsBasic) metricsCollector.collectMetrics();
+    SupportKafkaMetricsBasic second = (SupportKafkaMetricsBasic) metricsCollector.collectMetrics();
+
+    // Then
+    assertThat(beforeRegistration.getClusterId()).isNull();
+    assertThat(first.getClusterId()).isEqualTo("dummy");
+    assertThat(second.getClusterId()).isEqualTo("dummy");
+    verify(server, times(2)).clusterId();
+  }
+
+}
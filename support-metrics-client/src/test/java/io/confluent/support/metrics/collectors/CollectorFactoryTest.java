@@ -17,6 +17,8 @@ package io.confluent.support.metrics.collectors;
 
 import org.junit.Test;
 
+import java.util.Arrays;
+
 import io.confluent.support.metrics.common.CollectorType;
 import io.confluent.support.metrics.common.time.TimeUtils;
 
@@ -37,4 +39,32 @@ public class CollectorFactoryTest {
         // Then
         assertThat(type).isEqualTo(CollectorType.BASIC);
     }
-}
\ No newline at end of file
+
+    @Test
+    public void testAdditionalCollectorsAreComposed() {
+        // Given
+        CollectorContext context = new CollectorContext(new TimeUtils(), null, null, null);
+
+        // When
+        CollectorFactory factory = new CollectorFactory(CollectorType.BASIC, context,
+            Arrays.asList(LogDirCollectorProvider.NAME, "unknown"), 2, 1000);
+
+        // Then
+        assertThat(factory.getType()).isEqualTo(CollectorType.BASIC);
+        assertThat(factory.getCollector()).isInstanceOf(CompositeCollector.class);
+        ((CompositeCollector) factory.getCollector()).close();
+    }
+
+    @Test
+    public void testNoAdditionalCollectors() {
+        // Given
+        CollectorContext context = new CollectorContext(new TimeUtils(), null, null, null);
+
+        // When
+        CollectorFactory factory = new CollectorFactory(CollectorType.BASIC, context,
+            Arrays.<String>asList(), 2, 1000);
+
+        // Then
+        assertThat(factory.getCollector()).isInstanceOf(BasicCollector.class);
+    }
+}
@@ -0,0 +1,158 @@
+/**
+ * Copyright 2018 Confluent Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package io.confluent.support.metrics.collectors;
+
+import org.apache.avro.generic.GenericContainer;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.ServiceConfigurationError;
+
+import io.confluent.support.metrics.common.Collector;
+import io.confluent.support.metrics.common.time.TimeUtils;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.fail;
+
+public class CollectorRegistryTest {
+
+  @Test
+  public void testBuiltInCollectorsAreDiscovered() {
+    // When
+    CollectorRegistry registry = CollectorRegistry.getInstance();
+
+    // Then
+    assertThat(registry.names()).contains(
+        BasicCollectorProvider.NAME,
+        FullCollectorProvider.NAME,
+        LogDirCollectorProvider.NAME,
+        AgentCollectorProvider.NAME,
+        ClusterMetadataCollectorProvider.NAME
+    );
+    Collector collector = registry.create(
+        BasicCollectorProvider.NAME, new CollectorContext(new TimeUtils(), null, null, null));
+    assertThat(collector).isInstanceOf(BasicCollector.class);
+  }
+
+  @Test
+  public void testFirstProviderWinsOnDuplicateNames() {
+    // Given
+    CollectorProvider first = new StubProvider("stub");
+    CollectorProvider second = new StubProvider("stub");
+
+    // When
+    CollectorRegistry registry = new CollectorRegistry(Arrays.asList(first, second));
+
+    // Then
+    assertThat(registry.names()).containsExactly("stub");
+    assertThat(registry.create("stub", null)).isSameAs(((StubProvider) first).collector);
+  }
+
+  @Test
+  public void testSkipsProvidersThatFailToLoad() {
+    // Given
+    final Iterator<CollectorProvider> providers =
+        Arrays.<CollectorProvider>asList(new StubProvider("first"), new StubProvider("last"))
+            .iterator();
+    Iterable<CollectorProvider> discovered = () -> new Iterator<CollectorProvider>() {
+      private boolean failed = false;
+
+      @Override
+      public boolean hasNext() {
+        return providers.hasNext();
+      }
+
+      @Override
+      public CollectorProvider next() {
+        CollectorProvider provider = providers.next();
+        if (!failed && provider.name().equals("last")) {
+          failed = true;
+          throw new ServiceConfigurationError("Provider could not be instantiated");
+        }
+        return provider;
+      }
+    };
+
+    // When
+    CollectorRegistry registry = new CollectorRegistry(discovered);
+
+    // Then
+    assertThat(registry.names()).containsExactly("first");
+  }
+
+  @Test
+  public void testStopsDiscoveryWhenProviderConfigurationsCannotBeRead() {
+    // Given
+    Iterable<CollectorProvider> discovered = () -> new Iterator<CollectorProvider>() {
+      @Override
+      public boolean hasNext() {
+        throw new ServiceConfigurationError("Error locating configuration files");
+      }
+
+      @Override
+      public CollectorProvider next() {
+        throw new AssertionError("next() called although hasNext() failed");
+      }
+    };
+
+    // When
+    CollectorRegistry registry = new CollectorRegistry(discovered);
+
+    // Then
+    assertThat(registry.names()).isEmpty();
+  }
+
+  @Test
+  public void testUnknownCollector() {
+    // Given
+    CollectorRegistry registry = new CollectorRegistry(
+        Arrays.<CollectorProvider>asList(new StubProvider("stub")));
+
+    // When/Then
+    try {
+      registry.create("unknown", null);
+      fail("IllegalArgumentException expected because collector is unknown");
+    } catch (IllegalArgumentException e) {
+      assertThat(e).hasMessageContaining("unknown");
+    }
+  }
+
+  private static class StubProvider implements CollectorProvider {
+
+    private final String name;
+    private final Collector collector = new Collector() {
+      @Override
+      public GenericContainer collectMetrics() {
+        return null;
+      }
+    };
+
+    StubProvider(String name) {
+      this.name = name;
+    }
+
+    @Override
+    public String name() {
+      return name;
+    }
+
+    @Override
+    public Collector create(CollectorContext context) {
+      return collector;
+    }
+  }
+
+}
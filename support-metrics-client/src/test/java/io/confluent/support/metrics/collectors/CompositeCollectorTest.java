@@ -0,0 +1,224 @@
+/**
+ * Copyright 2018 Confluent Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package io.confluent.support.metrics.collectors;
+
+import org.apache.avro.generic.GenericContainer;
+import org.apache.kafka.common.utils.Time;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import io.confluent.support.metrics.CollectorSection;
+import io.confluent.support.metrics.SectionStatus;
+import io.confluent.support.metrics.SupportKafkaMetricsBasic;
+import io.confluent.support.metrics.SupportKafkaMetricsComposite;
+import io.confluent.support.metrics.agent.MemoryBudget;
+import io.confluent.support.metrics.agent.ResourceGovernor;
+import io.confluent.support.metrics.agent.ThreadUsage;
+import io.confluent.support.metrics.common.Collector;
+import io.confluent.support.metrics.common.Uuid;
+import io.confluent.support.metrics.common.time.TimeUtils;
+import io.confluent.support.metrics.serde.AvroDeserializer;
+import kafka.server.KafkaServer;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.Assume.assumeTrue;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+public class CompositeCollectorTest {
+
+  private static final long TIMEOUT_MS = 500;
+
+  private final CountDownLatch release = new CountDownLatch(1);
+  private CompositeCollector composite;
+  private Uuid uuid;
+
+  @Before
+  public void setUp() {
+    KafkaServer mockServer = mock(KafkaServer.class);
+    when(mockServer.clusterId()).thenReturn("dummy");
+    uuid = new Uuid();
+
+    Map<String, Collector> collectors = new LinkedHashMap<>();
+    collectors.put("basic", new BasicCollector(mockServer, new TimeUtils(), uuid));
+    collectors.put("hung", new Collector() {
+      @Override
+      public GenericContainer collectMetrics() {
+        // Ignores interrupts, like a collector stuck in uninterruptible I/O.
+        while (release.getCount() > 0) {
+          try {
+            release.await();
+          } catch (InterruptedException e) {
+            // keep waiting
+          }
+        }
+        return null;
+      }
+    });
+    collectors.put("failing", new Collector() {
+      @Override
+      public GenericContainer collectMetrics() {
+        throw new IllegalStateException("broken collector");
+      }
+    });
+    composite = new CompositeCollector(new TimeUtils(), uuid, collectors, 2, TIMEOUT_MS);
+  }
+
+  @After
+  public void tearDown() {
+    release.countDown();
+    composite.close();
+  }
+
+  @Test
+  public void testHungAndFailingCollectorsDoNotAffectOthers() throws IOException {
+    // When
+    long startNs = System.nanoTime();
+    SupportKafkaMetricsComposite metricsRecord =
+        (SupportKafkaMetricsComposite) composite.collectMetrics();
+    long elapsedMs = (System.nanoTime() - startNs) / 1000000;
+
+    // Then
+    assertThat(elapsedMs).isLessThan(TIMEOUT_MS * 4);
+    assertThat(metricsRecord.getBrokerProcessUUID()).isEqualTo(uuid.toString());
+    assertThat(metricsRecord.getSections()).hasSize(3);
+
+    CollectorSection basic = metricsRecord.getSections().get(0);
+    assertThat(basic.getName()).isEqualTo("basic");
+    assertThat(basic.getStatus()).isEqualTo(SectionStatus.OK);
+    byte[] payload = new byte[basic.getPayload().remaining()];
+    basic.getPayload().get(payload);
+    SupportKafkaMetricsBasic[] basicRecords =
+        new AvroDeserializer().deserialize(SupportKafkaMetricsBasic.class, payload);
+    assertThat(basicRecords).hasSize(1);
+    assertThat(basicRecords[0].getBrokerProcessUUID()).isEqualTo(uuid.toString());
+
+    assertThat(metricsRecord.getSections().get(1).getStatus()).isEqualTo(SectionStatus.TIMED_OUT);
+    assertThat(metricsRecord.getSections().get(1).getPayload()).isNull();
+    assertThat(metricsRecord.getSections().get(2).getStatus()).isEqualTo(SectionStatus.FAILED);
+  }
+
+  @Test
+  public void testHungCollectorIsSkippedUntilItReturns() {
+    // Given
+    composite.collectMetrics();
+
+    // When
+    SupportKafkaMetricsComposite whileHung =
+        (SupportKafkaMetricsComposite) composite.collectMetrics();
+
+    // Then
+    assertThat(whileHung.getSections().get(0).getStatus()).isEqualTo(SectionStatus.OK);
+    assertThat(whileHung.getSections().get(1).getStatus()).isEqualTo(SectionStatus.SKIPPED);
+    assertThat(whileHung.getSections().get(2).getStatus()).isEqualTo(SectionStatus.FAILED);
+  }
+
+  @Test
+  public void testBudgetStartsWhenCollectorStartsRunning() {
+    // Given
+    Map<String, Collector> collectors = new LinkedHashMap<>();
+    collectors.put("slow", new SleepingCollector(TIMEOUT_MS * 3 / 5));
+    collectors.put("queued", new SleepingCollector(TIMEOUT_MS * 3 / 5));
+    CompositeCollector sequential =
+        new CompositeCollector(new TimeUtils(), uuid, collectors, 1, TIMEOUT_MS);
+
+    try {
+      // When
+      SupportKafkaMetricsComposite metricsRecord =
+          (SupportKafkaMetricsComposite) sequential.collectMetrics();
+
+      // Then
+      for (CollectorSection section : metricsRecord.getSections()) {
+        assertThat(section.getStatus()).isEqualTo(SectionStatus.OK);
+        assertThat(section.getElapsedMs()).isBetween(TIMEOUT_MS / 2, TIMEOUT_MS);
+      }
+    } finally {
+      sequential.close();
+    }
+  }
+
+  @Test
+  public void testCpuTimeOfPoolThreadsIsChargedToGovernor() {
+    assumeTrue(ThreadUsage.isCpuTimeSupported());
+
+    // Given
+    final long spinNanos = TimeUnit.MILLISECONDS.toNanos(50);
+    ResourceGovernor governor = new ResourceGovernor(Time.SYSTEM, 0.25, Long.MAX_VALUE,
+                                                     Long.MAX_VALUE);
+    Map<String, Collector> collectors = new LinkedHashMap<>();
+    collectors.put("spinning", new Collector() {
+      @Override
+      public GenericContainer collectMetrics() {
+        // Burns CPU without ever calling a checkpoint.
+        long startCpu = ThreadUsage.currentCpuNanos();
+        while (ThreadUsage.currentCpuNanos() - startCpu < spinNanos) {
+          Thread.yield();
+        }
+        return new SleepingCollector(0).collectMetrics();
+      }
+    });
+    collectors.put("idle", new SleepingCollector(0));
+    CompositeCollector pooled = new CompositeCollector(
+        new TimeUtils(), uuid, collectors, 2, TIMEOUT_MS * 4, MemoryBudget.unlimited(), governor);
+
+    try {
+      // When
+      governor.startCycle();
+      pooled.collectMetrics();
+      governor.checkpoint();
+
+      // Then
+      assertThat(governor.cycleCpuNanos()).isGreaterThanOrEqualTo(spinNanos);
+      assertThat(governor.throttledNanos()).isPositive();
+    } finally {
+      pooled.close();
+    }
+  }
+
+  private class SleepingCollector extends Collector {
+
+    private final long sleepMs;
+
+    SleepingCollector(long sleepMs) {
+      this.sleepMs = sleepMs;
+    }
+
+    @Override
+    public GenericContainer collectMetrics() {
+      try {
+        Thread.sleep(sleepMs);
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        return null;
+      }
+      SupportKafkaMetricsBasic metricsRecord = new SupportKafkaMetricsBasic();
+      metricsRecord.setTimestamp(0L);
+      metricsRecord.setKafkaVersion("2.2.0");
+      metricsRecord.setConfluentPlatformVersion(null);
+      metricsRecord.setCollectorState(getRuntimeState().stateId());
+      metricsRecord.setBrokerProcessUUID(uuid.toString());
+      metricsRecord.setClusterId("dummy");
+      return metricsRecord;
+    }
+  }
+
+}
@@ -0,0 +1,115 @@
+/**
+ * Copyright 2018 Confluent Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package io.confluent.support.metrics.collectors;
+
+import org.apache.kafka.common.utils.MockTime;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+import io.confluent.support.metrics.common.time.TimeUtils;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+public class FieldCacheTest {
+
+  private MockTime time;
+  private FieldCache cache;
+  private AtomicInteger loads;
+  private Supplier<String> supplier;
+
+  @Before
+  public void setUp() {
+    time = new MockTime();
+    cache = new FieldCache(time);
+    loads = new AtomicInteger();
+    supplier = () -> "value-" + loads.incrementAndGet();
+  }
+
+  @Test
+  public void testValueIsRecomputedOnlyAfterTtl() {
+    // Given
+    FieldCache.Field<String> field = cache.field("field", 1000, supplier);
+
+    // When/Then
+    assertThat(field.get()).isEqualTo("value-1");
+    time.sleep(999);
+    assertThat(field.get()).isEqualTo("value-1");
+    time.sleep(1);
+    assertThat(field.get()).isEqualTo("value-2");
+  }
+
+  @Test
+  public void testForeverValueIsComputedOnce() {
+    // Given
+    FieldCache.Field<String> field = cache.field("field", FieldCache.FOREVER, supplier);
+
+    // When
+    field.get();
+    time.sleep(Long.MAX_VALUE / 2);
+    field.get();
+
+    // Then
+    assertThat(loads.get()).isEqualTo(1);
+  }
+
+  @Test
+  public void testFollowsClockOfCollector() {
+    // Given
+    TimeUtils collectorTime = mock(TimeUtils.class);
+    when(collectorTime.nowInUnixTime()).thenReturn(1000L, 1000L, 1001L);
+    FieldCache.Field<String> field = new FieldCache(collectorTime).field("field", 1000, supplier);
+
+    // When/Then
+    assertThat(field.get()).isEqualTo("value-1");
+    assertThat(field.get()).isEqualTo("value-1");
+    assertThat(field.get()).isEqualTo("value-2");
+  }
+
+  @Test
+  public void testNullIsNotCached() {
+    // Given
+    FieldCache.Field<String> field = cache.field("field", FieldCache.FOREVER,
+        () -> loads.incrementAndGet() < 3 ? null : "known");
+
+    // When/Then
+    assertThat(field.get()).isNull();
+    assertThat(field.get()).isNull();
+    assertThat(field.get()).isEqualTo("known");
+    assertThat(field.get()).isEqualTo("known");
+    assertThat(loads.get()).isEqualTo(3);
+  }
+
+  @Test
+  public void testInvalidate() {
+    // Given
+    FieldCache.Field<String> field = cache.field("field", FieldCache.FOREVER, supplier);
+    FieldCache.Field<String> other = cache.field("other", FieldCache.FOREVER, () -> "other");
+    field.get();
+    other.get();
+
+    // When
+    cache.invalidate("field");
+
+    // Then
+    assertThat(field.get()).isEqualTo("value-2");
+    assertThat(other.get()).isEqualTo("other");
+  }
+
+}
@@ -0,0 +1,154 @@
+/**
+ * Copyright 2018 Confluent Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package io.confluent.support.metrics.collectors;
+
+import org.apache.kafka.common.TopicPartition;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import io.confluent.support.metrics.LogDirFootprint;
+import io.confluent.support.metrics.SupportKafkaMetricsLogDirs;
+import io.confluent.support.metrics.common.Uuid;
+import io.confluent.support.metrics.common.time.TimeUtils;
+import kafka.log.Log;
+import kafka.log.LogManager;
+import kafka.server.KafkaServer;
+import scala.collection.JavaConverters;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+public class LogDirCollectorTest {
+
+  private static final File LOG_DIR_A = new File("/data/a").getAbsoluteFile();
+  private static final File LOG_DIR_B = new File("/data/b").getAbsoluteFile();
+
+  private KafkaServer mockServer;
+  private LogManager mockLogManager;
+  private List<Log> logs;
+
+  @Before
+  public void setUp() {
+    mockServer = mock(KafkaServer.class);
+    mockLogManager = mock(LogManager.class);
+    logs = new ArrayList<>();
+    logs.add(mockLog(LOG_DIR_A, "foo", 0, 100L, 1));
+    logs.add(mockLog(LOG_DIR_A, "foo", 1, 200L, 2));
+    logs.add(mockLog(LOG_DIR_B, "bar", 0, 300L, 3));
+    when(mockServer.logManager()).thenReturn(mockLogManager);
+    when(mockLogManager.liveLogDirs()).thenReturn(
+        JavaConverters.asScalaBufferConverter(Arrays.asList(LOG_DIR_A, LOG_DIR_B)).asScala());
+    updateAllLogs();
+  }
+
+  @Test
+  public void testCollectMetricsAfterFullSweep() {
+    // Given
+    Uuid uuid = new Uuid();
+    LogDirCollector collector = new LogDirCollector(mockServer, new TimeUtils(), uuid, 10, 1000);
+
+    // When
+    SupportKafkaMetricsLogDirs metricsRecord =
+        (SupportKafkaMetricsLogDirs) collector.collectMetrics();
+
+    // Then
+    assertThat(metricsRecord.getBrokerProcessUUID()).isEqualTo(uuid.toString());
+    assertThat(metricsRecord.getPartitionsRefreshed()).isEqualTo(3);
+    assertThat(metricsRecord.getPartitionsPending()).isEqualTo(0);
+    assertThat(metricsRecord.getLogDirs()).hasSize(2);
+    assertFootprint(metricsRecord.getLogDirs().get(0), LOG_DIR_A, 300L, 3, 2);
+    assertFootprint(metricsRecord.getLogDirs().get(1), LOG_DIR_B, 300L, 3, 1);
+  }
+
+  @Test
+  public void testRefreshIsBoundedPerCycle() {
+    // Given
+    LogDirCollector collector = new LogDirCollector(mockServer, new TimeUtils(), new Uuid(), 2, 1000);
+
+    // When
+    SupportKafkaMetricsLogDirs first = (SupportKafkaMetricsLogDirs) collector.collectMetrics();
+    SupportKafkaMetricsLogDirs second = (SupportKafkaMetricsLogDirs) collector.collectMetrics();
+
+    // Then
+    assertThat(first.getPartitionsRefreshed()).isEqualTo(2);
+    assertThat(first.getPartitionsPending()).isEqualTo(1);
+    assertThat(second.getPartitionsRefreshed()).isEqualTo(2);
+    assertThat(second.getPartitionsPending()).isEqualTo(0);
+    verify(mockLogManager, times(2)).allLogs();
+  }
+
+  @Test
+  public void testRemovedAndAddedPartitions() {
+    // Given
+    LogDirCollector collector = new LogDirCollector(mockServer, new TimeUtils(), new Uuid(), 10, 1000);
+    collector.collectMetrics();
+
+    // When
+    logs.remove(2);
+    logs.add(mockLog(LOG_DIR_B, "baz", 0, 50L, 1));
+    updateAllLogs();
+    SupportKafkaMetricsLogDirs metricsRecord =
+        (SupportKafkaMetricsLogDirs) collector.collectMetrics();
+
+    // Then
+    assertFootprint(metricsRecord.getLogDirs().get(0), LOG_DIR_A, 300L, 3, 2);
+    assertFootprint(metricsRecord.getLogDirs().get(1), LOG_DIR_B, 50L, 1, 1);
+  }
+
+  @Test
+  public void testCollectMetricsBeforeStartup() {
+    // Given
+    KafkaServer server = mock(KafkaServer.class);
+    LogDirCollector collector = new LogDirCollector(server, new TimeUtils());
+
+    // When
+    SupportKafkaMetricsLogDirs metricsRecord =
+        (SupportKafkaMetricsLogDirs) collector.collectMetrics();
+
+    // Then
+    assertThat(metricsRecord.getLogDirs()).isEmpty();
+  }
+
+  private void updateAllLogs() {
+    when(mockLogManager.allLogs()).thenReturn(
+        JavaConverters.iterableAsScalaIterableConverter(new ArrayList<>(logs)).asScala());
+  }
+
+  private static Log mockLog(File logDir, String topic, int partition, long size, int segments) {
+    Log log = mock(Log.class);
+    when(log.topicPartition()).thenReturn(new TopicPartition(topic, partition));
+    when(log.dir()).thenReturn(new File(logDir, topic + "-" + partition));
+    when(log.size()).thenReturn(size);
+    when(log.numberOfSegments()).thenReturn(segments);
+    return log;
+  }
+
+  private static void assertFootprint(LogDirFootprint footprint, File path, long sizeBytes,
+                                      int segmentCount, int partitionCount) {
+    assertThat(footprint.getPath()).isEqualTo(path.getAbsolutePath());
+    assertThat(footprint.getSizeBytes()).isEqualTo(sizeBytes);
+    assertThat(footprint.getSegmentCount()).isEqualTo(segmentCount);
+    assertThat(footprint.getPartitionCount()).isEqualTo(partitionCount);
+  }
+
+}
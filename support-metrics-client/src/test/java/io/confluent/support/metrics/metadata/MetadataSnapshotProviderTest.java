@@ -0,0 +1,202 @@
+/**
+ * Copyright 2018 Confluent Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package io.confluent.support.metrics.metadata;
+
+import org.apache.kafka.common.Cluster;
+import org.apache.kafka.common.Node;
+import org.apache.kafka.common.PartitionInfo;
+import org.apache.kafka.common.TopicPartition;
+import org.apache.kafka.common.network.ListenerName;
+import org.apache.kafka.common.utils.MockTime;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+
+import io.confluent.support.metrics.metadata.MetadataSnapshot.Source;
+import kafka.cluster.Broker;
+import kafka.server.KafkaConfig;
+import kafka.server.KafkaServer;
+import kafka.server.MetadataCache;
+import kafka.zk.KafkaZkClient;
+import scala.Option;
+import scala.collection.JavaConverters;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+public class MetadataSnapshotProviderTest {
+
+  private static final long REFRESH_INTERVAL_MS = 1000;
+
+  private final MockTime time = new MockTime();
+  private KafkaServer server;
+  private MetadataCache cache;
+  private KafkaZkClient zkClient;
+  private MetadataSnapshotProvider provider;
+
+  @Before
+  public void setUp() {
+    server = mock(KafkaServer.class);
+    cache = mock(MetadataCache.class);
+    zkClient = mock(KafkaZkClient.class);
+    KafkaConfig config = mock(KafkaConfig.class);
+    when(server.clusterId()).thenReturn("cluster");
+    when(server.config()).thenReturn(config);
+    when(config.interBrokerListenerName()).thenReturn(new ListenerName("PLAINTEXT"));
+    when(server.zkClient()).thenReturn(zkClient);
+    when(cache.getControllerId()).thenReturn(Option.<Object>apply(1));
+    provider = new MetadataSnapshotProvider(server, time, REFRESH_INTERVAL_MS);
+  }
+
+  private void givenCache(int brokers, int... partitionsPerTopic) {
+    List<Broker> aliveBrokers = new ArrayList<>();
+    for (int i = 0; i < brokers; i++) {
+      aliveBrokers.add(mock(Broker.class));
+    }
+    List<String> topics = new ArrayList<>();
+    List<PartitionInfo> partitions = new ArrayList<>();
+    Node node = new Node(1, "localhost", 9092);
+    for (int t = 0; t < partitionsPerTopic.length; t++) {
+      topics.add("topic" + t);
+      for (int p = 0; p < partitionsPerTopic[t]; p++) {
+        Node[] replicas = {node};
+        partitions.add(new PartitionInfo("topic" + t, p, node, replicas, replicas));
+      }
+    }
+    Cluster cluster = new Cluster("cluster", Collections.singletonList(node), partitions,
+                                  Collections.<String>emptySet(), Collections.<String>emptySet());
+    when(server.metadataCache()).thenReturn(cache);
+    when(cache.getAliveBrokers()).thenReturn(
+        JavaConverters.asScalaBufferConverter(aliveBrokers).asScala());
+    when(cache.getAllTopics()).thenReturn(
+        JavaConverters.asScalaSetConverter(new HashSet<>(topics)).asScala().toSet());
+    when(cache.getClusterMetadata(anyString(), any(ListenerName.class))).thenReturn(cluster);
+  }
+
+  @Test
+  public void testCountsComeFromMetadataCache() {
+    // Given
+    givenCache(3, 2, 5);
+
+    // When
+    MetadataSnapshot snapshot = provider.snapshot();
+
+    // Then
+    assertThat(snapshot.source()).isEqualTo(Source.METADATA_CACHE);
+    assertThat(snapshot.topicCount()).isEqualTo(2);
+    assertThat(snapshot.partitionCount()).isEqualTo(7);
+    assertThat(snapshot.brokerCount()).isEqualTo(3);
+    verify(server, never()).zkClient();
+  }
+
+  @Test
+  public void testSnapshotIsRebuiltOnlyOnChangeOrWhenStale() {
+    // Given
+    givenCache(3, 2, 5);
+    MetadataSnapshot first = provider.snapshot();
+
+    // When/Then
+    assertThat(provider.snapshot()).isSameAs(first);
+
+    givenCache(3, 2, 5, 1);
+    MetadataSnapshot changed = provider.snapshot();
+    assertThat(changed.topicCount()).isEqualTo(3);
+    assertThat(changed.partitionCount()).isEqualTo(8);
+
+    time.sleep(REFRESH_INTERVAL_MS);
+    assertThat(provider.snapshot()).isNotSameAs(changed);
+    verify(cache, times(3)).getClusterMetadata(anyString(), any(ListenerName.class));
+  }
+
+  @Test
+  public void testFallsBackToZooKeeperUntilCacheIsPopulated() {
+    // Given
+    when(server.metadataCache()).thenReturn(null);
+    when(zkClient.getAllTopicsInCluster()).thenReturn(
+        JavaConverters.asScalaBufferConverter(Arrays.asList("a", "b")).asScala());
+    when(zkClient.getAllPartitions()).thenReturn(
+        JavaConverters.asScalaSetConverter(new HashSet<>(Arrays.asList(
+            new TopicPartition("a", 0), new TopicPartition("b", 0), new TopicPartition("b", 1))))
+            .asScala().toSet());
+    when(zkClient.getAllBrokersInCluster()).thenReturn(
+        JavaConverters.asScalaBufferConverter(Arrays.asList(mock(Broker.class))).asScala());
+
+    // When
+    MetadataSnapshot snapshot = provider.snapshot();
+
+    // Then
+    assertThat(snapshot.source()).isEqualTo(Source.ZOOKEEPER);
+    assertThat(snapshot.topicCount()).isEqualTo(2);
+    assertThat(snapshot.partitionCount()).isEqualTo(3);
+    assertThat(snapshot.brokerCount()).isEqualTo(1);
+    assertThat(provider.snapshot()).isSameAs(snapshot);
+    verify(zkClient, times(1)).getAllPartitions();
+
+    // When
+    givenCache(2, 4);
+
+    // Then
+    assertThat(provider.snapshot().source()).isEqualTo(Source.METADATA_CACHE);
+  }
+
+  @Test
+  public void testSnapshotHoldsPlaintextListenersOfLiveBrokers() {
+    // Given
+    givenCache(0, 1);
+    Broker plaintext = mock(Broker.class);
+    when(plaintext.getNode(any(ListenerName.class)))
+        .thenReturn(Option.apply(new Node(1, "broker1", 9092)));
+    Broker sslOnly = mock(Broker.class);
+    when(sslOnly.getNode(any(ListenerName.class))).thenReturn(Option.<Node>empty());
+    when(cache.getAliveBrokers()).thenReturn(
+        JavaConverters.asScalaBufferConverter(Arrays.asList(plaintext, sslOnly)).asScala());
+
+    // When
+    MetadataSnapshot snapshot = provider.snapshot();
+
+    // Then
+    assertThat(snapshot.brokerCount()).isEqualTo(2);
+    assertThat(snapshot.bootstrapServers()).containsExactly("broker1:9092");
+  }
+
+  @Test
+  public void testTopicIsMissingOnlyIfCacheIsPopulated() {
+    // Given
+    when(server.metadataCache()).thenReturn(null);
+
+    // Then
+    assertThat(provider.isTopicMissing("topic0")).isFalse();
+
+    // Given
+    givenCache(1, 1);
+    when(cache.contains("topic0")).thenReturn(true);
+
+    // Then
+    assertThat(provider.isTopicMissing("topic0")).isFalse();
+    assertThat(provider.isTopicMissing("deleted")).isTrue();
+  }
+
+}
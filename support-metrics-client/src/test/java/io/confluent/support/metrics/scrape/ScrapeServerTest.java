@@ -0,0 +1,174 @@
+/**
+ * Copyright 2018 Confluent Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package io.confluent.support.metrics.scrape;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.HttpURLConnection;
+import java.net.InetSocketAddress;
+import java.net.URL;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+import io.confluent.support.metrics.CollectorSection;
+import io.confluent.support.metrics.SectionStatus;
+import io.confluent.support.metrics.SupportKafkaMetricsBasic;
+import io.confluent.support.metrics.SupportKafkaMetricsComposite;
+import io.confluent.support.metrics.collectors.BasicCollector;
+import io.confluent.support.metrics.common.Uuid;
+import io.confluent.support.metrics.common.time.TimeUtils;
+import io.confluent.support.metrics.serde.AvroSerializer;
+import kafka.server.KafkaServer;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+public class ScrapeServerTest {
+
+  private ScrapeServer scrapeServer;
+  private SupportKafkaMetricsBasic metricsRecord;
+
+  @Before
+  public void setUp() throws IOException {
+    KafkaServer mockServer = mock(KafkaServer.class);
+    when(mockServer.clusterId()).thenReturn("dummy");
+    metricsRecord = (SupportKafkaMetricsBasic)
+        new BasicCollector(mockServer, new TimeUtils(), new Uuid()).collectMetrics();
+    scrapeServer = new ScrapeServer(new InetSocketAddress("localhost", 0), 1);
+    scrapeServer.start();
+  }
+
+  @After
+  public void tearDown() {
+    scrapeServer.close();
+  }
+
+  @Test
+  public void testUnavailableBeforeFirstPublish() throws IOException {
+    // When
+    HttpURLConnection connection = open("");
+
+    // Then
+    assertThat(connection.getResponseCode()).isEqualTo(503);
+  }
+
+  @Test
+  public void testServesPrometheusText() throws IOException {
+    // Given
+    scrapeServer.publish(metricsRecord);
+
+    // When
+    HttpURLConnection connection = open("");
+
+    // Then
+    assertThat(connection.getResponseCode()).isEqualTo(200);
+    assertThat(connection.getContentType()).startsWith("text/plain; version=0.0.4");
+    String body = read(connection);
+    assertThat(body).contains(
+        "confluent_support_metrics_timestamp " + metricsRecord.getTimestamp() + "\n");
+    assertThat(body).contains(
+        "broker_process_uuid=\"" + metricsRecord.getBrokerProcessUUID() + "\"");
+    assertThat(body).contains("cluster_id=\"dummy\"");
+  }
+
+  @Test
+  public void testServesJsonAndLatestRecord() throws IOException {
+    // Given
+    scrapeServer.publish(metricsRecord);
+    SupportKafkaMetricsBasic newer = SupportKafkaMetricsBasic.newBuilder(metricsRecord)
+        .setClusterId("newer")
+        .build();
+    scrapeServer.publish(newer);
+
+    // When
+    HttpURLConnection connection = open("?format=json");
+
+    // Then
+    assertThat(connection.getResponseCode()).isEqualTo(200);
+    assertThat(connection.getContentType()).startsWith("application/json");
+    assertThat(read(connection)).contains("\"clusterId\":\"newer\"");
+  }
+
+  @Test
+  public void testRendersSectionsOfCompositeRecord() throws IOException {
+    // Given
+    CollectorSection basic = new CollectorSection();
+    basic.setName("basic");
+    basic.setStatus(SectionStatus.OK);
+    basic.setElapsedMs(12L);
+    basic.setPayload(ByteBuffer.wrap(new AvroSerializer().serialize(metricsRecord)));
+    CollectorSection hung = new CollectorSection();
+    hung.setName("hung");
+    hung.setStatus(SectionStatus.TIMED_OUT);
+    hung.setElapsedMs(500L);
+    hung.setPayload(null);
+    SupportKafkaMetricsComposite composite = new SupportKafkaMetricsComposite();
+    composite.setTimestamp(metricsRecord.getTimestamp());
+    composite.setCollectorState(0);
+    composite.setBrokerProcessUUID(metricsRecord.getBrokerProcessUUID());
+    composite.setSections(Arrays.asList(basic, hung));
+
+    // When
+    String body = new String(SnapshotFormat.PROMETHEUS.render(composite), StandardCharsets.UTF_8);
+
+    // Then
+    assertThat(body).contains(
+        "confluent_support_metrics_timestamp " + metricsRecord.getTimestamp() + "\n");
+    assertThat(body).containsOnlyOnce("# TYPE confluent_support_metrics_section_elapsed_ms gauge\n"
+        + "confluent_support_metrics_section_elapsed_ms{section=\"basic\"} 12\n"
+        + "confluent_support_metrics_section_elapsed_ms{section=\"hung\"} 500\n");
+    assertThat(body).contains("confluent_support_metrics_section_timestamp{section=\"basic\"} "
+                              + metricsRecord.getTimestamp() + "\n");
+    assertThat(body).contains("confluent_support_metrics_section_info{section=\"basic\","
+                              + "status=\"OK\",kafka_version=");
+    assertThat(body).contains("cluster_id=\"dummy\"");
+    assertThat(body).contains(
+        "confluent_support_metrics_section_info{section=\"hung\",status=\"TIMED_OUT\"} 1\n");
+  }
+
+  @Test
+  public void testSnakeCase() {
+    assertThat(SnapshotFormat.snakeCase("brokerProcessUUID")).isEqualTo("broker_process_uuid");
+    assertThat(SnapshotFormat.snakeCase("kafkaVersion")).isEqualTo("kafka_version");
+    assertThat(SnapshotFormat.snakeCase("timestamp")).isEqualTo("timestamp");
+  }
+
+  private HttpURLConnection open(String query) throws IOException {
+    InetSocketAddress address = scrapeServer.address();
+    URL url = new URL("http", address.getHostString(), address.getPort(),
+                      ScrapeServer.PATH + query);
+    return (HttpURLConnection) url.openConnection();
+  }
+
+  private static String read(HttpURLConnection connection) throws IOException {
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    try (InputStream in = connection.getInputStream()) {
+      byte[] buffer = new byte[4096];
+      int read;
+      while ((read = in.read(buffer)) != -1) {
+        out.write(buffer, 0, read);
+      }
+    }
+    return new String(out.toByteArray(), StandardCharsets.UTF_8);
+  }
+
+}
@@ -0,0 +1,113 @@
+/**
+ * Copyright 2018 Confluent Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package io.confluent.support.metrics.serde;
+
+import org.apache.avro.generic.GenericContainer;
+import org.apache.avro.generic.GenericRecord;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import io.confluent.support.metrics.SupportKafkaMetricsBasic;
+
+import static io.confluent.support.metrics.MetricsRecords.basicRecord;
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class DeltaSerializerTest {
+
+  @Test
+  public void testKeyframeEveryIntervalAndDeltasInBetween() throws IOException {
+    // Given
+    DeltaSerializer encoder = new DeltaSerializer(3);
+    AvroSerializer fullEncoder = new AvroSerializer();
+
+    // When
+    List<byte[]> submissions = new ArrayList<>();
+    for (int i = 0; i < 6; i++) {
+      submissions.add(encoder.serialize(basicRecord(1000 + i)));
+    }
+
+    // Then
+    for (int i = 0; i < submissions.size(); i++) {
+      assertThat(DeltaDeserializer.isDelta(submissions.get(i))).isEqualTo(i % 3 != 0);
+    }
+    int fullSize = fullEncoder.serialize(basicRecord(1000)).length;
+    assertThat(submissions.get(1).length * 10).isLessThan(fullSize);
+  }
+
+  @Test
+  public void testDeserializerRebuildsFullRecords() throws IOException {
+    // Given
+    DeltaSerializer encoder = new DeltaSerializer(4);
+    DeltaDeserializer decoder = new DeltaDeserializer();
+    List<SupportKafkaMetricsBasic> records = new ArrayList<>();
+    for (int i = 0; i < 10; i++) {
+      String uuid = i % 2 == 0 ? "even" : "odd";
+      records.add(basicRecord(uuid, "cluster", "2.2.0", 1000 + i, i == 7 ? 1 : 0));
+    }
+
+    for (SupportKafkaMetricsBasic expected : records) {
+      // When
+      GenericContainer[] decoded = decoder.deserialize(encoder.serialize(expected));
+
+      // Then
+      assertThat(decoded).hasSize(1);
+      GenericRecord actual = (GenericRecord) decoded[0];
+      assertThat(actual.get("timestamp")).isEqualTo(expected.getTimestamp());
+      assertThat(actual.get("collectorState")).isEqualTo(expected.getCollectorState());
+      assertThat(actual.get("brokerProcessUUID").toString())
+          .isEqualTo(expected.getBrokerProcessUUID());
+      assertThat(actual.get("kafkaVersion").toString()).isEqualTo(expected.getKafkaVersion());
+      assertThat(actual.get("clusterId").toString()).isEqualTo(expected.getClusterId());
+    }
+    assertThat(decoder.unresolvedDeltas()).isEqualTo(0);
+  }
+
+  @Test
+  public void testDeltasAfterMissingRecordAreSkippedUntilKeyframe() throws IOException {
+    // Given
+    DeltaSerializer encoder = new DeltaSerializer(3);
+    DeltaDeserializer decoder = new DeltaDeserializer();
+    List<byte[]> submissions = new ArrayList<>();
+    for (int i = 0; i < 4; i++) {
+      submissions.add(encoder.serialize(basicRecord(1000 + i)));
+    }
+
+    // When
+    GenericContainer[] keyframe = decoder.deserialize(submissions.get(0));
+    GenericContainer[] afterGap = decoder.deserialize(submissions.get(2));
+    GenericContainer[] nextKeyframe = decoder.deserialize(submissions.get(3));
+
+    // Then
+    assertThat(keyframe).hasSize(1);
+    assertThat(afterGap).isEmpty();
+    assertThat(nextKeyframe).hasSize(1);
+    assertThat(decoder.unresolvedDeltas()).isEqualTo(1);
+  }
+
+  @Test
+  public void testIntervalOfOneAlwaysSerializesInFull() throws IOException {
+    // Given
+    DeltaSerializer encoder = new DeltaSerializer(1);
+
+    // When/Then
+    for (int i = 0; i < 3; i++) {
+      assertThat(DeltaDeserializer.isDelta(encoder.serialize(basicRecord(i)))).isFalse();
+    }
+  }
+
+}
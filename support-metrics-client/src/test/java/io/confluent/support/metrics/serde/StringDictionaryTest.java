@@ -0,0 +1,112 @@
+/**
+ * Copyright 2018 Confluent Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package io.confluent.support.metrics.serde;
+
+import org.apache.avro.generic.GenericContainer;
+import org.apache.avro.generic.GenericRecord;
+import org.junit.Test;
+
+import java.io.IOException;
+
+import io.confluent.support.metrics.SupportKafkaMetricsBasic;
+
+import static io.confluent.support.metrics.MetricsRecords.basicRecord;
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class StringDictionaryTest {
+
+  private static GenericRecord roundTrip(AvroDeserializer decoder, SupportKafkaMetricsBasic record)
+      throws IOException {
+    GenericContainer[] decoded = decoder.deserialize(new AvroSerializer().serialize(record));
+    assertThat(decoded).hasSize(1);
+    return (GenericRecord) decoded[0];
+  }
+
+  @Test
+  public void testRecordsShareInternedStrings() throws IOException {
+    // Given
+    StringDictionary strings = new StringDictionary(100);
+    AvroDeserializer decoder = new AvroDeserializer(strings);
+
+    // When
+    GenericRecord first = roundTrip(decoder, basicRecord("uuid-1", "cluster", "2.2.0", 1000, 0));
+    GenericRecord second = roundTrip(decoder, basicRecord("uuid-2", "cluster", "2.2.0", 1000, 0));
+
+    // Then
+    assertThat(first.get("kafkaVersion")).isEqualTo("2.2.0");
+    assertThat(second.get("kafkaVersion")).isSameAs(first.get("kafkaVersion"));
+    assertThat(second.get("confluentPlatformVersion"))
+        .isSameAs(first.get("confluentPlatformVersion"));
+    assertThat(second.get("clusterId")).isSameAs(first.get("clusterId"));
+    assertThat(second.get("brokerProcessUUID")).isEqualTo("uuid-2");
+    assertThat(strings.size()).isEqualTo(5);
+  }
+
+  @Test
+  public void testSpecificRecordsShareInternedStrings() throws IOException {
+    // Given
+    AvroDeserializer decoder = new AvroDeserializer(new StringDictionary(100));
+    AvroSerializer encoder = new AvroSerializer();
+
+    // When
+    SupportKafkaMetricsBasic record = basicRecord("uuid-1", "cluster", "2.2.0", 1000, 0);
+    SupportKafkaMetricsBasic[] first =
+        decoder.deserialize(SupportKafkaMetricsBasic.class, encoder.serialize(record));
+    SupportKafkaMetricsBasic[] second =
+        decoder.deserialize(SupportKafkaMetricsBasic.class, encoder.serialize(record));
+
+    // Then
+    assertThat(first[0]).isEqualTo(second[0]);
+    assertThat(second[0].getBrokerProcessUUID()).isSameAs(first[0].getBrokerProcessUUID());
+  }
+
+  @Test
+  public void testStopsInterningWhenFull() throws IOException {
+    // Given
+    StringDictionary strings = new StringDictionary(4);
+    AvroDeserializer decoder = new AvroDeserializer(strings);
+    roundTrip(decoder, basicRecord("uuid-1", "cluster", "2.2.0", 1000, 0));
+
+    // When
+    GenericRecord first = roundTrip(decoder, basicRecord("uuid-2", "cluster", "2.2.0", 1000, 0));
+    GenericRecord second = roundTrip(decoder, basicRecord("uuid-2", "cluster", "2.2.0", 1000, 0));
+
+    // Then
+    assertThat(strings.size()).isEqualTo(4);
+    assertThat(second.get("brokerProcessUUID")).isEqualTo("uuid-2");
+    assertThat(second.get("brokerProcessUUID")).isNotSameAs(first.get("brokerProcessUUID"));
+    assertThat(second.get("clusterId")).isSameAs(first.get("clusterId"));
+  }
+
+  @Test
+  public void testDoesNotInternLongValues() throws IOException {
+    // Given
+    StringDictionary strings = new StringDictionary(100);
+    AvroDeserializer decoder = new AvroDeserializer(strings);
+    StringBuilder longId = new StringBuilder();
+    while (longId.length() <= StringDictionary.MAX_VALUE_BYTES) {
+      longId.append("cluster");
+    }
+
+    // When
+    GenericRecord record =
+        roundTrip(decoder, basicRecord("uuid", longId.toString(), "2.2.0", 1000, 0));
+
+    // Then
+    assertThat(record.get("clusterId")).isEqualTo(longId.toString());
+    assertThat(strings.size()).isEqualTo(3);
+  }
+
+}
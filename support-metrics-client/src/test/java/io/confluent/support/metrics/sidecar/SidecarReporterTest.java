@@ -0,0 +1,118 @@
+/**
+ * Copyright 2018 Confluent Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package io.confluent.support.metrics.sidecar;
+
+import org.apache.kafka.common.utils.AppInfoParser;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.util.Properties;
+
+import javax.management.remote.JMXServiceURL;
+
+import io.confluent.common.utils.Utils;
+import io.confluent.support.metrics.KafkaSupportConfig;
+import io.confluent.support.metrics.SupportKafkaMetricsBasic;
+import io.confluent.support.metrics.common.kafka.EmbeddedKafkaCluster;
+import io.confluent.support.metrics.common.kafka.KafkaUtilities;
+import io.confluent.support.metrics.common.time.TimeUtils;
+import io.confluent.support.metrics.tools.KafkaMetricsToFile;
+import kafka.server.KafkaConfig;
+import kafka.server.KafkaConfig$;
+import kafka.server.KafkaServer;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Integration test.  The embedded broker runs in the test's JVM, so its MBeans are read from the
+ * platform MBean server rather than via a remote JMX connection.
+ */
+public class SidecarReporterTest {
+
+  @Test
+  public void submitsMetricsReadViaJmxToKafka() throws IOException {
+    // Given
+    EmbeddedKafkaCluster cluster = new EmbeddedKafkaCluster();
+    cluster.startCluster(1);
+    KafkaServer server = cluster.getBroker(0);
+    Properties brokerConfiguration = new Properties();
+    brokerConfiguration.load(
+        SidecarReporterTest.class.getResourceAsStream("/default-server.properties"));
+    brokerConfiguration.setProperty(KafkaConfig$.MODULE$.BrokerIdProp(),
+                                    Integer.toString(server.config().brokerId()));
+    brokerConfiguration.setProperty(KafkaConfig$.MODULE$.ZkConnectProp(),
+                                    cluster.zookeeperConnectString());
+    brokerConfiguration.setProperty(
+        KafkaSupportConfig.CONFLUENT_SUPPORT_METRICS_ENDPOINT_INSECURE_ENABLE_CONFIG, "false");
+    brokerConfiguration.setProperty(
+        KafkaSupportConfig.CONFLUENT_SUPPORT_METRICS_ENDPOINT_SECURE_ENABLE_CONFIG, "false");
+    brokerConfiguration.setProperty(
+        KafkaSupportConfig.CONFLUENT_SUPPORT_METRICS_TOPIC_CONFIG, "test_metrics");
+    BrokerJmx broker = new BrokerJmx(ManagementFactory.getPlatformMBeanServer());
+    SidecarZkClientProvider zkClientProvider =
+        new SidecarZkClientProvider(KafkaConfig.fromProps(brokerConfiguration));
+    SidecarReporter reporter = new SidecarReporter("testThread", false,
+                                                   new KafkaSupportConfig(brokerConfiguration),
+                                                   broker, zkClientProvider, new KafkaUtilities());
+    reporter.init();
+    int numMetricSubmissions = 5;
+
+    // When
+    for (int i = 0; i < numMetricSubmissions; i++) {
+      reporter.submitMetrics();
+    }
+
+    // Then
+    SupportKafkaMetricsBasic basicRecord =
+        (SupportKafkaMetricsBasic) new SidecarCollector(new TimeUtils(), broker).collectMetrics();
+    assertThat(basicRecord.getKafkaVersion()).isEqualTo(AppInfoParser.getVersion());
+    assertThat(basicRecord.getClusterId()).isNotEmpty();
+    assertThat(basicRecord.getBrokerProcessUUID()).isNotEmpty();
+    SupportKafkaMetricsBasic laterRecord =
+        (SupportKafkaMetricsBasic) new SidecarCollector(new TimeUtils(), broker).collectMetrics();
+    assertThat(laterRecord.getBrokerProcessUUID()).isEqualTo(basicRecord.getBrokerProcessUUID());
+
+    String bootstrapServer =
+        new KafkaUtilities().getBootstrapServers(server.zkClient(), 1).get(0);
+    String outputFile = "testSidecarFile.zip";
+    assertThat(new KafkaMetricsToFile(bootstrapServer)
+                   .saveMetricsToFile("test_metrics", outputFile, 10 * 1000))
+        .isEqualTo(numMetricSubmissions);
+
+    // Cleanup
+    Utils.delete(new File(outputFile));
+    reporter.close();
+    zkClientProvider.close();
+    cluster.stopCluster();
+  }
+
+  @Test
+  public void collectsNothingWhileBrokerIsUnreachable() throws IOException {
+    // Given
+    BrokerJmx broker =
+        new BrokerJmx(new JMXServiceURL("service:jmx:rmi:///jndi/rmi://localhost:1/jmxrmi"));
+
+    // When
+    Object metricsRecord = new SidecarCollector(new TimeUtils(), broker).collectMetrics();
+
+    // Then
+    assertThat(metricsRecord).isNull();
+    assertThat(broker.brokerState()).isNull();
+    broker.close();
+  }
+
+}
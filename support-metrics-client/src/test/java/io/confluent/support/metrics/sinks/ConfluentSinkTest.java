@@ -0,0 +1,58 @@
+/**
+ * Copyright 2018 Confluent Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package io.confluent.support.metrics.sinks;
+
+import org.junit.Test;
+import org.mockito.ArgumentCaptor;
+
+import java.io.IOException;
+
+import io.confluent.support.metrics.SupportKafkaMetricsBasic;
+import io.confluent.support.metrics.serde.AvroDeserializer;
+import io.confluent.support.metrics.serde.DeltaDeserializer;
+import io.confluent.support.metrics.serde.DeltaSerializer;
+import io.confluent.support.metrics.submitters.ConfluentSubmitter;
+
+import static io.confluent.support.metrics.MetricsRecords.basicRecord;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+
+public class ConfluentSinkTest {
+
+  @Test
+  public void testSubmitsFullRecordWhenValueIsDelta() throws IOException {
+    // Given
+    ConfluentSubmitter submitter = mock(ConfluentSubmitter.class);
+    ConfluentSink sink = new ConfluentSink(submitter);
+    DeltaSerializer encoder = new DeltaSerializer(10);
+    encoder.serialize(basicRecord(1000));
+    SupportKafkaMetricsBasic metricsRecord = basicRecord(1001);
+    byte[] delta = encoder.serialize(metricsRecord);
+    assertThat(DeltaDeserializer.isDelta(delta)).isTrue();
+
+    // When
+    sink.submit(new EncodedMetrics(metricsRecord, delta, false));
+
+    // Then
+    ArgumentCaptor<byte[]> submitted = ArgumentCaptor.forClass(byte[].class);
+    verify(submitter).submit(submitted.capture());
+    assertThat(DeltaDeserializer.isDelta(submitted.getValue())).isFalse();
+    SupportKafkaMetricsBasic[] decoded = new AvroDeserializer()
+        .deserialize(SupportKafkaMetricsBasic.class, submitted.getValue());
+    assertThat(decoded).containsExactly(metricsRecord);
+  }
+
+}
@@ -0,0 +1,65 @@
+/**
+ * Copyright 2018 Confluent Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package io.confluent.support.metrics.sinks;
+
+import org.junit.Test;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+
+import io.confluent.support.metrics.SupportKafkaMetricsBasic;
+import io.confluent.support.metrics.serde.AvroDeserializer;
+import io.confluent.support.metrics.serde.AvroSerializer;
+import io.confluent.support.metrics.serde.DeltaSerializer;
+
+import static io.confluent.support.metrics.MetricsRecords.basicRecord;
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class EncodedMetricsTest {
+
+  @Test
+  public void testKeyIsRecordTypeAndBrokerProcessUuid() throws IOException {
+    // Given
+    SupportKafkaMetricsBasic metricsRecord = basicRecord(1000);
+    byte[] value = new AvroSerializer().serialize(metricsRecord);
+
+    // When
+    EncodedMetrics encodedMetrics = new EncodedMetrics(metricsRecord, value, true);
+
+    // Then
+    assertThat(new String(encodedMetrics.key(), StandardCharsets.UTF_8))
+        .isEqualTo("SupportKafkaMetricsBasic/uuid");
+    assertThat(encodedMetrics.snapshot()).isSameAs(value);
+  }
+
+  @Test
+  public void testSnapshotOfDeltaIsFullRecord() throws IOException {
+    // Given
+    DeltaSerializer encoder = new DeltaSerializer(10);
+    encoder.serialize(basicRecord(1000));
+    SupportKafkaMetricsBasic metricsRecord = basicRecord(1001);
+    byte[] delta = encoder.serialize(metricsRecord);
+
+    // When
+    EncodedMetrics encodedMetrics = new EncodedMetrics(metricsRecord, delta, false);
+
+    // Then
+    SupportKafkaMetricsBasic[] snapshot = new AvroDeserializer()
+        .deserialize(SupportKafkaMetricsBasic.class, encodedMetrics.snapshot());
+    assertThat(snapshot).containsExactly(metricsRecord);
+    assertThat(encodedMetrics.value()).isSameAs(delta);
+  }
+
+}
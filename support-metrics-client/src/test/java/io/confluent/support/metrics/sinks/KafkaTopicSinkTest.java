@@ -0,0 +1,102 @@
+/**
+ * Copyright 2018 Confluent Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package io.confluent.support.metrics.sinks;
+
+import org.apache.kafka.clients.producer.MockProducer;
+import org.apache.kafka.clients.producer.Producer;
+import org.apache.kafka.common.serialization.ByteArraySerializer;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import io.confluent.support.metrics.SupportKafkaMetricsBasic;
+import io.confluent.support.metrics.agent.MemoryBudget;
+import io.confluent.support.metrics.common.kafka.KafkaUtilities;
+import io.confluent.support.metrics.common.kafka.ZkClientProvider;
+import io.confluent.support.metrics.metadata.MetadataSnapshot;
+import io.confluent.support.metrics.metadata.MetadataSnapshot.Source;
+import io.confluent.support.metrics.metadata.MetadataSnapshotProvider;
+import io.confluent.support.metrics.serde.AvroSerializer;
+import kafka.zk.KafkaZkClient;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyInt;
+import static org.mockito.Matchers.anyLong;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+public class KafkaTopicSinkTest {
+
+  private static final String TOPIC = "__confluent.support.metrics";
+
+  @Test
+  public void testTopicIsVerifiedOnceAndBrokersComeFromMetadata() throws Exception {
+    // Given
+    ZkClientProvider zkClientProvider = mock(ZkClientProvider.class);
+    KafkaUtilities kafkaUtilities = mock(KafkaUtilities.class);
+    when(kafkaUtilities.createAndVerifyTopic(any(KafkaZkClient.class), anyString(), anyInt(),
+                                             anyInt(), anyLong())).thenReturn(true);
+    MetadataSnapshotProvider metadata = mock(MetadataSnapshotProvider.class);
+    when(metadata.snapshot()).thenReturn(new MetadataSnapshot(
+        Source.METADATA_CACHE, 1, 1, 4,
+        Arrays.asList("broker1:9092", "broker2:9092", "broker3:9092", "broker4:9092"), 0L));
+    final List<String> bootstrapServers = new ArrayList<>();
+    final MockProducer<byte[], byte[]> producer =
+        new MockProducer<>(true, new ByteArraySerializer(), new ByteArraySerializer());
+    KafkaTopicSink sink = new KafkaTopicSink(zkClientProvider, kafkaUtilities, TOPIC, null,
+                                             MemoryBudget.unlimited(), metadata) {
+      @Override
+      Producer<byte[], byte[]> createProducer(String servers, long bufferMemoryBytes) {
+        bootstrapServers.add(servers);
+        return producer;
+      }
+    };
+    SupportKafkaMetricsBasic metricsRecord = new SupportKafkaMetricsBasic();
+    metricsRecord.setTimestamp(1000L);
+    metricsRecord.setKafkaVersion("2.2.0");
+    metricsRecord.setConfluentPlatformVersion(null);
+    metricsRecord.setCollectorState(0);
+    metricsRecord.setBrokerProcessUUID("uuid");
+    metricsRecord.setClusterId("cluster");
+    byte[] value = new AvroSerializer().serialize(metricsRecord);
+
+    // When
+    sink.submit(new EncodedMetrics(metricsRecord, value, true));
+    sink.submit(new EncodedMetrics(metricsRecord, value, true));
+
+    // Then
+    assertThat(producer.history()).hasSize(2);
+    assertThat(bootstrapServers).containsExactly("broker1:9092,broker2:9092,broker3:9092");
+    verify(kafkaUtilities, times(1)).createAndVerifyTopic(
+        any(KafkaZkClient.class), anyString(), anyInt(), anyInt(), anyLong());
+    verify(kafkaUtilities, never()).getBootstrapServers(any(KafkaZkClient.class), anyInt());
+
+    // When
+    when(metadata.isTopicMissing(TOPIC)).thenReturn(true);
+    sink.submit(new EncodedMetrics(metricsRecord, value, true));
+
+    // Then
+    verify(kafkaUtilities, times(2)).createAndVerifyTopic(
+        any(KafkaZkClient.class), anyString(), anyInt(), anyInt(), anyLong());
+  }
+
+}
@@ -0,0 +1,147 @@
+/**
+ * Copyright 2018 Confluent Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package io.confluent.support.metrics.tools;
+
+import org.apache.avro.generic.GenericContainer;
+import org.apache.avro.generic.GenericRecord;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import io.confluent.support.metrics.serde.DeltaDeserializer;
+import io.confluent.support.metrics.serde.DeltaSerializer;
+
+import static io.confluent.support.metrics.MetricsRecords.basicRecord;
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class BundleMergerTest {
+
+  @Rule
+  public TemporaryFolder folder = new TemporaryFolder();
+
+  /**
+   * @return The submissions of a broker that reports every {@code intervalSecs}, starting at
+   *     {@code startTimestamp}.
+   */
+  private static List<byte[]> submissions(String uuid, long startTimestamp, int intervalSecs)
+      throws IOException {
+    DeltaSerializer encoder = new DeltaSerializer(4);
+    List<byte[]> submissions = new ArrayList<>();
+    for (int i = 0; i < 100; i++) {
+      submissions.add(encoder.serialize(
+          basicRecord(uuid, "cluster-" + uuid, "2.2.0", startTimestamp + i * intervalSecs, 0)));
+    }
+    return submissions;
+  }
+
+  private File writeBundle(String name, List<byte[]> submissions, BundleOptions options)
+      throws IOException {
+    File file = new File(folder.getRoot(), name);
+    try (BundleWriter bundle = new BundleWriter(file, name, options)) {
+      for (byte[] submission : submissions) {
+        bundle.add(submission);
+      }
+    }
+    return file;
+  }
+
+  private static List<GenericRecord> readBundle(List<File> files) throws IOException {
+    List<GenericRecord> records = new ArrayList<>();
+    DeltaDeserializer decoder = new DeltaDeserializer();
+    for (File file : files) {
+      try (BundleReader reader = new BundleReader(file)) {
+        byte[] submission;
+        while ((submission = reader.next()) != null) {
+          for (GenericContainer record : decoder.deserialize(submission)) {
+            records.add((GenericRecord) record);
+          }
+        }
+      }
+    }
+    assertThat(decoder.unresolvedDeltas()).isEqualTo(0);
+    return records;
+  }
+
+  @Test
+  public void testMergesInTimestampOrderAndDropsOverlap() throws IOException {
+    // Given
+    List<byte[]> a = submissions("a", 1000, 10);
+    List<byte[]> b = submissions("b", 1005, 10);
+    // "a" collected twice, overlapping by 20 submissions; the second time in parallel.
+    File a1 = writeBundle("a1.zip", a.subList(0, 60), new BundleOptions());
+    File a2 = writeBundle("a2.zip", a.subList(40, 100), new BundleOptions().compressionThreads(4));
+    File b1 = writeBundle("b1.zst", b, new BundleOptions().codec(BundleCodec.ZSTD));
+    BundleMerger merger = new BundleMerger(new BundleOptions().codec(BundleCodec.SNAPPY));
+
+    // When
+    List<File> files = merger.merge(Arrays.asList(a1, a2, b1),
+                                    new File(folder.getRoot(), "merged.sz"));
+
+    // Then
+    assertThat(merger.numDuplicates()).isEqualTo(20);
+    List<GenericRecord> records = readBundle(files);
+    assertThat(records).hasSize(200);
+    long previous = Long.MIN_VALUE;
+    for (int i = 0; i < records.size(); i++) {
+      long timestamp = (Long) records.get(i).get("timestamp");
+      assertThat(timestamp).isGreaterThan(previous);
+      assertThat(records.get(i).get("brokerProcessUUID").toString()).isEqualTo(
+          i % 2 == 0 ? "a" : "b");
+      previous = timestamp;
+    }
+  }
+
+  @Test
+  public void testRollsMergedBundle() throws IOException {
+    // Given
+    File a1 = writeBundle("a1.zip", submissions("a", 1000, 10), new BundleOptions());
+    File b1 = writeBundle("b1.zip", submissions("b", 1000, 10), new BundleOptions());
+    BundleOptions options = new BundleOptions().maxSegmentRecords(50);
+
+    // When
+    List<File> files = new BundleMerger(options).merge(Arrays.asList(a1, b1),
+                                                        new File(folder.getRoot(), "merged.zip"));
+
+    // Then
+    assertThat(files).hasSize(4);
+    List<GenericRecord> records = readBundle(files);
+    assertThat(records).hasSize(200);
+    // Ties go to the input listed first.
+    assertThat(records.get(0).get("brokerProcessUUID").toString()).isEqualTo("a");
+    assertThat(records.get(1).get("brokerProcessUUID").toString()).isEqualTo("b");
+  }
+
+  @Test
+  public void testNoOutputWithoutSubmissions() throws IOException {
+    // Given
+    File outFile = new File(folder.getRoot(), "merged.zip");
+
+    // When
+    List<File> files = new BundleMerger(new BundleOptions())
+        .merge(Collections.<File>emptyList(), outFile);
+
+    // Then
+    assertThat(files).isEmpty();
+    assertThat(outFile).doesNotExist();
+  }
+
+}
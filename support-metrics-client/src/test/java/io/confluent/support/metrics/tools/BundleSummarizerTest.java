@@ -0,0 +1,195 @@
+/**
+ * Copyright 2018 Confluent Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package io.confluent.support.metrics.tools;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
+import java.util.List;
+
+import io.confluent.support.metrics.serde.DeltaSerializer;
+import io.confluent.support.metrics.tools.BundleSummary.BrokerSummary;
+
+import static io.confluent.support.metrics.MetricsRecords.basicRecord;
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class BundleSummarizerTest {
+
+  private static final int NUM_REPORTS = 1000;
+
+  @Rule
+  public TemporaryFolder folder = new TemporaryFolder();
+
+  /**
+   * Writes a bundle of three brokers in two clusters, as full records and deltas.  The last report
+   * of broker "b" is made while shutting down.
+   */
+  private File writeBundle(String name, BundleCodec codec) throws IOException {
+    File file = new File(folder.getRoot(), name);
+    DeltaSerializer encoder = new DeltaSerializer(5);
+    try (BundleWriter bundle = new BundleWriter(file, name, new BundleOptions().codec(codec))) {
+      for (int i = 0; i < NUM_REPORTS; i++) {
+        long timestamp = 1000 + i;
+        bundle.add(encoder.serialize(basicRecord("a", "cluster-1", "2.2.0", timestamp, 0)));
+        bundle.add(encoder.serialize(
+            basicRecord("b", "cluster-1", "2.2.0", timestamp, i == NUM_REPORTS - 1 ? 1 : 0)));
+        bundle.add(encoder.serialize(basicRecord("c", "cluster-2", "2.1.1", timestamp, 0)));
+      }
+    }
+    return file;
+  }
+
+  private static void verifySummary(BundleSummary summary) {
+    assertThat(summary.numSubmissions()).isEqualTo(3 * NUM_REPORTS);
+    assertThat(summary.numDeltas()).isGreaterThan(0);
+    assertThat(summary.numRecords() + summary.numDeltas()).isEqualTo(3 * NUM_REPORTS);
+    assertThat(summary.numUnresolvedDeltas()).isEqualTo(0);
+    assertThat(summary.numUnreadable()).isEqualTo(0);
+    assertThat(summary.brokers()).containsOnlyKeys("a", "b", "c");
+    assertThat(summary.clusters())
+        .containsEntry("cluster-1", 2)
+        .containsEntry("cluster-2", 1)
+        .hasSize(2);
+    assertThat(summary.versions())
+        .containsEntry("2.2.0 / 5.2.0", 2)
+        .containsEntry("2.1.1 / 5.2.0", 1)
+        .hasSize(2);
+
+    BrokerSummary a = summary.brokers().get("a");
+    assertThat(a.numRecords()).isEqualTo(NUM_REPORTS);
+    assertThat(a.firstTimestamp()).isEqualTo(1000);
+    assertThat(a.lastTimestamp()).isEqualTo(1000 + NUM_REPORTS - 1);
+    assertThat(a.stateChanged()).isFalse();
+    BrokerSummary b = summary.brokers().get("b");
+    assertThat(b.stateChanged()).isTrue();
+    assertThat(b.states()).containsExactly(0, 1);
+    assertThat(b.lastState()).isEqualTo(1);
+  }
+
+  @Test
+  public void testSummarizesZipBundle() throws IOException {
+    // Given
+    File bundle = writeBundle("bundle.zip", BundleCodec.ZIP);
+
+    // When
+    BundleSummary summary = new BundleSummarizer(4).summarize(Collections.singletonList(bundle));
+
+    // Then
+    verifySummary(summary);
+  }
+
+  @Test
+  public void testSummarizesStreamBundle() throws IOException {
+    // Given
+    File bundle = writeBundle("bundle.zst", BundleCodec.ZSTD);
+
+    // When
+    BundleSummary summary = new BundleSummarizer(4).summarize(Collections.singletonList(bundle));
+
+    // Then
+    verifySummary(summary);
+  }
+
+  @Test
+  public void testSummarizesSegmentsTogether() throws IOException {
+    // Given
+    File bundle = new File(folder.getRoot(), "bundle.sz");
+    DeltaSerializer encoder = new DeltaSerializer(5);
+    BundleOptions options = new BundleOptions().codec(BundleCodec.SNAPPY).maxSegmentRecords(7);
+    List<File> files;
+    try (BundleWriter writer = new BundleWriter(bundle, "bundle", options)) {
+      for (int i = 0; i < 20; i++) {
+        writer.add(encoder.serialize(basicRecord("a", "cluster-1", "2.2.0", 1000 + i, 0)));
+      }
+      files = writer.files();
+    }
+
+    // When
+    BundleSummary summary = new BundleSummarizer(2).summarize(files);
+
+    // Then
+    assertThat(files).hasSize(3);
+    assertThat(summary.numSubmissions()).isEqualTo(20);
+    assertThat(summary.brokers().get("a").numRecords()).isEqualTo(20);
+    assertThat(summary.brokers().get("a").lastTimestamp()).isEqualTo(1019);
+  }
+
+  @Test
+  public void testMergeResolvesDeltasOfEarlierParts() throws IOException {
+    // Given
+    DeltaSerializer encoder = new DeltaSerializer(10);
+    byte[] keyframe = encoder.serialize(basicRecord("a", "cluster-1", "2.2.0", 1000, 0));
+    byte[] delta = encoder.serialize(basicRecord("a", "cluster-1", "2.2.0", 1060, 1));
+    BundleSummary first = new BundleSummary();
+    first.add(keyframe);
+    BundleSummary second = new BundleSummary();
+    second.add(delta);
+    assertThat(second.numUnresolvedDeltas()).isEqualTo(1);
+
+    // When
+    second.merge(first);
+
+    // Then
+    assertThat(second.numUnresolvedDeltas()).isEqualTo(0);
+    BrokerSummary a = second.brokers().get("a");
+    assertThat(a.numRecords()).isEqualTo(2);
+    assertThat(a.lastTimestamp()).isEqualTo(1060);
+    assertThat(a.lastState()).isEqualTo(1);
+    assertThat(a.clusterId()).isEqualTo("cluster-1");
+  }
+
+  @Test
+  public void testAddResolvesDeltasAddedBeforeTheirKeyframe() throws IOException {
+    // Given
+    DeltaSerializer encoder = new DeltaSerializer(10);
+    byte[] keyframe = encoder.serialize(basicRecord("a", "cluster-1", "2.2.0", 1000, 0));
+    byte[] delta = encoder.serialize(basicRecord("a", "cluster-1", "2.2.0", 1060, 1));
+    BundleSummary summary = new BundleSummary();
+    summary.add(delta);
+    assertThat(summary.numUnresolvedDeltas()).isEqualTo(1);
+
+    // When
+    summary.add(keyframe);
+
+    // Then
+    assertThat(summary.numUnresolvedDeltas()).isEqualTo(0);
+    assertThat(summary.numDeltas()).isEqualTo(1);
+    BrokerSummary a = summary.brokers().get("a");
+    assertThat(a.numRecords()).isEqualTo(2);
+    assertThat(a.firstTimestamp()).isEqualTo(1000);
+    assertThat(a.lastTimestamp()).isEqualTo(1060);
+    assertThat(a.lastState()).isEqualTo(1);
+  }
+
+  @Test
+  public void testCountsUnreadableSubmissions() {
+    // Given
+    BundleSummary summary = new BundleSummary();
+
+    // When
+    summary.add("not a metrics submission".getBytes(StandardCharsets.UTF_8));
+
+    // Then
+    assertThat(summary.numSubmissions()).isEqualTo(1);
+    assertThat(summary.numUnreadable()).isEqualTo(1);
+    assertThat(summary.brokers()).isEmpty();
+  }
+
+}
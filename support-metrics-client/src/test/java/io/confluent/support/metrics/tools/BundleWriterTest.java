@@ -0,0 +1,242 @@
+/**
+ * Copyright 2018 Confluent Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package io.confluent.support.metrics.tools;
+
+import com.github.luben.zstd.ZstdInputStream;
+
+import org.apache.commons.compress.archivers.zip.ZipArchiveEntry;
+import org.apache.commons.compress.archivers.zip.ZipFile;
+import org.apache.commons.compress.utils.IOUtils;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.xerial.snappy.SnappyFramedInputStream;
+
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.zip.ZipEntry;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class BundleWriterTest {
+
+  private static final int NUM_ENTRIES = 200;
+
+  @Rule
+  public TemporaryFolder folder = new TemporaryFolder();
+
+  @Test
+  public void testSequentialDeflated() throws IOException {
+    verifyBundle(1, false, ZipEntry.DEFLATED);
+  }
+
+  @Test
+  public void testSequentialStored() throws IOException {
+    verifyBundle(1, true, ZipEntry.STORED);
+  }
+
+  @Test
+  public void testParallelDeflated() throws IOException {
+    verifyBundle(4, false, ZipEntry.DEFLATED);
+  }
+
+  @Test
+  public void testParallelStored() throws IOException {
+    verifyBundle(4, true, ZipEntry.STORED);
+  }
+
+  @Test
+  public void testRollsByRecordCount() throws IOException {
+    // Given
+    File outFile = new File(folder.getRoot(), "bundle.zip");
+    BundleOptions options = new BundleOptions().maxSegmentRecords(50);
+
+    // When
+    List<File> files;
+    try (BundleWriter bundle = new BundleWriter(outFile, "bundle", options)) {
+      for (int i = 0; i < NUM_ENTRIES; i++) {
+        bundle.add(value(i).getBytes(StandardCharsets.UTF_8));
+      }
+      files = bundle.files();
+    }
+
+    // Then
+    assertThat(outFile).doesNotExist();
+    assertThat(files).containsExactly(new File(folder.getRoot(), "bundle-00000.zip"),
+                                      new File(folder.getRoot(), "bundle-00001.zip"),
+                                      new File(folder.getRoot(), "bundle-00002.zip"),
+                                      new File(folder.getRoot(), "bundle-00003.zip"));
+    Map<String, String> lastSegment = zipEntries(files.get(3));
+    assertThat(lastSegment).hasSize(50);
+    assertThat(lastSegment.get("bundle.150")).isEqualTo(value(150));
+  }
+
+  @Test
+  public void testSnappy() throws IOException {
+    verifyStreamBundle(BundleCodec.SNAPPY, 0);
+  }
+
+  @Test
+  public void testZstd() throws IOException {
+    verifyStreamBundle(BundleCodec.ZSTD, 0);
+  }
+
+  @Test
+  public void testRollsBySize() throws IOException {
+    verifyStreamBundle(BundleCodec.ZSTD, 4096);
+  }
+
+  @Test
+  public void testSkipsDuplicates() throws IOException {
+    // Given
+    File outFile = new File(folder.getRoot(), "bundle.zip");
+    BundleOptions options = new BundleOptions().deduplicate(true);
+
+    // When
+    try (BundleWriter bundle = new BundleWriter(outFile, "bundle", options)) {
+      for (int i = 0; i < NUM_ENTRIES; i++) {
+        // Every submission twice, and a few again later on, like after a re-read.
+        assertThat(bundle.add(value(i).getBytes(StandardCharsets.UTF_8))).isTrue();
+        assertThat(bundle.add(value(i).getBytes(StandardCharsets.UTF_8))).isFalse();
+        assertThat(bundle.add(value(i / 2).getBytes(StandardCharsets.UTF_8))).isFalse();
+      }
+      assertThat(bundle.numEntries()).isEqualTo(NUM_ENTRIES);
+      assertThat(bundle.numDuplicates()).isEqualTo(2 * NUM_ENTRIES);
+    }
+
+    // Then
+    Map<String, String> entries = zipEntries(outFile);
+    assertThat(entries).hasSize(NUM_ENTRIES);
+    assertThat(entries.get("bundle.7")).isEqualTo(value(7));
+  }
+
+  @Test
+  public void testCreatesNoFileWithoutEntries() throws IOException {
+    // Given
+    File outFile = new File(folder.getRoot(), "bundle.zip");
+
+    // When
+    try (BundleWriter bundle = new BundleWriter(outFile, "bundle", new BundleOptions())) {
+      assertThat(bundle.numEntries()).isZero();
+    }
+
+    // Then
+    assertThat(outFile).doesNotExist();
+  }
+
+  private void verifyStreamBundle(BundleCodec codec, long maxSegmentBytes) throws IOException {
+    // Given
+    File outFile = new File(folder.getRoot(), "bundle" + codec.extension());
+    BundleOptions options = new BundleOptions().codec(codec).maxSegmentBytes(maxSegmentBytes);
+
+    // When
+    List<File> files;
+    try (BundleWriter bundle = new BundleWriter(outFile, "bundle", options)) {
+      for (int i = 0; i < NUM_ENTRIES; i++) {
+        bundle.add(value(i).getBytes(StandardCharsets.UTF_8));
+      }
+      files = bundle.files();
+    }
+
+    // Then
+    if (maxSegmentBytes == 0) {
+      assertThat(files).containsExactly(outFile);
+    } else {
+      assertThat(files.size()).isGreaterThan(1);
+    }
+    List<String> values = new ArrayList<>();
+    for (File file : files) {
+      try (InputStream fileIn = new FileInputStream(file);
+           DataInputStream in = new DataInputStream(codec == BundleCodec.SNAPPY
+                                                    ? new SnappyFramedInputStream(fileIn)
+                                                    : new ZstdInputStream(fileIn))) {
+        while (true) {
+          int length;
+          try {
+            length = in.readInt();
+          } catch (EOFException e) {
+            break;
+          }
+          byte[] value = new byte[length];
+          in.readFully(value);
+          values.add(new String(value, StandardCharsets.UTF_8));
+        }
+      }
+    }
+    assertThat(values).hasSize(NUM_ENTRIES);
+    for (int i = 0; i < NUM_ENTRIES; i++) {
+      assertThat(values.get(i)).isEqualTo(value(i));
+    }
+  }
+
+  private void verifyBundle(int compressionThreads, boolean stored, int expectedMethod)
+      throws IOException {
+    // Given
+    File outFile = new File(folder.getRoot(), "bundle.zip");
+
+    // When
+    BundleOptions options =
+        new BundleOptions().compressionThreads(compressionThreads).storeEntries(stored);
+    try (BundleWriter bundle = new BundleWriter(outFile, "bundle", options)) {
+      for (int i = 0; i < NUM_ENTRIES; i++) {
+        bundle.add(value(i).getBytes(StandardCharsets.UTF_8));
+      }
+      assertThat(bundle.numEntries()).isEqualTo(NUM_ENTRIES);
+    }
+
+    // Then
+    try (ZipFile zipFile = new ZipFile(outFile)) {
+      for (ZipArchiveEntry entry : Collections.list(zipFile.getEntries())) {
+        assertThat(entry.getMethod()).isEqualTo(expectedMethod);
+      }
+    }
+    Map<String, String> entries = zipEntries(outFile);
+    assertThat(entries).hasSize(NUM_ENTRIES);
+    for (int i = 0; i < NUM_ENTRIES; i++) {
+      assertThat(entries.get("bundle." + i)).isEqualTo(value(i));
+    }
+  }
+
+  private static Map<String, String> zipEntries(File file) throws IOException {
+    Map<String, String> entries = new TreeMap<>();
+    try (ZipFile zipFile = new ZipFile(file)) {
+      for (ZipArchiveEntry entry : Collections.list(zipFile.getEntries())) {
+        try (InputStream in = zipFile.getInputStream(entry)) {
+          entries.put(entry.getName(), new String(IOUtils.toByteArray(in), StandardCharsets.UTF_8));
+        }
+      }
+    }
+    return entries;
+  }
+
+  private static String value(int i) {
+    StringBuilder value = new StringBuilder();
+    for (int j = 0; j < 100; j++) {
+      value.append("metrics record ").append(i).append(' ');
+    }
+    return value.toString();
+  }
+
+}
@@ -0,0 +1,82 @@
+/**
+ * Copyright 2018 Confluent Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package io.confluent.support.metrics.tools;
+
+import org.junit.Test;
+
+import java.util.Random;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class FingerprintSetTest {
+
+  @Test
+  public void testAddsEachFingerprintOnce() {
+    // Given
+    FingerprintSet set = new FingerprintSet(10000);
+    Random random = new Random(42);
+    long[] fingerprints = new long[10000];
+    for (int i = 0; i < fingerprints.length; i++) {
+      fingerprints[i] = random.nextLong();
+    }
+
+    // When
+    for (long fingerprint : fingerprints) {
+      assertThat(set.add(fingerprint)).isTrue();
+    }
+
+    // Then
+    assertThat(set.size()).isEqualTo(fingerprints.length);
+    for (long fingerprint : fingerprints) {
+      assertThat(set.contains(fingerprint)).isTrue();
+      assertThat(set.add(fingerprint)).isFalse();
+    }
+    assertThat(set.contains(random.nextLong())).isFalse();
+  }
+
+  @Test
+  public void testZeroFingerprint() {
+    // Given
+    FingerprintSet set = new FingerprintSet(10);
+
+    // When
+    boolean added = set.add(0L);
+
+    // Then
+    assertThat(added).isTrue();
+    assertThat(set.contains(0L)).isTrue();
+    assertThat(set.add(0L)).isFalse();
+    assertThat(set.size()).isEqualTo(1);
+  }
+
+  @Test
+  public void testClearsWhenFull() {
+    // Given
+    FingerprintSet set = new FingerprintSet(3);
+    set.add(1L);
+    set.add(2L);
+    set.add(3L);
+
+    // When
+    boolean added = set.add(4L);
+
+    // Then
+    assertThat(added).isTrue();
+    assertThat(set.size()).isEqualTo(1);
+    assertThat(set.contains(4L)).isTrue();
+    assertThat(set.contains(1L)).isFalse();
+  }
+
+}
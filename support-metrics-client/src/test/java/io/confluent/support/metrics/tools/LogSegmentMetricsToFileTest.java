@@ -0,0 +1,202 @@
+/**
+ * Copyright 2018 Confluent Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package io.confluent.support.metrics.tools;
+
+import org.apache.commons.compress.archivers.zip.ZipArchiveEntry;
+import org.apache.commons.compress.archivers.zip.ZipFile;
+import org.apache.kafka.common.record.CompressionType;
+import org.apache.kafka.common.record.MemoryRecords;
+import org.apache.kafka.common.record.SimpleRecord;
+import org.apache.kafka.common.utils.Utils;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class LogSegmentMetricsToFileTest {
+
+  private static final String TOPIC = "__confluent.support.metrics";
+
+  @Rule
+  public TemporaryFolder folder = new TemporaryFolder();
+
+  private File logDir;
+  private File partitionDir;
+  private String outputPath;
+
+  @Before
+  public void setUp() throws IOException {
+    logDir = folder.newFolder("logs");
+    partitionDir = new File(logDir, TOPIC + "-0");
+    partitionDir.mkdir();
+    outputPath = new File(folder.getRoot(), "bundle.zip").getAbsolutePath();
+  }
+
+  @Test
+  public void testExportsCompressedAndUncompressedBatches() throws IOException {
+    // Given
+    ByteBuffer gzip = batch(0, CompressionType.GZIP, 1000, "a", "b");
+    ByteBuffer plain = batch(2, CompressionType.NONE, 2000, "c", "d");
+    write(new File(partitionDir, "00000000000000000000.log"), gzip, plain);
+    // A partition of another topic that shares the prefix.
+    File latestDir = new File(logDir, TOPIC + ".latest-0");
+    latestDir.mkdir();
+    write(new File(latestDir, "00000000000000000000.log"),
+          batch(0, CompressionType.NONE, 1000, "latest"));
+
+    // When
+    int numMessages = new LogSegmentMetricsToFile(logDir).saveMetricsToFile(TOPIC, outputPath);
+
+    // Then
+    assertThat(numMessages).isEqualTo(4);
+    assertThat(bundleValues()).containsExactly("a", "b", "c", "d");
+  }
+
+  @Test
+  public void testReadsSegmentsInOffsetOrder() throws IOException {
+    // Given
+    write(new File(partitionDir, "00000000000000000002.log"),
+          batch(2, CompressionType.SNAPPY, 2000, "c"));
+    write(new File(partitionDir, "00000000000000000000.log"),
+          batch(0, CompressionType.NONE, 1000, "a", "b"));
+
+    // When
+    int numMessages = new LogSegmentMetricsToFile(logDir).saveMetricsToFile(TOPIC, outputPath);
+
+    // Then
+    assertThat(numMessages).isEqualTo(3);
+    assertThat(bundleValues()).containsExactly("a", "b", "c");
+  }
+
+  @Test
+  public void testSeeksWithTheTimeIndex() throws IOException {
+    // Given
+    // Reading the segment from its beginning would stop at these bytes, which are not a batch.
+    ByteBuffer unreadable = ByteBuffer.allocate(100);
+    ByteBuffer second = batch(2, CompressionType.GZIP, 2000, "c", "d");
+    int secondPosition = unreadable.remaining();
+    int thirdPosition = secondPosition + second.remaining();
+    write(new File(partitionDir, "00000000000000000000.log"),
+          unreadable, second, batch(4, CompressionType.GZIP, 3000, "e", "f"));
+    write(new File(partitionDir, "00000000000000000000.timeindex"),
+          timeIndexEntry(1001, 1), timeIndexEntry(2001, 3), timeIndexEntry(3001, 5),
+          ByteBuffer.allocate(24));
+    write(new File(partitionDir, "00000000000000000000.index"),
+          offsetIndexEntry(2, secondPosition), offsetIndexEntry(4, thirdPosition),
+          ByteBuffer.allocate(16));
+
+    // When
+    int numMessages = new LogSegmentMetricsToFile(logDir)
+        .saveMetricsToFile(TOPIC, outputPath, 3000, 3000);
+
+    // Then
+    assertThat(numMessages).isEqualTo(1);
+    assertThat(bundleValues()).containsExactly("e");
+  }
+
+  @Test
+  public void testStopsAtTruncatedBatch() throws IOException {
+    // Given
+    ByteBuffer truncated = batch(2, CompressionType.GZIP, 2000, "c", "d");
+    truncated.limit(truncated.remaining() / 2);
+    write(new File(partitionDir, "00000000000000000000.log"),
+          batch(0, CompressionType.GZIP, 1000, "a", "b"), truncated);
+
+    // When
+    int numMessages = new LogSegmentMetricsToFile(logDir).saveMetricsToFile(TOPIC, outputPath);
+
+    // Then
+    assertThat(numMessages).isEqualTo(2);
+    assertThat(bundleValues()).containsExactly("a", "b");
+  }
+
+  @Test
+  public void testMissingTopicCreatesNoFile() {
+    // When
+    int numMessages = new LogSegmentMetricsToFile(logDir).saveMetricsToFile("other", outputPath);
+
+    // Then
+    assertThat(numMessages).isZero();
+    assertThat(new File(outputPath)).doesNotExist();
+  }
+
+  /**
+   * @return A batch of records with consecutive offsets and timestamps.
+   */
+  private static ByteBuffer batch(
+      long baseOffset,
+      CompressionType compression,
+      long baseTimestamp,
+      String... values
+  ) {
+    SimpleRecord[] records = new SimpleRecord[values.length];
+    for (int i = 0; i < values.length; i++) {
+      records[i] = new SimpleRecord(baseTimestamp + i, values[i].getBytes(StandardCharsets.UTF_8));
+    }
+    return MemoryRecords.withRecords(baseOffset, compression, records).buffer();
+  }
+
+  private static ByteBuffer timeIndexEntry(long timestamp, int relativeOffset) {
+    ByteBuffer entry = ByteBuffer.allocate(12);
+    entry.putLong(timestamp).putInt(relativeOffset).flip();
+    return entry;
+  }
+
+  private static ByteBuffer offsetIndexEntry(int relativeOffset, int position) {
+    ByteBuffer entry = ByteBuffer.allocate(8);
+    entry.putInt(relativeOffset).putInt(position).flip();
+    return entry;
+  }
+
+  private static void write(File file, ByteBuffer... buffers) throws IOException {
+    try (FileOutputStream out = new FileOutputStream(file)) {
+      for (ByteBuffer buffer : buffers) {
+        out.write(Utils.toArray(buffer));
+      }
+    }
+  }
+
+  private List<String> bundleValues() throws IOException {
+    List<String> values = new ArrayList<>();
+    try (ZipFile zipFile = new ZipFile(new File(outputPath))) {
+      for (ZipArchiveEntry entry : Collections.list(zipFile.getEntries())) {
+        ByteArrayOutputStream value = new ByteArrayOutputStream();
+        try (InputStream in = zipFile.getInputStream(entry)) {
+          byte[] chunk = new byte[1024];
+          int read;
+          while ((read = in.read(chunk)) != -1) {
+            value.write(chunk, 0, read);
+          }
+        }
+        values.add(new String(value.toByteArray(), StandardCharsets.UTF_8));
+      }
+    }
+    return values;
+  }
+
+}
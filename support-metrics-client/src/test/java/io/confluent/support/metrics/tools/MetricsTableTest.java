@@ -0,0 +1,268 @@
+/**
+ * Copyright 2018 Confluent Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package io.confluent.support.metrics.tools;
+
+import org.apache.avro.Schema;
+import org.apache.avro.SchemaBuilder;
+import org.apache.avro.file.DataFileWriter;
+import org.apache.avro.generic.GenericContainer;
+import org.apache.avro.generic.GenericData;
+import org.apache.avro.generic.GenericDatumWriter;
+import org.apache.avro.generic.GenericRecord;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Collections;
+
+import io.confluent.support.metrics.CollectorSection;
+import io.confluent.support.metrics.SectionStatus;
+import io.confluent.support.metrics.SupportKafkaMetricsBasic;
+import io.confluent.support.metrics.SupportKafkaMetricsComposite;
+import io.confluent.support.metrics.serde.AvroSerializer;
+import io.confluent.support.metrics.serde.DeltaSerializer;
+
+import static io.confluent.support.metrics.MetricsRecords.basicRecord;
+import static io.confluent.support.metrics.tools.MetricsTable.StringColumn.BROKER_PROCESS_UUID;
+import static io.confluent.support.metrics.tools.MetricsTable.StringColumn.CLUSTER_ID;
+import static io.confluent.support.metrics.tools.MetricsTable.StringColumn.KAFKA_VERSION;
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class MetricsTableTest {
+
+  private static GenericRecord metrics(
+      Schema schema,
+      long timestamp,
+      long uptimeMs,
+      String kafkaVersion
+  ) {
+    GenericRecord record = new GenericData.Record(schema);
+    record.put("brokerProcessUUID", "a");
+    record.put("timestamp", timestamp);
+    record.put("uptimeMs", uptimeMs);
+    record.put("kafkaVersion", kafkaVersion);
+    return record;
+  }
+
+  private static SupportKafkaMetricsComposite composite(
+      long timestamp,
+      SupportKafkaMetricsBasic basic
+  ) throws IOException {
+    CollectorSection section = new CollectorSection();
+    section.setName("basic");
+    section.setStatus(SectionStatus.OK);
+    section.setElapsedMs(5L);
+    section.setPayload(ByteBuffer.wrap(new AvroSerializer().serialize(basic)));
+    SupportKafkaMetricsComposite composite = new SupportKafkaMetricsComposite();
+    composite.setTimestamp(timestamp);
+    composite.setCollectorState(0);
+    composite.setBrokerProcessUUID(basic.getBrokerProcessUUID());
+    composite.setSections(Collections.singletonList(section));
+    return composite;
+  }
+
+  /**
+   * Three brokers in two clusters, reporting every minute for 100 minutes, as full records and
+   * deltas.  Broker "b" reports its last record while shutting down.
+   */
+  private static MetricsTable table() throws IOException {
+    MetricsTable table = new MetricsTable();
+    DeltaSerializer encoder = new DeltaSerializer(10);
+    for (int i = 0; i < 100; i++) {
+      long timestamp = 1000 + 60 * i;
+      table.append(encoder.serialize(basicRecord("a", "cluster-1", "2.2.0", timestamp, 0)));
+      int state = i == 99 ? 1 : 0;
+      table.append(encoder.serialize(basicRecord("b", "cluster-1", "2.2.0", timestamp, state)));
+      table.append(encoder.serialize(basicRecord("c", "cluster-2", "2.1.1", timestamp, 0)));
+    }
+    return table;
+  }
+
+  @Test
+  public void testDecodesFullRecordsAndDeltas() throws IOException {
+    // When
+    MetricsTable table = table();
+
+    // Then
+    assertThat(table.size()).isEqualTo(300);
+    assertThat(table.unreadable()).isEqualTo(0);
+    assertThat(table.unresolvedDeltas()).isEqualTo(0);
+    assertThat(table.cardinality(BROKER_PROCESS_UUID)).isEqualTo(3);
+    assertThat(table.cardinality(CLUSTER_ID)).isEqualTo(2);
+    // Row 298 is the last record of "b", a delta.
+    assertThat(table.get(BROKER_PROCESS_UUID, 298)).isEqualTo("b");
+    assertThat(table.get(CLUSTER_ID, 298)).isEqualTo("cluster-1");
+    assertThat(table.get(KAFKA_VERSION, 298)).isEqualTo("2.2.0");
+    assertThat(table.timestamp(298)).isEqualTo(1000 + 60 * 99);
+    assertThat(table.collectorState(298)).isEqualTo(1);
+    assertThat(table.collectorState(295)).isEqualTo(0);
+  }
+
+  @Test
+  public void testFiltersAndGroups() throws IOException {
+    // Given
+    MetricsTable table = table();
+
+    // When
+    int[] cluster1 = table.whereEquals(CLUSTER_ID, "cluster-1", table.selectAll());
+    int[] lastHour = table.whereTimestampBetween(1000 + 60 * 40, Long.MAX_VALUE, cluster1);
+    int[] shuttingDown = table.whereCollectorState(1, table.selectAll());
+
+    // Then
+    assertThat(cluster1).hasSize(200);
+    assertThat(lastHour).hasSize(120);
+    assertThat(shuttingDown).containsExactly(298);
+    assertThat(table.whereEquals(CLUSTER_ID, "cluster-3", table.selectAll())).isEmpty();
+    assertThat(table.countBy(KAFKA_VERSION, table.selectAll()))
+        .containsEntry("2.2.0", 200)
+        .containsEntry("2.1.1", 100)
+        .hasSize(2);
+    assertThat(table.countDistinctBy(CLUSTER_ID, BROKER_PROCESS_UUID, table.selectAll()))
+        .containsEntry("cluster-1", 2)
+        .containsEntry("cluster-2", 1)
+        .hasSize(2);
+    assertThat(table.timestampRangeBy(BROKER_PROCESS_UUID, lastHour)).containsOnlyKeys("a", "b");
+    assertThat(table.timestampRangeBy(BROKER_PROCESS_UUID, lastHour).get("a"))
+        .containsExactly(1000 + 60 * 40, 1000 + 60 * 99);
+  }
+
+  @Test
+  public void testFillsColumnsFromSections() throws IOException {
+    // Given
+    AvroSerializer encoder = new AvroSerializer();
+    CollectorSection section = new CollectorSection();
+    section.setName("basic");
+    section.setStatus(SectionStatus.OK);
+    section.setElapsedMs(5L);
+    byte[] basic = encoder.serialize(basicRecord("a", "cluster-1", "2.2.0", 1000, 0));
+    section.setPayload(ByteBuffer.wrap(basic));
+    SupportKafkaMetricsComposite composite = new SupportKafkaMetricsComposite();
+    composite.setTimestamp(1001L);
+    composite.setCollectorState(0);
+    composite.setBrokerProcessUUID("a");
+    composite.setSections(Collections.singletonList(section));
+    MetricsTable table = new MetricsTable();
+
+    // When
+    table.append(encoder.serialize(composite));
+
+    // Then
+    assertThat(table.size()).isEqualTo(1);
+    assertThat(table.timestamp(0)).isEqualTo(1001L);
+    assertThat(table.get(BROKER_PROCESS_UUID, 0)).isEqualTo("a");
+    assertThat(table.get(CLUSTER_ID, 0)).isEqualTo("cluster-1");
+    assertThat(table.get(KAFKA_VERSION, 0)).isEqualTo("2.2.0");
+  }
+
+  @Test
+  public void testSectionsOfDeltaReplaceColumns() throws IOException {
+    // Given
+    DeltaSerializer encoder = new DeltaSerializer(10);
+    MetricsTable table = new MetricsTable();
+    table.append(
+        encoder.serialize(composite(1001, basicRecord("a", "cluster-1", "2.2.0", 1000, 0))));
+
+    // When
+    table.append(
+        encoder.serialize(composite(1061, basicRecord("a", "cluster-1", "2.3.0", 1060, 0))));
+
+    // Then
+    assertThat(table.size()).isEqualTo(2);
+    assertThat(table.unresolvedDeltas()).isEqualTo(0);
+    assertThat(table.get(KAFKA_VERSION, 0)).isEqualTo("2.2.0");
+    assertThat(table.get(KAFKA_VERSION, 1)).isEqualTo("2.3.0");
+    // The composite record's own fields win over those of its sections.
+    assertThat(table.timestamp(1)).isEqualTo(1061L);
+  }
+
+  @Test
+  public void testSkipsChangedFieldsThatAreNotStored() throws IOException {
+    // Given
+    Schema schema = SchemaBuilder.record("Metrics").fields()
+        .requiredString("brokerProcessUUID")
+        .requiredLong("timestamp")
+        .requiredLong("uptimeMs")
+        .requiredString("kafkaVersion")
+        .endRecord();
+    DeltaSerializer encoder = new DeltaSerializer(10);
+    MetricsTable table = new MetricsTable();
+    table.append(encoder.serialize(metrics(schema, 1000, 10, "2.2.0")));
+
+    // When
+    table.append(encoder.serialize(metrics(schema, 1060, 60010, "2.3.0")));
+
+    // Then
+    assertThat(table.size()).isEqualTo(2);
+    assertThat(table.unreadable()).isEqualTo(0);
+    assertThat(table.timestamp(1)).isEqualTo(1060L);
+    assertThat(table.get(BROKER_PROCESS_UUID, 1)).isEqualTo("a");
+    assertThat(table.get(KAFKA_VERSION, 1)).isEqualTo("2.3.0");
+  }
+
+  @Test
+  public void testUnreadableSubmissionKeepsBrokerState() throws IOException {
+    // Given
+    DeltaSerializer encoder = new DeltaSerializer(10);
+    MetricsTable table = new MetricsTable();
+    table.append(encoder.serialize(basicRecord("a", "cluster-1", "2.2.0", 1000, 0)));
+    byte[] delta = encoder.serialize(basicRecord("a", "cluster-1", "2.2.0", 1060, 0));
+    // A submission whose first block holds a record of the same broker, but whose second block is
+    // cut off.
+    SupportKafkaMetricsBasic other = basicRecord("a", "cluster-1", "2.1.0", 1030, 0);
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    try (DataFileWriter<GenericContainer> writer =
+             new DataFileWriter<>(new GenericDatumWriter<GenericContainer>(other.getSchema()))) {
+      writer.create(other.getSchema(), out);
+      writer.append(other);
+      writer.sync();
+      writer.append(other);
+    }
+    byte[] truncated = Arrays.copyOf(out.toByteArray(), out.size() - 24);
+
+    // When
+    table.append(truncated);
+    table.append(delta);
+
+    // Then
+    assertThat(table.unreadable()).isEqualTo(1);
+    assertThat(table.unresolvedDeltas()).isEqualTo(0);
+    assertThat(table.size()).isEqualTo(2);
+    assertThat(table.get(KAFKA_VERSION, 1)).isEqualTo("2.2.0");
+    assertThat(table.timestamp(1)).isEqualTo(1060L);
+  }
+
+  @Test
+  public void testSkipsUnreadableSubmissionsAndOrphanDeltas() throws IOException {
+    // Given
+    DeltaSerializer encoder = new DeltaSerializer(10);
+    byte[] keyframe = encoder.serialize(basicRecord("a", "cluster-1", "2.2.0", 1000, 0));
+    byte[] delta = encoder.serialize(basicRecord("a", "cluster-1", "2.2.0", 1060, 0));
+    MetricsTable table = new MetricsTable();
+
+    // When
+    table.append("not a metrics submission".getBytes(StandardCharsets.UTF_8));
+    table.append(Arrays.copyOf(keyframe, keyframe.length / 2));
+    table.append(delta);
+
+    // Then
+    assertThat(table.size()).isEqualTo(0);
+    assertThat(table.unreadable()).isEqualTo(2);
+    assertThat(table.unresolvedDeltas()).isEqualTo(1);
+  }
+
+}